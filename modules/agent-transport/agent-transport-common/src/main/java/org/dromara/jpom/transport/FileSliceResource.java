@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.transport;
+
+import cn.hutool.core.io.IORuntimeException;
+import cn.hutool.core.io.resource.Resource;
+import cn.hutool.core.util.URLUtil;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 文件分片资源
+ * <p>
+ * 只记录文件、起始位置和长度，发送时直接从文件通道读取对应区域写入请求体，不会把分片数据读取到内存
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+public class FileSliceResource implements Resource {
+
+    private final File file;
+    private final long position;
+    private final long size;
+    private final String name;
+
+    /**
+     * 文件分片
+     *
+     * @param file     文件
+     * @param position 起始位置
+     * @param size     分片长度
+     * @param name     资源名称
+     */
+    public FileSliceResource(File file, long position, long size, String name) {
+        this.file = file;
+        this.position = position;
+        this.size = size;
+        this.name = name;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public URL getUrl() {
+        return URLUtil.getURL(file);
+    }
+
+    @Override
+    public InputStream getStream() {
+        try {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            channel.position(position);
+            return new SliceInputStream(channel, size);
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    /**
+     * 使用 transferTo 将文件区域直接写入输出流
+     *
+     * @param out 输出流
+     * @throws IORuntimeException io 异常
+     */
+    @Override
+    public void writeTo(OutputStream out) throws IORuntimeException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // 不能关闭，否则会关闭请求输出流
+            WritableByteChannel target = Channels.newChannel(out);
+            long pos = position;
+            long remaining = size;
+            while (remaining > 0) {
+                long count = channel.transferTo(pos, remaining, target);
+                if (count <= 0) {
+                    throw new EOFException("文件长度不足：" + file.getAbsolutePath());
+                }
+                pos += count;
+                remaining -= count;
+            }
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    /**
+     * 限定长度的文件通道输入流
+     */
+    private static class SliceInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private long remaining;
+
+        private SliceInputStream(FileChannel channel, long remaining) {
+            this.channel = channel;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] bytes = new byte[1];
+            int read = this.read(bytes, 0, 1);
+            return read == -1 ? -1 : bytes[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int max = (int) Math.min(len, remaining);
+            int read = channel.read(ByteBuffer.wrap(b, off, max));
+            if (read == -1) {
+                remaining = 0;
+                return -1;
+            }
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(remaining, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
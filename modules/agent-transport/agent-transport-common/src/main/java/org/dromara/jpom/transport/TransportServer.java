@@ -11,6 +11,8 @@ package org.dromara.jpom.transport;
 
 import com.alibaba.fastjson2.TypeReference;
 
+import java.util.Collections;
+import java.util.Map;
 import java.util.function.Consumer;
 
 /**
@@ -30,6 +32,25 @@ public interface TransportServer {
 
     String TRANSPORT_ENCRYPTION = "transport-encryption";
 
+    /**
+     * 传输引擎名称，存在多个引擎时用于按名称选择
+     *
+     * @return 名称
+     * @see TransportServerFactory#use(String)
+     */
+    default String name() {
+        return this.getClass().getSimpleName();
+    }
+
+    /**
+     * 传输引擎运行状态（如连接池使用情况）
+     *
+     * @return 状态信息
+     */
+    default Map<String, Object> stat() {
+        return Collections.emptyMap();
+    }
+
     /**
      * 执行请求
      *
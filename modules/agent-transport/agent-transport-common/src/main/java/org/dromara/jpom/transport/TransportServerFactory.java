@@ -9,10 +9,14 @@
  */
 package org.dromara.jpom.transport;
 
+import cn.hutool.core.io.IoUtil;
 import cn.hutool.core.lang.Singleton;
 import cn.hutool.core.util.ServiceLoaderUtil;
+import cn.hutool.core.util.StrUtil;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.List;
+
 /**
  * @author bwcx_jzy
  * @since 2022/12/23
@@ -29,6 +33,34 @@ public class TransportServerFactory {
         return Singleton.get(TransportServer.class.getName(), TransportServerFactory::doCreate);
     }
 
+    /**
+     * 按名称切换单例的 TransportServer，名称为空时使用第一个可用的引擎
+     *
+     * @param name 引擎名称
+     * @return 切换后的 TransportServer
+     * @see TransportServer#name()
+     */
+    public static synchronized TransportServer use(String name) {
+        TransportServer transportServer;
+        if (StrUtil.isEmpty(name)) {
+            transportServer = doCreate();
+        } else {
+            List<TransportServer> list = ServiceLoaderUtil.loadList(TransportServer.class);
+            transportServer = list.stream()
+                .filter(server -> StrUtil.equalsIgnoreCase(server.name(), name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("No jpom agent transport engine found : " + name));
+        }
+        String key = TransportServer.class.getName();
+        TransportServer old = Singleton.get(key, TransportServerFactory::doCreate);
+        Singleton.put(key, transportServer);
+        if (old instanceof AutoCloseable) {
+            IoUtil.close((AutoCloseable) old);
+        }
+        log.info("Use [{}] Agent Transport.", transportServer.name());
+        return transportServer;
+    }
+
     /**
      * 根据用户引入的 Transport 客户端引擎jar，自动创建对应的拼音引擎对象<br>
      * 推荐创建的引擎单例使用，此方法每次调用会返回新的引擎
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.transport;
+
+import lombok.Data;
+
+/**
+ * 节点通讯连接池配置
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/25
+ */
+@Data
+public class HttpPoolConfig {
+
+    /**
+     * 单个节点最大连接数
+     */
+    private int maxPerNode = 10;
+
+    /**
+     * 所有节点最大连接数
+     */
+    private int maxTotal = 200;
+
+    /**
+     * 空闲连接回收时间 单位秒
+     */
+    private int idleEvictSeconds = 60;
+
+    /**
+     * 连接空闲多久后复用前需要重新校验 单位秒
+     */
+    private int validateAfterInactivitySeconds = 5;
+
+    public int getMaxPerNode() {
+        return Math.max(this.maxPerNode, 1);
+    }
+
+    public int getMaxTotal() {
+        return Math.max(this.maxTotal, this.getMaxPerNode());
+    }
+
+    public int getIdleEvictSeconds() {
+        return Math.max(this.idleEvictSeconds, 5);
+    }
+}
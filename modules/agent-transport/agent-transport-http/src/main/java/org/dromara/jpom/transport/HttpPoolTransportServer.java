@@ -0,0 +1,375 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.transport;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.resource.BytesResource;
+import cn.hutool.core.io.resource.FileResource;
+import cn.hutool.core.io.resource.Resource;
+import cn.hutool.core.net.url.UrlBuilder;
+import cn.hutool.core.util.ArrayUtil;
+import cn.hutool.core.util.ObjectUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.http.Header;
+import cn.hutool.http.HttpUtil;
+import com.alibaba.fastjson2.JSONObject;
+import lombok.Lombok;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.entity.UrlEncodedFormEntity;
+import org.apache.hc.client5.http.entity.mime.*;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.impl.routing.SystemDefaultRoutePlanner;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.client5.http.ssl.NoopHostnameVerifier;
+import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactory;
+import org.apache.hc.client5.http.ssl.TrustAllStrategy;
+import org.apache.hc.core5.http.*;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.http.message.BasicNameValuePair;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.ssl.SSLContextBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.dromara.jpom.encrypt.EncryptFactory;
+import org.dromara.jpom.encrypt.Encryptor;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * 基于连接池的插件端消息传输服务
+ * <p>
+ * 同一节点的请求复用长连接（keep-alive），避免每次请求重新建立连接和 TLS 握手
+ * <p>
+ * 使用 socks 代理的节点仍然走 {@link HttpTransportServer}
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/25
+ */
+@Slf4j
+public class HttpPoolTransportServer extends HttpTransportServer implements AutoCloseable {
+
+    private static final String NODE_PROXY_ATTRIBUTE = "jpom.node.proxy";
+
+    private volatile HttpPoolConfig poolConfig = new HttpPoolConfig();
+    private volatile PoolingHttpClientConnectionManager connectionManager;
+    private volatile CloseableHttpClient httpClient;
+
+    @Override
+    public String name() {
+        return "http-pool";
+    }
+
+    /**
+     * 更新连接池配置，已经存在的连接池将被关闭重建
+     *
+     * @param poolConfig 配置
+     */
+    public synchronized void config(HttpPoolConfig poolConfig) {
+        this.poolConfig = ObjectUtil.defaultIfNull(poolConfig, HttpPoolConfig::new);
+        this.close();
+    }
+
+    private CloseableHttpClient getHttpClient() {
+        CloseableHttpClient client = this.httpClient;
+        if (client != null) {
+            return client;
+        }
+        synchronized (this) {
+            if (this.httpClient == null) {
+                this.connectionManager = this.createConnectionManager(poolConfig);
+                this.httpClient = HttpClients.custom()
+                    .setConnectionManager(connectionManager)
+                    .setRoutePlanner(new NodeRoutePlanner())
+                    .evictExpiredConnections()
+                    .evictIdleConnections(TimeValue.ofSeconds(poolConfig.getIdleEvictSeconds()))
+                    .disableCookieManagement()
+                    .disableAutomaticRetries()
+                    .build();
+                log.debug("节点通讯连接池已创建：{}", poolConfig);
+            }
+            return this.httpClient;
+        }
+    }
+
+    private PoolingHttpClientConnectionManager createConnectionManager(HttpPoolConfig poolConfig) {
+        SSLConnectionSocketFactory sslSocketFactory;
+        try {
+            // 和 hutool 默认行为保持一致，信任所有证书
+            sslSocketFactory = new SSLConnectionSocketFactory(SSLContextBuilder.create()
+                .loadTrustMaterial(TrustAllStrategy.INSTANCE)
+                .build(), NoopHostnameVerifier.INSTANCE);
+        } catch (Exception e) {
+            throw Lombok.sneakyThrow(e);
+        }
+        return PoolingHttpClientConnectionManagerBuilder.create()
+            .setSSLSocketFactory(sslSocketFactory)
+            .setMaxConnPerRoute(poolConfig.getMaxPerNode())
+            .setMaxConnTotal(poolConfig.getMaxTotal())
+            .setValidateAfterInactivity(TimeValue.ofSeconds(poolConfig.getValidateAfterInactivitySeconds()))
+            .build();
+    }
+
+    /**
+     * 是否需要回退到普通的传输方式
+     *
+     * @param nodeInfo 节点信息
+     * @return true 使用 socks 代理
+     */
+    private boolean fallback(INodeInfo nodeInfo) {
+        Proxy proxy = nodeInfo.proxy();
+        return proxy != null && proxy.type() == Proxy.Type.SOCKS;
+    }
+
+    private URI createUri(INodeInfo nodeInfo, IUrlItem urlItem, Map<String, Object> query) {
+        String url = StrUtil.format("{}://{}/", nodeInfo.scheme(), nodeInfo.url());
+        UrlBuilder urlBuilder = UrlBuilder.of(url).addPath(urlItem.path());
+        Optional.ofNullable(query).ifPresent(map -> map.forEach((key, value) -> urlBuilder.addQuery(key, this.formValue(value))));
+        return urlBuilder.toURI();
+    }
+
+    private void fillRequest(HttpUriRequestBase request, INodeInfo nodeInfo, IUrlItem urlItem, boolean followRedirects) {
+        RequestConfig.Builder builder = RequestConfig.custom().setRedirectsEnabled(followRedirects);
+        Optional.ofNullable(urlItem.timeout()).ifPresent(integer -> {
+            Timeout timeout = Timeout.ofSeconds(integer);
+            builder.setConnectTimeout(timeout).setResponseTimeout(timeout).setConnectionRequestTimeout(timeout);
+        });
+        request.setConfig(builder.build());
+        request.setHeader(TRANSPORT_ENCRYPTION, nodeInfo.transportEncryption() + "");
+        request.setHeader(JPOM_AGENT_AUTHORIZE, nodeInfo.authorize());
+        request.setHeader(WORKSPACE_ID_REQ_HEADER, urlItem.workspaceId());
+    }
+
+    private HttpClientContext createContext(INodeInfo nodeInfo) {
+        HttpClientContext context = HttpClientContext.create();
+        Optional.ofNullable(nodeInfo.proxy()).ifPresent(proxy -> context.setAttribute(NODE_PROXY_ATTRIBUTE, proxy));
+        return context;
+    }
+
+    private Encryptor createEncryptor(INodeInfo nodeInfo) {
+        try {
+            return EncryptFactory.createEncryptor(nodeInfo.transportEncryption());
+        } catch (Exception e) {
+            log.error("编码异常", e);
+            throw new TransportAgentException("节点传输信息编码异常:" + e.getMessage());
+        }
+    }
+
+    private HttpEntity createEntity(IUrlItem urlItem, Object data, INodeInfo nodeInfo) {
+        if (data == null) {
+            return null;
+        }
+        Encryptor encryptor = this.createEncryptor(nodeInfo);
+        DataContentType dataContentType = urlItem.contentType();
+        try {
+            if (dataContentType == DataContentType.FORM_URLENCODED) {
+                Map<String, Object> form = this.encryptForm(data, encryptor);
+                boolean multipart = form.values().stream().anyMatch(o -> o instanceof Resource);
+                if (multipart) {
+                    MultipartEntityBuilder builder = MultipartEntityBuilder.create()
+                        .setMode(HttpMultipartMode.LEGACY)
+                        .setCharset(StandardCharsets.UTF_8);
+                    for (Map.Entry<String, Object> entry : form.entrySet()) {
+                        Object value = entry.getValue();
+                        if (value instanceof Resource) {
+                            builder.addPart(entry.getKey(), this.createBody((Resource) value));
+                        } else {
+                            builder.addTextBody(entry.getKey(), this.formValue(value), ContentType.TEXT_PLAIN.withCharset(StandardCharsets.UTF_8));
+                        }
+                    }
+                    return builder.build();
+                }
+                List<NameValuePair> pairs = new ArrayList<>(form.size());
+                for (Map.Entry<String, Object> entry : form.entrySet()) {
+                    pairs.add(new BasicNameValuePair(entry.getKey(), this.formValue(entry.getValue())));
+                }
+                return new UrlEncodedFormEntity(pairs, StandardCharsets.UTF_8);
+            } else if (dataContentType == DataContentType.JSON) {
+                return new StringEntity(encryptor.encrypt(JSONObject.toJSONString(data)), ContentType.APPLICATION_JSON);
+            }
+        } catch (Exception e) {
+            log.error("编码异常", e);
+            throw new TransportAgentException("节点传输信息编码异常:" + e.getMessage());
+        }
+        throw new IllegalArgumentException("不支持的 contentType");
+    }
+
+    private ContentBody createBody(Resource resource) {
+        String fileName = resource.getName();
+        ContentType contentType = ContentType.create(StrUtil.emptyToDefault(HttpUtil.getMimeType(fileName), ContentType.APPLICATION_OCTET_STREAM.getMimeType()));
+        if (resource instanceof FileResource) {
+            return new FileBody(FileUtil.file(resource.getUrl()), contentType, fileName);
+        }
+        if (resource instanceof BytesResource) {
+            return new ByteArrayBody(resource.readBytes(), contentType, fileName);
+        }
+        if (resource instanceof FileSliceResource) {
+            FileSliceResource sliceResource = (FileSliceResource) resource;
+            // 分片直接从文件通道写入请求体，并且能提供长度
+            return new AbstractContentBody(contentType) {
+                @Override
+                public String getFilename() {
+                    return fileName;
+                }
+
+                @Override
+                public void writeTo(OutputStream out) {
+                    sliceResource.writeTo(out);
+                }
+
+                @Override
+                public long getContentLength() {
+                    return sliceResource.getSize();
+                }
+            };
+        }
+        return new InputStreamBody(resource.getStream(), contentType, fileName);
+    }
+
+    /**
+     * 和 hutool 表单保持一致，数组使用逗号拼接
+     *
+     * @param value 值
+     * @return 字符串
+     */
+    private String formValue(Object value) {
+        if (ArrayUtil.isArray(value)) {
+            return ArrayUtil.join(value, StrUtil.COMMA);
+        }
+        return StrUtil.toStringOrNull(value);
+    }
+
+    @Override
+    public String execute(INodeInfo nodeInfo, IUrlItem urlItem, Object data) {
+        if (this.fallback(nodeInfo)) {
+            return super.execute(nodeInfo, urlItem, data);
+        }
+        HttpPost httpPost = new HttpPost(this.createUri(nodeInfo, urlItem, null));
+        this.fillRequest(httpPost, nodeInfo, urlItem, false);
+        httpPost.setEntity(this.createEntity(urlItem, data, nodeInfo));
+        if (log.isDebugEnabled()) {
+            log.debug("{}[{}] -> {} {}", nodeInfo.name(), httpPost.getRequestUri(), urlItem.workspaceId(), Optional.ofNullable(data).orElse("-"));
+        }
+        try {
+            return this.getHttpClient().execute(httpPost, this.createContext(nodeInfo), response -> {
+                int status = response.getCode();
+                String body = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+                log.debug("Completed {}", body);
+                if (status != HttpStatus.SC_OK) {
+                    log.warn("{} 响应异常 状态码错误：{} {}", nodeInfo.name(), status, body);
+                    throw new TransportAgentException(nodeInfo.name() + " 节点响应异常,状态码错误：" + status);
+                }
+                return body;
+            });
+        } catch (Exception e) {
+            throw Lombok.sneakyThrow(TransformServerFactory.get().transformException(e, nodeInfo));
+        }
+    }
+
+    @Override
+    public void download(INodeInfo nodeInfo, IUrlItem urlItem, Object data, Consumer<DownloadCallback> consumer) {
+        if (this.fallback(nodeInfo)) {
+            super.download(nodeInfo, urlItem, data, consumer);
+            return;
+        }
+        try {
+            Map<String, Object> query = data == null ? null : this.encryptForm(data, this.createEncryptor(nodeInfo));
+            HttpGet httpGet = new HttpGet(this.createUri(nodeInfo, urlItem, query));
+            this.fillRequest(httpGet, nodeInfo, urlItem, true);
+            this.getHttpClient().execute(httpGet, this.createContext(nodeInfo), response -> {
+                HttpEntity entity = response.getEntity();
+                DownloadCallback build = DownloadCallback.builder()
+                    .contentDisposition(Optional.ofNullable(response.getFirstHeader(Header.CONTENT_DISPOSITION.getValue())).map(NameValuePair::getValue).orElse(null))
+                    .contentType(Optional.ofNullable(entity).map(HttpEntity::getContentType).orElse(null))
+                    .inputStream(entity == null ? null : entity.getContent())
+                    .build();
+                consumer.accept(build);
+                return null;
+            });
+        } catch (Exception e) {
+            throw Lombok.sneakyThrow(TransformServerFactory.get().transformException(e, nodeInfo));
+        }
+    }
+
+    @Override
+    public Map<String, Object> stat() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("engine", this.name());
+        PoolingHttpClientConnectionManager manager = this.connectionManager;
+        if (manager == null) {
+            return map;
+        }
+        PoolStats totalStats = manager.getTotalStats();
+        map.put("leased", totalStats.getLeased());
+        map.put("idle", totalStats.getAvailable());
+        map.put("pending", totalStats.getPending());
+        map.put("max", totalStats.getMax());
+        List<Map<String, Object>> nodes = new ArrayList<>();
+        manager.getRoutes().forEach(route -> {
+            PoolStats stats = manager.getStats(route);
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("node", route.getTargetHost().toHostString());
+            item.put("leased", stats.getLeased());
+            item.put("idle", stats.getAvailable());
+            item.put("pending", stats.getPending());
+            item.put("max", stats.getMax());
+            nodes.add(item);
+        });
+        map.put("nodes", nodes);
+        return map;
+    }
+
+    @Override
+    public synchronized void close() {
+        CloseableHttpClient client = this.httpClient;
+        this.httpClient = null;
+        this.connectionManager = null;
+        Optional.ofNullable(client).ifPresent(closeableHttpClient -> closeableHttpClient.close(CloseMode.GRACEFUL));
+    }
+
+    /**
+     * 优先使用节点配置的 http 代理，未配置时使用系统全局代理
+     */
+    private static class NodeRoutePlanner extends SystemDefaultRoutePlanner {
+
+        NodeRoutePlanner() {
+            super(null);
+        }
+
+        @Override
+        protected HttpHost determineProxy(HttpHost target, HttpContext context) throws HttpException {
+            Object attribute = context.getAttribute(NODE_PROXY_ATTRIBUTE);
+            if (attribute instanceof Proxy) {
+                Proxy proxy = (Proxy) attribute;
+                if (proxy.type() == Proxy.Type.DIRECT) {
+                    return null;
+                }
+                InetSocketAddress address = (InetSocketAddress) proxy.address();
+                return new HttpHost(address.getHostString(), address.getPort());
+            }
+            return super.determineProxy(target, context);
+        }
+    }
+}
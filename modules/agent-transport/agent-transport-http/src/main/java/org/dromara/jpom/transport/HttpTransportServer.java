@@ -34,6 +34,15 @@ import java.util.function.Consumer;
 @Slf4j
 public class HttpTransportServer implements TransportServer {
 
+    /**
+     * 流式发送的块大小
+     */
+    private static final int CHUNKED_BLOCK_SIZE = 64 * 1024;
+
+    @Override
+    public String name() {
+        return "http";
+    }
 
     private HttpRequest createRequest(INodeInfo nodeInfo, IUrlItem urlItem, Method method) {
         String url = StrUtil.format("{}://{}/", nodeInfo.scheme(), nodeInfo.url());
@@ -56,7 +65,6 @@ public class HttpTransportServer implements TransportServer {
         return createRequest(nodeInfo, urlItem, Method.POST);
     }
 
-    @SuppressWarnings("unchecked")
     private void appendRequestData(HttpRequest httpRequest, IUrlItem urlItem, Object data, INodeInfo nodeInfo) {
         DataContentType dataContentType = urlItem.contentType();
         Optional.ofNullable(data).ifPresent(o -> {
@@ -64,30 +72,12 @@ public class HttpTransportServer implements TransportServer {
             try {
                 encryptor = EncryptFactory.createEncryptor(nodeInfo.transportEncryption());
                 if (dataContentType == DataContentType.FORM_URLENCODED) {
-                    if (o instanceof Map) {
-                        Map<String, Object> map = (Map<String, Object>) o;
-                        Map<String, Object> encryptedMap = new HashMap<>();
-                        for (Map.Entry<String, Object> entry : map.entrySet()) {
-                            String encryptedKey = encryptor.encrypt(entry.getKey());
-                            Object value = entry.getValue();
-                            Object newValue;
-                            if (value instanceof String[]) {
-                                String[] valueStr = (String[]) value;
-                                for (int i = 0; i < valueStr.length; i++) {
-                                    valueStr[i] = encryptor.encrypt(valueStr[i]);
-                                }
-                                newValue = valueStr;
-                            } else if (value instanceof Resource) {
-                                newValue = value;
-                            } else {
-                                newValue = encryptor.encrypt(StrUtil.toStringOrNull(entry.getValue()));
-                            }
-                            encryptedMap.put(encryptedKey, newValue);
-                        }
-                        httpRequest.form(encryptedMap);
-                    } else {
-                        throw new IllegalArgumentException("不支持的类型:" + o.getClass());
+                    Map<String, Object> form = this.encryptForm(o, encryptor);
+                    if (form.values().stream().anyMatch(value -> value instanceof FileSliceResource)) {
+                        // 分片上传使用流式发送，避免 HttpURLConnection 将整个请求体缓存在内存中
+                        httpRequest.setChunkedStreamingMode(CHUNKED_BLOCK_SIZE);
                     }
+                    httpRequest.form(form);
                 } else if (dataContentType == DataContentType.JSON) {
                     httpRequest.body(encryptor.encrypt(JSONObject.toJSONString(o)), ContentType.JSON.getValue());
                 } else {
@@ -100,6 +90,41 @@ public class HttpTransportServer implements TransportServer {
         });
     }
 
+    /**
+     * 加密表单参数，文件参数保持不变
+     *
+     * @param data      参数
+     * @param encryptor 加密器
+     * @return 加密后的表单
+     * @throws Exception 加密异常
+     */
+    @SuppressWarnings("unchecked")
+    protected Map<String, Object> encryptForm(Object data, Encryptor encryptor) throws Exception {
+        if (!(data instanceof Map)) {
+            throw new IllegalArgumentException("不支持的类型:" + data.getClass());
+        }
+        Map<String, Object> map = (Map<String, Object>) data;
+        Map<String, Object> encryptedMap = new HashMap<>();
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            String encryptedKey = encryptor.encrypt(entry.getKey());
+            Object value = entry.getValue();
+            Object newValue;
+            if (value instanceof String[]) {
+                String[] valueStr = (String[]) value;
+                for (int i = 0; i < valueStr.length; i++) {
+                    valueStr[i] = encryptor.encrypt(valueStr[i]);
+                }
+                newValue = valueStr;
+            } else if (value instanceof Resource) {
+                newValue = value;
+            } else {
+                newValue = encryptor.encrypt(StrUtil.toStringOrNull(entry.getValue()));
+            }
+            encryptedMap.put(encryptedKey, newValue);
+        }
+        return encryptedMap;
+    }
+
     private String executeRequest(HttpRequest httpRequest, INodeInfo nodeInfo, IUrlItem urlItem) {
         //
         if (log.isDebugEnabled()) {
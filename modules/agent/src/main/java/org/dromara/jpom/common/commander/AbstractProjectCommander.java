@@ -42,6 +42,7 @@ import org.dromara.jpom.socket.AgentFileTailWatcher;
 import org.dromara.jpom.socket.ConsoleCommandOp;
 import org.dromara.jpom.util.CommandUtil;
 import org.dromara.jpom.util.JvmUtil;
+import org.dromara.jpom.util.LogRotateUtil;
 import org.dromara.jpom.webhook.DefaultWebhookPluginImpl;
 import org.springframework.util.Assert;
 
@@ -80,6 +81,10 @@ public abstract class AbstractProjectCommander implements ProjectCommander {
     protected final ProjectLogConfig projectLogConfig;
     protected final DslScriptServer dslScriptServer;
     protected final ProjectInfoService projectInfoService;
+    /**
+     * 进程表，不支持或者未开启时为 null
+     */
+    protected final ProcessTable processTable;
 
     public AbstractProjectCommander(Charset fileCharset,
                                     SystemCommander systemCommander,
@@ -92,6 +97,11 @@ public abstract class AbstractProjectCommander implements ProjectCommander {
         this.projectLogConfig = projectConfig.getLog();
         this.dslScriptServer = dslScriptServer;
         this.projectInfoService = projectInfoService;
+        if (projectConfig.isProcessTable() && ProcessTable.isSupported()) {
+            this.processTable = new ProcessTable(projectConfig.getProcessTableRefreshInterval());
+        } else {
+            this.processTable = null;
+        }
     }
 
 
@@ -440,8 +450,8 @@ public abstract class AbstractProjectCommander implements ProjectCommander {
         } else {
             return "当前项目类型不支持启动";
         }
-        // 备份日志
-        this.backLog(nodeProjectInfoModel, originalModel);
+        // 备份日志（项目没有运行，可以直接重命名日志文件）
+        this.backLog(nodeProjectInfoModel, originalModel, true);
         return null;
     }
 
@@ -507,6 +517,17 @@ public abstract class AbstractProjectCommander implements ProjectCommander {
      * @return 结果
      */
     public String backLog(NodeProjectInfoModel nodeProjectInfoModel, NodeProjectInfoModel originalModel) {
+        return this.backLog(nodeProjectInfoModel, originalModel, false);
+    }
+
+    /**
+     * 清空日志信息
+     *
+     * @param nodeProjectInfoModel 项目
+     * @param stopped              项目是否已经停止（没有进程写入日志）
+     * @return 结果
+     */
+    private String backLog(NodeProjectInfoModel nodeProjectInfoModel, NodeProjectInfoModel originalModel, boolean stopped) {
         File file = projectInfoService.resolveAbsoluteLogFile(nodeProjectInfoModel, originalModel);
         if (!file.exists() || file.isDirectory()) {
             return "not exists";
@@ -520,20 +541,53 @@ public abstract class AbstractProjectCommander implements ProjectCommander {
         if (openLogBack) {
             // 开启日志备份才移动文件
             File backPath = projectInfoService.resolveLogBack(nodeProjectInfoModel, originalModel);
-            String pathId = DateTime.now().toString(DatePattern.PURE_DATETIME_FORMAT) + ".log";
-            backPath = new File(backPath, pathId);
-            FileUtil.copy(file, backPath, true);
-        }
-        // 清空日志
-        String r = systemCommander.emptyLogFile(file);
-        if (StrUtil.isNotEmpty(r)) {
-            log.info(r);
+            String pathId = DateTime.now().toString(DatePattern.PURE_DATETIME_FORMAT);
+            File target = new File(backPath, pathId + ".log");
+            for (int i = 1; target.exists() || FileUtil.exist(target.getAbsolutePath() + LogRotateUtil.GZIP_SUFFIX); i++) {
+                // 同一秒内多次备份
+                target = new File(backPath, pathId + "-" + i + ".log");
+            }
+            try {
+                LogRotateUtil.rotate(file, target, stopped);
+            } catch (IOException e) {
+                // 备份失败不能清空日志，避免丢失日志
+                log.warn("备份日志文件失败：{}", file.getAbsolutePath(), e);
+                return "备份日志文件失败：" + e.getMessage();
+            }
+            if (this.resolveLogBackCompress(originalModel)) {
+                LogRotateUtil.compressAsync(target);
+            }
+        } else {
+            try {
+                LogRotateUtil.truncate(file);
+            } catch (IOException e) {
+                log.warn("清空日志文件失败,使用系统命令清空日志：{}", e.getMessage());
+                // 清空日志
+                String r = systemCommander.emptyLogFile(file);
+                if (StrUtil.isNotEmpty(r)) {
+                    log.info(r);
+                }
+                LogRotateUtil.markRotated(file);
+            }
         }
         // 重新监听
         AgentFileTailWatcher.reWatcher(file);
         return "ok";
     }
 
+    /**
+     * 日志备份后是否压缩
+     *
+     * @param originalModel 项目
+     * @return true 压缩
+     */
+    private boolean resolveLogBackCompress(NodeProjectInfoModel originalModel) {
+        return Optional.ofNullable(originalModel.dslConfig())
+            .map(DslYmlDto::getConfig)
+            .map(DslYmlDto.Config::getAutoBackCompress)
+            .orElse(projectLogConfig.isAutoBackupCompress());
+    }
+
     /**
      * 查询项目状态
      *
@@ -584,7 +638,7 @@ public abstract class AbstractProjectCommander implements ProjectCommander {
             String tag = nodeProjectInfoModel.getId();
             String statusResult = this.status(tag);
             CommandOpResult of = CommandOpResult.of(statusResult);
-            if (!of.isSuccess()) {
+            if (!of.isSuccess() && processTable == null) {
                 // 只有 java 项目才判断 jps
                 Assert.state(JvmUtil.jpsNormal, JvmUtil.JPS_ERROR_MSG);
             }
@@ -629,6 +683,13 @@ public abstract class AbstractProjectCommander implements ProjectCommander {
      * @return 查询结果
      */
     protected String status(String tag) {
+        if (processTable != null) {
+            Integer pid = processTable.getPidByTag(tag);
+            if (pid == null) {
+                return AbstractProjectCommander.STOP_TAG;
+            }
+            return StrUtil.format("{}:{}", AbstractProjectCommander.RUNNING_TAG, pid);
+        }
         String jpsStatus = this.getJpsStatus(tag);
         if (StrUtil.equals(AbstractProjectCommander.STOP_TAG, jpsStatus)) {
             // 通过系统命令查询
@@ -677,6 +738,18 @@ public abstract class AbstractProjectCommander implements ProjectCommander {
         if (cachePort != null) {
             return cachePort;
         }
+        if (processTable != null) {
+            List<Integer> ports = processTable.listenPorts(pid);
+            if (ports != null) {
+                if (ports.isEmpty()) {
+                    return StrUtil.DASHED;
+                }
+                String allPort = CollUtil.join(ports, StrUtil.COMMA);
+                CacheObject.put(PID_PORT, pid, allPort);
+                return allPort;
+            }
+            // 没有权限读取进程文件描述符，使用命令查询
+        }
         List<NetstatModel> list = this.listNetstat(pid, true);
         if (list == null) {
             return StrUtil.DASHED;
@@ -776,6 +849,7 @@ public abstract class AbstractProjectCommander implements ProjectCommander {
         int loopCount = (int) (TimeUnit.SECONDS.toMillis(waitTime) / 500);
         int count = 0;
         do {
+            Optional.ofNullable(processTable).ifPresent(ProcessTable::expire);
             if (this.isRun(nodeProjectInfoModel, originalModel) == status) {
                 // 是期望的结果
                 return true;
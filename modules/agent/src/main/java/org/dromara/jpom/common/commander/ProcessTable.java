@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.common.commander;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.NumberUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.system.SystemUtil;
+import org.dromara.jpom.util.JvmUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * 基于 /proc 的进程表（仅 linux）
+ * <p>
+ * 直接读取 /proc/[pid]/cmdline 按 jpom 标识建立索引，避免每次查询状态都执行 jps、ps 命令。
+ * 进程使用 pid + 启动时间 判断是否为同一个进程，已经解析过的进程不会重复读取 cmdline
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+public class ProcessTable {
+
+    private static final String PROC = "/proc";
+    /**
+     * /proc/net/tcp 中 LISTEN 状态
+     */
+    private static final String TCP_LISTEN = "0A";
+    /**
+     * 进程刚创建时可能还未 exec，cmdline 不准确。未识别到标识的进程需要超过此时间再确认一次
+     */
+    private static final long CONFIRM_TIME = 1000;
+
+    /**
+     * 刷新间隔 单位毫秒
+     */
+    private final long refreshInterval;
+    /**
+     * pid -> 进程信息，仅在刷新时（持有锁）修改
+     */
+    private final Map<Integer, ProcessItem> processMap = new HashMap<>();
+    /**
+     * 标识 -> pid
+     */
+    private volatile Map<String, Integer> tagIndex = Collections.emptyMap();
+    private volatile long lastRefresh;
+
+    public ProcessTable(long refreshInterval) {
+        this.refreshInterval = Math.max(refreshInterval, 0);
+    }
+
+    /**
+     * 当前系统是否支持读取 /proc 进程表
+     *
+     * @return true 支持
+     */
+    public static boolean isSupported() {
+        if (!SystemUtil.getOsInfo().isLinux()) {
+            return false;
+        }
+        return FileUtil.isFile(PROC + "/self/cmdline") && FileUtil.isFile(PROC + "/self/stat");
+    }
+
+    /**
+     * 根据标识获取进程id
+     *
+     * @param tag 标识
+     * @return pid，不存在返回 null
+     */
+    public Integer getPidByTag(String tag) {
+        if (StrUtil.isEmpty(tag)) {
+            return null;
+        }
+        this.tryRefresh();
+        return tagIndex.get(tag.toLowerCase());
+    }
+
+    /**
+     * 标记进程表过期，下次查询时重新扫描（启动、停止项目检测状态时使用）
+     */
+    public void expire() {
+        this.lastRefresh = 0;
+    }
+
+    /**
+     * 当前索引的 jpom 进程数
+     *
+     * @return 进程数
+     */
+    public int size() {
+        return tagIndex.size();
+    }
+
+    private void tryRefresh() {
+        if (System.currentTimeMillis() - lastRefresh < refreshInterval) {
+            return;
+        }
+        synchronized (this) {
+            if (System.currentTimeMillis() - lastRefresh < refreshInterval) {
+                return;
+            }
+            this.refresh();
+        }
+    }
+
+    /**
+     * 扫描 /proc 增量刷新进程表
+     */
+    public synchronized void refresh() {
+        File[] files = new File(PROC).listFiles();
+        if (files == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Set<Integer> alive = new HashSet<>(files.length);
+        Map<String, Integer> index = new HashMap<>(Math.max(tagIndex.size() * 2, 16));
+        for (File file : files) {
+            String name = file.getName();
+            if (!NumberUtil.isInteger(name)) {
+                continue;
+            }
+            int pid = Integer.parseInt(name);
+            String startTime = readStartTime(pid);
+            if (startTime == null) {
+                // 进程已经退出
+                continue;
+            }
+            alive.add(pid);
+            ProcessItem item = processMap.get(pid);
+            if (item == null || !StrUtil.equals(item.startTime, startTime)) {
+                item = new ProcessItem(startTime, readTag(pid), now);
+                processMap.put(pid, item);
+            } else if (item.tag == null && !item.confirmed) {
+                // 确认刚启动的进程 exec 后的 cmdline
+                item.tag = readTag(pid);
+                item.confirmed = now - item.readTime >= CONFIRM_TIME;
+            }
+            if (item.tag != null) {
+                index.putIfAbsent(item.tag, pid);
+            }
+        }
+        processMap.keySet().retainAll(alive);
+        this.tagIndex = index;
+        this.lastRefresh = now;
+    }
+
+    /**
+     * 获取进程监听的端口（仅监听所有地址的端口，同 netstat 逻辑）
+     *
+     * @param pid 进程id
+     * @return 端口号，无权限读取返回 null
+     */
+    public List<Integer> listenPorts(int pid) {
+        String[] fds = new File(PROC + "/" + pid + "/fd").list();
+        if (fds == null) {
+            return null;
+        }
+        Set<Long> inodes = new HashSet<>();
+        for (String fd : fds) {
+            try {
+                String link = Files.readSymbolicLink(Paths.get(PROC, String.valueOf(pid), "fd", fd)).toString();
+                if (link.startsWith("socket:[")) {
+                    inodes.add(Long.parseLong(link.substring(8, link.length() - 1)));
+                }
+            } catch (IOException | RuntimeException ignored) {
+                // 文件描述符已经关闭
+            }
+        }
+        if (inodes.isEmpty()) {
+            return Collections.emptyList();
+        }
+        TreeSet<Integer> ports = new TreeSet<>();
+        // 读取进程所在网络命名空间的连接信息
+        for (String tcp : new String[]{"tcp", "tcp6"}) {
+            Path path = Paths.get(PROC, String.valueOf(pid), "net", tcp);
+            List<String> lines;
+            try {
+                lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                continue;
+            }
+            for (int i = 1; i < lines.size(); i++) {
+                // sl local_address rem_address st tx_queue:rx_queue tr:tm->when retrnsmt uid timeout inode
+                List<String> split = StrUtil.splitTrim(lines.get(i), StrUtil.SPACE);
+                if (split.size() < 10 || !TCP_LISTEN.equals(split.get(3))) {
+                    continue;
+                }
+                Long inode = NumberUtil.isLong(split.get(9)) ? Long.parseLong(split.get(9)) : null;
+                if (inode == null || !inodes.contains(inode)) {
+                    continue;
+                }
+                String local = split.get(1);
+                int index = local.indexOf(StrUtil.C_COLON);
+                if (index < 0 || !local.substring(0, index).chars().allMatch(value -> value == '0')) {
+                    // 只取 0.0.0.0 和 ::
+                    continue;
+                }
+                ports.add(Integer.parseInt(local.substring(index + 1), 16));
+            }
+        }
+        return new ArrayList<>(ports);
+    }
+
+    /**
+     * 读取进程启动时间（/proc/[pid]/stat 第 22 列）
+     *
+     * @param pid 进程id
+     * @return 启动时间，进程不存在返回 null
+     */
+    private static String readStartTime(int pid) {
+        String stat;
+        try {
+            stat = new String(Files.readAllBytes(Paths.get(PROC, String.valueOf(pid), "stat")), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return null;
+        }
+        // 进程名可能包含空格、括号
+        int index = stat.lastIndexOf(')');
+        if (index < 0) {
+            return null;
+        }
+        String[] split = StrUtil.splitToArray(stat.substring(index + 1).trim(), StrUtil.C_SPACE);
+        // 从第 3 列（state）开始
+        return split.length > 19 ? split[19] : null;
+    }
+
+    /**
+     * 读取进程 jpom 标识
+     *
+     * @param pid 进程id
+     * @return 标识，没有返回 null
+     */
+    private static String readTag(int pid) {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(Paths.get(PROC, String.valueOf(pid), "cmdline"));
+        } catch (IOException e) {
+            return null;
+        }
+        int start = 0;
+        for (int i = 0; i <= bytes.length; i++) {
+            if (i == bytes.length || bytes[i] == 0) {
+                if (i > start) {
+                    String tag = JvmUtil.parseJpomTag(new String(bytes, start, i - start, StandardCharsets.UTF_8));
+                    if (tag != null) {
+                        return tag;
+                    }
+                }
+                start = i + 1;
+            }
+        }
+        return null;
+    }
+
+    private static class ProcessItem {
+        private final String startTime;
+        private final long readTime;
+        private String tag;
+        /**
+         * 是否已经确认 cmdline
+         */
+        private boolean confirmed;
+
+        private ProcessItem(String startTime, String tag, long readTime) {
+            this.startTime = startTime;
+            this.tag = tag;
+            this.readTime = readTime;
+        }
+    }
+}
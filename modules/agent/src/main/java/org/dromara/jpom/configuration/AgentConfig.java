@@ -37,7 +37,7 @@ import java.util.Optional;
 @Configuration
 @ConfigurationProperties("jpom")
 @Data
-@EnableConfigurationProperties({ProjectConfig.class, ProjectLogConfig.class, SystemConfig.class, AgentAuthorize.class})
+@EnableConfigurationProperties({ProjectConfig.class, ProjectLogConfig.class, SystemConfig.class, AgentAuthorize.class, HeartbeatConfig.class})
 public class AgentConfig implements ILoadEvent, InitializingBean {
 
     private final JpomApplication jpomApplication;
@@ -59,6 +59,10 @@ public class AgentConfig implements ILoadEvent, InitializingBean {
      * 系统配置参数
      */
     private SystemConfig system;
+    /**
+     * 节点推送心跳配置
+     */
+    private HeartbeatConfig heartbeat;
     /**
      * 数据目录
      */
@@ -90,6 +94,13 @@ public class AgentConfig implements ILoadEvent, InitializingBean {
         });
     }
 
+    public HeartbeatConfig getHeartbeat() {
+        return Optional.ofNullable(this.heartbeat).orElseGet(() -> {
+            this.heartbeat = new HeartbeatConfig();
+            return this.heartbeat;
+        });
+    }
+
     /**
      * 获取临时文件存储路径，并添加一个随机字符串
      *
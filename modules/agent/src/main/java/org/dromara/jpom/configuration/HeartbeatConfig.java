@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 节点推送心跳配置
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+@Data
+@ConfigurationProperties("jpom.heartbeat")
+public class HeartbeatConfig {
+
+    /**
+     * 服务端地址，如：http://127.0.0.1:2122 ，为空不开启推送（由服务端拉取）
+     */
+    private String serverUrl;
+
+    /**
+     * 推送间隔 单位秒
+     */
+    private int interval = 10;
+
+    /**
+     * 推送完整信息（系统信息、项目数等）的间隔 单位秒
+     */
+    private int fullInterval = 60;
+
+    public int getInterval() {
+        return Math.max(this.interval, 1);
+    }
+
+    public int getFullInterval() {
+        return Math.max(this.fullInterval, this.getInterval());
+    }
+}
@@ -35,6 +35,16 @@ public class ProjectConfig {
      */
     private int statusDetectionInterval = 500;
 
+    /**
+     * 是否通过读取 /proc 进程表查询项目状态（仅 linux 生效），关闭后使用 jps、ps 命令查询
+     */
+    private boolean processTable = true;
+
+    /**
+     * 进程表刷新间隔 单位毫秒，项目启动、停止时会强制刷新
+     */
+    private int processTableRefreshInterval = 2000;
+
     /**
      * 项目文件备份保留个数,大于 1 才会备份
      */
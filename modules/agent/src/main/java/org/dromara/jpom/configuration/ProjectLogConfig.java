@@ -16,6 +16,7 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.util.unit.DataSize;
 
 import java.nio.charset.Charset;
+import java.time.Duration;
 import java.util.Optional;
 
 /**
@@ -35,6 +36,14 @@ public class ProjectLogConfig {
      * @see ch.qos.logback.core.util.FileSize
      */
     private DataSize autoBackupSize = DataSize.ofMegabytes(50);
+    /**
+     * 距离上次备份多久后自动备份，不配置不按照时间备份
+     */
+    private Duration autoBackupInterval;
+    /**
+     * 备份后的日志文件是否后台压缩（gzip）
+     */
+    private boolean autoBackupCompress = false;
     /**
      * 是否自动将控制台日志文件备份
      */
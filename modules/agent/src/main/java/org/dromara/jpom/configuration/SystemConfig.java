@@ -22,4 +22,18 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 @Data
 @ConfigurationProperties("jpom.system")
 public class SystemConfig extends BaseSystemConfig {
+
+    /**
+     * 系统监控采样间隔 单位秒，小于等于 0 关闭后台采样（每次请求实时采集）
+     */
+    private int statSampleInterval = 5;
+
+    /**
+     * 系统监控采样保留个数
+     */
+    private int statSampleCount = 120;
+
+    public int getStatSampleCount() {
+        return Math.max(this.statSampleCount, 1);
+    }
 }
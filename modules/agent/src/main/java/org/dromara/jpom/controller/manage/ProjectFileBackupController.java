@@ -22,7 +22,6 @@ import org.dromara.jpom.common.BaseAgentController;
 import org.dromara.jpom.common.validator.ValidatorItem;
 import org.dromara.jpom.model.data.NodeProjectInfoModel;
 import org.dromara.jpom.service.ProjectFileBackupService;
-import org.dromara.jpom.util.CommandUtil;
 import org.dromara.jpom.util.FileUtils;
 import org.springframework.http.MediaType;
 import org.springframework.util.Assert;
@@ -33,11 +32,8 @@ import org.springframework.web.bind.annotation.RestController;
 
 import javax.servlet.http.HttpServletResponse;
 import java.io.File;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.Optional;
-import java.util.stream.Collectors;
 
 /**
  * 项目备份文件管理
@@ -71,9 +67,7 @@ public class ProjectFileBackupController extends BaseAgentController {
         //
         File path = projectFileBackupService.pathProject(projectInfoModel);
         //
-        List<File> collect = Arrays.stream(Optional.ofNullable(path.listFiles()).orElse(new File[0]))
-            .filter(FileUtil::isDirectory)
-            .collect(Collectors.toList());
+        List<File> collect = projectFileBackupService.listBackup(path);
         if (CollUtil.isEmpty(collect)) {
             return JsonMessage.success("查询成功");
         }
@@ -145,9 +139,7 @@ public class ProjectFileBackupController extends BaseAgentController {
     @RequestMapping(value = "backup-delete", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
     public IJsonMessage<Object> deleteFile(String id, @ValidatorItem String backupId, @ValidatorItem String filename, String levelName) {
         NodeProjectInfoModel projectInfoModel = super.getProjectInfoModel();
-        File lib = projectFileBackupService.pathProjectBackup(projectInfoModel, backupId);
-        File file = FileUtil.file(lib, StrUtil.emptyToDefault(levelName, FileUtil.FILE_SEPARATOR), filename);
-        CommandUtil.systemFastDel(file);
+        projectFileBackupService.deleteBackupFile(projectInfoModel, backupId, levelName, filename);
         return JsonMessage.success("删除成功");
     }
 
@@ -164,6 +156,11 @@ public class ProjectFileBackupController extends BaseAgentController {
     @RequestMapping(value = "backup-recover", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
     public IJsonMessage<Object> recoverFile(String id, @ValidatorItem String backupId, String type, String filename, String levelName) {
         NodeProjectInfoModel projectInfoModel = super.getProjectInfoModel();
+        // 优先使用备份清单还原
+        boolean clear = StrUtil.equalsIgnoreCase(type, "clear");
+        if (projectFileBackupService.recover(projectInfoModel, backupId, levelName, filename, clear)) {
+            return JsonMessage.success("还原成功");
+        }
         File backupPath = projectFileBackupService.pathProjectBackup(projectInfoModel, backupId);
         File projectPath = projectInfoService.resolveLibFile(projectInfoModel);
         //
@@ -177,7 +174,7 @@ public class ProjectFileBackupController extends BaseAgentController {
             // 创建文件
             FileUtil.mkdir(projectFile);
             // 清空
-            if (StrUtil.equalsIgnoreCase(type, "clear")) {
+            if (clear) {
                 FileUtil.clean(projectFile);
             }
             //
@@ -15,8 +15,8 @@ import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.lang.Opt;
 import cn.hutool.core.util.ArrayUtil;
 import cn.hutool.core.util.BooleanUtil;
+import cn.hutool.core.util.IdUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.crypto.SecureUtil;
 import cn.hutool.extra.servlet.ServletUtil;
 import cn.hutool.http.HttpUtil;
 import cn.keepbx.jpom.IJsonMessage;
@@ -38,6 +38,7 @@ import org.dromara.jpom.socket.ConsoleCommandOp;
 import org.dromara.jpom.configuration.AgentConfig;
 import org.dromara.jpom.util.CommandUtil;
 import org.dromara.jpom.util.CompressionFileUtil;
+import org.dromara.jpom.util.FileFingerprintIndex;
 import org.dromara.jpom.util.FileUtils;
 import org.dromara.jpom.util.StringUtil;
 import org.springframework.http.MediaType;
@@ -47,7 +48,9 @@ import org.springframework.web.multipart.MultipartFile;
 
 import javax.servlet.http.HttpServletResponse;
 import java.io.File;
+import java.io.IOException;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -120,12 +123,14 @@ public class ProjectFileControl extends BaseAgentController {
         File lib = projectInfoService.resolveLibFile(projectInfoModel);
         String path = FileUtil.file(lib, Opt.ofBlankAble(diffFileVo.getDir()).orElse(StrUtil.SLASH)).getAbsolutePath();
         List<File> files = FileUtil.loopFiles(path);
+        // 使用签名索引，只计算有变化的文件
+        Map<File, String> sha1Map = FileFingerprintIndex.of(FileUtil.file(path)).sha1(files);
         // 将所有的文件信息组装并签名
         List<JSONObject> collect = files.stream().map(file -> {
             //
             JSONObject item = new JSONObject();
             item.put("name", StringUtil.delStartPath(file, path, true));
-            item.put("sha1", SecureUtil.sha1(file));
+            item.put("sha1", sha1Map.get(file));
             return item;
         }).collect(Collectors.toList());
         // 得到 当前下面文件夹下面所有的文件信息 map
@@ -170,6 +175,8 @@ public class ProjectFileControl extends BaseAgentController {
         JSONObject result = new JSONObject();
         result.put("diff", canSync);
         result.put("del", delArray);
+        // 支持合并包发布
+        result.put("bundle", true);
         return JsonMessage.success("", result);
     }
 
@@ -215,6 +222,98 @@ public class ProjectFileControl extends BaseAgentController {
         return this.upload(successFile, type, levelName, stripComponents, after);
     }
 
+    /**
+     * 合并差异发布的文件包（zip），先完整解压到临时目录再一次性替换项目文件，替换失败会还原已经替换的文件。
+     * 整个文件包只备份一次、只执行一次发布后操作
+     *
+     * @param levelName  文件夹
+     * @param sliceId    分片id
+     * @param totalSlice 累积分片
+     * @param fileSumMd5 文件签名
+     * @param after      上传之后
+     * @return 结果
+     * @throws Exception 异常
+     */
+    @RequestMapping(value = "sharding-merge-bundle", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    public IJsonMessage<CommandOpResult> shardingMergeBundle(String levelName,
+                                                             String sliceId,
+                                                             Integer totalSlice,
+                                                             String fileSumMd5,
+                                                             String after) throws Exception {
+        String tempPathName = agentConfig.getFixedTempPathName();
+        File successFile = this.shardingTryMerge(tempPathName, sliceId, totalSlice, fileSumMd5);
+        File stagingPath = FileUtil.file(tempPathName, "bundle", IdUtil.fastSimpleUUID());
+        try {
+            File newPath = FileUtil.file(stagingPath, "new");
+            // 解压失败不会影响项目文件
+            CompressionFileUtil.unCompress(successFile, newPath);
+            NodeProjectInfoModel pim = getProjectInfoModel();
+            File libFile = projectInfoService.resolveLibFile(pim);
+            File lib = StrUtil.isEmpty(levelName) ? libFile : FileUtil.file(libFile, levelName);
+            // 备份文件
+            String backupId = projectFileBackupService.backup(pim);
+            try {
+                this.saveProjectFileBefore(lib, pim);
+                int count = this.applyBundle(newPath, FileUtil.file(stagingPath, "old"), lib);
+                log.info("{} 合并包发布 {} 个文件", pim.getId(), count);
+                projectCommander.asyncWebHooks(pim, "fileChange", "changeEvent", "upload", "levelName", levelName, "fileType", "bundle", "fileName", successFile.getName());
+                //
+                JsonMessage<CommandOpResult> resultJsonMessage = this.saveProjectFileAfter(after, pim);
+                if (resultJsonMessage != null) {
+                    return resultJsonMessage;
+                }
+            } finally {
+                projectFileBackupService.checkDiff(pim, backupId);
+            }
+            return JsonMessage.success("上传成功");
+        } finally {
+            FileUtil.del(successFile);
+            FileUtil.del(stagingPath);
+        }
+    }
+
+    /**
+     * 将临时目录中的文件替换到项目目录，被替换的文件先移动到 old 目录，出现异常时还原
+     *
+     * @param newPath 解压后的目录
+     * @param oldPath 保存被替换文件的目录
+     * @param lib     项目目录
+     * @return 替换的文件数
+     * @throws IOException io
+     */
+    private int applyBundle(File newPath, File oldPath, File lib) throws IOException {
+        List<File> files = FileUtil.loopFiles(newPath);
+        List<File> added = new ArrayList<>();
+        List<File[]> replaced = new ArrayList<>();
+        try {
+            for (File file : files) {
+                String name = StringUtil.delStartPath(file, newPath, true);
+                File target = FileUtil.file(lib, name);
+                if (FileUtil.exist(target)) {
+                    File old = FileUtil.file(oldPath, name);
+                    FileUtils.move(target, old);
+                    replaced.add(new File[]{target, old});
+                } else {
+                    added.add(target);
+                }
+                FileUtils.move(file, target);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("合并包发布替换文件失败,开始还原", e);
+            added.forEach(FileUtil::del);
+            for (int i = replaced.size() - 1; i >= 0; i--) {
+                File[] item = replaced.get(i);
+                try {
+                    FileUtils.move(item[1], item[0]);
+                } catch (IOException e1) {
+                    log.error("还原文件失败：{}", item[0].getAbsolutePath(), e1);
+                }
+            }
+            throw e;
+        }
+        return files.size();
+    }
+
     /**
      * 处理上传文件
      *
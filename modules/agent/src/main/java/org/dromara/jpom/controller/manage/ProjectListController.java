@@ -90,10 +90,14 @@ public class ProjectListController extends BaseAgentController {
     /**
      * 程序项目信息
      *
+     * @param incrementalTime 增量开始时间（服务端增量同步）
      * @return json
      */
     @RequestMapping(value = "getProjectInfo", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
-    public IJsonMessage<List<NodeProjectInfoModel>> getProjectInfo() {
+    public IJsonMessage<Object> getProjectInfo(Long incrementalTime) {
+        if (incrementalTime != null) {
+            return JsonMessage.success("", projectInfoService.listIncremental(incrementalTime));
+        }
         // 查询数据
         List<NodeProjectInfoModel> nodeProjectInfoModels = projectInfoService.list();
         return JsonMessage.success("", nodeProjectInfoModels);
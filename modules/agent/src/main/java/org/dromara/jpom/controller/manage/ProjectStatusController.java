@@ -56,16 +56,40 @@ public class ProjectStatusController extends BaseAgentController {
     public IJsonMessage<JSONObject> getProjectStatus(@ValidatorItem(value = ValidatorRule.NOT_BLANK, msg = "项目id 不正确") String id, String getCopy) {
         NodeProjectInfoModel nodeProjectInfoModel = tryGetProjectInfoModel();
         Assert.notNull(nodeProjectInfoModel, "项目id不存在");
+        JSONObject jsonObject;
+        try {
+            CommandUtil.openCache();
+            jsonObject = this.projectStatus(nodeProjectInfoModel);
+        } finally {
+            CommandUtil.closeCache();
+        }
+        return JsonMessage.success("", jsonObject);
+    }
+
+    /**
+     * 批量获取项目的进程id
+     * <p>
+     * 同一次请求中共用命令结果缓存，所有项目只需要获取一次进程信息
+     *
+     * @param ids 项目id 数组
+     * @return json key 为项目id
+     */
+    @RequestMapping(value = "getProjectStatusList", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    public IJsonMessage<JSONObject> getProjectStatusList(@ValidatorItem(msg = "没有要获取的项目") String ids) {
+        JSONArray jsonArray = JSONArray.parseArray(ids);
         JSONObject jsonObject = new JSONObject();
         try {
             CommandUtil.openCache();
-            try {
-                CommandOpResult status = projectCommander.execCommand(ConsoleCommandOp.status, nodeProjectInfoModel);
-                jsonObject.put("pId", status.getPid());
-                jsonObject.put("pIds", status.getPids());
-                jsonObject.put("statusMsg", status.getStatusMsg());
-            } catch (Exception e) {
-                log.error("获取项目pid 失败", e);
+            for (Object object : jsonArray) {
+                String item = object.toString();
+                NodeProjectInfoModel nodeProjectInfoModel = projectInfoService.getItem(item);
+                if (nodeProjectInfoModel == null) {
+                    JSONObject itemObj = new JSONObject();
+                    itemObj.put("error", "项目id不存在");
+                    jsonObject.put(item, itemObj);
+                    continue;
+                }
+                jsonObject.put(item, this.projectStatus(nodeProjectInfoModel));
             }
         } finally {
             CommandUtil.closeCache();
@@ -73,6 +97,19 @@ public class ProjectStatusController extends BaseAgentController {
         return JsonMessage.success("", jsonObject);
     }
 
+    private JSONObject projectStatus(NodeProjectInfoModel nodeProjectInfoModel) {
+        JSONObject jsonObject = new JSONObject();
+        try {
+            CommandOpResult status = projectCommander.execCommand(ConsoleCommandOp.status, nodeProjectInfoModel);
+            jsonObject.put("pId", status.getPid());
+            jsonObject.put("pIds", status.getPids());
+            jsonObject.put("statusMsg", status.getStatusMsg());
+        } catch (Exception e) {
+            log.error("获取项目pid 失败", e);
+        }
+        return jsonObject;
+    }
+
     /**
      * 获取项目的运行端口
      *
@@ -64,7 +64,11 @@ public class ScriptController extends BaseAgentController {
     }
 
     @RequestMapping(value = "list.json", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
-    public IJsonMessage<List<NodeScriptModel>> list() {
+    public IJsonMessage<Object> list(Long incrementalTime) {
+        if (incrementalTime != null) {
+            // 服务端增量同步
+            return JsonMessage.success("", nodeScriptServer.listIncremental(incrementalTime));
+        }
         return JsonMessage.success("", nodeScriptServer.list());
     }
 
@@ -19,6 +19,7 @@ import cn.hutool.core.util.URLUtil;
 import cn.keepbx.jpom.IJsonMessage;
 import cn.keepbx.jpom.Type;
 import cn.keepbx.jpom.model.JsonMessage;
+import com.alibaba.fastjson2.JSONObject;
 import org.dromara.jpom.JpomApplication;
 import org.dromara.jpom.common.BaseAgentController;
 import org.dromara.jpom.common.Const;
@@ -67,6 +68,23 @@ public class SystemUpdateController extends BaseAgentController {
         return JsonMessage.success("上传成功");
     }
 
+    /**
+     * 查询已经上传并且校验通过的分片，用于断点续传
+     *
+     * @param sliceId    分片id
+     * @param totalSlice 累积分片
+     * @param fileSumMd5 文件签名
+     * @return 分片序号 -> 分片签名
+     */
+    @PostMapping(value = "sharding-uploaded", produces = MediaType.APPLICATION_JSON_VALUE)
+    public IJsonMessage<JSONObject> shardingUploaded(String sliceId,
+                                                     Integer totalSlice,
+                                                     String fileSumMd5) {
+        String tempPathName = agentConfig.getFixedTempPathName();
+        JSONObject uploaded = this.shardingUploaded(tempPathName, sliceId, totalSlice, fileSumMd5);
+        return JsonMessage.success("", uploaded);
+    }
+
     @PostMapping(value = "upload-jar-sharding-merge", produces = MediaType.APPLICATION_JSON_VALUE)
     public IJsonMessage<String> uploadJarShardingMerge(String sliceId,
                                                       Integer totalSlice,
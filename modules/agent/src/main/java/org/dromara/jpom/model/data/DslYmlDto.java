@@ -183,6 +183,18 @@ public class DslYmlDto extends BaseJsonModel {
          * 是否自动将控制台日志文件备份
          */
         private Boolean autoBackToFile;
+        /**
+         * 控制台日志文件多大时自动备份，如：50MB
+         */
+        private String autoBackSize;
+        /**
+         * 距离上次备份多久后自动备份，如：1d、12h
+         */
+        private String autoBackInterval;
+        /**
+         * 备份后的日志文件是否后台压缩
+         */
+        private Boolean autoBackCompress;
     }
 
 
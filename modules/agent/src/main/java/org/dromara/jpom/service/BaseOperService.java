@@ -14,22 +14,16 @@ import cn.hutool.core.bean.copier.CopyOptions;
 import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.map.MapUtil;
-import cn.hutool.core.thread.lock.LockUtil;
 import cn.hutool.core.util.ClassUtil;
 import cn.hutool.core.util.StrUtil;
-import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
 import org.dromara.jpom.JpomApplication;
 import org.dromara.jpom.model.BaseModel;
 import org.dromara.jpom.system.JpomRuntimeException;
-import org.dromara.jpom.util.JsonFileUtil;
 import org.springframework.util.Assert;
 
-import java.io.FileNotFoundException;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.locks.Lock;
 
 /**
  * 标准操作Service
@@ -41,7 +35,6 @@ public abstract class BaseOperService<T extends BaseModel> {
 
     private final String fileName;
     private final Class<T> typeArgument;
-    private final Lock lock = LockUtil.createStampLock().asWriteLock();
 
     public BaseOperService(String fileName) {
         this.fileName = fileName;
@@ -62,13 +55,16 @@ public abstract class BaseOperService<T extends BaseModel> {
         return CollUtil.size(list);
     }
 
+    /**
+     * 获取所有数据，数据文件没有变化时使用缓存的实体列表
+     *
+     * @param cls 类型
+     * @param <E> 泛型
+     * @return list
+     */
     public <E> List<E> list(Class<E> cls) {
-        JSONObject jsonObject = getJSONObject();
-        if (jsonObject == null) {
-            return new ArrayList<>();
-        }
-        JSONArray jsonArray = JsonFileUtil.formatToArray(jsonObject);
-        return jsonArray.toJavaList(cls);
+        Objects.requireNonNull(fileName, "没有配置fileName");
+        return this.getStore(fileName).list(cls);
     }
 
     public JSONObject getJSONObject() {
@@ -95,12 +91,7 @@ public abstract class BaseOperService<T extends BaseModel> {
      */
     public void addItem(T t) {
         Objects.requireNonNull(fileName, "没有配置fileName");
-        try {
-            lock.lock();
-            saveJson(fileName, t);
-        } finally {
-            lock.unlock();
-        }
+        this.getStore(fileName).lockWrite(() -> saveJson(fileName, t));
     }
 
     /**
@@ -110,12 +101,7 @@ public abstract class BaseOperService<T extends BaseModel> {
      */
     public void deleteItem(String id) {
         Objects.requireNonNull(fileName, "没有配置fileName");
-        try {
-            lock.lock();
-            deleteJson(fileName, id);
-        } finally {
-            lock.unlock();
-        }
+        this.getStore(fileName).lockWrite(() -> deleteJson(fileName, id));
     }
 
     /**
@@ -125,12 +111,7 @@ public abstract class BaseOperService<T extends BaseModel> {
      */
     public void updateItem(T t) {
         Objects.requireNonNull(fileName, "没有配置fileName");
-        try {
-            lock.lock();
-            updateJson(fileName, t);
-        } finally {
-            lock.unlock();
-        }
+        this.getStore(fileName).lockWrite(() -> updateJson(fileName, t));
     }
 
     /**
@@ -141,15 +122,12 @@ public abstract class BaseOperService<T extends BaseModel> {
      */
     public void updateById(T updateData, String id) {
         Objects.requireNonNull(fileName, "没有配置fileName");
-        try {
-            lock.lock();
+        this.getStore(fileName).lockWrite(() -> {
             T item = getItem(id);
             Assert.notNull(item, "数据不存在");
             BeanUtil.copyProperties(updateData, item, CopyOptions.create().ignoreNullValue());
             updateJson(fileName, item);
-        } finally {
-            lock.unlock();
-        }
+        });
     }
 
     /**
@@ -162,6 +140,16 @@ public abstract class BaseOperService<T extends BaseModel> {
         return FileUtil.normalize(JpomApplication.getInstance().getDataPath() + StrUtil.SLASH + filename);
     }
 
+    /**
+     * 获取数据文件缓存
+     *
+     * @param filename 文件名
+     * @return store
+     */
+    protected JsonFileStore getStore(String filename) {
+        return JsonFileStore.of(this.getDataFilePath(filename));
+    }
+
     /**
      * 保存json对象
      *
@@ -181,7 +169,7 @@ public abstract class BaseOperService<T extends BaseModel> {
             allData = new JSONObject();
         }
         allData.put(key, json.toJson());
-        JsonFileUtil.saveJson(getDataFilePath(filename), allData);
+        this.getStore(filename).write(allData);
     }
 
     /**
@@ -201,7 +189,7 @@ public abstract class BaseOperService<T extends BaseModel> {
             throw new JpomRuntimeException("数据不存在:" + key);
         } else {
             allData.put(key, json.toJson());
-            JsonFileUtil.saveJson(getDataFilePath(filename), allData);
+            this.getStore(filename).write(allData);
         }
     }
 
@@ -220,7 +208,7 @@ public abstract class BaseOperService<T extends BaseModel> {
         //Assert.notNull(allData, "没有任何数据");
         //JSONObject data = allData.getJSONObject(key);
         allData.remove(key);
-        JsonFileUtil.saveJson(getDataFilePath(filename), allData);
+        this.getStore(filename).write(allData);
 
     }
 
@@ -231,25 +219,13 @@ public abstract class BaseOperService<T extends BaseModel> {
      * @return json
      */
     protected JSONObject getJSONObject(String filename) {
-        try {
-            return (JSONObject) JsonFileUtil.readJson(getDataFilePath(filename));
-        } catch (FileNotFoundException e) {
-            return null;
-        }
+        return this.getStore(filename).read();
     }
 
     protected T getJsonObjectById(String file, String id, Class<T> cls) {
         if (StrUtil.isEmpty(id)) {
             return null;
         }
-        JSONObject jsonObject = getJSONObject(file);
-        if (jsonObject == null) {
-            return null;
-        }
-        jsonObject = jsonObject.getJSONObject(id);
-        if (jsonObject == null) {
-            return null;
-        }
-        return jsonObject.toJavaObject(cls);
+        return this.getStore(file).get(id, cls);
     }
 }
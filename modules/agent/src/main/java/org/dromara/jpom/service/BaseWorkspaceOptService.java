@@ -10,10 +10,15 @@
 package org.dromara.jpom.service;
 
 import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.date.SystemClock;
 import cn.hutool.core.util.StrUtil;
+import com.alibaba.fastjson2.JSONObject;
 import org.dromara.jpom.common.BaseAgentController;
 import org.dromara.jpom.model.data.BaseWorkspaceModel;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author bwcx_jzy
  * @since 2022/1/17
@@ -54,4 +59,43 @@ public abstract class BaseWorkspaceOptService<T extends BaseWorkspaceModel> exte
         updateData.setModifyTime(DateUtil.now());
         super.updateById(updateData, id);
     }
+
+    /**
+     * 增量查询数据
+     *
+     * @param incrementalTime 增量开始时间（上一次查询返回的 time），小于等于 0 返回全部数据
+     * @return time 本次查询时间、ids 全部数据ID、list 开始时间之后修改过的数据
+     */
+    public JSONObject listIncremental(long incrementalTime) {
+        // 先记录时间，查询过程中修改的数据下次还会返回
+        long time = SystemClock.now();
+        List<T> all = this.list();
+        List<String> ids = new ArrayList<>(all.size());
+        List<T> list = new ArrayList<>();
+        for (T t : all) {
+            ids.add(t.getId());
+            if (incrementalTime <= 0 || this.isModifiedSince(t, incrementalTime)) {
+                list.add(t);
+            }
+        }
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("time", time);
+        jsonObject.put("ids", ids);
+        jsonObject.put("list", list);
+        return jsonObject;
+    }
+
+    private boolean isModifiedSince(T t, long incrementalTime) {
+        String timeStr = StrUtil.emptyToDefault(t.getModifyTime(), t.getCreateTime());
+        if (StrUtil.isEmpty(timeStr)) {
+            // 没有修改时间的数据已经在全量同步中返回过
+            return false;
+        }
+        try {
+            // 修改时间只精确到秒
+            return DateUtil.parse(timeStr).getTime() + 1000 > incrementalTime;
+        } catch (Exception e) {
+            return true;
+        }
+    }
 }
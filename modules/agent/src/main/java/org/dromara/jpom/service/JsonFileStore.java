@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.service;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.map.SafeConcurrentHashMap;
+import cn.hutool.core.util.CharsetUtil;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import org.dromara.jpom.system.JpomRuntimeException;
+import org.dromara.jpom.util.JsonFileUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * json 数据文件缓存
+ * <p>
+ * 每个文件一个实例、一把读写锁，缓存解析后的数据和转换后的实体列表，文件修改时间或者大小变化才重新读取。
+ * 写入时先写临时文件再重命名，避免读取到写了一半的文件
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+public class JsonFileStore {
+
+    private static final Map<String, JsonFileStore> STORE_MAP = new SafeConcurrentHashMap<>();
+
+    private final File file;
+    private final Lock readLock;
+    private final Lock writeLock;
+    /**
+     * 缓存的数据，文件不存在时为 null
+     */
+    private JSONObject data;
+    /**
+     * 当前文件版本转换后的实体列表，类型 -> 列表。重新读取、写入时清空
+     */
+    private final Map<Class<?>, List<?>> listCache = new SafeConcurrentHashMap<>();
+    private long lastModified = -1;
+    private long length = -1;
+
+    private JsonFileStore(String path) {
+        this.file = new File(path);
+        ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        this.readLock = lock.readLock();
+        this.writeLock = lock.writeLock();
+    }
+
+    /**
+     * 获取文件对应的缓存
+     *
+     * @param path 文件路径
+     * @return store
+     */
+    public static JsonFileStore of(String path) {
+        return STORE_MAP.computeIfAbsent(FileUtil.normalize(path), JsonFileStore::new);
+    }
+
+    /**
+     * 读取整个文件数据（浅拷贝，只能修改第一层数据）
+     *
+     * @return 文件不存在返回 null
+     */
+    public JSONObject read() {
+        readLock.lock();
+        try {
+            if (this.isFresh()) {
+                return this.copy();
+            }
+        } finally {
+            readLock.unlock();
+        }
+        writeLock.lock();
+        try {
+            if (!this.isFresh()) {
+                this.reload();
+            }
+            return this.copy();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 根据 id 读取数据
+     *
+     * @param id  数据id
+     * @param cls 类型
+     * @param <T> 泛型
+     * @return 不存在返回 null
+     */
+    public <T> T get(String id, Class<T> cls) {
+        readLock.lock();
+        try {
+            if (this.isFresh()) {
+                return this.toJavaObject(id, cls);
+            }
+        } finally {
+            readLock.unlock();
+        }
+        writeLock.lock();
+        try {
+            if (!this.isFresh()) {
+                this.reload();
+            }
+            return this.toJavaObject(id, cls);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 读取全部数据并转换为实体列表，同一文件版本只转换一次
+     * <p>
+     * 返回的列表可以修改，列表中的实体为缓存共享的对象，修改实体后需要保存
+     *
+     * @param cls 类型
+     * @param <T> 泛型
+     * @return list
+     */
+    public <T> List<T> list(Class<T> cls) {
+        readLock.lock();
+        try {
+            if (this.isFresh()) {
+                return this.toJavaList(cls);
+            }
+        } finally {
+            readLock.unlock();
+        }
+        writeLock.lock();
+        try {
+            if (!this.isFresh()) {
+                this.reload();
+            }
+            return this.toJavaList(cls);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 保存整个文件数据，同时更新缓存
+     *
+     * @param json 数据
+     */
+    public void write(JSONObject json) {
+        writeLock.lock();
+        try {
+            String newsJson = JSON.toJSONString(json);
+            File parent = file.getParentFile();
+            FileUtil.mkdir(parent);
+            File temp = FileUtil.file(parent, StrUtil.format(".{}.{}.tmp", file.getName(), IdUtil.fastSimpleUUID()));
+            FileUtil.writeString(newsJson, temp, CharsetUtil.CHARSET_UTF_8);
+            try {
+                try {
+                    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                FileUtil.del(temp);
+                throw new JpomRuntimeException("保存数据文件失败：" + file.getAbsolutePath(), e);
+            }
+            this.data = new JSONObject(json);
+            this.listCache.clear();
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 在写锁中执行读取、修改、保存
+     *
+     * @param runnable 操作
+     */
+    public void lockWrite(Runnable runnable) {
+        writeLock.lock();
+        try {
+            runnable.run();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private boolean isFresh() {
+        return lastModified == file.lastModified() && length == file.length();
+    }
+
+    private void reload() {
+        // 先记录文件状态，读取过程中文件被修改下次会重新读取
+        long modified = file.lastModified();
+        long len = file.length();
+        if (!file.exists()) {
+            this.data = null;
+        } else {
+            String json = FileUtil.readString(file, CharsetUtil.CHARSET_UTF_8);
+            if (StrUtil.isEmpty(json)) {
+                this.data = new JSONObject();
+            } else {
+                try {
+                    this.data = JSONObject.parseObject(json);
+                } catch (Exception e) {
+                    throw new JpomRuntimeException("数据文件内容错误，请检查文件是否被非法修改：" + file.getAbsolutePath(), e);
+                }
+            }
+        }
+        this.listCache.clear();
+        this.lastModified = modified;
+        this.length = len;
+    }
+
+    private JSONObject copy() {
+        return data == null ? null : new JSONObject(data);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> List<T> toJavaList(Class<T> cls) {
+        if (data == null) {
+            return new ArrayList<>();
+        }
+        // 读锁中可能并发转换，结果相同，保留任意一个即可
+        List<?> list = listCache.computeIfAbsent(cls, aClass -> JsonFileUtil.formatToArray(data).toJavaList(aClass));
+        return new ArrayList<>((List<T>) list);
+    }
+
+    private <T> T toJavaObject(String id, Class<T> cls) {
+        if (data == null) {
+            return null;
+        }
+        JSONObject jsonObject = data.getJSONObject(id);
+        return jsonObject == null ? null : jsonObject.toJavaObject(cls);
+    }
+}
@@ -14,8 +14,11 @@ import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.date.DatePattern;
 import cn.hutool.core.date.DateTime;
 import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.map.SafeConcurrentHashMap;
 import cn.hutool.core.thread.ThreadUtil;
 import cn.hutool.core.util.ArrayUtil;
+import cn.hutool.core.util.HexUtil;
+import cn.hutool.core.util.IdUtil;
 import cn.hutool.core.util.ReUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.crypto.SecureUtil;
@@ -27,12 +30,21 @@ import org.dromara.jpom.configuration.ProjectConfig;
 import org.dromara.jpom.model.data.DslYmlDto;
 import org.dromara.jpom.model.data.NodeProjectInfoModel;
 import org.dromara.jpom.service.manage.ProjectInfoService;
+import org.dromara.jpom.system.JpomRuntimeException;
 import org.dromara.jpom.util.CommandUtil;
+import org.dromara.jpom.util.FileFingerprintIndex;
+import org.dromara.jpom.util.FileUtils;
 import org.dromara.jpom.util.StringUtil;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -46,6 +58,12 @@ import java.util.stream.Collectors;
 @Service
 public class ProjectFileBackupService {
 
+    /**
+     * 文件存储目录（对象文件、备份清单），在项目的备份目录中
+     */
+    public static final String STORE_DIR = ".store";
+    private static final Map<String, Object> STORE_LOCKS = new SafeConcurrentHashMap<>();
+
     private final ProjectConfig projectConfig;
     private final ProjectInfoService projectInfoService;
 
@@ -97,6 +115,9 @@ public class ProjectFileBackupService {
 
     /**
      * 备份项目文件
+     * <p>
+     * 文件内容按照 sha1 只保存一份到对象目录，备份目录中的文件使用硬链接指向对象文件（不支持硬链接时复制），
+     * 同时记录本次备份的清单。只有对象目录中不存在的文件才需要复制
      *
      * @param projectInfoModel 项目
      */
@@ -115,11 +136,135 @@ public class ProjectFileBackupService {
         String backupId = DateTime.now().toString(DatePattern.PURE_DATETIME_MS_FORMAT);
         File projectFileBackup = this.pathProjectBackup(infoModel, backupId);
         Assert.state(!FileUtil.exist(projectFileBackup), "备份目录冲突：" + projectFileBackup.getName());
-        FileUtil.copyContent(file, projectFileBackup, true);
+        File storePath = FileUtil.file(this.pathProject(infoModel), STORE_DIR);
+        List<File> files = FileUtil.loopFiles(file);
+        Map<File, String> sha1Map = FileFingerprintIndex.of(file).sha1(files);
+        JSONObject manifest = new JSONObject(new LinkedHashMap<>(files.size()));
+        synchronized (this.storeLock(storePath)) {
+            boolean useLink = true;
+            int newCount = 0;
+            try {
+                FileUtil.mkdir(projectFileBackup);
+                for (File item : files) {
+                    String sha1 = sha1Map.get(item);
+                    String path = StringUtil.delStartPath(item, file, true);
+                    File object = sha1 == null ? null : this.pathObject(storePath, sha1);
+                    if (object == null || !object.exists() || object.length() != item.length()) {
+                        // 复制时重新计算 sha1 作为对象名称，避免文件在计算后被修改或者索引过期导致对象内容和名称不一致
+                        sha1 = this.saveObject(storePath, item);
+                        object = this.pathObject(storePath, sha1);
+                        newCount++;
+                    }
+                    useLink = this.linkObject(object, FileUtil.file(projectFileBackup, path), useLink);
+                    manifest.put(path, sha1);
+                }
+                this.saveManifest(storePath, backupId, manifest);
+            } catch (IOException e) {
+                CommandUtil.systemFastDel(projectFileBackup);
+                throw new JpomRuntimeException("备份项目文件失败", e);
+            }
+            log.debug("项目 {} 备份 {} 个文件,新增 {} 个文件", infoModel.getId(), files.size(), newCount);
+        }
         //
         return backupId;
     }
 
+    /**
+     * 还原项目文件（使用备份清单中的完整文件，不受备份对比后删除未变动文件影响）
+     *
+     * @param projectInfoModel 项目
+     * @param backupId         备份ID
+     * @param levelName        目录
+     * @param filename         文件名，为空还原整个目录
+     * @param clear            还原目录前是否清空目录
+     * @return 备份清单不存在或者清单中没有对应的文件返回 false
+     */
+    public boolean recover(NodeProjectInfoModel projectInfoModel, String backupId, String levelName, String filename, boolean clear) {
+        File storePath = FileUtil.file(this.pathProject(projectInfoModel), STORE_DIR);
+        JSONObject manifest = this.readManifest(storePath, backupId);
+        if (manifest == null) {
+            return false;
+        }
+        String prefix = this.manifestPath(levelName, filename);
+        boolean isFile = StrUtil.isNotEmpty(filename);
+        Map<String, String> recoverMap = new LinkedHashMap<>();
+        manifest.forEach((path, sha1) -> {
+            if (isFile ? StrUtil.equals(path, prefix) : (prefix.isEmpty() || StrUtil.startWith(path, prefix + StrUtil.SLASH))) {
+                recoverMap.put(path, (String) sha1);
+            }
+        });
+        if (recoverMap.isEmpty()) {
+            return false;
+        }
+        File projectPath = projectInfoService.resolveLibFile(projectInfoModel);
+        File backupItemPath = this.pathProjectBackup(projectInfoModel, backupId);
+        synchronized (this.storeLock(storePath)) {
+            for (Map.Entry<String, String> entry : recoverMap.entrySet()) {
+                File object = this.pathObject(storePath, entry.getValue());
+                File backupFile = FileUtil.file(backupItemPath, entry.getKey());
+                // 对象文件被删除时使用备份目录中的文件
+                Assert.state(object.exists() || backupFile.exists(), "对应的文件不存在：" + entry.getKey());
+            }
+            if (!isFile) {
+                File projectFile = FileUtil.file(projectPath, StrUtil.emptyToDefault(levelName, FileUtil.FILE_SEPARATOR));
+                FileUtil.mkdir(projectFile);
+                if (clear) {
+                    FileUtil.clean(projectFile);
+                }
+            }
+            recoverMap.forEach((path, sha1) -> {
+                File object = this.pathObject(storePath, sha1);
+                File source = object.exists() ? object : FileUtil.file(backupItemPath, path);
+                // 复制出新文件，避免修改项目文件影响备份
+                FileUtil.copy(source, FileUtil.file(projectPath, path), true);
+            });
+        }
+        return true;
+    }
+
+    /**
+     * 删除备份中的文件，同时从备份清单中移除
+     *
+     * @param projectInfoModel 项目
+     * @param backupId         备份ID
+     * @param levelName        目录
+     * @param filename         文件名
+     */
+    public void deleteBackupFile(NodeProjectInfoModel projectInfoModel, String backupId, String levelName, String filename) {
+        File lib = this.pathProjectBackup(projectInfoModel, backupId);
+        File file = FileUtil.file(lib, StrUtil.emptyToDefault(levelName, FileUtil.FILE_SEPARATOR), filename);
+        File storePath = FileUtil.file(this.pathProject(projectInfoModel), STORE_DIR);
+        synchronized (this.storeLock(storePath)) {
+            CommandUtil.systemFastDel(file);
+            JSONObject manifest = this.readManifest(storePath, backupId);
+            if (manifest == null) {
+                return;
+            }
+            String prefix = this.manifestPath(levelName, filename);
+            boolean removed = manifest.keySet().removeIf(path -> StrUtil.equals(path, prefix) || StrUtil.startWith(path, prefix + StrUtil.SLASH));
+            if (removed) {
+                this.saveManifest(storePath, backupId, manifest);
+            }
+        }
+    }
+
+    /**
+     * 获取项目的备份列表（排除文件存储目录）
+     *
+     * @param backupPath 项目的备份目录
+     * @return list
+     */
+    public List<File> listBackup(File backupPath) {
+        File[] files = backupPath.listFiles();
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        return Arrays.stream(files)
+            .filter(FileUtil::isDirectory)
+            .filter(file -> !StrUtil.equals(file.getName(), STORE_DIR))
+            .collect(Collectors.toList());
+    }
+
     /**
      * 检查备份保留个数
      *
@@ -131,12 +276,8 @@ public class ProjectFileBackupService {
         if (!FileUtil.isDirectory(backupPath)) {
             return;
         }
-        File[] files = backupPath.listFiles();
-        if (files == null) {
-            return;
-        }
-        List<File> collect = Arrays.stream(files)
-            .filter(FileUtil::isDirectory)
+        List<File> collect = this.listBackup(backupPath)
+            .stream()
             .sorted(Comparator.comparing(FileUtil::lastModifiedTime))
             .collect(Collectors.toList());
         // 截取
@@ -146,6 +287,137 @@ public class ProjectFileBackupService {
             // 删除
             collect.forEach(CommandUtil::systemFastDel);
         }
+        // 回收不再被任何备份引用的文件
+        this.gcObjects(FileUtil.file(backupPath, STORE_DIR));
+    }
+
+    /**
+     * 回收对象文件，备份目录已经删除的清单同时删除，没有清单引用的对象文件删除
+     *
+     * @param storePath 文件存储目录
+     */
+    private void gcObjects(File storePath) {
+        if (!FileUtil.isDirectory(storePath)) {
+            return;
+        }
+        synchronized (this.storeLock(storePath)) {
+            File backupPath = storePath.getParentFile();
+            File manifestPath = FileUtil.file(storePath, "manifests");
+            Set<String> refs = new HashSet<>();
+            File[] manifests = Optional.ofNullable(manifestPath.listFiles()).orElse(new File[0]);
+            for (File manifestFile : manifests) {
+                String backupId = FileUtil.mainName(manifestFile);
+                if (!FileUtil.isDirectory(FileUtil.file(backupPath, backupId))) {
+                    FileUtil.del(manifestFile);
+                    continue;
+                }
+                JSONObject manifest = this.readManifest(storePath, backupId);
+                if (manifest != null) {
+                    manifest.values().forEach(o -> refs.add((String) o));
+                }
+            }
+            File objectPath = FileUtil.file(storePath, "objects");
+            List<File> objects = FileUtil.loopFiles(objectPath);
+            int count = 0;
+            for (File object : objects) {
+                if (!refs.contains(object.getName())) {
+                    FileUtil.del(object);
+                    count++;
+                }
+            }
+            loopClean(objectPath);
+            log.debug("回收项目备份文件 {} 个,剩余 {} 个", count, objects.size() - count);
+        }
+    }
+
+    private Object storeLock(File storePath) {
+        return STORE_LOCKS.computeIfAbsent(FileUtil.getAbsolutePath(storePath), s -> new Object());
+    }
+
+    private File pathObject(File storePath, String sha1) {
+        return FileUtil.file(storePath, "objects", sha1.substring(0, 2), sha1);
+    }
+
+    private String manifestPath(String levelName, String filename) {
+        String path = FileUtil.normalize(StrUtil.emptyToDefault(levelName, StrUtil.EMPTY) + StrUtil.SLASH + StrUtil.emptyToDefault(filename, StrUtil.EMPTY));
+        return StrUtil.strip(path, StrUtil.SLASH);
+    }
+
+    /**
+     * 保存对象文件，先复制到临时文件（同时计算复制内容的 sha1）再重命名，避免出现不完整或者和名称不一致的对象文件
+     *
+     * @param storePath 备份存储目录
+     * @param source    源文件
+     * @return 复制内容的 sha1
+     * @throws IOException io
+     */
+    private String saveObject(File storePath, File source) throws IOException {
+        File objectPath = FileUtil.mkdir(FileUtil.file(storePath, "objects"));
+        File temp = FileUtil.file(objectPath, StrUtil.format(".{}.tmp", IdUtil.fastSimpleUUID()));
+        try {
+            MessageDigest digest = SecureUtil.sha1().getDigest();
+            try (InputStream inputStream = new DigestInputStream(Files.newInputStream(source.toPath()), digest)) {
+                Files.copy(inputStream, temp.toPath());
+            }
+            temp.setLastModified(source.lastModified());
+            String sha1 = HexUtil.encodeHexStr(digest.digest());
+            File object = this.pathObject(storePath, sha1);
+            if (!object.exists()) {
+                FileUtil.mkdir(object.getParentFile());
+                FileUtils.move(temp, object);
+            }
+            return sha1;
+        } finally {
+            FileUtil.del(temp);
+        }
+    }
+
+    /**
+     * 备份目录中的文件链接到对象文件
+     *
+     * @param object  对象文件
+     * @param target  备份文件
+     * @param useLink 是否尝试硬链接
+     * @return 下次是否继续尝试硬链接
+     * @throws IOException io
+     */
+    private boolean linkObject(File object, File target, boolean useLink) throws IOException {
+        FileUtil.mkParentDirs(target);
+        if (useLink) {
+            try {
+                Files.createLink(target.toPath(), object.toPath());
+                return true;
+            } catch (UnsupportedOperationException | IOException e) {
+                log.debug("项目备份不支持硬链接,使用复制文件：{}", e.getMessage());
+            }
+        }
+        Files.copy(object.toPath(), target.toPath(), StandardCopyOption.COPY_ATTRIBUTES, StandardCopyOption.REPLACE_EXISTING);
+        return false;
+    }
+
+    private JSONObject readManifest(File storePath, String backupId) {
+        File file = FileUtil.file(storePath, "manifests", backupId + ".json");
+        if (!FileUtil.isFile(file)) {
+            return null;
+        }
+        try {
+            return JSONObject.parseObject(FileUtil.readUtf8String(file));
+        } catch (Exception e) {
+            log.warn("项目备份清单文件错误：{}", file.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    private void saveManifest(File storePath, String backupId, JSONObject manifest) {
+        File file = FileUtil.file(storePath, "manifests", backupId + ".json");
+        File temp = FileUtil.file(file.getParentFile(), StrUtil.format(".{}.{}.tmp", file.getName(), IdUtil.fastSimpleUUID()));
+        FileUtil.writeUtf8String(manifest.toString(), temp);
+        try {
+            FileUtils.move(temp, file);
+        } catch (IOException e) {
+            FileUtil.del(temp);
+            throw new JpomRuntimeException("保存项目备份清单失败：" + file.getAbsolutePath(), e);
+        }
     }
 
     /**
@@ -190,8 +462,15 @@ public class ProjectFileBackupService {
                 File backupItemPath = this.pathProjectBackup(infoModel, backupId);
                 File backupPath = this.pathProject(infoModel);
                 // 获取文件列表
-                Map<String, File> backupFiles = this.listFiles(backupItemPath);
-                Map<String, File> nowFiles = this.listFiles(projectPath);
+                File storePath = FileUtil.file(backupPath, STORE_DIR);
+                JSONObject manifest = this.readManifest(storePath, backupId);
+                // 有备份清单时直接使用清单中的签名，不需要重新计算备份目录的签名
+                Map<String, File> backupFiles = manifest == null ? this.listFiles(backupItemPath, false) :
+                    manifest.entrySet()
+                        .stream()
+                        .collect(Collectors.toMap(entry -> entry.getValue() + StrUtil.DASHED + entry.getKey(),
+                            entry -> FileUtil.file(backupItemPath, entry.getKey()), (file, file2) -> file));
+                Map<String, File> nowFiles = this.listFiles(projectPath, true);
                 nowFiles.forEach((fileSha1, file) -> {
                     // 当前目录存在的，但是备份目录也存在的相同文件则删除
                     File backupFile = backupFiles.get(fileSha1);
@@ -266,17 +545,19 @@ public class ProjectFileBackupService {
     /**
      * 获取文件列表信息
      *
-     * @param path 路径
+     * @param path     路径
+     * @param useIndex 是否使用签名索引（备份目录每次都不一样，不需要索引）
      * @return 文件列表信息
      */
-    private Map<String, File> listFiles(File path) {
+    private Map<String, File> listFiles(File path, boolean useIndex) {
         // 将所有的文件信息组装并签名
         List<File> files = FileUtil.loopFiles(path);
+        Map<File, String> sha1Map = useIndex ? FileFingerprintIndex.of(path).sha1(files) : FileFingerprintIndex.sha1Parallel(files);
         List<JSONObject> collect = files.stream().map(file -> {
             //
             JSONObject item = new JSONObject();
             item.put("file", file);
-            item.put("sha1", SecureUtil.sha1(file) + StrUtil.DASHED + StringUtil.delStartPath(file, path, true));
+            item.put("sha1", sha1Map.get(file) + StrUtil.DASHED + StringUtil.delStartPath(file, path, true));
             return item;
         }).collect(Collectors.toList());
         return CollStreamUtil.toMap(collect,
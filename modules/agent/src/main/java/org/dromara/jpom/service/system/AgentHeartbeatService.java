@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.service.system;
+
+import cn.hutool.core.date.SystemClock;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.SecureUtil;
+import com.alibaba.fastjson2.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.jpom.JpomApplication;
+import org.dromara.jpom.common.Const;
+import org.dromara.jpom.common.ILoadEvent;
+import org.dromara.jpom.common.JpomManifest;
+import org.dromara.jpom.common.ServerOpenApi;
+import org.dromara.jpom.configuration.AgentAuthorize;
+import org.dromara.jpom.configuration.AgentConfig;
+import org.dromara.jpom.configuration.HeartbeatConfig;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Service;
+
+import javax.websocket.*;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 节点主动推送心跳
+ * <p>
+ * 和服务端保持一个 websocket 长连接，定时推送最新的系统监控采样（后台采样结果），
+ * 间隔一段时间推送一次完整信息。连接断开后在下一个推送周期重新连接
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+@Service
+@Slf4j
+public class AgentHeartbeatService implements ILoadEvent, DisposableBean {
+
+    /**
+     * 单次推送最多携带的历史采样个数
+     */
+    private static final int MAX_HISTORY = 20;
+
+    private final HeartbeatConfig heartbeatConfig;
+    private final AgentAuthorize agentAuthorize;
+    private final SystemStatService systemStatService;
+
+    private ScheduledFuture<?> scheduledFuture;
+    private Session session;
+    /**
+     * 最后一次推送完整信息的时间
+     */
+    private long lastFullTime;
+    /**
+     * 最后一次推送的采样时间
+     */
+    private long lastSampleTime;
+
+    public AgentHeartbeatService(AgentConfig agentConfig,
+                                 SystemStatService systemStatService) {
+        this.heartbeatConfig = agentConfig.getHeartbeat();
+        this.agentAuthorize = agentConfig.getAuthorize();
+        this.systemStatService = systemStatService;
+    }
+
+    @Override
+    public void afterPropertiesSet(ApplicationContext applicationContext) throws Exception {
+        if (StrUtil.isEmpty(heartbeatConfig.getServerUrl())) {
+            log.debug("未配置服务端地址，不开启节点推送心跳");
+            return;
+        }
+        int interval = heartbeatConfig.getInterval();
+        this.scheduledFuture = JpomApplication.getScheduledExecutorService()
+            .scheduleWithFixedDelay(this::push, interval, interval, TimeUnit.SECONDS);
+    }
+
+    private synchronized void push() {
+        try {
+            if (session == null || !session.isOpen()) {
+                this.connect();
+            }
+            long now = SystemClock.now();
+            boolean full = now - lastFullTime >= TimeUnit.SECONDS.toMillis(heartbeatConfig.getFullInterval());
+            JSONObject jsonObject;
+            if (full || !systemStatService.isEnabled()) {
+                jsonObject = systemStatService.getStatInfo(null);
+                full = true;
+            } else {
+                jsonObject = new JSONObject();
+                jsonObject.put("simpleStatus", systemStatService.latest());
+            }
+            List<JSONObject> history = systemStatService.list(MAX_HISTORY)
+                .stream()
+                .filter(sample -> sample.getLongValue("time") > lastSampleTime)
+                .collect(Collectors.toList());
+            if (!history.isEmpty()) {
+                jsonObject.put("simpleStatusHistory", history);
+            }
+            jsonObject.put("interval", heartbeatConfig.getInterval());
+            jsonObject.put("full", full);
+            session.getBasicRemote().sendText(jsonObject.toString());
+            if (full) {
+                this.lastFullTime = now;
+            }
+            if (!history.isEmpty()) {
+                this.lastSampleTime = history.get(history.size() - 1).getLongValue("time");
+            }
+        } catch (Throwable e) {
+            log.warn("推送节点心跳失败：{}", e.getMessage());
+            this.close();
+        }
+    }
+
+    private void connect() throws Exception {
+        this.close();
+        String serverUrl = StrUtil.removeSuffix(heartbeatConfig.getServerUrl(), StrUtil.SLASH);
+        // http -> ws、https -> wss
+        String url = StrUtil.replaceFirst(serverUrl, "http", "ws", true) + ServerOpenApi.NODE_HEARTBEAT;
+        String authorize = SecureUtil.sha1(agentAuthorize.getAgentName() + "@" + agentAuthorize.getAgentPwd());
+        String installId = JpomManifest.getInstance().getInstallId();
+        ClientEndpointConfig config = ClientEndpointConfig.Builder.create()
+            .configurator(new ClientEndpointConfig.Configurator() {
+                @Override
+                public void beforeRequest(Map<String, List<String>> headers) {
+                    headers.put(Const.JPOM_AGENT_AUTHORIZE, Collections.singletonList(authorize));
+                    headers.put(ServerOpenApi.NODE_HEARTBEAT_INSTALL_ID, Collections.singletonList(installId));
+                }
+            }).build();
+        WebSocketContainer container = ContainerProvider.getWebSocketContainer();
+        this.session = container.connectToServer(new Endpoint() {
+            @Override
+            public void onOpen(Session session, EndpointConfig config) {
+            }
+
+            @Override
+            public void onClose(Session session, CloseReason closeReason) {
+                if (closeReason.getCloseCode() != CloseReason.CloseCodes.NORMAL_CLOSURE) {
+                    log.warn("节点心跳连接被关闭：{}", closeReason);
+                }
+            }
+        }, config, URI.create(url));
+        // 重新连接后推送完整信息
+        this.lastFullTime = 0;
+        log.info("节点心跳连接成功：{}", url);
+    }
+
+    private void close() {
+        if (session == null) {
+            return;
+        }
+        try {
+            session.close();
+        } catch (IOException ignored) {
+        }
+        this.session = null;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (scheduledFuture != null) {
+            scheduledFuture.cancel(true);
+        }
+        synchronized (this) {
+            this.close();
+        }
+    }
+}
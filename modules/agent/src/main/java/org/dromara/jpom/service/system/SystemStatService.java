@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.service.system;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.date.SystemClock;
+import cn.hutool.system.SystemUtil;
+import com.alibaba.fastjson2.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.jpom.JpomApplication;
+import org.dromara.jpom.common.ILoadEvent;
+import org.dromara.jpom.common.JpomManifest;
+import org.dromara.jpom.configuration.SystemConfig;
+import org.dromara.jpom.model.data.NodeProjectInfoModel;
+import org.dromara.jpom.model.data.NodeScriptModel;
+import org.dromara.jpom.service.manage.ProjectInfoService;
+import org.dromara.jpom.service.script.NodeScriptServer;
+import org.dromara.jpom.util.JvmUtil;
+import org.dromara.jpom.util.OshiUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 系统监控后台采样
+ * <p>
+ * 定时采集 cpu、内存、硬盘、网络流量，保存最近的采样结果（环形缓冲），获取监控信息时直接返回最新的采样，不再阻塞请求
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+@Service
+@Slf4j
+public class SystemStatService implements ILoadEvent, DisposableBean {
+
+    private final SystemConfig systemConfig;
+    private final ProjectInfoService projectInfoService;
+    private final NodeScriptServer nodeScriptServer;
+    /**
+     * 采样环形缓冲
+     */
+    private JSONObject[] samples;
+    /**
+     * 下一个写入位置（累计写入个数）
+     */
+    private long writeCount;
+    private ScheduledFuture<?> scheduledFuture;
+    /**
+     * 上一次采样的 cpu 滴答数
+     */
+    private long[] prevCpuTicks;
+    /**
+     * 上一次采样的网卡流量
+     */
+    private OshiUtils.NetIoInfo prevNetInfo;
+    private long prevTime;
+
+    public SystemStatService(SystemConfig systemConfig,
+                             ProjectInfoService projectInfoService,
+                             NodeScriptServer nodeScriptServer) {
+        this.systemConfig = systemConfig;
+        this.projectInfoService = projectInfoService;
+        this.nodeScriptServer = nodeScriptServer;
+    }
+
+    @Override
+    public void afterPropertiesSet(ApplicationContext applicationContext) throws Exception {
+        int interval = systemConfig.getStatSampleInterval();
+        if (interval <= 0) {
+            log.debug("未开启系统监控后台采样");
+            return;
+        }
+        this.samples = new JSONObject[systemConfig.getStatSampleCount()];
+        this.scheduledFuture = JpomApplication.getScheduledExecutorService()
+            .scheduleWithFixedDelay(this::sample, 0, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 是否开启了后台采样
+     *
+     * @return true 开启
+     */
+    public boolean isEnabled() {
+        return scheduledFuture != null;
+    }
+
+    private void sample() {
+        try {
+            long[] cpuTicks = OshiUtils.getCpuTicks();
+            OshiUtils.NetIoInfo netInfo = OshiUtils.getNetInfo();
+            long now = SystemClock.now();
+            if (prevCpuTicks == null) {
+                // 第一次只记录基准值
+                this.prevCpuTicks = cpuTicks;
+                this.prevNetInfo = netInfo;
+                this.prevTime = now;
+                return;
+            }
+            JSONObject jsonObject = new JSONObject();
+            jsonObject.put("time", now);
+            jsonObject.put("cpu", OshiUtils.getCpuUsed(prevCpuTicks, cpuTicks));
+            OshiUtils.putMemoryDisk(jsonObject);
+            // 网络流量换算为每秒
+            long duration = Math.max(now - prevTime, 1);
+            jsonObject.put("netTxBytes", (netInfo.getTxbyt() - prevNetInfo.getTxbyt()) * 1000 / duration);
+            jsonObject.put("netRxBytes", (netInfo.getRxbyt() - prevNetInfo.getRxbyt()) * 1000 / duration);
+            this.prevCpuTicks = cpuTicks;
+            this.prevNetInfo = netInfo;
+            this.prevTime = now;
+            synchronized (this) {
+                samples[(int) (writeCount % samples.length)] = jsonObject;
+                writeCount++;
+            }
+        } catch (Throwable e) {
+            log.error("系统监控采样异常", e);
+        }
+    }
+
+    /**
+     * 获取最新的采样
+     *
+     * @return 未开启或者还没有采样返回 null
+     */
+    public synchronized JSONObject latest() {
+        if (samples == null || writeCount == 0) {
+            return null;
+        }
+        return samples[(int) ((writeCount - 1) % samples.length)];
+    }
+
+    /**
+     * 获取最近的采样（时间正序）
+     *
+     * @param count 个数
+     * @return list
+     */
+    public synchronized List<JSONObject> list(int count) {
+        if (samples == null || writeCount == 0 || count <= 0) {
+            return Collections.emptyList();
+        }
+        int size = (int) Math.min(Math.min(count, samples.length), writeCount);
+        List<JSONObject> list = new ArrayList<>(size);
+        for (long i = writeCount - size; i < writeCount; i++) {
+            list.add(samples[(int) (i % samples.length)]);
+        }
+        return list;
+    }
+
+    /**
+     * 获取节点统计信息
+     *
+     * @param history 需要返回最近的采样个数
+     * @return json
+     */
+    public JSONObject getStatInfo(Integer history) {
+        JSONObject jsonObject = new JSONObject();
+        try {
+            JSONObject topInfo = this.latest();
+            if (topInfo == null) {
+                // 未开启后台采样或者还没有采样结果
+                topInfo = OshiUtils.getSimpleInfo();
+                // 系统固定休眠时间
+                jsonObject.put("systemSleep", OshiUtils.NET_STAT_SLEEP + OshiUtils.CPU_STAT_SLEEP);
+            } else {
+                jsonObject.put("systemSleep", 0);
+                if (history != null && history > 0) {
+                    jsonObject.put("simpleStatusHistory", this.list(history));
+                }
+            }
+            jsonObject.put("simpleStatus", topInfo);
+
+            JSONObject systemInfo = OshiUtils.getSystemInfo();
+            jsonObject.put("systemInfo", systemInfo);
+            //jsonObject.put("oshiError", "测试异常");
+        } catch (Throwable e) {
+            log.error("oshi 系统监控异常", e);
+            jsonObject.put("oshiError", e.getMessage());
+        }
+
+        JSONObject jpomInfo = this.getJpomInfo();
+        jsonObject.put("jpomInfo", jpomInfo);
+        return jsonObject;
+    }
+
+    private JSONObject getJpomInfo() {
+        List<NodeProjectInfoModel> nodeProjectInfoModels = projectInfoService.list();
+        List<NodeScriptModel> list = nodeScriptServer.list();
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("javaVirtualCount", JvmUtil.getJavaVirtualCount());
+        JpomManifest instance = JpomManifest.getInstance();
+        jsonObject.put("jpomManifest", instance);
+        jsonObject.put("javaVersion", SystemUtil.getJavaRuntimeInfo().getVersion());
+        //  获取JVM中内存总大小
+        jsonObject.put("totalMemory", SystemUtil.getTotalMemory());
+        //
+        jsonObject.put("freeMemory", SystemUtil.getFreeMemory());
+        Map<String, JSONObject> workspaceMap = new HashMap<>(4);
+        //
+        {
+            for (NodeProjectInfoModel model : nodeProjectInfoModels) {
+                JSONObject jsonObject1 = workspaceMap.computeIfAbsent(model.getWorkspaceId(), s -> {
+                    JSONObject jsonObject11 = new JSONObject();
+                    jsonObject11.put("projectCount", 0);
+                    jsonObject11.put("scriptCount", 0);
+                    return jsonObject11;
+                });
+                jsonObject1.merge("projectCount", 1, (v1, v2) -> Integer.sum((Integer) v1, (Integer) v2));
+            }
+            jsonObject.put("projectCount", CollUtil.size(nodeProjectInfoModels));
+        }
+        {
+            for (NodeScriptModel model : list) {
+                JSONObject jsonObject1 = workspaceMap.computeIfAbsent(model.getWorkspaceId(), s -> {
+                    JSONObject jsonObject11 = new JSONObject();
+                    jsonObject11.put("projectCount", 0);
+                    jsonObject11.put("scriptCount", 0);
+                    return jsonObject11;
+                });
+                jsonObject1.merge("scriptCount", 1, (v1, v2) -> Integer.sum((Integer) v1, (Integer) v2));
+            }
+            jsonObject.put("scriptCount", CollUtil.size(list));
+        }
+        jsonObject.put("workspaceStat", workspaceMap);
+        return jsonObject;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (scheduledFuture != null) {
+            scheduledFuture.cancel(true);
+        }
+    }
+}
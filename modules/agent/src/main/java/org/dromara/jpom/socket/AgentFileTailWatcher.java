@@ -20,7 +20,6 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.Collection;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -80,8 +79,8 @@ public class AgentFileTailWatcher<T extends AutoCloseable> extends BaseFileTailW
     public static void offline(Session session) {
         Collection<AgentFileTailWatcher<Session>> collection = CONCURRENT_HASH_MAP.values();
         for (AgentFileTailWatcher<Session> agentFileTailWatcher : collection) {
-            agentFileTailWatcher.socketSessions.removeIf(session::equals);
-            if (agentFileTailWatcher.socketSessions.isEmpty()) {
+            agentFileTailWatcher.remove(session);
+            if (agentFileTailWatcher.isEmpty()) {
                 agentFileTailWatcher.close();
             }
         }
@@ -97,8 +96,7 @@ public class AgentFileTailWatcher<T extends AutoCloseable> extends BaseFileTailW
         if (null == agentFileTailWatcher) {
             return;
         }
-        Set<Session> socketSessions = agentFileTailWatcher.socketSessions;
-        for (Session socketSession : socketSessions) {
+        for (Session socketSession : agentFileTailWatcher.sessions()) {
             offline(socketSession);
         }
         agentFileTailWatcher.close();
@@ -127,14 +125,8 @@ public class AgentFileTailWatcher<T extends AutoCloseable> extends BaseFileTailW
         if (null == agentFileTailWatcher) {
             return;
         }
-        Set<Session> socketSessions = agentFileTailWatcher.socketSessions;
-        for (Session socketSession : socketSessions) {
-            if (socketSession.equals(session)) {
-                offline(socketSession);
-                break;
-            }
-        }
-        if (agentFileTailWatcher.socketSessions.isEmpty()) {
+        agentFileTailWatcher.remove(session);
+        if (agentFileTailWatcher.isEmpty()) {
             agentFileTailWatcher.close();
         }
 
@@ -150,6 +142,11 @@ public class AgentFileTailWatcher<T extends AutoCloseable> extends BaseFileTailW
         return true;
     }
 
+    @Override
+    protected String getId(T session) {
+        return ((Session) session).getId();
+    }
+
     /**
      * 关闭
      */
@@ -12,6 +12,7 @@ package org.dromara.jpom.socket;
 import cn.hutool.core.convert.Convert;
 import cn.hutool.core.exceptions.ExceptionUtil;
 import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.map.SafeConcurrentHashMap;
 import cn.hutool.core.thread.ThreadUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.keepbx.jpom.model.JsonMessage;
@@ -36,6 +37,9 @@ import javax.websocket.server.ServerEndpoint;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 插件端,控制台socket
@@ -51,6 +55,10 @@ public class AgentWebSocketConsoleHandle extends BaseAgentWebSocketHandle {
     private static ProjectInfoService projectInfoService;
     private static ProjectLogConfig logConfig;
     private static ProjectCommander projectCommander;
+    /**
+     * 会话正在执行的日志搜索，会话关闭或者开始新的搜索时取消
+     */
+    private static final Map<String, AtomicBoolean> SEARCH_CANCEL = new SafeConcurrentHashMap<>();
 
     @Autowired
     public void init(ProjectInfoService projectInfoService,
@@ -237,6 +245,8 @@ public class AgentWebSocketConsoleHandle extends BaseAgentWebSocketHandle {
         if (!FileUtil.isFile(file)) {
             return new JsonMessage<>(404, "文件不存在");
         }
+        AtomicBoolean cancel = new AtomicBoolean(false);
+        Optional.ofNullable(SEARCH_CANCEL.put(session.getId(), cancel)).ifPresent(before -> before.set(true));
         ThreadUtil.execute(() -> {
             try {
                 boolean first = Convert.toBool(reqJson.getString("first"), false);
@@ -247,14 +257,15 @@ public class AgentWebSocketConsoleHandle extends BaseAgentWebSocketHandle {
                 String keyword = reqJson.getString("keyword");
                 Charset charset = logConfig.getFileCharset();
                 //BaseFileTailWatcher.detectorCharset(file);
-                String resultMsg = FileSearchUtil.searchList(file, charset, keyword, beforeCount, afterCount, head, tail, first, objects -> {
-                    try {
-                        String line = objects.get(1);
-                        SocketSessionUtil.send(session, line);
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
-                    }
-                });
+                String resultMsg = FileSearchUtil.searchList(file, charset, keyword, beforeCount, afterCount, head, tail, first,
+                    () -> cancel.get() || !session.isOpen(), objects -> {
+                        try {
+                            String line = objects.get(1);
+                            SocketSessionUtil.send(session, line);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
                 SocketSessionUtil.send(session, resultMsg);
             } catch (Exception e) {
                 log.error("文件搜索失败", e);
@@ -262,6 +273,8 @@ public class AgentWebSocketConsoleHandle extends BaseAgentWebSocketHandle {
                     SocketSessionUtil.send(session, "执行命令失败,详情如下：");
                 } catch (IOException ignored) {
                 }
+            } finally {
+                SEARCH_CANCEL.remove(session.getId(), cancel);
             }
         });
         return null;
@@ -294,6 +307,7 @@ public class AgentWebSocketConsoleHandle extends BaseAgentWebSocketHandle {
     public void onClose(Session session, CloseReason closeReason) {
         super.onClose(session, closeReason);
         AgentFileTailWatcher.offline(session);
+        Optional.ofNullable(SEARCH_CANCEL.remove(session.getId())).ifPresent(cancel -> cancel.set(true));
     }
 
     @OnError
@@ -14,6 +14,7 @@ import cn.hutool.core.date.DateException;
 import cn.hutool.core.date.DateTime;
 import cn.hutool.core.date.DateUnit;
 import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.date.SystemClock;
 import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.lang.Opt;
 import cn.hutool.core.net.NetUtil;
@@ -34,11 +35,14 @@ import org.dromara.jpom.configuration.AgentConfig;
 import org.dromara.jpom.configuration.ProjectLogConfig;
 import org.dromara.jpom.cron.CronUtils;
 import org.dromara.jpom.model.RunMode;
+import org.dromara.jpom.model.data.DslYmlDto;
 import org.dromara.jpom.model.data.NodeProjectInfoModel;
 import org.dromara.jpom.script.BaseRunScript;
 import org.dromara.jpom.service.manage.ProjectInfoService;
 import org.dromara.jpom.socket.ConsoleCommandOp;
 import org.dromara.jpom.util.CommandUtil;
+import org.dromara.jpom.util.LogRotateUtil;
+import org.springframework.boot.convert.DurationStyle;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.util.unit.DataSize;
@@ -46,6 +50,7 @@ import org.springframework.util.unit.DataSize;
 import java.io.File;
 import java.net.Inet4Address;
 import java.net.InetAddress;
+import java.time.Duration;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
@@ -95,7 +100,13 @@ public class AgentStartInit implements ILoadEvent, ISystemTask {
                     return;
                 }
                 //
-                list.forEach(this::checkProject);
+                list.forEach(nodeProjectInfoModel -> {
+                    try {
+                        this.checkProject(nodeProjectInfoModel);
+                    } catch (Exception e) {
+                        log.error("定时备份日志失败：{}", nodeProjectInfoModel.getId(), e);
+                    }
+                });
             } catch (Exception e) {
                 log.error("定时备份日志失败", e);
             }
@@ -107,10 +118,29 @@ public class AgentStartInit implements ILoadEvent, ISystemTask {
         if (!file.exists()) {
             return;
         }
-        DataSize autoBackSize = projectLogConfig.getAutoBackupSize();
+        NodeProjectInfoModel originalModel = projectInfoService.resolveModel(nodeProjectInfoModel);
+        DslYmlDto.Config dslConfig = Optional.ofNullable(originalModel.dslConfig())
+            .map(DslYmlDto::getConfig)
+            .orElse(null);
+        // 项目 dsl 中的配置优先
+        DataSize autoBackSize = Optional.ofNullable(dslConfig)
+            .map(DslYmlDto.Config::getAutoBackSize)
+            .filter(StrUtil::isNotEmpty)
+            .map(DataSize::parse)
+            .orElse(projectLogConfig.getAutoBackupSize());
         autoBackSize = Optional.ofNullable(autoBackSize).orElseGet(() -> DataSize.ofMegabytes(50));
+        Duration autoBackInterval = Optional.ofNullable(dslConfig)
+            .map(DslYmlDto.Config::getAutoBackInterval)
+            .filter(StrUtil::isNotEmpty)
+            .map(DurationStyle::detectAndParse)
+            .orElse(projectLogConfig.getAutoBackupInterval());
         long len = file.length();
-        if (len > autoBackSize.toBytes()) {
+        boolean timeout = false;
+        if (autoBackInterval != null && !autoBackInterval.isZero() && len > 0) {
+            long lastTime = LogRotateUtil.lastRotateTime(file, projectInfoService.resolveLogBack(nodeProjectInfoModel, originalModel));
+            timeout = SystemClock.now() - lastTime > autoBackInterval.toMillis();
+        }
+        if (len > autoBackSize.toBytes() || timeout) {
             try {
                 projectCommander.backLog(nodeProjectInfoModel);
             } catch (Exception e) {
@@ -9,31 +9,30 @@
  */
 package org.dromara.jpom.util;
 
-import cn.hutool.core.collection.CollUtil;
-import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.lang.Tuple;
-import cn.hutool.core.util.ReUtil;
 import cn.hutool.core.util.StrUtil;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.IOException;
-import java.io.LineNumberReader;
+import java.io.*;
 import java.nio.charset.Charset;
-import java.util.Collection;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * 文件搜索工具
+ * <p>
+ * 读取文件最后几行时从文件末尾向前查找开始位置，按照行号范围读取时使用行号索引跳转，不再从文件头开始读取全部内容
  *
  * @author bwcx_jzy
  * @since 2022/5/15
  */
 public class FileSearchUtil {
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     /**
      * @param file             文件
      * @param charset          编码格式
@@ -52,88 +51,77 @@ public class FileSearchUtil {
                                     int cacheBeforeCount, int afterCount,
                                     int head, int tailCount,
                                     boolean first, Consumer<Tuple> consumer) throws IOException {
+        return searchList(file, charset, searchKey, cacheBeforeCount, afterCount, head, tailCount, first, () -> false, consumer);
+    }
+
+    /**
+     * @param file             文件
+     * @param charset          编码格式
+     * @param searchKey        搜索关键词
+     * @param cacheBeforeCount 关键词前多少行
+     * @param afterCount       关键词后多少行
+     * @param head             搜索文件头多少行
+     * @param tailCount        文件后多少行
+     * @param first            是否从头开始读取
+     * @param cancel           是否取消搜索
+     * @param consumer         回调
+     * @return 结果描述
+     * @throws IOException io
+     */
+    public static String searchList(File file, Charset charset,
+                                    String searchKey,
+                                    int cacheBeforeCount, int afterCount,
+                                    int head, int tailCount,
+                                    boolean first, BooleanSupplier cancel, Consumer<Tuple> consumer) throws IOException {
 
         int[] calculate = FileSearchUtil.calculate(head, tailCount, first);
-        Collection<Tuple> strings;
+        LineSearcher searcher = new LineSearcher(searchKey, cacheBeforeCount, afterCount, consumer);
+        long lineCount;
         if (calculate.length == 1) {
-            strings = FileSearchUtil.readLastLine(file, charset, calculate[0]);
+            long offset = FileUtils.tailOffset(file, calculate[0]);
+            lineCount = FileSearchUtil.readLine(file, charset, offset, 1, new int[]{1, Integer.MAX_VALUE}, cancel, searcher);
         } else {
-            strings = FileSearchUtil.readRangeLine(file, charset, calculate);
+            long[] seek = LogLineIndex.of(file).seek(calculate[0]);
+            lineCount = FileSearchUtil.readLine(file, charset, seek[0], seek[1], calculate, cancel, searcher);
         }
-        int showLine = searchList(strings, searchKey, cacheBeforeCount, afterCount, consumer);
-        return StrUtil.format("在 {} 行中搜索到并显示 {} 行", CollUtil.size(strings), showLine);
-    }
-
-    private static int searchList(Collection<Tuple> strings, String searchKey, int beforeCount, int afterCount, Consumer<Tuple> consumer) {
-        AtomicInteger hitIndex = new AtomicInteger(0);
-        LimitQueue<Tuple> beforeQueue = new LimitQueue<>(beforeCount);
-        List<Integer> cacheLineNum = new LinkedList<>();
-        strings.forEach(tuple -> {
-            String s = tuple.get(1);
-            Integer index = tuple.get(0);
-            // System.out.println(s);
-            if (StrUtil.isEmpty(searchKey) || StrUtil.containsIgnoreCase(s, searchKey) || ReUtil.isMatch(searchKey, s)) {
-                // 先输出之前的
-                for (Tuple before : beforeQueue) {
-                    checkEchoCache(cacheLineNum, before, consumer);
-                }
-                checkEchoCache(cacheLineNum, tuple, consumer);
-                hitIndex.set(index);
-            }
-            // 是否需要输出后面的内容
-            int i = hitIndex.get();
-            if (i > 0 && index > i && index <= i + afterCount) {
-                checkEchoCache(cacheLineNum, tuple, consumer);
-            }
-            if (beforeCount > 0) {
-                //
-                beforeQueue.offerFirst(tuple);
-            }
-        });
-        return CollUtil.size(cacheLineNum);
-    }
-
-    private static void checkEchoCache(List<Integer> cacheLineNum, Tuple tuple, Consumer<Tuple> consumer) {
-        int index = tuple.get(0);
-        if (cacheLineNum.contains(index)) {
-            return;
+        if (cancel.getAsBoolean()) {
+            return StrUtil.format("搜索已取消，在 {} 行中搜索到并显示 {} 行", lineCount, searcher.showLine);
         }
-        consumer.accept(tuple);
-        cacheLineNum.add(index);
+        return StrUtil.format("在 {} 行中搜索到并显示 {} 行", lineCount, searcher.showLine);
     }
 
-    public static Collection<Tuple> readLastLine(File file, Charset charset, int line) throws IOException {
-        BufferedReader reader = FileUtil.getReader(file, charset);
-        LineNumberReader lineNumberReader = new LineNumberReader(reader);
-        LimitQueue<Tuple> limitQueue = new LimitQueue<>(line);
-        while (true) {
-            String readLine = lineNumberReader.readLine();
-            if (readLine == null) {
-                break;
-            }
-            limitQueue.add(new Tuple(lineNumberReader.getLineNumber(), readLine));
-        }
-        return limitQueue;
-    }
-
-    public static Collection<Tuple> readRangeLine(File file, Charset charset, int[] range) throws IOException {
-        BufferedReader reader = FileUtil.getReader(file, charset);
-        LineNumberReader lineNumberReader = new LineNumberReader(reader);
-        List<Tuple> list = new LinkedList<>();
-        while (true) {
-            String readLine = lineNumberReader.readLine();
-            if (readLine == null) {
-                break;
-            }
-            int lineNumber = lineNumberReader.getLineNumber();
-            if (lineNumber >= range[0] && lineNumber <= range[1]) {
-                list.add(new Tuple(lineNumber, readLine));
-            }
-            if (lineNumber > range[1]) {
-                break;
+    /**
+     * 从指定位置开始读取文件行
+     *
+     * @param file      文件
+     * @param charset   编码格式
+     * @param offset    开始读取的位置
+     * @param startLine 开始位置对应的行号
+     * @param range     需要的行号范围
+     * @param cancel    是否取消
+     * @param searcher  搜索
+     * @return 读取的行数（在范围内的）
+     * @throws IOException io
+     */
+    private static long readLine(File file, Charset charset, long offset, long startLine, int[] range, BooleanSupplier cancel, LineSearcher searcher) throws IOException {
+        try (FileInputStream inputStream = new FileInputStream(file)) {
+            inputStream.getChannel().position(offset);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, charset), BUFFER_SIZE);
+            long lineNumber = startLine - 1;
+            long count = 0;
+            String readLine;
+            while ((readLine = reader.readLine()) != null) {
+                lineNumber++;
+                if (lineNumber > range[1] || cancel.getAsBoolean()) {
+                    break;
+                }
+                if (lineNumber >= range[0]) {
+                    count++;
+                    searcher.accept(lineNumber, readLine);
+                }
             }
+            return count;
         }
-        return list;
     }
 
     /**
@@ -151,4 +139,79 @@ public class FileSearchUtil {
         return first ? new int[]{tailLine, Integer.MAX_VALUE} : new int[]{tailLine};
     }
 
+    /**
+     * 逐行匹配关键词，输出匹配行以及前后行
+     */
+    private static class LineSearcher {
+
+        private final String searchKey;
+        /**
+         * 预编译的正则，关键词不是正则时为 null
+         */
+        private final Pattern pattern;
+        private final int beforeCount;
+        private final int afterCount;
+        private final Consumer<Tuple> consumer;
+        private final Deque<Tuple> beforeQueue = new ArrayDeque<>();
+        private long hitIndex;
+        /**
+         * 最后输出的行号，行号是递增的不需要记录全部输出过的行号
+         */
+        private long lastEchoIndex;
+        private int showLine;
+
+        private LineSearcher(String searchKey, int beforeCount, int afterCount, Consumer<Tuple> consumer) {
+            this.searchKey = searchKey;
+            this.pattern = compile(searchKey);
+            this.beforeCount = beforeCount;
+            this.afterCount = afterCount;
+            this.consumer = consumer;
+        }
+
+        private static Pattern compile(String searchKey) {
+            if (StrUtil.isEmpty(searchKey)) {
+                return null;
+            }
+            try {
+                return Pattern.compile(searchKey);
+            } catch (PatternSyntaxException e) {
+                return null;
+            }
+        }
+
+        private boolean isMatch(String line) {
+            return StrUtil.isEmpty(searchKey) || StrUtil.containsIgnoreCase(line, searchKey) || (pattern != null && pattern.matcher(line).matches());
+        }
+
+        private void accept(long index, String line) {
+            Tuple tuple = new Tuple(index, line);
+            if (this.isMatch(line)) {
+                // 先输出之前的
+                for (Tuple before : beforeQueue) {
+                    this.echo(before);
+                }
+                this.echo(tuple);
+                hitIndex = index;
+            } else if (hitIndex > 0 && index <= hitIndex + afterCount) {
+                // 输出后面的内容
+                this.echo(tuple);
+            }
+            if (beforeCount > 0) {
+                beforeQueue.offerLast(tuple);
+                if (beforeQueue.size() > beforeCount) {
+                    beforeQueue.pollFirst();
+                }
+            }
+        }
+
+        private void echo(Tuple tuple) {
+            long index = tuple.get(0);
+            if (index <= lastEchoIndex) {
+                return;
+            }
+            consumer.accept(tuple);
+            lastEchoIndex = index;
+            showLine++;
+        }
+    }
 }
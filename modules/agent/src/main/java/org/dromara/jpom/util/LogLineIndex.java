@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.util;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IoUtil;
+import cn.hutool.core.map.SafeConcurrentHashMap;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.SecureUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.jpom.JpomApplication;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 日志文件行号稀疏索引
+ * <p>
+ * 每隔固定行数记录一次行的开始位置，按照行号读取时直接跳转到最近的索引位置。日志文件只会追加，再次使用时从上次索引的位置继续建立索引，
+ * 文件变短或者文件头内容变化（被替换、轮转）时重新建立索引。索引保存在数据目录中，避免在项目目录中产生多余文件
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+@Slf4j
+public class LogLineIndex {
+
+    private static final Map<String, LogLineIndex> INDEX_MAP = new SafeConcurrentHashMap<>();
+    private static final int VERSION = 1;
+    /**
+     * 索引间隔行数
+     */
+    private static final int INTERVAL = 1000;
+    /**
+     * 计算文件头签名的长度
+     */
+    private static final int HEAD_SIZE = 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+    private final File storeFile;
+    /**
+     * 已经建立索引部分的文件头签名
+     */
+    private String headHash;
+    /**
+     * 已经建立索引的长度（最后一个完整行的结束位置）
+     */
+    private long indexedLength;
+    /**
+     * 已经建立索引的行数
+     */
+    private long lineCount;
+    /**
+     * offsets[i] 为第 i * INTERVAL + 1 行的开始位置
+     */
+    private long[] offsets = new long[]{0};
+    private int offsetCount = 1;
+    private boolean loaded;
+
+    private LogLineIndex(File file, File storeFile) {
+        this.file = file;
+        this.storeFile = storeFile;
+    }
+
+    /**
+     * 获取日志文件对应的索引，索引保存在数据目录中
+     *
+     * @param file 日志文件
+     * @return 索引
+     */
+    public static LogLineIndex of(File file) {
+        File storeDir = FileUtil.file(JpomApplication.getInstance().getDataPath(), "log_index");
+        return of(storeDir, file);
+    }
+
+    /**
+     * 获取日志文件对应的索引
+     *
+     * @param storeDir 索引保存目录
+     * @param file     日志文件
+     * @return 索引
+     */
+    public static LogLineIndex of(File storeDir, File file) {
+        String path = FileUtil.getAbsolutePath(file);
+        File storeFile = FileUtil.file(storeDir, SecureUtil.md5(path) + ".idx");
+        return INDEX_MAP.computeIfAbsent(FileUtil.getAbsolutePath(storeFile), s -> new LogLineIndex(FileUtil.file(path), storeFile));
+    }
+
+    /**
+     * 获取指定行的开始位置（不超过指定行的最近一个索引位置）
+     *
+     * @param line 行号，从 1 开始
+     * @return [位置, 位置对应的行号]
+     * @throws IOException io
+     */
+    public synchronized long[] seek(long line) throws IOException {
+        if (!loaded) {
+            this.reset();
+            this.load();
+            loaded = true;
+        }
+        this.update();
+        long index = Math.min(Math.max(line - 1, 0) / INTERVAL, offsetCount - 1);
+        return new long[]{offsets[(int) index], index * INTERVAL + 1};
+    }
+
+    /**
+     * 补充建立索引
+     *
+     * @throws IOException io
+     */
+    private void update() throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            long length = channel.size();
+            if (length < indexedLength || !StrUtil.equals(this.headHash(channel, indexedLength), headHash)) {
+                // 文件被替换，重新建立索引
+                this.reset();
+            }
+            if (length == indexedLength) {
+                return;
+            }
+            long position = indexedLength;
+            long lines = lineCount;
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (position < length) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                byte[] array = buffer.array();
+                for (int i = 0; i < read; i++) {
+                    if (array[i] != '\n') {
+                        continue;
+                    }
+                    lines++;
+                    long lineEnd = position + i + 1;
+                    if (lines % INTERVAL == 0) {
+                        this.addOffset(lineEnd);
+                    }
+                    this.indexedLength = lineEnd;
+                    this.lineCount = lines;
+                }
+                position += read;
+            }
+            this.headHash = this.headHash(channel, indexedLength);
+            this.save();
+        }
+    }
+
+    private void reset() throws IOException {
+        this.headHash = this.headHash(null, 0);
+        this.indexedLength = 0;
+        this.lineCount = 0;
+        this.offsets = new long[]{0};
+        this.offsetCount = 1;
+    }
+
+    private void addOffset(long offset) {
+        if (offsetCount == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[offsetCount++] = offset;
+    }
+
+    /**
+     * 计算文件头签名
+     *
+     * @param channel 文件
+     * @param length  已经建立索引的长度，只计算这部分的文件头
+     * @return md5
+     * @throws IOException io
+     */
+    private String headHash(FileChannel channel, long length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(length, HEAD_SIZE));
+        while (channel != null && buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        return SecureUtil.md5().digestHex(Arrays.copyOf(buffer.array(), buffer.position()));
+    }
+
+    private void load() {
+        if (!FileUtil.isFile(storeFile)) {
+            return;
+        }
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(storeFile)))) {
+            if (inputStream.readInt() != VERSION || inputStream.readInt() != INTERVAL) {
+                return;
+            }
+            String hash = inputStream.readUTF();
+            long length = inputStream.readLong();
+            long lines = inputStream.readLong();
+            int count = inputStream.readInt();
+            if (count <= 0) {
+                return;
+            }
+            long[] array = new long[Math.max(count, 1)];
+            for (int i = 0; i < count; i++) {
+                array[i] = inputStream.readLong();
+            }
+            this.headHash = hash;
+            this.indexedLength = length;
+            this.lineCount = lines;
+            this.offsets = array;
+            this.offsetCount = count;
+        } catch (Exception e) {
+            // 索引损坏重新建立即可
+            log.warn("读取日志行号索引失败 {} {}", storeFile.getAbsolutePath(), e.getMessage());
+        }
+    }
+
+    private void save() {
+        File parent = storeFile.getParentFile();
+        FileUtil.mkdir(parent);
+        File temp = FileUtil.file(parent, StrUtil.format(".{}.{}.tmp", storeFile.getName(), IdUtil.fastSimpleUUID()));
+        DataOutputStream outputStream = null;
+        try {
+            outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            outputStream.writeInt(VERSION);
+            outputStream.writeInt(INTERVAL);
+            outputStream.writeUTF(headHash);
+            outputStream.writeLong(indexedLength);
+            outputStream.writeLong(lineCount);
+            outputStream.writeInt(offsetCount);
+            for (int i = 0; i < offsetCount; i++) {
+                outputStream.writeLong(offsets[i]);
+            }
+            outputStream.close();
+            FileUtils.move(temp, storeFile);
+        } catch (IOException e) {
+            log.warn("保存日志行号索引失败 {}", storeFile.getAbsolutePath(), e);
+        } finally {
+            IoUtil.close(outputStream);
+            FileUtil.del(temp);
+        }
+    }
+}
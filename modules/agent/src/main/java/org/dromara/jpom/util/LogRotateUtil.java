@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.util;
+
+import cn.hutool.core.date.DatePattern;
+import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.date.SystemClock;
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IoUtil;
+import cn.hutool.core.map.SafeConcurrentHashMap;
+import cn.hutool.core.thread.ExecutorBuilder;
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.jpom.JpomApplication;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 项目控制台日志轮转工具
+ * <p>
+ * 项目没有运行时直接重命名日志文件（不需要复制），项目运行中时从日志文件复制到记录的位置后立即清空（使用 transferTo 不经过 jvm 内存），
+ * 复制过程中追加的内容继续复制，只能缩短复制和清空之间的间隔：写入日志的进程不受锁控制，最后一次复制到清空之间写入的少量日志仍然会丢失
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+@Slf4j
+public class LogRotateUtil {
+
+    /**
+     * 压缩文件后缀
+     */
+    public static final String GZIP_SUFFIX = ".gz";
+    private static volatile ThreadPoolExecutor compressExecutor;
+    /**
+     * 日志文件路径 -> 最后一次轮转（清空）的时间
+     */
+    private static final Map<String, Long> ROTATE_TIME = new SafeConcurrentHashMap<>();
+
+    /**
+     * 轮转日志文件
+     *
+     * @param file    日志文件
+     * @param target  归档文件
+     * @param stopped 项目是否已经停止（没有进程写入日志）
+     * @throws IOException io
+     */
+    public static void rotate(File file, File target, boolean stopped) throws IOException {
+        FileUtil.mkParentDirs(target);
+        if (stopped) {
+            try {
+                FileUtils.move(file, target);
+                FileUtil.touch(file);
+                markRotated(file);
+                return;
+            } catch (IOException e) {
+                log.debug("重命名日志文件失败,使用复制：{}", e.getMessage());
+            }
+        }
+        try (FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long position = 0;
+            long size;
+            // 复制过程中新写入的内容继续复制，直到没有新的内容再清空
+            while ((size = source.size()) > position) {
+                position += source.transferTo(position, size - position, channel);
+            }
+            source.truncate(0);
+        }
+        markRotated(file);
+    }
+
+    /**
+     * 清空日志文件
+     *
+     * @param file 日志文件
+     * @throws IOException io
+     */
+    public static void truncate(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(0);
+        }
+        markRotated(file);
+    }
+
+    /**
+     * 记录日志文件轮转（清空）的时间
+     *
+     * @param file 日志文件
+     */
+    public static void markRotated(File file) {
+        ROTATE_TIME.put(FileUtil.getAbsolutePath(file), SystemClock.now());
+    }
+
+    /**
+     * 获取日志文件最后一次轮转（清空）的时间
+     * <p>
+     * 没有记录时（刚启动）使用最近的归档文件时间，没有归档文件从当前时间开始计算
+     *
+     * @param file     日志文件
+     * @param backPath 归档目录
+     * @return 时间
+     */
+    public static long lastRotateTime(File file, File backPath) {
+        return ROTATE_TIME.computeIfAbsent(FileUtil.getAbsolutePath(file), s -> {
+            long lastTime = lastRotateTime(backPath);
+            return lastTime > 0 ? lastTime : SystemClock.now();
+        });
+    }
+
+    /**
+     * 后台压缩归档文件（gzip），压缩完成后删除原文件
+     *
+     * @param file 归档文件
+     */
+    public static void compressAsync(File file) {
+        getCompressExecutor().execute(() -> {
+            File gzFile = FileUtil.file(file.getParentFile(), file.getName() + GZIP_SUFFIX);
+            File temp = FileUtil.file(file.getParentFile(), StrUtil.format(".{}.tmp", gzFile.getName()));
+            InputStream inputStream = null;
+            OutputStream outputStream = null;
+            try {
+                inputStream = Files.newInputStream(file.toPath());
+                outputStream = new GZIPOutputStream(Files.newOutputStream(temp.toPath()), 64 * 1024);
+                IoUtil.copy(inputStream, outputStream, 64 * 1024);
+                outputStream.close();
+                // 保留原文件修改时间，过期清理按照修改时间判断
+                temp.setLastModified(file.lastModified());
+                FileUtils.move(temp, gzFile);
+                IoUtil.close(inputStream);
+                FileUtil.del(file);
+            } catch (Exception e) {
+                log.warn("压缩日志归档文件失败 {}", file.getAbsolutePath(), e);
+            } finally {
+                IoUtil.close(inputStream);
+                IoUtil.close(outputStream);
+                FileUtil.del(temp);
+            }
+        });
+    }
+
+    /**
+     * 获取最后一次轮转的时间（按照归档文件名）
+     *
+     * @param backPath 归档目录
+     * @return 没有归档文件返回 0
+     */
+    private static long lastRotateTime(File backPath) {
+        File[] files = backPath.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        return Arrays.stream(files)
+            .map(file -> StrUtil.subBefore(file.getName(), StrUtil.DOT, false))
+            .filter(name -> name.length() == DatePattern.PURE_DATETIME_PATTERN.length())
+            .map(name -> {
+                try {
+                    return DateUtil.parse(name, DatePattern.PURE_DATETIME_PATTERN).getTime();
+                } catch (Exception e) {
+                    return null;
+                }
+            })
+            .filter(Objects::nonNull)
+            .max(Long::compare)
+            .orElse(0L);
+    }
+
+    private static ThreadPoolExecutor getCompressExecutor() {
+        if (compressExecutor == null) {
+            synchronized (LogRotateUtil.class) {
+                if (compressExecutor == null) {
+                    ExecutorBuilder executorBuilder = ExecutorBuilder.create();
+                    executorBuilder.setCorePoolSize(1).setMaxPoolSize(1);
+                    executorBuilder.setThreadFactory(ThreadUtil.newNamedThreadFactory("log-compress-", true));
+                    ThreadPoolExecutor threadPoolExecutor = executorBuilder.build();
+                    JpomApplication.register("log-compress", threadPoolExecutor);
+                    compressExecutor = threadPoolExecutor;
+                }
+            }
+        }
+        return compressExecutor;
+    }
+}
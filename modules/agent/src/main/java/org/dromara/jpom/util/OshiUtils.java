@@ -102,7 +102,23 @@ public class OshiUtils {
         jsonObject.put("time", SystemClock.now());
         CpuInfo cpuInfo = OshiUtil.getCpuInfo(CPU_STAT_SLEEP);
         jsonObject.put("cpu", cpuInfo.getUsed());
+        putMemoryDisk(jsonObject);
         //
+        NetIoInfo startNetInfo = getNetInfo();
+        //暂停1秒
+        Util.sleep(NET_STAT_SLEEP);
+        NetIoInfo endNetInfo = getNetInfo();
+        jsonObject.put("netTxBytes", endNetInfo.getTxbyt() - startNetInfo.getTxbyt());
+        jsonObject.put("netRxBytes", endNetInfo.getRxbyt() - startNetInfo.getRxbyt());
+        return jsonObject;
+    }
+
+    /**
+     * 填充内存、硬盘占用信息
+     *
+     * @param jsonObject json
+     */
+    public static void putMemoryDisk(JSONObject jsonObject) {
         GlobalMemory globalMemory = OshiUtil.getMemory();
         // 在不使用交换空间的情况下，启动一个新的应用最大可用内存的大小，
         // 计算方式：MemFree+Active(file)+Inactive(file)-(watermark+min(watermark,Active(file)+Inactive(file)/2))
@@ -128,17 +144,43 @@ public class OshiUtils {
             used += (fs.getTotalSpace() - fs.getUsableSpace());
         }
         jsonObject.put("disk", NumberUtil.div(used, total, 2) * 100);
-        //
-        NetIoInfo startNetInfo = getNetInfo();
-        //暂停1秒
-        Util.sleep(NET_STAT_SLEEP);
-        NetIoInfo endNetInfo = getNetInfo();
-        jsonObject.put("netTxBytes", endNetInfo.getTxbyt() - startNetInfo.getTxbyt());
-        jsonObject.put("netRxBytes", endNetInfo.getRxbyt() - startNetInfo.getRxbyt());
-        return jsonObject;
     }
 
-    private static NetIoInfo getNetInfo() {
+    /**
+     * 获取 cpu 滴答数
+     *
+     * @return 滴答数
+     */
+    public static long[] getCpuTicks() {
+        return OshiUtil.getProcessor().getSystemCpuLoadTicks();
+    }
+
+    /**
+     * 计算两次滴答数之间的 cpu 使用率（同 CpuInfo 计算逻辑）
+     *
+     * @param prevTicks 上一次的滴答数
+     * @param ticks     当前滴答数
+     * @return 使用率
+     */
+    public static double getCpuUsed(long[] prevTicks, long[] ticks) {
+        long total = 0;
+        for (int i = 0; i < ticks.length; i++) {
+            total += ticks[i] - prevTicks[i];
+        }
+        if (total <= 0) {
+            return 0;
+        }
+        int idleIndex = CentralProcessor.TickType.IDLE.getIndex();
+        long idle = ticks[idleIndex] - prevTicks[idleIndex];
+        return NumberUtil.sub(100, NumberUtil.round(idle * 100D / total, 2).doubleValue());
+    }
+
+    /**
+     * 获取网卡累计流量
+     *
+     * @return 网卡流量
+     */
+    public static NetIoInfo getNetInfo() {
         //
         long rxBytesBegin = 0;
         long txBytesBegin = 0;
@@ -308,7 +350,7 @@ public class OshiUtils {
     }
 
     @Data
-    private static class NetIoInfo {
+    public static class NetIoInfo {
         /**
          * 接收的数据包,rxpck/s
          */
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.common.commander;
+
+import cn.hutool.core.date.SystemClock;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.jpom.util.JvmUtil;
+import org.junit.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 进程表查询项目进程，性能对比需要手动执行
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+@Slf4j
+public class ProcessTableTest {
+
+    private static final String TAG = "jpom-process-table-test";
+
+    private final ProcessTable processTable = new ProcessTable(2000);
+
+    @Before
+    public void before() {
+        Assume.assumeTrue(ProcessTable.isSupported());
+    }
+
+    @Test
+    public void testGetPidByTag() throws Exception {
+        // 多条命令避免 sh 直接 exec 替换掉带标识的命令行
+        Process process = new ProcessBuilder("sh", "-c", "sleep 30; :", "-DJpom.application=" + TAG).start();
+        try {
+            processTable.expire();
+            Integer pid = processTable.getPidByTag(TAG);
+            Assert.assertNotNull(pid);
+            String cmdline = new String(Files.readAllBytes(Paths.get("/proc", String.valueOf(pid), "cmdline")), StandardCharsets.UTF_8);
+            Assert.assertTrue(cmdline.contains("-DJpom.application=" + TAG));
+            // 标识不区分大小写
+            Assert.assertEquals(pid, processTable.getPidByTag(TAG.toUpperCase()));
+            // 刷新间隔内读取索引
+            Assert.assertEquals(pid, processTable.getPidByTag(TAG));
+        } finally {
+            process.destroyForcibly();
+        }
+        Assert.assertTrue(process.waitFor(5, TimeUnit.SECONDS));
+        processTable.expire();
+        Assert.assertNull(processTable.getPidByTag(TAG));
+    }
+
+    @Test
+    public void testNotExist() {
+        Assert.assertNull(processTable.getPidByTag(TAG + "-not-exist"));
+        Assert.assertNull(processTable.getPidByTag(null));
+    }
+
+    @Test
+    @Ignore("手动执行的性能对比，依赖 jps 命令")
+    public void benchJps() {
+        this.bench("jps", 20, () -> JvmUtil.getPidByTag(TAG));
+    }
+
+    /**
+     * 每次都完整扫描 /proc
+     */
+    @Test
+    @Ignore("手动执行的性能对比")
+    public void benchProcessTableRefresh() {
+        this.bench("process-table-refresh", 200, () -> {
+            processTable.expire();
+            return processTable.getPidByTag(TAG);
+        });
+    }
+
+    /**
+     * 刷新间隔内直接读取索引
+     */
+    @Test
+    @Ignore("手动执行的性能对比")
+    public void benchProcessTable() {
+        this.bench("process-table", 100000, () -> processTable.getPidByTag(TAG));
+    }
+
+    private void bench(String name, int invocations, Supplier<Integer> supplier) {
+        // 预热
+        supplier.get();
+        long start = SystemClock.now();
+        for (int i = 0; i < invocations; i++) {
+            supplier.get();
+        }
+        long time = SystemClock.now() - start;
+        log.info("{} invocations:{} total:{}ms avg:{}ms", name, invocations, time, String.format("%.4f", (double) time / invocations));
+    }
+}
@@ -14,10 +14,9 @@ import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.util.*;
 import cn.hutool.crypto.SecureUtil;
 import cn.hutool.extra.servlet.ServletUtil;
-import lombok.Lombok;
+import com.alibaba.fastjson2.JSONObject;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.tomcat.util.http.fileupload.servlet.ServletFileUpload;
-import org.dromara.jpom.util.FileUtils;
 import org.springframework.util.Assert;
 import org.springframework.web.context.request.RequestAttributes;
 import org.springframework.web.context.request.RequestContextHolder;
@@ -28,11 +27,14 @@ import org.springframework.web.multipart.support.StandardMultipartHttpServletReq
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Objects;
 
 /**
@@ -53,8 +55,25 @@ public abstract class BaseJpomController {
         return ServletUtil.getClientIP(getRequest());
     }
 
+    /**
+     * 分片清单文件名，记录已经校验通过的分片
+     */
+    private static final String SLICE_MANIFEST = "manifest.json";
+    /**
+     * 分片清单锁（按照分片 id 分段）
+     */
+    private static final Object[] SLICE_LOCKS = new Object[32];
+
+    static {
+        for (int i = 0; i < SLICE_LOCKS.length; i++) {
+            SLICE_LOCKS[i] = new Object();
+        }
+    }
+
     /**
      * 上传保存分片信息
+     * <p>
+     * 如果请求中携带了 sliceMd5 参数会校验分片签名，校验通过的分片记录到分片清单中用于断点续传
      *
      * @param file       上传的文件信息
      * @param tempPath   临时保存目录
@@ -90,13 +109,108 @@ public abstract class BaseJpomController {
         }
         assert originalFilename != null;
         File slice = FileUtil.file(sliceItemPath, originalFilename);
-        FileUtil.mkParentDirs(slice);
-        // 保存
-        file.transferTo(slice);
+        // 先保存到临时文件，校验通过后再移动到分片目录
+        File temp = FileUtil.file(slicePath, StrUtil.format(".{}.{}.tmp", originalFilename, IdUtil.fastSimpleUUID()));
+        FileUtil.mkParentDirs(temp);
+        file.transferTo(temp);
+        String md5 = SecureUtil.md5(temp);
+        String sliceMd5 = this.getParameter("sliceMd5");
+        if (StrUtil.isNotEmpty(sliceMd5) && !StrUtil.equalsIgnoreCase(sliceMd5, md5)) {
+            FileUtil.del(temp);
+            log.warn("分片签名不一致 {} {}:{} -> {}", sliceId, nowSlice, md5, sliceMd5);
+            throw new IllegalStateException("分片数据不完整,请重新上传");
+        }
+        synchronized (sliceLock(sliceId)) {
+            JSONObject manifest = this.readSliceManifest(slicePath, totalSlice, fileSumMd5, realName);
+            FileUtil.mkParentDirs(slice);
+            FileUtil.move(temp, slice, true);
+            JSONObject item = new JSONObject();
+            item.put("md5", md5);
+            item.put("size", slice.length());
+            manifest.getJSONObject("slices").put(String.valueOf(nowSlice), item);
+            FileUtil.writeUtf8String(manifest.toJSONString(), FileUtil.file(slicePath, SLICE_MANIFEST));
+        }
+    }
+
+    /**
+     * 查询已经上传并且校验通过的分片
+     *
+     * @param tempPath   临时保存目录
+     * @param sliceId    分片id
+     * @param totalSlice 累积分片
+     * @param fileSumMd5 文件签名
+     * @return 分片序号 -> 分片签名
+     */
+    public JSONObject shardingUploaded(String tempPath,
+                                       String sliceId,
+                                       Integer totalSlice,
+                                       String fileSumMd5) {
+        Assert.hasText(fileSumMd5, "没有文件签名信息");
+        Assert.hasText(sliceId, "没有分片 id 信息");
+        Assert.notNull(totalSlice, "上传信息不完成：totalSlice");
+        File slicePath = FileUtil.file(tempPath, "slice", sliceId);
+        File sliceItemPath = FileUtil.file(slicePath, "items");
+        JSONObject result = new JSONObject();
+        synchronized (sliceLock(sliceId)) {
+            File manifestFile = FileUtil.file(slicePath, SLICE_MANIFEST);
+            if (!FileUtil.isFile(manifestFile)) {
+                return result;
+            }
+            JSONObject manifest = JSONObject.parseObject(FileUtil.readUtf8String(manifestFile));
+            if (!StrUtil.equals(manifest.getString("fileSumMd5"), fileSumMd5) || !Objects.equals(manifest.getInteger("totalSlice"), totalSlice)) {
+                return result;
+            }
+            String name = manifest.getString("name");
+            JSONObject slices = manifest.getJSONObject("slices");
+            for (String key : slices.keySet()) {
+                JSONObject item = slices.getJSONObject(key);
+                File slice = FileUtil.file(sliceItemPath, name + StrUtil.DOT + key);
+                // 分片文件被删除或者不完整不计入
+                if (FileUtil.isFile(slice) && slice.length() == item.getLongValue("size")) {
+                    result.put(key, item.getString("md5"));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 读取分片清单，文件信息不一致时清空已有分片
+     *
+     * @param slicePath  分片目录
+     * @param totalSlice 累积分片
+     * @param fileSumMd5 文件签名
+     * @param name       文件名
+     * @return 分片清单
+     */
+    private JSONObject readSliceManifest(File slicePath, Integer totalSlice, String fileSumMd5, String name) {
+        File manifestFile = FileUtil.file(slicePath, SLICE_MANIFEST);
+        if (FileUtil.isFile(manifestFile)) {
+            JSONObject manifest = JSONObject.parseObject(FileUtil.readUtf8String(manifestFile));
+            if (StrUtil.equals(manifest.getString("fileSumMd5"), fileSumMd5)
+                && Objects.equals(manifest.getInteger("totalSlice"), totalSlice)
+                && StrUtil.equals(manifest.getString("name"), name)) {
+                return manifest;
+            }
+            // 同一个分片 id 上传了不同的文件，之前的分片不能再使用
+            FileUtil.del(FileUtil.file(slicePath, "items"));
+        }
+        JSONObject manifest = new JSONObject();
+        manifest.put("fileSumMd5", fileSumMd5);
+        manifest.put("totalSlice", totalSlice);
+        manifest.put("name", name);
+        manifest.put("slices", new JSONObject());
+        return manifest;
+    }
+
+    private static Object sliceLock(String sliceId) {
+        return SLICE_LOCKS[(sliceId.hashCode() & Integer.MAX_VALUE) % SLICE_LOCKS.length];
     }
 
     /**
      * 合并分片
+     * <p>
+     * 先按照分片总大小预分配目标文件，再将每个分片写入到对应的位置
      *
      * @param tempPath   临时保存目录
      * @param sliceId    上传id
@@ -122,28 +236,36 @@ public abstract class BaseJpomController {
         File[] files = sliceItemPath.listFiles();
         int length = ArrayUtil.length(files);
         Assert.state(files != null && length == totalSlice, "文件上传失败,存在分片丢失的情况, " + length + " != " + totalSlice);
+        // 排序
+        Arrays.sort(files, Comparator.comparing(file -> Convert.toInt(FileUtil.extName(file), 0)));
         // 文件真实名称
         String name = files[0].getName();
         name = StrUtil.subBefore(name, StrUtil.DOT, true);
         File successFile = FileUtil.file(slicePath, name);
-        try (FileOutputStream fileOutputStream = new FileOutputStream(successFile)) {
-            try (FileChannel channel = fileOutputStream.getChannel()) {
-                Arrays.stream(files).sorted((o1, o2) -> {
-                    // 排序
-                    Integer o1Int = Convert.toInt(FileUtil.extName(o1), 0);
-                    Integer o2Int = Convert.toInt(FileUtil.extName(o2), 0);
-                    return o1Int.compareTo(o2Int);
-                }).forEach(file12 -> {
-                    try {
-                        FileUtils.appendChannel(file12, channel);
-                    } catch (Exception e) {
-                        throw Lombok.sneakyThrow(e);
+        long totalSize = Arrays.stream(files).mapToLong(File::length).sum();
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(successFile, "rw")) {
+            // 预分配文件大小
+            randomAccessFile.setLength(totalSize);
+            FileChannel channel = randomAccessFile.getChannel();
+            long position = 0;
+            for (File item : files) {
+                try (FileChannel itemChannel = FileChannel.open(item.toPath(), StandardOpenOption.READ)) {
+                    long size = itemChannel.size();
+                    long written = 0;
+                    while (written < size) {
+                        long count = channel.transferFrom(itemChannel, position + written, size - written);
+                        if (count <= 0) {
+                            throw new EOFException("分片文件长度异常：" + item.getAbsolutePath());
+                        }
+                        written += count;
                     }
-                });
+                    position += size;
+                }
             }
         }
         // 删除分片信息
         FileUtil.del(sliceItemPath);
+        FileUtil.del(FileUtil.file(slicePath, SLICE_MANIFEST));
         // 对比文件信息
         String newMd5 = SecureUtil.md5(successFile);
         Assert.state(StrUtil.equals(newMd5, fileSumMd5), () -> {
@@ -34,6 +34,16 @@ public class ServerOpenApi {
     public static final String RECEIVE_PUSH = API + "node/receive_push";
 
     public static final String PUSH_NODE_KEY = "--auto-push-to-server";
+
+    /**
+     * 节点推送心跳（websocket）
+     */
+    public static final String NODE_HEARTBEAT = API + "node/heartbeat";
+
+    /**
+     * 节点推送心跳时携带的安装 id
+     */
+    public static final String NODE_HEARTBEAT_INSTALL_ID = "Jpom-Install-Id";
     /**
      * 触发构建(新), 第一级构建id,第二级token
      */
@@ -9,24 +9,29 @@
  */
 package org.dromara.jpom.util;
 
-import cn.hutool.core.date.DateUnit;
+import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.io.IoUtil;
-import cn.hutool.core.io.file.Tailer;
-import cn.hutool.core.util.ReflectUtil;
+import cn.hutool.core.map.SafeConcurrentHashMap;
 import cn.hutool.core.util.StrUtil;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.util.Assert;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Method;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 文件跟随器工具
+ * <p>
+ * 文件变化的监听、读取、发送都由 {@link FileTailService} 统一调度，每个会话有独立的待发送队列，
+ * 按照固定间隔把多行日志合并为一条消息发送，会话发送过慢时丢弃最早的日志
  *
  * @author bwcx_jzy
  * @since 2019/7/21
@@ -35,6 +40,18 @@ import java.util.Set;
 public abstract class BaseFileTailWatcher<T extends AutoCloseable> {
 
     private static int initReadLine = 10;
+    /**
+     * 每个会话最多缓存的待发送行数
+     */
+    private static final int MAX_QUEUE_LINE = 5000;
+    /**
+     * 单条消息最大字符数
+     */
+    private static final int MAX_FRAME_SIZE = 64 * 1024;
+    /**
+     * 单行最大字节数，超过后直接作为一行
+     */
+    private static final int MAX_LINE_SIZE = 1024 * 1024;
 
     public static void setInitReadLine(int initReadLine) {
         BaseFileTailWatcher.initReadLine = initReadLine;
@@ -46,12 +63,21 @@ public abstract class BaseFileTailWatcher<T extends AutoCloseable> {
      * 缓存近x条
      */
     private final LimitQueue<String> limitQueue = new LimitQueue<>(initReadLine);
-    private Tailer tailer;
-
     /**
-     * 所有会话
+     * 所有会话，会话id -> 待发送队列
+     */
+    private final Map<String, SessionQueue<T>> sessionMap = new SafeConcurrentHashMap<>();
+    /**
+     * 是否已经有等待执行的读取任务
      */
-    protected final Set<T> socketSessions = new HashSet<>();
+    final AtomicBoolean readPending = new AtomicBoolean(false);
+    private final ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream();
+    private volatile boolean started;
+    /**
+     * 已经读取的位置
+     */
+    private volatile long position;
+    private Object fileKey;
 
     public BaseFileTailWatcher(File logFile, Charset charset) {
         this.logFile = logFile;
@@ -69,91 +95,280 @@ public abstract class BaseFileTailWatcher<T extends AutoCloseable> {
     protected abstract boolean send(T session, String msg) throws IOException;
 
     /**
-     * 有新的日志
+     * 获取会话id
      *
-     * @param msg 日志
-     */
-    private void sendAll(String msg) {
-        Iterator<T> iterator = socketSessions.iterator();
-        while (iterator.hasNext()) {
-            T socketSession = iterator.next();
-            try {
-                boolean send = this.send(socketSession, msg);
-                if (!send) {
-                    //
-                    this.errorAutoClose(socketSession);
-                    iterator.remove();
-                }
-            } catch (Exception e) {
-                log.error("发送消息失败", e);
-                this.errorAutoClose(socketSession);
-                iterator.remove();
+     * @param session 会话
+     * @return id
+     */
+    protected abstract String getId(T session);
+
+    private void errorAutoClose(String id, SessionQueue<T> queue) {
+        log.warn("消息发送失败,自动移除此会话:{}", id);
+        IoUtil.close(queue.session);
+        if (sessionMap.remove(id, queue) && sessionMap.isEmpty()) {
+            this.close();
+        }
+    }
+
+    /**
+     * 添加监听会话
+     *
+     * @param session 会话
+     * @param name    文件名
+     * @return 会话已经存在返回 false
+     */
+    protected boolean add(T session, String name) {
+        String id = this.getId(session);
+        // 和读取文件使用同一把锁，保证最近的日志和新增的日志不重复不遗漏
+        synchronized (this) {
+            if (sessionMap.containsKey(id)) {
+                return false;
             }
+            SessionQueue<T> queue = new SessionQueue<>(session);
+            queue.offer(StrUtil.format("监听{}日志成功,目前共有{}个会话正在查看", name, sessionMap.size() + 1));
+            // 开发发送头信息
+            limitQueue.forEach(queue::offer);
+            sessionMap.put(id, queue);
         }
-        if (this.socketSessions.isEmpty()) {
-            this.close();
+        return true;
+    }
+
+    /**
+     * 移除会话
+     *
+     * @param session 会话
+     * @return 是否存在
+     */
+    protected boolean remove(T session) {
+        return sessionMap.remove(this.getId(session)) != null;
+    }
+
+    /**
+     * 是否还有会话
+     *
+     * @return true 没有会话
+     */
+    protected boolean isEmpty() {
+        return sessionMap.isEmpty();
+    }
+
+    /**
+     * 获取所有会话
+     *
+     * @return list
+     */
+    protected List<T> sessions() {
+        List<T> list = new ArrayList<>(sessionMap.size());
+        sessionMap.values().forEach(queue -> list.add(queue.session));
+        return list;
+    }
+
+    /**
+     * 开始跟随文件，已经开始的不重复执行
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
         }
+        this.started = true;
+        this.resetPosition();
+        this.readNew();
+        FileTailService.getInstance().register(this);
     }
 
-    private void errorAutoClose(T socketSession) {
-        log.warn("消息发送失败,自动移除此会话:{}", this.getId(socketSession));
-        IoUtil.close(socketSession);
+    public synchronized void restart() {
+        if (!started) {
+            this.start();
+            return;
+        }
+        this.offerAll("Relisten to the file............");
+        this.resetPosition();
+        this.readNew();
+    }
+
+    /**
+     * 从文件最后几行开始读取
+     */
+    private void resetPosition() {
+        lineBuffer.reset();
+        try {
+            this.position = FileUtils.tailOffset(logFile, initReadLine);
+            this.fileKey = this.readFileKey();
+        } catch (IOException e) {
+            log.warn("读取跟随文件失败 {} {}", logFile.getAbsolutePath(), e.getMessage());
+            this.position = 0;
+            this.fileKey = null;
+        }
     }
 
-    private String getId(T session) {
-        Method byName = ReflectUtil.getMethodByName(session.getClass(), "getId");
-        Assert.notNull(byName, "没有  getId 方法");
-        return ReflectUtil.invoke(session, byName);
+    private Object readFileKey() throws IOException {
+        return Files.readAttributes(logFile.toPath(), BasicFileAttributes.class).fileKey();
     }
 
     /**
-     * 添加监听会话
+     * 文件大小是否有变化
      *
-     * @param name    文件名
-     * @param session 会话
+     * @return true 需要读取
      */
-    protected boolean add(T session, String name) throws IOException {
-        String id = getId(session);
-        Method byName = ReflectUtil.getMethodByName(session.getClass(), "getId");
-        boolean match = this.socketSessions.stream()
-            .anyMatch(t -> {
-                String itemId = ReflectUtil.invoke(t, byName);
-                return StrUtil.equals(id, itemId);
-            });
-        if (match) {
-            return false;
+    boolean changed() {
+        return started && logFile.exists() && logFile.length() != position;
+    }
+
+    /**
+     * 读取文件新增的内容
+     */
+    synchronized void readNew() {
+        if (!started || !logFile.exists()) {
+            return;
         }
-        if (this.socketSessions.add(session)) {
-            this.send(session, StrUtil.format("监听{}日志成功,目前共有{}个会话正在查看", name, this.socketSessions.size()));
-            // 开发发送头信息
-            for (String s : limitQueue) {
-                this.send(session, s);
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(logFile, "r")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            long length = channel.size();
+            Object nowFileKey = this.readFileKey();
+            if (length < position || !Objects.equals(nowFileKey, fileKey)) {
+                // 文件被清空或者重新创建，从头读取
+                this.position = 0;
+                this.fileKey = nowFileKey;
+                lineBuffer.reset();
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            while (position < length) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                byte[] array = buffer.array();
+                int start = 0;
+                for (int i = 0; i < read; i++) {
+                    if (array[i] == '\n') {
+                        lineBuffer.write(array, start, i - start);
+                        this.newLine();
+                        start = i + 1;
+                    }
+                }
+                lineBuffer.write(array, start, read - start);
+                if (lineBuffer.size() > MAX_LINE_SIZE) {
+                    this.newLine();
+                }
+                this.position += read;
             }
+        } catch (IOException e) {
+            log.warn("读取跟随文件失败 {} {}", logFile.getAbsolutePath(), e.getMessage());
         }
-        return true;
     }
 
-    public void start() {
-        //this.tailWatcherRun = new FileTailWatcherRun(logFile, this::sendAll);
-        this.tailer = new Tailer(logFile, charset, line -> {
-            limitQueue.offer(line);
-            this.sendAll(line);
-        }, initReadLine, DateUnit.SECOND.getMillis());
-        this.tailer.start(true);
+    private void newLine() {
+        byte[] bytes = lineBuffer.toByteArray();
+        lineBuffer.reset();
+        int length = bytes.length;
+        if (length > 0 && bytes[length - 1] == '\r') {
+            length--;
+        }
+        this.offerAll(new String(bytes, 0, length, charset));
     }
 
-    public void restart() {
-        if (this.tailer != null) {
-            this.tailer.stop();
+    private void offerAll(String line) {
+        limitQueue.offer(line);
+        for (SessionQueue<T> queue : sessionMap.values()) {
+            queue.offer(line);
         }
-        this.sendAll("Relisten to the file............");
-        this.start();
+    }
+
+    /**
+     * 发送所有会话待发送的日志，上一次还没有发送完成的会话继续累积
+     */
+    void flush() {
+        sessionMap.forEach((id, queue) -> {
+            if (!queue.sending.compareAndSet(false, true)) {
+                return;
+            }
+            if (queue.isEmpty()) {
+                queue.sending.set(false);
+                return;
+            }
+            boolean submitted = FileTailService.getInstance().send(() -> {
+                try {
+                    String msg;
+                    while ((msg = queue.drain()) != null) {
+                        if (!this.send(queue.session, msg)) {
+                            this.errorAutoClose(id, queue);
+                            break;
+                        }
+                    }
+                } catch (Exception e) {
+                    log.error("发送消息失败", e);
+                    this.errorAutoClose(id, queue);
+                } finally {
+                    queue.sending.set(false);
+                }
+            });
+            if (!submitted) {
+                queue.sending.set(false);
+            }
+        });
     }
 
     /**
      * 关闭
      */
     protected void close() {
-        this.tailer.stop();
+        this.started = false;
+        FileTailService.getInstance().unregister(this);
+    }
+
+    /**
+     * 会话待发送队列
+     *
+     * @param <T> 会话类型
+     */
+    private static class SessionQueue<T> {
+        private final T session;
+        private final Deque<String> lines = new ArrayDeque<>();
+        private final AtomicBoolean sending = new AtomicBoolean(false);
+        /**
+         * 队列满后丢弃的行数
+         */
+        private int dropped;
+
+        private SessionQueue(T session) {
+            this.session = session;
+        }
+
+        private synchronized void offer(String line) {
+            if (lines.size() >= MAX_QUEUE_LINE) {
+                lines.pollFirst();
+                dropped++;
+            }
+            lines.offerLast(line);
+        }
+
+        private synchronized boolean isEmpty() {
+            return lines.isEmpty() && dropped == 0;
+        }
+
+        /**
+         * 取出待发送的日志，多行合并为一条消息
+         *
+         * @return 没有待发送的日志返回 null
+         */
+        private synchronized String drain() {
+            if (this.isEmpty()) {
+                return null;
+            }
+            List<String> list = new ArrayList<>();
+            if (dropped > 0) {
+                list.add(StrUtil.format("...... 发送过慢,已经丢弃 {} 行日志 ......", dropped));
+                dropped = 0;
+            }
+            int size = 0;
+            String line;
+            while (size < MAX_FRAME_SIZE && (line = lines.pollFirst()) != null) {
+                list.add(line);
+                size += line.length();
+            }
+            // 前端按照 \r\n 拆分为多行
+            return CollUtil.join(list, StrUtil.CRLF);
+        }
     }
 }
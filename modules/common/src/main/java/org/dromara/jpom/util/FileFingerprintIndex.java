@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.util;
+
+import cn.hutool.core.date.SystemClock;
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.map.SafeConcurrentHashMap;
+import cn.hutool.core.thread.ExecutorBuilder;
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.core.util.CharsetUtil;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.RuntimeUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.SecureUtil;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import lombok.Lombok;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.jpom.JpomApplication;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 文件签名（sha1）索引
+ * <p>
+ * 按照目录持久化保存文件的大小、修改时间、文件标识（inode）和签名，再次计算时只有文件信息变化的才重新计算签名，
+ * 需要计算签名的文件使用线程池并行计算。长时间未使用的索引会从内存中移除，索引文件也会被删除
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+@Slf4j
+public class FileFingerprintIndex {
+
+    private static final Map<String, FileFingerprintIndex> INDEX_MAP = new SafeConcurrentHashMap<>();
+    /**
+     * 修改时间距离当前时间小于此值的文件不缓存签名，避免同一时间刻度内文件再次被修改无法识别
+     */
+    private static final long RACY_MILLIS = 2000;
+    /**
+     * 内存中的索引多久未使用移除
+     */
+    private static final long IDLE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    /**
+     * 索引文件多久未使用删除
+     */
+    private static final long EXPIRE_MILLIS = TimeUnit.DAYS.toMillis(7);
+    private static volatile long lastSweepTime;
+    private static volatile ThreadPoolExecutor hashExecutor;
+
+    private final File storeFile;
+    /**
+     * 文件绝对路径 -> [大小、修改时间、文件标识、签名]
+     */
+    private Map<String, Entry> entries;
+    private volatile long lastAccess = SystemClock.now();
+
+    private FileFingerprintIndex(File storeFile) {
+        this.storeFile = storeFile;
+    }
+
+    /**
+     * 获取目录对应的签名索引，索引保存在数据目录中
+     *
+     * @param root 目录
+     * @return 索引
+     */
+    public static FileFingerprintIndex of(File root) {
+        File storeDir = FileUtil.file(JpomApplication.getInstance().getDataPath(), "fingerprint");
+        return of(storeDir, root);
+    }
+
+    /**
+     * 获取目录对应的签名索引
+     *
+     * @param storeDir 索引保存目录
+     * @param root     目录
+     * @return 索引
+     */
+    public static FileFingerprintIndex of(File storeDir, File root) {
+        String rootPath = FileUtil.getAbsolutePath(root);
+        File storeFile = FileUtil.file(storeDir, SecureUtil.md5(rootPath) + ".json");
+        sweep(storeDir, false);
+        FileFingerprintIndex index = INDEX_MAP.computeIfAbsent(FileUtil.getAbsolutePath(storeFile), s -> new FileFingerprintIndex(storeFile));
+        index.lastAccess = SystemClock.now();
+        return index;
+    }
+
+    /**
+     * 清理数据目录中长时间未使用的索引
+     */
+    public static void cleanExpired() {
+        File storeDir = FileUtil.file(JpomApplication.getInstance().getDataPath(), "fingerprint");
+        sweep(storeDir, true);
+    }
+
+    /**
+     * 移除长时间未使用的索引（非强制时最多每个小时执行一次）
+     *
+     * @param storeDir 索引保存目录
+     * @param force    是否强制执行
+     */
+    private static void sweep(File storeDir, boolean force) {
+        long now = SystemClock.now();
+        if (!force && now - lastSweepTime < IDLE_MILLIS) {
+            return;
+        }
+        lastSweepTime = now;
+        INDEX_MAP.entrySet().removeIf(entry -> now - entry.getValue().lastAccess > IDLE_MILLIS);
+        File[] files = storeDir.listFiles((dir, name) -> StrUtil.endWith(name, ".json"));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            // 使用时会更新索引文件的修改时间
+            if (now - file.lastModified() > EXPIRE_MILLIS && !INDEX_MAP.containsKey(FileUtil.getAbsolutePath(file))) {
+                FileUtil.del(file);
+            }
+        }
+    }
+
+    /**
+     * 计算文件签名，文件信息没有变化的直接使用索引中的签名
+     *
+     * @param files 文件列表（需要是目录下的全部文件，不在列表中的文件会从索引中移除）
+     * @return 文件 -> sha1
+     */
+    public synchronized Map<File, String> sha1(Collection<File> files) {
+        if (entries == null) {
+            entries = this.load();
+        }
+        long now = SystemClock.now();
+        Map<String, Entry> newEntries = new HashMap<>(files.size());
+        Map<File, String> result = new LinkedHashMap<>(files.size());
+        Map<File, Entry> missMap = new LinkedHashMap<>();
+        for (File file : files) {
+            Entry entry = Entry.of(file);
+            Entry cache = entries.get(entry.path);
+            if (cache != null && cache.same(entry)) {
+                newEntries.put(entry.path, cache);
+                result.put(file, cache.sha1);
+            } else {
+                missMap.put(file, entry);
+                // 先占位保证返回顺序
+                result.put(file, null);
+            }
+        }
+        Map<File, String> hashMap = sha1Parallel(missMap.keySet());
+        missMap.forEach((file, entry) -> {
+            entry.sha1 = hashMap.get(file);
+            result.put(file, entry.sha1);
+            if (now - entry.modified >= RACY_MILLIS) {
+                newEntries.put(entry.path, entry);
+            }
+        });
+        boolean changed = !missMap.isEmpty() || newEntries.size() != entries.size();
+        this.entries = newEntries;
+        if (changed) {
+            this.save();
+        } else if (now - storeFile.lastModified() > TimeUnit.DAYS.toMillis(1)) {
+            // 标记索引仍在使用，避免被清理
+            storeFile.setLastModified(now);
+        }
+        this.lastAccess = now;
+        log.debug("文件签名索引 {} 个文件,重新计算 {} 个", files.size(), missMap.size());
+        return result;
+    }
+
+    /**
+     * 并行计算文件签名（不使用索引）
+     *
+     * @param files 文件列表
+     * @return 文件 -> sha1
+     */
+    public static Map<File, String> sha1Parallel(Collection<File> files) {
+        Map<File, String> result = new LinkedHashMap<>(files.size());
+        if (files.isEmpty()) {
+            return result;
+        }
+        if (files.size() == 1) {
+            File file = files.iterator().next();
+            result.put(file, SecureUtil.sha1(file));
+            return result;
+        }
+        ThreadPoolExecutor executor = getHashExecutor();
+        Map<File, Future<String>> futureMap = new LinkedHashMap<>(files.size());
+        for (File file : files) {
+            futureMap.put(file, executor.submit(() -> SecureUtil.sha1(file)));
+        }
+        try {
+            for (Map.Entry<File, Future<String>> entry : futureMap.entrySet()) {
+                result.put(entry.getKey(), entry.getValue().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futureMap.values().forEach(future -> future.cancel(true));
+            throw Lombok.sneakyThrow(e);
+        } catch (ExecutionException e) {
+            futureMap.values().forEach(future -> future.cancel(true));
+            throw Lombok.sneakyThrow(e.getCause());
+        }
+        return result;
+    }
+
+    private static ThreadPoolExecutor getHashExecutor() {
+        if (hashExecutor == null) {
+            synchronized (FileFingerprintIndex.class) {
+                if (hashExecutor == null) {
+                    int poolSize = RuntimeUtil.getProcessorCount();
+                    ExecutorBuilder executorBuilder = ExecutorBuilder.create();
+                    executorBuilder.setCorePoolSize(poolSize).setMaxPoolSize(poolSize);
+                    executorBuilder.setThreadFactory(ThreadUtil.newNamedThreadFactory("file-fingerprint-", true));
+                    // 队列满时由提交线程计算
+                    executorBuilder.setHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+                    ThreadPoolExecutor threadPoolExecutor = executorBuilder.build();
+                    JpomApplication.register("file-fingerprint", threadPoolExecutor);
+                    hashExecutor = threadPoolExecutor;
+                }
+            }
+        }
+        return hashExecutor;
+    }
+
+    private Map<String, Entry> load() {
+        Map<String, Entry> map = new HashMap<>();
+        if (!FileUtil.isFile(storeFile)) {
+            return map;
+        }
+        try {
+            JSONObject jsonObject = JSONObject.parseObject(FileUtil.readString(storeFile, CharsetUtil.CHARSET_UTF_8));
+            for (Map.Entry<String, Object> item : jsonObject.entrySet()) {
+                JSONArray array = (JSONArray) item.getValue();
+                Entry entry = new Entry(item.getKey(), array.getLongValue(0), array.getLongValue(1), array.getString(2));
+                entry.sha1 = array.getString(3);
+                map.put(entry.path, entry);
+            }
+        } catch (Exception e) {
+            // 索引损坏重新计算即可
+            log.warn("读取文件签名索引失败 {} {}", storeFile.getAbsolutePath(), e.getMessage());
+            map.clear();
+        }
+        return map;
+    }
+
+    private void save() {
+        JSONObject jsonObject = new JSONObject();
+        for (Entry entry : entries.values()) {
+            JSONArray array = new JSONArray();
+            array.add(entry.size);
+            array.add(entry.modified);
+            array.add(entry.fileKey);
+            array.add(entry.sha1);
+            jsonObject.put(entry.path, array);
+        }
+        File parent = storeFile.getParentFile();
+        FileUtil.mkdir(parent);
+        File temp = FileUtil.file(parent, StrUtil.format(".{}.{}.tmp", storeFile.getName(), IdUtil.fastSimpleUUID()));
+        FileUtil.writeString(jsonObject.toJSONString(), temp, CharsetUtil.CHARSET_UTF_8);
+        try {
+            try {
+                Files.move(temp.toPath(), storeFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), storeFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            FileUtil.del(temp);
+            log.warn("保存文件签名索引失败 {}", storeFile.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * 索引项
+     */
+    private static class Entry {
+        private final String path;
+        private final long size;
+        private final long modified;
+        private final String fileKey;
+        private String sha1;
+
+        private Entry(String path, long size, long modified, String fileKey) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.fileKey = fileKey;
+        }
+
+        private static Entry of(File file) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                // windows 下没有文件标识
+                Object fileKey = attributes.fileKey();
+                return new Entry(file.getAbsolutePath(), attributes.size(), attributes.lastModifiedTime().toMillis(), StrUtil.toStringOrNull(fileKey));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private boolean same(Entry entry) {
+            return size == entry.size && modified == entry.modified && StrUtil.equals(fileKey, entry.fileKey) && sha1 != null;
+        }
+    }
+}
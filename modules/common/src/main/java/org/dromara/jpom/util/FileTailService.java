@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.util;
+
+import cn.hutool.core.map.SafeConcurrentHashMap;
+import cn.hutool.core.thread.ExecutorBuilder;
+import cn.hutool.core.thread.ThreadUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.jpom.JpomApplication;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 文件跟随服务
+ * <p>
+ * 所有跟随的文件共用：一个线程监听文件所在目录的变化（WatchService），一个小的线程池读取文件新增内容，
+ * 一个线程池给会话发送消息。定时检查文件大小兜底（部分文件系统不支持变动通知），定时批量发送每个会话待发送的日志
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+@Slf4j
+public class FileTailService {
+
+    /**
+     * 批量发送间隔
+     */
+    public static final long FLUSH_INTERVAL = 200;
+    /**
+     * 检查文件大小间隔
+     */
+    private static final long POLL_INTERVAL = 1000;
+
+    private static volatile FileTailService instance;
+
+    /**
+     * 目录 -> 跟随的文件
+     */
+    private final Map<Path, Set<BaseFileTailWatcher<?>>> dirWatchers = new SafeConcurrentHashMap<>();
+    private final Map<Path, WatchKey> dirKeys = new SafeConcurrentHashMap<>();
+    private final WatchService watchService;
+    private final ThreadPoolExecutor readExecutor;
+    private final ThreadPoolExecutor sendExecutor;
+
+    private FileTailService() {
+        this.readExecutor = this.createExecutor("file-tail-read", 2);
+        this.sendExecutor = this.createExecutor("file-tail-send", 4);
+        WatchService service = null;
+        try {
+            service = FileSystems.getDefault().newWatchService();
+            Thread thread = new Thread(this::watchLoop, "file-tail-watch");
+            thread.setDaemon(true);
+            thread.start();
+        } catch (IOException | UnsupportedOperationException e) {
+            log.warn("当前系统不支持监听文件变化，只定时检查文件：{}", e.getMessage());
+        }
+        this.watchService = service;
+        JpomApplication.getScheduledExecutorService().scheduleWithFixedDelay(this::poll, POLL_INTERVAL, POLL_INTERVAL, TimeUnit.MILLISECONDS);
+        JpomApplication.getScheduledExecutorService().scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    public static FileTailService getInstance() {
+        if (instance == null) {
+            synchronized (FileTailService.class) {
+                if (instance == null) {
+                    instance = new FileTailService();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private ThreadPoolExecutor createExecutor(String name, int poolSize) {
+        ExecutorBuilder executorBuilder = ExecutorBuilder.create();
+        executorBuilder.setCorePoolSize(poolSize).setMaxPoolSize(poolSize);
+        executorBuilder.setThreadFactory(ThreadUtil.newNamedThreadFactory(name + "-", true));
+        ThreadPoolExecutor threadPoolExecutor = executorBuilder.build();
+        JpomApplication.register(name, threadPoolExecutor);
+        return threadPoolExecutor;
+    }
+
+    /**
+     * 开始跟随文件
+     *
+     * @param watcher 文件跟随器
+     */
+    void register(BaseFileTailWatcher<?> watcher) {
+        Path dir = watcher.logFile.getAbsoluteFile().toPath().getParent();
+        dirWatchers.computeIfAbsent(dir, path -> {
+            if (watchService != null) {
+                try {
+                    WatchKey watchKey = path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                    dirKeys.put(path, watchKey);
+                } catch (IOException e) {
+                    log.warn("监听目录变化失败 {} {}", path, e.getMessage());
+                }
+            }
+            return ConcurrentHashMap.newKeySet();
+        }).add(watcher);
+    }
+
+    /**
+     * 停止跟随文件
+     *
+     * @param watcher 文件跟随器
+     */
+    void unregister(BaseFileTailWatcher<?> watcher) {
+        Path dir = watcher.logFile.getAbsoluteFile().toPath().getParent();
+        dirWatchers.computeIfPresent(dir, (path, watchers) -> {
+            watchers.remove(watcher);
+            if (!watchers.isEmpty()) {
+                return watchers;
+            }
+            WatchKey watchKey = dirKeys.remove(path);
+            if (watchKey != null) {
+                watchKey.cancel();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 读取文件新增内容，同一个文件同时只会有一个读取任务
+     *
+     * @param watcher 文件跟随器
+     */
+    void scheduleRead(BaseFileTailWatcher<?> watcher) {
+        if (watcher.readPending.compareAndSet(false, true)) {
+            try {
+                readExecutor.execute(() -> {
+                    watcher.readPending.set(false);
+                    watcher.readNew();
+                });
+            } catch (RejectedExecutionException e) {
+                // 队列已满，等待下次轮询再读取
+                watcher.readPending.set(false);
+            }
+        }
+    }
+
+    /**
+     * 发送会话待发送的日志，同一个会话同时只会有一个发送任务。发送慢的会话不会影响其他会话
+     *
+     * @param runnable 发送任务
+     * @return 队列已满没有提交成功返回 false，需要等待下次发送
+     */
+    boolean send(Runnable runnable) {
+        try {
+            sendExecutor.execute(runnable);
+            return true;
+        } catch (RejectedExecutionException e) {
+            log.debug("日志发送队列已满，等待下次发送");
+            return false;
+        }
+    }
+
+    private void watchLoop() {
+        while (true) {
+            WatchKey watchKey;
+            try {
+                watchKey = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path dir = (Path) watchKey.watchable();
+            Set<BaseFileTailWatcher<?>> watchers = dirWatchers.get(dir);
+            if (watchers != null) {
+                for (WatchEvent<?> event : watchKey.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        watchers.forEach(this::scheduleRead);
+                        continue;
+                    }
+                    Path path = dir.resolve((Path) event.context());
+                    for (BaseFileTailWatcher<?> watcher : watchers) {
+                        if (path.equals(watcher.logFile.getAbsoluteFile().toPath())) {
+                            this.scheduleRead(watcher);
+                        }
+                    }
+                }
+            } else {
+                watchKey.pollEvents();
+            }
+            watchKey.reset();
+        }
+    }
+
+    private void poll() {
+        try {
+            for (Set<BaseFileTailWatcher<?>> watchers : dirWatchers.values()) {
+                for (BaseFileTailWatcher<?> watcher : watchers) {
+                    if (watcher.changed()) {
+                        this.scheduleRead(watcher);
+                    }
+                }
+            }
+        } catch (Throwable e) {
+            log.error("检查跟随文件异常", e);
+        }
+    }
+
+    private void flush() {
+        try {
+            for (Set<BaseFileTailWatcher<?>> watchers : dirWatchers.values()) {
+                for (BaseFileTailWatcher<?> watcher : watchers) {
+                    watcher.flush();
+                }
+            }
+        } catch (Throwable e) {
+            log.error("发送跟随文件日志异常", e);
+        }
+    }
+}
@@ -24,9 +24,13 @@ import lombok.Lombok;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -186,6 +190,65 @@ public class FileUtils {
         }
     }
 
+    /**
+     * 移动文件（优先使用原子重命名，不支持时普通移动，跨磁盘时会复制），目标文件存在会覆盖
+     *
+     * @param src    源文件
+     * @param target 目标文件
+     * @throws IOException io
+     */
+    public static void move(File src, File target) throws IOException {
+        FileUtil.mkParentDirs(target);
+        try {
+            Files.move(src.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(src.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 从文件末尾向前查找最后几行的开始位置
+     *
+     * @param file 文件
+     * @param line 行数
+     * @return 开始位置
+     * @throws IOException io
+     */
+    public static long tailOffset(File file, int line) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            long length = channel.size();
+            if (line <= 0) {
+                return length;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            long position = length;
+            int count = 0;
+            while (position > 0) {
+                int size = (int) Math.min(buffer.capacity(), position);
+                position -= size;
+                buffer.clear();
+                buffer.limit(size);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) {
+                        break;
+                    }
+                }
+                byte[] array = buffer.array();
+                for (int i = size - 1; i >= 0; i--) {
+                    // 文件最后的换行符不算一行
+                    if (array[i] != '\n' || position + i == length - 1) {
+                        continue;
+                    }
+                    if (++count == line) {
+                        return position + i + 1;
+                    }
+                }
+            }
+            return 0;
+        }
+    }
+
     /**
      * 使用当前系统的换行符写文件
      *
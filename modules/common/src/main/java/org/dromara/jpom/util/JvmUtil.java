@@ -137,4 +137,24 @@ public class JvmUtil {
         }
         return false;
     }
+
+    /**
+     * 从单个命令行参数中解析 jpom 标识
+     *
+     * @param arg 命令行参数，如：-DJpom.application=xxx
+     * @return 标识（小写），不是 jpom 标识返回 null
+     */
+    public static String parseJpomTag(String arg) {
+        if (StrUtil.isEmpty(arg)) {
+            return null;
+        }
+        for (String s : JPOM_PID_TAG) {
+            String prefix = String.format("-%s=", s);
+            if (StrUtil.startWithIgnoreCase(arg, prefix)) {
+                String tag = arg.substring(prefix.length());
+                return StrUtil.isEmpty(tag) ? null : tag.toLowerCase();
+            }
+        }
+        return null;
+    }
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package cn;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.RandomUtil;
+import cn.hutool.crypto.SecureUtil;
+import org.databene.contiperf.PerfTest;
+import org.databene.contiperf.junit.ContiPerfRule;
+import org.dromara.jpom.util.FileFingerprintIndex;
+import org.junit.*;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 文件签名索引性能对比，文件个数可以通过 -Dfingerprint.files=40000 调整
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+public class TestFileFingerprintIndex {
+
+    @Rule
+    public ContiPerfRule i = new ContiPerfRule();
+
+    private static File root;
+    private static File storeDir;
+    private static List<File> files;
+
+    @BeforeClass
+    public static void before() {
+        int count = Integer.getInteger("fingerprint.files", 2000);
+        root = FileUtil.file(FileUtil.getTmpDir(), "jpom-fingerprint-test", "root");
+        storeDir = FileUtil.file(FileUtil.getTmpDir(), "jpom-fingerprint-test", "index");
+        FileUtil.del(root.getParentFile());
+        long modified = System.currentTimeMillis() - 60_000;
+        for (int j = 0; j < count; j++) {
+            File file = FileUtil.file(root, "dir" + (j % 50), j + ".js");
+            FileUtil.writeBytes(RandomUtil.randomBytes(RandomUtil.randomInt(1024, 16 * 1024)), file);
+            file.setLastModified(modified);
+        }
+        files = FileUtil.loopFiles(root);
+        // 预热索引
+        FileFingerprintIndex.of(storeDir, root).sha1(files);
+    }
+
+    @AfterClass
+    public static void after() {
+        FileUtil.del(root.getParentFile());
+    }
+
+    @Test
+    public void testSame() {
+        Map<File, String> map = FileFingerprintIndex.of(storeDir, root).sha1(files);
+        for (File file : files) {
+            Assert.assertEquals(SecureUtil.sha1(file), map.get(file));
+        }
+        // 修改文件后需要重新计算
+        File file = files.get(0);
+        FileUtil.writeUtf8String("changed", file);
+        map = FileFingerprintIndex.of(storeDir, root).sha1(files);
+        Assert.assertEquals(SecureUtil.sha1(file), map.get(file));
+    }
+
+    @Test
+    @PerfTest(invocations = 3)
+    public void testSerial() {
+        for (File file : files) {
+            SecureUtil.sha1(file);
+        }
+    }
+
+    @Test
+    @PerfTest(invocations = 3)
+    public void testParallel() {
+        FileFingerprintIndex.sha1Parallel(files);
+    }
+
+    @Test
+    @PerfTest(invocations = 3)
+    public void testIndex() {
+        FileFingerprintIndex.of(storeDir, root).sha1(files);
+    }
+}
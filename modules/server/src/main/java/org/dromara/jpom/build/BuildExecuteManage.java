@@ -60,8 +60,6 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -101,7 +99,8 @@ public class BuildExecuteManage implements Runnable {
     private static MachineDockerServer machineDockerServer;
     private static BuildExtConfig buildExtConfig;
     private static FileStorageService fileStorageService;
-    private static BuildExecutorPoolService buildExecutorPoolService;
+    private static BuildQueueService buildQueueService;
+    private static RepositoryRefCacheService repositoryRefCacheService;
 
     private void loadService() {
         buildExecuteService = ObjectUtil.defaultIfNull(buildExecuteService, () -> SpringUtil.getBean(BuildExecuteService.class));
@@ -113,7 +112,8 @@ public class BuildExecuteManage implements Runnable {
         machineDockerServer = ObjectUtil.defaultIfNull(machineDockerServer, () -> SpringUtil.getBean(MachineDockerServer.class));
         buildExtConfig = ObjectUtil.defaultIfNull(buildExtConfig, () -> SpringUtil.getBean(BuildExtConfig.class));
         fileStorageService = ObjectUtil.defaultIfNull(fileStorageService, () -> SpringUtil.getBean(FileStorageService.class));
-        buildExecutorPoolService = ObjectUtil.defaultIfNull(buildExecutorPoolService, () -> SpringUtil.getBean(BuildExecutorPoolService.class));
+        buildQueueService = ObjectUtil.defaultIfNull(buildQueueService, () -> SpringUtil.getBean(BuildQueueService.class));
+        repositoryRefCacheService = ObjectUtil.defaultIfNull(repositoryRefCacheService, () -> SpringUtil.getBean(RepositoryRefCacheService.class));
     }
 
     /**
@@ -132,33 +132,39 @@ public class BuildExecuteManage implements Runnable {
     public void submitTask() {
         this.loadService();
         submitTaskTime = SystemClock.now();
-        // 创建线程池
-        ThreadPoolExecutor threadPoolExecutor = buildExecutorPoolService.getThreadPoolExecutor();
         //
         BuildInfoModel buildInfoModel = taskData.buildInfoModel;
         File logFile = BuildUtil.getLogFile(buildInfoModel.getId(), buildInfoModel.getBuildId());
         this.logRecorder = LogRecorder.builder().file(logFile).build();
         //
-        int queueSize = threadPoolExecutor.getQueue().size();
-        int size = BUILD_MANAGE_MAP.size();
-        logRecorder.system("当前构建中任务数：{},队列中任务数：{} {}", size, queueSize,
-            size > buildExtConfig.getPoolSize() ? "构建任务开始进入队列等待...." : StrUtil.EMPTY);
+        int[] count = buildQueueService.count();
+        logRecorder.system("当前构建中任务数：{},队列中任务数：{} {}", count[0], count[1],
+            count[0] >= buildExtConfig.getPoolSize() ? "构建任务开始进入队列等待...." : StrUtil.EMPTY);
+        Integer delay = taskData.delay;
+        if (delay != null && delay > 0) {
+            logRecorder.system("延迟 {} 秒后开始执行", delay);
+        }
         //BuildInfoManage manage = new BuildInfoManage(taskData);
         BUILD_MANAGE_MAP.put(buildInfoModel.getId(), this);
-        threadPoolExecutor.execute(this);
+        buildQueueService.submit(this);
+    }
+
+    TaskData taskData() {
+        return taskData;
+    }
+
+    String logId() {
+        return logId;
     }
 
     /**
      * 取消任务(拒绝执行)
+     *
+     * @param msg 原因
      */
-    public void rejectedExecution() {
-        ThreadPoolExecutor threadPoolExecutor = buildExecutorPoolService.getThreadPoolExecutor();
-        int queueSize = threadPoolExecutor.getQueue().size();
-        int limitPoolSize = threadPoolExecutor.getPoolSize();
-        int corePoolSize = threadPoolExecutor.getCorePoolSize();
-        String format = StrUtil.format("当前构建中任务数：{},队列中任务数：{} 构建任务等待超时或者超出最大等待数量,当前运行中的任务数：{}/{},取消执行当前构建", BUILD_MANAGE_MAP.size(), queueSize, limitPoolSize, corePoolSize);
-        logRecorder.system(format);
-        this.cancelTask(format);
+    public void rejectedExecution(String msg) {
+        logRecorder.system(msg);
+        this.cancelTask(msg);
     }
 
     /**
@@ -186,6 +192,8 @@ public class BuildExecuteManage implements Runnable {
             }
         }
         String buildId = taskData.buildInfoModel.getId();
+        // 还在队列中等待
+        buildQueueService.remove(buildId);
         buildExecuteService.updateStatus(buildId, logId, taskData.buildInfoModel.getBuildId(), BuildStatus.Cancel, desc);
         Optional.ofNullable(currentThread).ifPresent(Thread::interrupt);
         BUILD_MANAGE_MAP.remove(buildId);
@@ -341,13 +349,8 @@ public class BuildExecuteManage implements Runnable {
         BuildInfoModel buildInfoModel = taskData.buildInfoModel;
         this.gitFile = BuildUtil.getSourceById(buildInfoModel.getId());
 
-        Integer delay = taskData.delay;
+        // 延迟执行由构建队列控制
         logRecorder.system("开始构建 #{} 构建执行路径 : {}", buildInfoModel.getBuildId(), FileUtil.getAbsolutePath(this.gitFile));
-        if (delay != null && delay > 0) {
-            // 延迟执行
-            logRecorder.system("执行等待 {} 秒", delay);
-            ThreadUtil.sleep(delay, TimeUnit.SECONDS);
-        }
         // 删除缓存
         Boolean cacheBuild = this.buildExtraModule.getCacheBuild();
         if (cacheBuild != null && !cacheBuild) {
@@ -405,8 +408,22 @@ public class BuildExecuteManage implements Runnable {
                 if (cloneDepth != null) {
                     // 使用系统
                     map.put("gitProcessType", "SystemGit");
+                } else if (buildExtConfig.isRepositoryMirror()) {
+                    // 共用仓库镜像
+                    map.put("mirrorPath", BuildUtil.getRepositoryMirrorFile(repositoryModel.getId()));
+                    map.put("mirrorTtl", buildExtConfig.getRepositoryMirrorTtl());
+                    map.put("reduceProgressRatio", buildExtConfig.getLogReduceProgressRatio());
+                }
+                Tuple tuple;
+                boolean cached = !map.containsKey("mirrorPath");
+                if (cached) {
+                    tuple = repositoryRefCacheService.get(repositoryModel);
+                } else {
+                    // 镜像模式获取分支时会 fetch 镜像，顺便更新缓存
+                    long generation = repositoryRefCacheService.generation(repositoryModel.getId());
+                    tuple = (Tuple) plugin.execute("branchAndTagList", map);
+                    repositoryRefCacheService.put(repositoryModel, tuple, generation);
                 }
-                Tuple tuple = (Tuple) plugin.execute("branchAndTagList", map);
                 //GitUtil.getBranchAndTagList(repositoryModel);
                 Assert.notNull(tuple, "获取仓库分支失败");
                 map.put("reduceProgressRatio", buildExtConfig.getLogReduceProgressRatio());
@@ -417,7 +434,7 @@ public class BuildExecuteManage implements Runnable {
                 String branchTagName = buildInfoModel.getBranchTagName();
                 String[] result;
                 if (StrUtil.isNotEmpty(branchTagName)) {
-                    String newBranchTagName = fuzzyMatch(tuple.get(1), branchTagName);
+                    String newBranchTagName = this.fuzzyMatch(repositoryModel, tuple, cached, 1, branchTagName);
                     if (StrUtil.isEmpty(newBranchTagName)) {
                         String format = StrUtil.format("{} Did not match the corresponding tag", branchTagName);
                         logRecorder.systemError(format);
@@ -433,7 +450,7 @@ public class BuildExecuteManage implements Runnable {
                 } else {
                     String branchName = buildInfoModel.getBranchName();
                     // 模糊匹配分支
-                    String newBranchName = fuzzyMatch(tuple.get(0), branchName);
+                    String newBranchName = this.fuzzyMatch(repositoryModel, tuple, cached, 0, branchName);
                     if (StrUtil.isEmpty(newBranchName)) {
                         String format = StrUtil.format("{} Did not match the corresponding branch", branchName);
                         logRecorder.systemError(format);
@@ -540,8 +557,13 @@ public class BuildExecuteManage implements Runnable {
         map.put("logRecorder", logRecorder);
         //
         List<String> copy = ObjectUtil.defaultIfNull(dockerYmlDsl.getCopy(), new ArrayList<>());
-        // 将仓库文件上传到容器
-        copy.add(FileUtil.getAbsolutePath(this.gitFile) + StrUtil.COLON + workingDir + StrUtil.COLON + "true");
+        if (Convert.toBool(dockerYmlDsl.getWorkspaceVolume(), false)) {
+            // 构建目录使用数据卷，增量同步仓库文件
+            map.put("workspaceSource", FileUtil.getAbsolutePath(this.gitFile));
+        } else {
+            // 将仓库文件上传到容器
+            copy.add(FileUtil.getAbsolutePath(this.gitFile) + StrUtil.COLON + workingDir + StrUtil.COLON + "true");
+        }
         map.put("copy", copy);
         map.put("binds", ObjectUtil.defaultIfNull(dockerYmlDsl.getBinds(), new ArrayList<>()));
 
@@ -1022,6 +1044,28 @@ public class BuildExecuteManage implements Runnable {
         }).orElse(false);
     }
 
+    /**
+     * 模糊匹配分支或者标签，缓存中没有匹配到时重新获取一次再匹配（可能是新创建的分支或者标签）
+     *
+     * @param repositoryModel 仓库
+     * @param tuple           分支、标签
+     * @param cached          分支、标签是否来自缓存
+     * @param index           0 分支 1 标签
+     * @param pattern         迷糊的表达式
+     * @return 匹配到到值
+     * @throws Exception 获取分支异常
+     */
+    private String fuzzyMatch(RepositoryModel repositoryModel, Tuple tuple, boolean cached, int index, String pattern) throws Exception {
+        if (cached) {
+            List<String> list = tuple.get(index);
+            if (CollUtil.isEmpty(list) || StrUtil.isEmpty(fuzzyMatch(list, pattern))) {
+                tuple = repositoryRefCacheService.refresh(repositoryModel);
+                Assert.notNull(tuple, "获取仓库分支失败");
+            }
+        }
+        return fuzzyMatch(tuple.get(index), pattern);
+    }
+
     /**
      * 模糊匹配
      *
@@ -49,17 +49,20 @@ public class BuildExecuteService {
     private final RepositoryService repositoryService;
     private final WorkspaceEnvVarService workspaceEnvVarService;
     private final BuildExecutorPoolService buildExecutorPoolService;
+    private final BuildQueueService buildQueueService;
 
     public BuildExecuteService(BuildInfoService buildService,
                                DbBuildHistoryLogService dbBuildHistoryLogService,
                                RepositoryService repositoryService,
                                WorkspaceEnvVarService workspaceEnvVarService,
-                               BuildExecutorPoolService buildExecutorPoolService) {
+                               BuildExecutorPoolService buildExecutorPoolService,
+                               BuildQueueService buildQueueService) {
         this.buildService = buildService;
         this.dbBuildHistoryLogService = dbBuildHistoryLogService;
         this.repositoryService = repositoryService;
         this.workspaceEnvVarService = workspaceEnvVarService;
         this.buildExecutorPoolService = buildExecutorPoolService;
+        this.buildQueueService = buildQueueService;
     }
 
 
@@ -116,6 +119,11 @@ public class BuildExecuteService {
                                        int triggerBuildType, String buildRemark, String checkRepositoryDiff,
                                        Object... parametersEnv) {
         synchronized (buildInfoId.intern()) {
+            // 已经在队列中等待的构建合并本次触发
+            Integer waitBuildId = buildQueueService.merge(buildInfoId, triggerBuildType, buildRemark, parametersEnv);
+            if (waitBuildId != null) {
+                return JsonMessage.success("当前构建已经在队列中等待,合并到等待中的构建", waitBuildId);
+            }
             BuildInfoModel buildInfoModel = buildService.getByKey(buildInfoId);
             String e = this.checkStatus(buildInfoModel);
             Assert.isNull(e, () -> e);
@@ -141,6 +149,7 @@ public class BuildExecuteService {
                 .buildRemark(buildRemark)
                 .delay(delay)
                 .environmentMapBuilder(environmentMapBuilder)
+                .parametersEnv(parametersEnv)
                 .triggerBuildType(triggerBuildType);
             //
             Opt.ofBlankAble(checkRepositoryDiff).map(Convert::toBool).ifPresent(taskBuilder::checkRepositoryDiff);
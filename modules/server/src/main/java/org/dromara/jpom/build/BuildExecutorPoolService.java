@@ -56,10 +56,10 @@ public class BuildExecutorPoolService {
                     executorBuilder.setHandler(new ThreadPoolExecutor.DiscardPolicy() {
                         @Override
                         public void rejectedExecution(Runnable r, ThreadPoolExecutor e) {
-                            if (r instanceof BuildExecuteManage) {
+                            if (r instanceof BuildQueueService.QueueItem) {
                                 // 取消任务
-                                BuildExecuteManage buildExecuteManage = (BuildExecuteManage) r;
-                                buildExecuteManage.rejectedExecution();
+                                BuildQueueService.QueueItem queueItem = (BuildQueueService.QueueItem) r;
+                                queueItem.rejected();
                             } else {
                                 log.warn("构建线程池拒绝了未知任务：{}", r.getClass());
                             }
@@ -0,0 +1,524 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.build;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.date.SystemClock;
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.map.SafeConcurrentHashMap;
+import cn.hutool.core.util.ArrayUtil;
+import cn.hutool.core.util.ObjectUtil;
+import cn.hutool.core.util.StrUtil;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.jpom.JpomApplication;
+import org.dromara.jpom.common.BaseServerController;
+import org.dromara.jpom.common.ILoadEvent;
+import org.dromara.jpom.configuration.BuildExtConfig;
+import org.dromara.jpom.model.data.BuildInfoModel;
+import org.dromara.jpom.model.enums.BuildStatus;
+import org.dromara.jpom.model.user.UserModel;
+import org.dromara.jpom.service.dblog.DbBuildHistoryLogService;
+import org.dromara.jpom.service.user.UserService;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 构建任务调度队列
+ * <p>
+ * 等待中的构建按照优先级（手动 > 触发器 > 定时）、提交顺序依次执行，同时受构建线程数和每个工作空间的构建数限制。
+ * 同一个构建重复触发时合并到等待中的任务，等待中的任务保存到文件，服务重启后重新加入队列
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+@Service
+@Slf4j
+public class BuildQueueService implements ILoadEvent {
+
+    /**
+     * 没有构建耗时记录时的默认估算耗时
+     */
+    private static final long DEFAULT_DURATION = TimeUnit.MINUTES.toMillis(5);
+
+    private final BuildExtConfig buildExtConfig;
+    private final BuildExecutorPoolService buildExecutorPoolService;
+    private final DbBuildHistoryLogService dbBuildHistoryLogService;
+    private final UserService userService;
+    /**
+     * 等待中的任务
+     */
+    private final TreeSet<QueueItem> waitQueue = new TreeSet<>();
+    /**
+     * 构建ID -> 等待中的任务
+     */
+    private final Map<String, QueueItem> waitMap = new HashMap<>();
+    /**
+     * 构建ID -> 执行中的任务
+     */
+    private final Map<String, QueueItem> runningMap = new LinkedHashMap<>();
+    /**
+     * 工作空间执行中的任务数
+     */
+    private final Map<String, Integer> workspaceRunning = new HashMap<>();
+    /**
+     * 构建ID -> 最近的构建耗时
+     */
+    private final Map<String, Long> durationMap = new SafeConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    public BuildQueueService(BuildExtConfig buildExtConfig,
+                             BuildExecutorPoolService buildExecutorPoolService,
+                             DbBuildHistoryLogService dbBuildHistoryLogService,
+                             UserService userService) {
+        this.buildExtConfig = buildExtConfig;
+        this.buildExecutorPoolService = buildExecutorPoolService;
+        this.dbBuildHistoryLogService = dbBuildHistoryLogService;
+        this.userService = userService;
+    }
+
+    private File getQueueFile() {
+        return FileUtil.file(BuildUtil.getBuildDataDir(), "build-queue.json");
+    }
+
+    /**
+     * 触发类型对应的优先级，值越小越优先
+     *
+     * @param triggerBuildType 触发类型
+     * @return 优先级
+     */
+    private static int priority(int triggerBuildType) {
+        switch (triggerBuildType) {
+            case 0:
+                // 手动
+                return 0;
+            case 2:
+                // 定时
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * 提交构建任务
+     *
+     * @param manage 构建
+     */
+    public void submit(BuildExecuteManage manage) {
+        TaskData taskData = manage.taskData();
+        long now = SystemClock.now();
+        QueueItem item = new QueueItem(manage, priority(taskData.triggerBuildType), sequence.incrementAndGet(), now);
+        Integer delay = taskData.delay;
+        if (delay != null && delay > 0) {
+            item.readyTime = now + TimeUnit.SECONDS.toMillis(delay);
+        }
+        QueueItem evict = null;
+        String evictMsg = null;
+        synchronized (this) {
+            int maxWait = Math.max(buildExtConfig.getPoolWaitQueue(), 1);
+            if (waitQueue.size() >= maxWait) {
+                QueueItem last = waitQueue.last();
+                if (item.compareTo(last) >= 0) {
+                    evict = item;
+                } else {
+                    // 取消优先级最低的等待任务
+                    this.removeWait(last);
+                    evict = last;
+                }
+            }
+            if (evict != null) {
+                evictMsg = StrUtil.format("当前构建中任务数：{},队列中任务数：{} 超出最大等待数量,取消执行{}构建",
+                    runningMap.size(), waitQueue.size(), evict == item ? "当前" : "优先级最低的");
+            }
+            if (evict != item) {
+                waitQueue.add(item);
+                waitMap.put(item.buildInfoId, item);
+                this.saveQueue();
+            }
+        }
+        if (evict != null) {
+            evict.manage.rejectedExecution(evictMsg);
+        }
+        if (evict == item) {
+            return;
+        }
+        if (item.readyTime > now) {
+            JpomApplication.getScheduledExecutorService().schedule(this::dispatch, item.readyTime - now, TimeUnit.MILLISECONDS);
+        }
+        this.dispatch();
+    }
+
+    /**
+     * 合并重复触发的构建到等待中的任务
+     *
+     * @param buildInfoId      构建ID
+     * @param triggerBuildType 触发类型
+     * @param buildRemark      构建备注
+     * @param parametersEnv    外部环境变量
+     * @return 等待中的构建序号，没有等待中的任务返回 null
+     */
+    public synchronized Integer merge(String buildInfoId, int triggerBuildType, String buildRemark, Object... parametersEnv) {
+        QueueItem item = waitMap.get(buildInfoId);
+        if (item == null) {
+            return null;
+        }
+        TaskData taskData = item.manage.taskData();
+        int priority = priority(triggerBuildType);
+        if (priority < item.priority) {
+            // 提升优先级
+            waitQueue.remove(item);
+            item.priority = priority;
+            waitQueue.add(item);
+        }
+        if (ArrayUtil.isNotEmpty(parametersEnv)) {
+            // 使用最新触发的参数
+            taskData.environmentMapBuilder.putObjectArray(parametersEnv);
+            taskData.parametersEnv = ArrayUtil.addAll(taskData.parametersEnv, parametersEnv);
+        }
+        if (StrUtil.isNotEmpty(buildRemark)) {
+            taskData.buildRemark = buildRemark;
+        }
+        item.mergeCount++;
+        this.saveQueue();
+        return taskData.buildInfoModel.getBuildId();
+    }
+
+    /**
+     * 移除等待中的任务（取消构建）
+     *
+     * @param buildInfoId 构建ID
+     */
+    public synchronized void remove(String buildInfoId) {
+        QueueItem item = waitMap.get(buildInfoId);
+        if (item != null) {
+            this.removeWait(item);
+            this.saveQueue();
+        }
+    }
+
+    private void removeWait(QueueItem item) {
+        waitQueue.remove(item);
+        waitMap.remove(item.buildInfoId);
+    }
+
+    /**
+     * 执行可以开始的任务
+     */
+    private void dispatch() {
+        int poolSize = buildExtConfig.getPoolSize();
+        int workspacePoolSize = buildExtConfig.getWorkspacePoolSize();
+        long now = SystemClock.now();
+        List<QueueItem> startList = new ArrayList<>();
+        synchronized (this) {
+            Iterator<QueueItem> iterator = waitQueue.iterator();
+            while (iterator.hasNext()) {
+                if (poolSize > 0 && runningMap.size() >= poolSize) {
+                    break;
+                }
+                QueueItem item = iterator.next();
+                if (item.readyTime > now) {
+                    // 延迟执行
+                    continue;
+                }
+                if (workspacePoolSize > 0 && workspaceRunning.getOrDefault(item.workspaceId, 0) >= workspacePoolSize) {
+                    continue;
+                }
+                iterator.remove();
+                waitMap.remove(item.buildInfoId);
+                item.startTime = now;
+                runningMap.put(item.buildInfoId, item);
+                workspaceRunning.merge(item.workspaceId, 1, Integer::sum);
+                startList.add(item);
+            }
+            if (!startList.isEmpty()) {
+                this.saveQueue();
+            }
+        }
+        // 在遍历队列之外提交，提交被拒绝时会结束任务并重新调度
+        for (QueueItem item : startList) {
+            buildExecutorPoolService.execute(item);
+        }
+    }
+
+    /**
+     * 任务执行结束
+     *
+     * @param item 任务
+     */
+    private void finish(QueueItem item) {
+        synchronized (this) {
+            if (runningMap.remove(item.buildInfoId, item)) {
+                workspaceRunning.computeIfPresent(item.workspaceId, (s, count) -> count > 1 ? count - 1 : null);
+            }
+        }
+        long duration = SystemClock.now() - item.startTime;
+        // 平滑最近几次的构建耗时
+        durationMap.merge(item.buildInfoId, duration, (old, value) -> (old * 2 + value) / 3);
+        this.dispatch();
+    }
+
+    /**
+     * 执行中和等待中的任务数
+     *
+     * @return [执行中, 等待中]
+     */
+    public synchronized int[] count() {
+        return new int[]{runningMap.size(), waitQueue.size()};
+    }
+
+    /**
+     * 查询构建队列，并估算等待任务的开始时间
+     *
+     * @param workspaceId 工作空间ID，为空查询全部
+     * @return list
+     */
+    public List<JSONObject> list(String workspaceId) {
+        List<QueueItem> running;
+        List<QueueItem> waiting;
+        synchronized (this) {
+            running = new ArrayList<>(runningMap.values());
+            waiting = new ArrayList<>(waitQueue);
+        }
+        long now = SystemClock.now();
+        int poolSize = buildExtConfig.getPoolSize();
+        int workspacePoolSize = buildExtConfig.getWorkspacePoolSize();
+        // 每个构建线程空闲的时间
+        PriorityQueue<Long> slots = new PriorityQueue<>();
+        Map<String, PriorityQueue<Long>> workspaceSlots = new HashMap<>(4);
+        List<JSONObject> list = new ArrayList<>(running.size() + waiting.size());
+        for (QueueItem item : running) {
+            long endTime = Math.max(item.startTime + this.getDuration(item.buildInfoId), now);
+            slots.add(endTime);
+            if (workspacePoolSize > 0) {
+                workspaceSlots.computeIfAbsent(item.workspaceId, s -> new PriorityQueue<>()).add(endTime);
+            }
+            JSONObject jsonObject = item.toJson();
+            jsonObject.put("status", "running");
+            jsonObject.put("startTime", item.startTime);
+            jsonObject.put("estimatedEndTime", endTime);
+            list.add(jsonObject);
+        }
+        if (poolSize > 0) {
+            for (int i = running.size(); i < poolSize; i++) {
+                slots.add(now);
+            }
+        }
+        int position = 0;
+        for (QueueItem item : waiting) {
+            long startTime = Math.max(item.readyTime, now);
+            if (poolSize > 0) {
+                startTime = Math.max(startTime, ObjectUtil.defaultIfNull(slots.poll(), now));
+            }
+            PriorityQueue<Long> workspaceSlot = null;
+            if (workspacePoolSize > 0) {
+                workspaceSlot = workspaceSlots.computeIfAbsent(item.workspaceId, s -> new PriorityQueue<>());
+                if (workspaceSlot.size() >= workspacePoolSize) {
+                    startTime = Math.max(startTime, workspaceSlot.poll());
+                }
+            }
+            long endTime = startTime + this.getDuration(item.buildInfoId);
+            if (poolSize > 0) {
+                slots.add(endTime);
+            }
+            Optional.ofNullable(workspaceSlot).ifPresent(longs -> longs.add(endTime));
+            JSONObject jsonObject = item.toJson();
+            jsonObject.put("status", "waiting");
+            jsonObject.put("position", ++position);
+            jsonObject.put("estimatedStartTime", startTime);
+            list.add(jsonObject);
+        }
+        if (StrUtil.isEmpty(workspaceId)) {
+            return list;
+        }
+        list.removeIf(jsonObject -> !StrUtil.equals(jsonObject.getString("workspaceId"), workspaceId));
+        return list;
+    }
+
+    /**
+     * 构建的估算耗时
+     *
+     * @param buildInfoId 构建ID
+     * @return 毫秒
+     */
+    private long getDuration(String buildInfoId) {
+        return durationMap.computeIfAbsent(buildInfoId, s -> {
+            // 历史记录的开始时间为提交时间，包含了排队时间
+            String sql = StrUtil.format("select avg(endTime - startTime) from {} where buildDataId=? and status in (?,?) and endTime is not null",
+                dbBuildHistoryLogService.getTableName());
+            try {
+                Number number = dbBuildHistoryLogService.queryNumber(sql, buildInfoId, BuildStatus.Success.getCode(), BuildStatus.PubSuccess.getCode());
+                return number == null ? DEFAULT_DURATION : number.longValue();
+            } catch (Exception e) {
+                log.warn("查询构建平均耗时失败：{}", e.getMessage());
+                return DEFAULT_DURATION;
+            }
+        });
+    }
+
+    /**
+     * 保存等待中的任务
+     */
+    private void saveQueue() {
+        File queueFile = this.getQueueFile();
+        try {
+            if (waitQueue.isEmpty()) {
+                FileUtil.del(queueFile);
+                return;
+            }
+            JSONArray jsonArray = new JSONArray();
+            for (QueueItem item : waitQueue) {
+                TaskData taskData = item.manage.taskData();
+                JSONObject jsonObject = new JSONObject();
+                jsonObject.put("buildInfoId", item.buildInfoId);
+                jsonObject.put("buildNumberId", taskData.buildInfoModel.getBuildId());
+                jsonObject.put("logId", item.manage.logId());
+                jsonObject.put("triggerBuildType", taskData.triggerBuildType);
+                jsonObject.put("userId", Optional.ofNullable(taskData.userModel).map(UserModel::getId).orElse(null));
+                jsonObject.put("buildRemark", taskData.buildRemark);
+                jsonObject.put("checkRepositoryDiff", taskData.checkRepositoryDiff);
+                jsonObject.put("parametersEnv", taskData.parametersEnv);
+                jsonArray.add(jsonObject);
+            }
+            File temp = FileUtil.file(queueFile.getParentFile(), queueFile.getName() + ".tmp");
+            FileUtil.writeUtf8String(jsonArray.toString(), temp);
+            FileUtil.move(temp, queueFile, true);
+        } catch (Exception e) {
+            log.error("保存构建队列失败", e);
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet(ApplicationContext applicationContext) throws Exception {
+        File queueFile = this.getQueueFile();
+        if (!FileUtil.isFile(queueFile)) {
+            return;
+        }
+        JSONArray jsonArray;
+        try {
+            jsonArray = JSONArray.parseArray(FileUtil.readUtf8String(queueFile));
+        } catch (Exception e) {
+            log.error("读取构建队列失败", e);
+            return;
+        } finally {
+            FileUtil.del(queueFile);
+        }
+        if (CollUtil.isEmpty(jsonArray)) {
+            return;
+        }
+        BuildExecuteService buildExecuteService = applicationContext.getBean(BuildExecuteService.class);
+        int count = 0;
+        for (int i = 0; i < jsonArray.size(); i++) {
+            JSONObject jsonObject = jsonArray.getJSONObject(i);
+            String buildInfoId = jsonObject.getString("buildInfoId");
+            try {
+                String msg = "服务重启,重新加入构建队列";
+                buildExecuteService.updateStatus(buildInfoId, jsonObject.getString("logId"), jsonObject.getIntValue("buildNumberId"), BuildStatus.Cancel, msg);
+                int triggerBuildType = jsonObject.getIntValue("triggerBuildType");
+                UserModel userModel = Optional.ofNullable(jsonObject.getString("userId")).map(userService::getByKey).orElse(null);
+                if (userModel == null && triggerBuildType != 2) {
+                    log.warn("构建 {} 触发用户不存在,不再重新加入构建队列", buildInfoId);
+                    continue;
+                }
+                Object[] parametersEnv = Optional.ofNullable(jsonObject.getJSONArray("parametersEnv"))
+                    .map(JSONArray::toArray)
+                    .orElseGet(() -> new Object[0]);
+                Boolean checkRepositoryDiff = jsonObject.getBoolean("checkRepositoryDiff");
+                BaseServerController.resetInfo(ObjectUtil.defaultIfNull(userModel, UserModel.EMPTY));
+                buildExecuteService.start(buildInfoId, userModel, null, triggerBuildType, jsonObject.getString("buildRemark"),
+                    checkRepositoryDiff == null ? null : checkRepositoryDiff.toString(), parametersEnv);
+                count++;
+            } catch (Exception e) {
+                log.error("恢复构建队列任务失败：{}", buildInfoId, e);
+            } finally {
+                BaseServerController.removeAll();
+            }
+        }
+        log.info("恢复构建队列任务数：{}/{}", count, jsonArray.size());
+    }
+
+    /**
+     * 队列中的任务
+     */
+    class QueueItem implements Runnable, Comparable<QueueItem> {
+        private final BuildExecuteManage manage;
+        private final String buildInfoId;
+        private final String workspaceId;
+        private final long sequence;
+        private final long submitTime;
+        private int priority;
+        /**
+         * 可以开始执行的时间（延迟构建）
+         */
+        private long readyTime;
+        private long startTime;
+        /**
+         * 合并的触发次数
+         */
+        private int mergeCount;
+
+        private QueueItem(BuildExecuteManage manage, int priority, long sequence, long submitTime) {
+            BuildInfoModel buildInfoModel = manage.taskData().buildInfoModel;
+            this.manage = manage;
+            this.buildInfoId = buildInfoModel.getId();
+            this.workspaceId = buildInfoModel.getWorkspaceId();
+            this.priority = priority;
+            this.sequence = sequence;
+            this.submitTime = submitTime;
+        }
+
+        @Override
+        public void run() {
+            try {
+                manage.run();
+            } finally {
+                BuildQueueService.this.finish(this);
+            }
+        }
+
+        /**
+         * 线程池拒绝执行
+         */
+        void rejected() {
+            try {
+                manage.rejectedExecution("构建线程池拒绝执行,取消执行当前构建");
+            } finally {
+                BuildQueueService.this.finish(this);
+            }
+        }
+
+        @Override
+        public int compareTo(QueueItem o) {
+            int compare = Integer.compare(this.priority, o.priority);
+            return compare != 0 ? compare : Long.compare(this.sequence, o.sequence);
+        }
+
+        private JSONObject toJson() {
+            TaskData taskData = manage.taskData();
+            BuildInfoModel buildInfoModel = taskData.buildInfoModel;
+            JSONObject jsonObject = new JSONObject();
+            jsonObject.put("buildInfoId", buildInfoId);
+            jsonObject.put("name", buildInfoModel.getName());
+            jsonObject.put("buildNumberId", buildInfoModel.getBuildId());
+            jsonObject.put("workspaceId", workspaceId);
+            jsonObject.put("triggerBuildType", taskData.triggerBuildType);
+            jsonObject.put("priority", priority);
+            jsonObject.put("submitTime", submitTime);
+            jsonObject.put("mergeCount", mergeCount);
+            return jsonObject;
+        }
+    }
+}
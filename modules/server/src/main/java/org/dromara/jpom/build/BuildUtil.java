@@ -206,6 +206,16 @@ public class BuildUtil {
         return FileUtil.file(sshDir, path);
     }
 
+    /**
+     * 仓库镜像目录（每个仓库一个裸镜像，多个构建共用）
+     *
+     * @param repositoryId 仓库ID
+     * @return file
+     */
+    public static File getRepositoryMirrorFile(String repositoryId) {
+        return FileUtil.file(JpomApplication.getInstance().getDataPath(), "repository-mirror", repositoryId);
+    }
+
     /**
      * get rsa file
      *
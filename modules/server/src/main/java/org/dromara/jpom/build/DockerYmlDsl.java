@@ -85,6 +85,10 @@ public class DockerYmlDsl extends BaseJsonModel {
      * 环境变量
      */
     private Map<String, String> env;
+    /**
+     * 构建目录使用持久化的数据卷（每个构建一个卷），每次构建只同步有变化的仓库文件，不同步 .git 等版本管理目录
+     */
+    private Boolean workspaceVolume;
     /**
      * <a href="https://docs.docker.com/engine/api/v1.43/#tag/Container/operation/ContainerCreate">https://docs.docker.com/engine/api/v1.43/#tag/Container/operation/ContainerCreate</a>
      * <p>
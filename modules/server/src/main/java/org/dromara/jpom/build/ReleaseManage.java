@@ -18,18 +18,18 @@ import cn.hutool.core.io.IoUtil;
 import cn.hutool.core.lang.Opt;
 import cn.hutool.core.text.CharPool;
 import cn.hutool.core.util.ArrayUtil;
+import cn.hutool.core.util.IdUtil;
 import cn.hutool.core.util.NumberUtil;
 import cn.hutool.core.util.ObjectUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.crypto.SecureUtil;
 import cn.hutool.extra.spring.SpringUtil;
-import cn.hutool.extra.ssh.JschUtil;
 import cn.keepbx.jpom.model.JsonMessage;
 import cn.keepbx.jpom.plugins.IPlugin;
 import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
-import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpException;
 import lombok.Builder;
 import lombok.Lombok;
 import lombok.extern.slf4j.Slf4j;
@@ -55,6 +55,7 @@ import org.dromara.jpom.model.user.UserModel;
 import org.dromara.jpom.outgiving.OutGivingRun;
 import org.dromara.jpom.plugin.PluginFactory;
 import org.dromara.jpom.plugins.JschUtils;
+import org.dromara.jpom.plugins.SshSessionPool;
 import org.dromara.jpom.service.docker.DockerInfoService;
 import org.dromara.jpom.service.docker.DockerSwarmInfoService;
 import org.dromara.jpom.service.node.NodeService;
@@ -62,8 +63,9 @@ import org.dromara.jpom.service.node.ssh.SshService;
 import org.dromara.jpom.system.ExtConfigBean;
 import org.dromara.jpom.system.JpomRuntimeException;
 import org.dromara.jpom.util.CommandUtil;
+import org.dromara.jpom.util.FileFingerprintIndex;
 import org.dromara.jpom.util.LogRecorder;
-import org.dromara.jpom.util.MySftp;
+import org.dromara.jpom.util.SftpSyncUploader;
 import org.dromara.jpom.util.StringUtil;
 import org.springframework.util.Assert;
 
@@ -71,12 +73,17 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 /**
  * 发布管理
@@ -408,23 +415,24 @@ public class ReleaseManage {
         String releaseMethodDataId = this.buildExtraModule.getReleaseMethodDataId();
         SshService sshService = SpringUtil.getBean(SshService.class);
         List<String> strings = StrUtil.splitTrim(releaseMethodDataId, StrUtil.COMMA);
+        List<SshModel> list = new ArrayList<>(strings.size());
         for (String releaseMethodDataIdItem : strings) {
             SshModel item = sshService.getByKey(releaseMethodDataIdItem, false);
             if (item == null) {
                 logRecorder.systemError("没有找到对应的ssh项：{}", releaseMethodDataIdItem);
                 continue;
             }
-            this.doSsh(item, sshService);
+            list.add(item);
         }
+        // 多个 ssh 同时发布
+        SftpSyncUploader.parallel(list, buildExtConfig.getSshSyncHostSize(), item -> this.doSsh(item, sshService));
     }
 
-    private void doSsh(SshModel item, SshService sshService) throws IOException {
+    private void doSsh(SshModel item, SshService sshService) throws IOException, JSchException, SftpException {
         Map<String, String> envFileMap = buildEnv.environment();
         MachineSshModel machineSshModel = sshService.getMachineSshModel(item);
-        Session session = null;
-        ChannelSftp channelSftp = null;
-        try {
-            session = sshService.getSessionByModel(machineSshModel);
+        try (SshSessionPool.Lease lease = sshService.borrowSession(machineSshModel)) {
+            Session session = lease.getSession();
             Charset charset = machineSshModel.charset();
             int timeout = machineSshModel.timeout();
             String releasePath = this.buildExtraModule.getReleasePath();
@@ -440,26 +448,15 @@ public class ReleaseManage {
                 logRecorder.systemWarning("发布目录为空");
             } else {
                 logRecorder.system("{} {} start ftp upload{}", DateUtil.now(), item.getName(), System.lineSeparator());
-                MySftp.ProgressMonitor sftpProgressMonitor = sshService.createProgressMonitor(logRecorder);
-                MySftp sftp = new MySftp(session, charset, timeout, sftpProgressMonitor);
-                channelSftp = sftp.getClient();
-                String prefix = "";
-                if (!StrUtil.startWith(releasePath, StrUtil.SLASH)) {
-                    prefix = sftp.pwd();
-                }
-                String normalizePath = FileUtil.normalize(prefix + StrUtil.SLASH + releasePath);
-                if (this.buildExtraModule.isClearOld()) {
-                    try {
-                        if (sftp.exist(normalizePath)) {
-                            sftp.delDir(normalizePath);
-                        }
-                    } catch (Exception e) {
-                        if (!StrUtil.startWithIgnoreCase(e.getMessage(), "No such file")) {
-                            logRecorder.error("清除构建产物失败", e);
-                        }
-                    }
+                // 多个 sftp 通道按通道数占用会话池名额，避免同一个 ssh 打开的通道数超过 sshd 的 MaxSessions
+                int channelSize = 1 + lease.acquireExtra(buildExtConfig.getSshSyncChannelSize() - 1);
+                SftpSyncUploader uploader = new SftpSyncUploader(session, charset, timeout,
+                    channelSize, buildExtConfig.getLogReduceProgressRatio(), logRecorder);
+                if (buildExtConfig.isSshSyncTar()) {
+                    uploader.syncTar(this.resultFile, releasePath, this.buildExtraModule.isClearOld());
+                } else {
+                    uploader.sync(this.resultFile, releasePath, this.buildExtraModule.isClearOld());
                 }
-                sftp.syncUpload(this.resultFile, normalizePath);
                 logRecorder.system("{} ftp upload done", item.getName());
             }
             // 执行发布后命令
@@ -470,9 +467,6 @@ public class ReleaseManage {
             //
             logRecorder.system("开始执行 {} 发布后命令", item.getName());
             JschUtils.execCallbackLine(session, charset, timeout, this.buildExtraModule.getReleaseCommand(), StrUtil.EMPTY, envFileMap, logRecorder::info);
-        } finally {
-            JschUtil.close(channelSftp);
-            JschUtil.close(session);
         }
     }
 
@@ -489,11 +483,13 @@ public class ReleaseManage {
             FileUtil.getAbsolutePath(resultFile.getParent()) : FileUtil.getAbsolutePath(this.resultFile);
         //
         List<File> files = FileUtil.loopFiles(resultFile);
+        // 每次构建的产物目录都不同，索引无法复用，直接并行计算
+        Map<File, String> sha1Map = FileFingerprintIndex.sha1Parallel(files);
         List<JSONObject> collect = files.stream().map(file -> {
             //
             JSONObject jsonObject = new JSONObject();
             jsonObject.put("name", StringUtil.delStartPath(file, resultFileParent, true));
-            jsonObject.put("sha1", SecureUtil.sha1(file));
+            jsonObject.put("sha1", sha1Map.get(file));
             return jsonObject;
         }).collect(Collectors.toList());
         //
@@ -522,6 +518,11 @@ public class ReleaseManage {
             requestBody = NodeForward.requestBody(nodeModel, NodeUrl.MANAGE_FILE_BATCH_DELETE, jsonObject);
             Assert.state(requestBody.success(), "删除项目文件失败：" + requestBody);
         }
+        // 新版本节点支持合并包发布
+        if (diffSize > 1 && buildExtConfig.isDiffSyncBundle() && data.getBooleanValue("bundle")) {
+            this.diffSyncBundle(nodeModel, projectId, afterOpt, diff, resultFileParent, directory);
+            return;
+        }
         for (int i = 0; i < diffSize; i++) {
             boolean last = (i == diffSize - 1);
             JSONObject diffData = (JSONObject) diff.get(i);
@@ -555,6 +556,64 @@ public class ReleaseManage {
         }
     }
 
+    /**
+     * 将需要上传的文件打包为一个 zip 文件上传，节点解压后一次性替换
+     *
+     * @param nodeModel        节点
+     * @param projectId        项目ID
+     * @param afterOpt         发布后的操作
+     * @param diff             需要上传的文件
+     * @param resultFileParent 产物目录
+     * @param directory        项目二级目录
+     */
+    private void diffSyncBundle(NodeModel nodeModel, String projectId, AfterOpt afterOpt, JSONArray diff, String resultFileParent, String directory) {
+        File bundleFile = FileUtil.file(JpomApplication.getInstance().getTempPath(), "build_temp", "bundle", IdUtil.fastSimpleUUID() + ".zip");
+        try {
+            FileUtil.mkParentDirs(bundleFile);
+            try (ZipOutputStream outputStream = new ZipOutputStream(Files.newOutputStream(bundleFile.toPath()), StandardCharsets.UTF_8)) {
+                // 优先打包速度
+                outputStream.setLevel(Deflater.BEST_SPEED);
+                for (Object item : diff) {
+                    String name = ((JSONObject) item).getString("name");
+                    File file = FileUtil.file(resultFileParent, name);
+                    ZipEntry entry = new ZipEntry(StrUtil.removePrefix(FileUtil.normalize(name), StrUtil.SLASH));
+                    entry.setTime(file.lastModified());
+                    outputStream.putNextEntry(entry);
+                    Files.copy(file.toPath(), outputStream);
+                    outputStream.closeEntry();
+                }
+            }
+            logRecorder.system("差异文件打包完成 {} 个文件 {}", diff.size(), FileUtil.readableFileSize(bundleFile));
+            JSONObject data = new JSONObject();
+            data.put("id", projectId);
+            data.put("levelName", directory);
+            if (afterOpt != AfterOpt.No) {
+                data.put("after", afterOpt.getCode());
+            }
+            data.put("closeFirst", this.buildExtraModule.getProjectUploadCloseFirst());
+            Set<Integer> progressRangeList = ConcurrentHashMap.newKeySet((int) Math.floor((float) 100 / buildExtConfig.getLogReduceProgressRatio()));
+            JsonMessage<String> jsonMessage = NodeForward.requestSharding(nodeModel, NodeUrl.Manage_File_Upload_Sharding, data, bundleFile,
+                sliceData -> {
+                    sliceData.putAll(data);
+                    return NodeForward.request(nodeModel, NodeUrl.Manage_File_Sharding_Merge_Bundle, sliceData);
+                }, (total, progressSize) -> {
+                    double progressPercentage = Math.floor(((float) progressSize / total) * 100);
+                    int progressRange = (int) Math.floor(progressPercentage / buildExtConfig.getLogReduceProgressRatio());
+                    if (progressRangeList.add(progressRange)) {
+                        logRecorder.system("上传文件进度：{} {}/{} {}", bundleFile.getName(),
+                            FileUtil.readableFileSize(progressSize), FileUtil.readableFileSize(total),
+                            NumberUtil.formatPercent(((float) progressSize / total), 0));
+                    }
+                });
+            Assert.state(jsonMessage.success(), "同步项目文件失败：" + jsonMessage);
+            logRecorder.system("发布项目包成功：{}", jsonMessage);
+        } catch (IOException e) {
+            throw Lombok.sneakyThrow(e);
+        } finally {
+            FileUtil.del(bundleFile);
+        }
+    }
+
     /**
      * 发布项目
      */
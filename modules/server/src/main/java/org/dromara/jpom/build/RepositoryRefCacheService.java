@@ -0,0 +1,316 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.build;
+
+import cn.hutool.core.date.SystemClock;
+import cn.hutool.core.lang.Tuple;
+import cn.hutool.core.map.SafeConcurrentHashMap;
+import cn.hutool.core.thread.ExecutorBuilder;
+import cn.hutool.core.thread.ThreadUtil;
+import cn.keepbx.jpom.plugins.IPlugin;
+import com.alibaba.fastjson2.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.jpom.JpomApplication;
+import org.dromara.jpom.common.ILoadEvent;
+import org.dromara.jpom.configuration.BuildExtConfig;
+import org.dromara.jpom.model.data.RepositoryModel;
+import org.dromara.jpom.plugin.PluginFactory;
+import org.dromara.jpom.service.dblog.RepositoryService;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 仓库分支、标签缓存
+ * <p>
+ * 有效期内直接返回缓存；过期不久的先返回旧数据并在后台刷新；过期太久或者仓库信息被修改的同步重新获取。
+ * 构建触发器（webhook）调用时清除对应仓库的缓存，最近使用过的仓库在后台定时刷新。
+ * 清除缓存时递增仓库的版本号，清除前开始获取的数据不会再写入缓存
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+@Service
+@Slf4j
+public class RepositoryRefCacheService implements ILoadEvent, DisposableBean {
+
+    /**
+     * 过期后允许先返回旧数据的时长（有效期的倍数）
+     */
+    private static final int STALE_MULTIPLE = 5;
+
+    private final BuildExtConfig buildExtConfig;
+    private final RepositoryService repositoryService;
+    /**
+     * 仓库id -> 缓存
+     */
+    private final Map<String, Entry> cacheMap = new SafeConcurrentHashMap<>();
+    /**
+     * 仓库id -> 版本号，清除缓存时递增
+     */
+    private final Map<String, AtomicLong> generationMap = new SafeConcurrentHashMap<>();
+    private volatile ThreadPoolExecutor refreshExecutor;
+    private ScheduledFuture<?> scheduledFuture;
+
+    // 监控指标
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong staleHitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong refreshCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong invalidateCount = new AtomicLong();
+
+    public RepositoryRefCacheService(BuildExtConfig buildExtConfig,
+                                     RepositoryService repositoryService) {
+        this.buildExtConfig = buildExtConfig;
+        this.repositoryService = repositoryService;
+    }
+
+    @Override
+    public void afterPropertiesSet(ApplicationContext applicationContext) throws Exception {
+        int ttl = buildExtConfig.getRepositoryRefCacheTtl();
+        if (ttl <= 0) {
+            log.debug("未开启仓库分支缓存");
+            return;
+        }
+        this.scheduledFuture = JpomApplication.getScheduledExecutorService()
+            .scheduleWithFixedDelay(this::refreshActive, ttl, ttl, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 获取仓库的分支和标签
+     *
+     * @param repositoryModel 仓库（需要包含密码等信息）
+     * @return tuple 分支、标签
+     * @throws Exception 获取异常
+     */
+    public Tuple get(RepositoryModel repositoryModel) throws Exception {
+        long ttl = TimeUnit.SECONDS.toMillis(buildExtConfig.getRepositoryRefCacheTtl());
+        if (ttl <= 0) {
+            return this.load(repositoryModel);
+        }
+        Entry entry = cacheMap.get(repositoryModel.getId());
+        long now = SystemClock.now();
+        if (entry != null && entry.match(repositoryModel)) {
+            entry.lastAccess = now;
+            long age = now - entry.loadTime;
+            if (age < ttl) {
+                hitCount.incrementAndGet();
+                return entry.refs;
+            }
+            if (age < ttl * STALE_MULTIPLE) {
+                staleHitCount.incrementAndGet();
+                this.refreshAsync(entry, repositoryModel);
+                return entry.refs;
+            }
+        }
+        missCount.incrementAndGet();
+        return this.refresh(repositoryModel);
+    }
+
+    /**
+     * 重新获取仓库的分支和标签并更新缓存
+     *
+     * @param repositoryModel 仓库（需要包含密码等信息）
+     * @return tuple 分支、标签
+     * @throws Exception 获取异常
+     */
+    public Tuple refresh(RepositoryModel repositoryModel) throws Exception {
+        long generation = this.generation(repositoryModel.getId());
+        Tuple tuple = this.load(repositoryModel);
+        this.put(repositoryModel, tuple, generation);
+        return tuple;
+    }
+
+    /**
+     * 获取仓库当前的缓存版本号，开始获取分支信息前调用，写入缓存时校验
+     *
+     * @param repositoryId 仓库id
+     * @return 版本号
+     */
+    public long generation(String repositoryId) {
+        return generationMap.computeIfAbsent(repositoryId, s -> new AtomicLong()).get();
+    }
+
+    /**
+     * 更新缓存（构建拉取时已经获取到最新的分支信息）
+     *
+     * @param repositoryModel 仓库
+     * @param tuple           分支、标签
+     * @param generation      开始获取前的版本号 {@link #generation(String)}，期间缓存被清除不再写入
+     */
+    public void put(RepositoryModel repositoryModel, Tuple tuple, long generation) {
+        if (tuple == null || buildExtConfig.getRepositoryRefCacheTtl() <= 0) {
+            return;
+        }
+        long now = SystemClock.now();
+        Entry entry = cacheMap.computeIfAbsent(repositoryModel.getId(), s -> new Entry());
+        synchronized (entry) {
+            if (this.generation(repositoryModel.getId()) != generation) {
+                log.debug("仓库分支缓存已经被清除，忽略旧数据 {}", repositoryModel.getName());
+                return;
+            }
+            entry.refs = tuple;
+            entry.modifyTimeMillis = repositoryModel.getModifyTimeMillis();
+            entry.loadTime = now;
+            entry.lastAccess = Math.max(entry.lastAccess, now);
+        }
+    }
+
+    /**
+     * 清除仓库的缓存
+     *
+     * @param repositoryId 仓库id
+     */
+    public void invalidate(String repositoryId) {
+        if (repositoryId == null) {
+            return;
+        }
+        generationMap.computeIfAbsent(repositoryId, s -> new AtomicLong()).incrementAndGet();
+        if (cacheMap.remove(repositoryId) != null) {
+            invalidateCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        generationMap.values().forEach(AtomicLong::incrementAndGet);
+        cacheMap.clear();
+    }
+
+    private Tuple load(RepositoryModel repositoryModel) throws Exception {
+        IPlugin plugin = PluginFactory.getPlugin("git-clone");
+        Map<String, Object> map = repositoryModel.toMap();
+        try {
+            Tuple tuple = (Tuple) plugin.execute("branchAndTagList", map);
+            refreshCount.incrementAndGet();
+            return tuple;
+        } catch (Exception e) {
+            errorCount.incrementAndGet();
+            throw e;
+        }
+    }
+
+    private void refreshAsync(Entry entry, RepositoryModel repositoryModel) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            this.getRefreshExecutor().execute(() -> {
+                try {
+                    this.refresh(repositoryModel);
+                } catch (Exception e) {
+                    log.warn("后台刷新仓库分支失败 {} {}", repositoryModel.getName(), e.getMessage());
+                } finally {
+                    entry.refreshing.set(false);
+                }
+            });
+        } catch (Exception e) {
+            // 队列已满，下次再刷新
+            entry.refreshing.set(false);
+        }
+    }
+
+    /**
+     * 刷新最近使用过的仓库，清除长时间未使用的缓存
+     */
+    private void refreshActive() {
+        try {
+            long now = SystemClock.now();
+            long ttl = TimeUnit.SECONDS.toMillis(buildExtConfig.getRepositoryRefCacheTtl());
+            long active = TimeUnit.SECONDS.toMillis(buildExtConfig.getRepositoryRefCacheActive());
+            for (Map.Entry<String, Entry> item : cacheMap.entrySet()) {
+                Entry entry = item.getValue();
+                if (now - entry.lastAccess > Math.max(active, ttl * STALE_MULTIPLE)) {
+                    cacheMap.remove(item.getKey(), entry);
+                    continue;
+                }
+                if (now - entry.lastAccess > active || now - entry.loadTime < ttl / 2) {
+                    continue;
+                }
+                RepositoryModel repositoryModel = repositoryService.getByKey(item.getKey(), false);
+                if (repositoryModel == null) {
+                    cacheMap.remove(item.getKey(), entry);
+                    continue;
+                }
+                this.refreshAsync(entry, repositoryModel);
+            }
+        } catch (Throwable e) {
+            log.error("刷新仓库分支缓存异常", e);
+        }
+    }
+
+    private ThreadPoolExecutor getRefreshExecutor() {
+        if (refreshExecutor == null) {
+            synchronized (this) {
+                if (refreshExecutor == null) {
+                    ExecutorBuilder executorBuilder = ExecutorBuilder.create();
+                    executorBuilder.setCorePoolSize(2).setMaxPoolSize(2);
+                    executorBuilder.setWorkQueue(new LinkedBlockingQueue<>(100));
+                    executorBuilder.setThreadFactory(ThreadUtil.newNamedThreadFactory("repository-ref-", true));
+                    ThreadPoolExecutor threadPoolExecutor = executorBuilder.build();
+                    JpomApplication.register("repository-ref", threadPoolExecutor);
+                    refreshExecutor = threadPoolExecutor;
+                }
+            }
+        }
+        return refreshExecutor;
+    }
+
+    /**
+     * 缓存统计信息
+     *
+     * @return json
+     */
+    public JSONObject stat() {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("size", cacheMap.size());
+        jsonObject.put("hitCount", hitCount.get());
+        jsonObject.put("staleHitCount", staleHitCount.get());
+        jsonObject.put("missCount", missCount.get());
+        jsonObject.put("refreshCount", refreshCount.get());
+        jsonObject.put("errorCount", errorCount.get());
+        jsonObject.put("invalidateCount", invalidateCount.get());
+        return jsonObject;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (scheduledFuture != null) {
+            scheduledFuture.cancel(true);
+        }
+    }
+
+    private static class Entry {
+        private volatile Tuple refs;
+        /**
+         * 获取时仓库的修改时间，仓库被修改后缓存失效
+         */
+        private volatile Long modifyTimeMillis;
+        private volatile long loadTime;
+        private volatile long lastAccess;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private boolean match(RepositoryModel repositoryModel) {
+            return refs != null && Objects.equals(modifyTimeMillis, repositoryModel.getModifyTimeMillis());
+        }
+    }
+}
@@ -47,6 +47,10 @@ public class TaskData {
      * 工作空间环境变量
      */
     protected EnvironmentMapBuilder environmentMapBuilder;
+    /**
+     * 外部传入的环境变量（用于服务重启后恢复等待中的构建）
+     */
+    protected Object[] parametersEnv;
 
     /**
      * 仓库代码最后一次变动信息（ID，git 为 commit hash, svn 最后的版本号）
@@ -15,6 +15,8 @@ import cn.hutool.core.io.resource.BytesResource;
 import cn.hutool.core.io.unit.DataSize;
 import cn.hutool.core.lang.Opt;
 import cn.hutool.core.map.MapUtil;
+import cn.hutool.core.map.SafeConcurrentHashMap;
+import cn.hutool.core.thread.ThreadUtil;
 import cn.hutool.core.util.EnumUtil;
 import cn.hutool.core.util.IdUtil;
 import cn.hutool.core.util.StrUtil;
@@ -48,12 +50,10 @@ import org.springframework.web.multipart.MultipartHttpServletRequest;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.atomic.AtomicLong;
@@ -71,6 +71,11 @@ import java.util.function.Function;
 @Slf4j
 public class NodeForward {
 
+    /**
+     * 分片上传锁（节点地址:分片 id -> 锁），没有上传使用时移除
+     */
+    private static final Map<String, ShardingLock> SHARDING_LOCKS = new SafeConcurrentHashMap<>();
+
     /**
      * 创建代理
      *
@@ -348,6 +353,65 @@ public class NodeForward {
         //如果小数点大于1，整数加一 例如4.1 =》5
         long chunkSize = DataSize.ofMegabytes(fileSliceSize).toBytes();
         int total = (int) Math.ceil((double) length / chunkSize);
+        JSONObject sliceData = new JSONObject();
+        // 分片 id 使用文件签名和分片大小生成，上传中断后再次上传可以复用节点已经接收的分片
+        sliceData.put("sliceId", md5 + "_" + fileSliceSize);
+        sliceData.put("totalSlice", total);
+        sliceData.put("fileSumMd5", md5);
+        // 相同文件同时上传到同一个节点需要排队，避免合并时互相删除分片
+        String lockKey = StrUtil.format("{}:{}", nodeInfo.url(), sliceData.getString("sliceId"));
+        ShardingLock lock = SHARDING_LOCKS.compute(lockKey, (key, shardingLock) -> {
+            shardingLock = shardingLock == null ? new ShardingLock() : shardingLock;
+            shardingLock.count++;
+            return shardingLock;
+        });
+        try {
+            synchronized (lock) {
+                JSONObject uploaded = shardingUploaded(nodeInfo, workspaceId, sliceData);
+                JsonMessage<T> message = requestSharding(nodeInfo, urlItem, nodeConfig, jsonObject, file, fileName, length, chunkSize, sliceData, uploaded, streamProgress);
+                if (message != null) {
+                    return message;
+                }
+                //
+                return Optional.ofNullable(doneCallback)
+                    .map(function -> function.apply(sliceData))
+                    .orElseGet(() -> new JsonMessage<>(200, "上传成功"));
+            }
+        } finally {
+            SHARDING_LOCKS.computeIfPresent(lockKey, (key, shardingLock) -> --shardingLock.count > 0 ? shardingLock : null);
+        }
+    }
+
+    /**
+     * 查询节点已经接收的分片，低版本节点不支持时认为没有已经上传的分片
+     *
+     * @param nodeInfo    节点
+     * @param workspaceId 工作空间id
+     * @param sliceData   分片信息
+     * @return 分片序号 -> 分片签名
+     */
+    private static JSONObject shardingUploaded(INodeInfo nodeInfo, String workspaceId, JSONObject sliceData) {
+        IUrlItem urlItem = parseUrlItem(nodeInfo, workspaceId, NodeUrl.SystemShardingUploaded, DataContentType.FORM_URLENCODED);
+        try {
+            JsonMessage<JSONObject> message = TransportServerFactory.get().executeToType(nodeInfo, urlItem, sliceData.clone(), new TypeReference<JsonMessage<JSONObject>>() {
+            });
+            if (message.success() && message.getData() != null) {
+                return message.getData();
+            }
+        } catch (Exception e) {
+            log.debug("查询节点已经上传的分片失败 {} {}", nodeInfo.name(), e.getMessage());
+        }
+        return new JSONObject();
+    }
+
+    /**
+     * 并发上传所有分片，已经上传并且签名一致的分片跳过，失败的分片按照间隔递增重试
+     *
+     * @return 失败返回失败信息，全部成功返回 null
+     * @throws IOException io
+     */
+    private static <T> JsonMessage<T> requestSharding(INodeInfo nodeInfo, IUrlItem urlItem, NodeConfig nodeConfig, JSONObject jsonObject, File file, String fileName, long length, long chunkSize, JSONObject sliceData, JSONObject uploaded, BiConsumer<Long, Long> streamProgress) throws IOException {
+        int total = sliceData.getIntValue("totalSlice");
         Queue<Integer> queueList = new ConcurrentLinkedDeque<>();
         for (int i = 0; i < total; i++) {
             queueList.offer(i);
@@ -355,13 +419,9 @@ public class NodeForward {
         List<Integer> success = Collections.synchronizedList(new ArrayList<>(total));
         // 并发数
         int concurrent = nodeConfig.getUploadFileConcurrent();
+        int retry = Math.max(nodeConfig.getUploadFileSliceRetry(), 0);
         AtomicReference<JsonMessage<T>> failureMessage = new AtomicReference<>();
-        AtomicReference<JsonMessage<T>> succeedMessage = new AtomicReference<>();
         AtomicLong atomicProgressSize = new AtomicLong(0);
-        JSONObject sliceData = new JSONObject();
-        sliceData.put("sliceId", IdUtil.fastSimpleUUID());
-        sliceData.put("totalSlice", total);
-        sliceData.put("fileSumMd5", md5);
         TransportServer transportServer = TransportServerFactory.get();
         TypeReference<JsonMessage<T>> typeReference = new TypeReference<JsonMessage<T>>() {
         };
@@ -373,40 +433,41 @@ public class NodeForward {
                 if (currentChunk == null) {
                     return;
                 }
-                JSONObject uploadData = jsonObject.clone();
                 try {
-                    try (FileInputStream inputStream = new FileInputStream(file)) {
-                        try (FileChannel inputChannel = inputStream.getChannel()) {
-                            //分配缓冲区，设定每次读的字节数
-                            ByteBuffer byteBuffer = ByteBuffer.allocate((int) chunkSize);
-                            // 移动到指定位置开始读取
-                            inputChannel.position(currentChunk * chunkSize);
-                            inputChannel.read(byteBuffer);
-                            //上面把数据写入到了buffer，所以可知上面的buffer是写模式，调用flip把buffer切换到读模式，读取数据
-                            byteBuffer.flip();
-                            byte[] array = new byte[byteBuffer.remaining()];
-                            byteBuffer.get(array, 0, array.length);
-                            uploadData.put("file", new BytesResource(array, fileName + StrUtil.DOT + currentChunk));
-                            uploadData.put("nowSlice", currentChunk);
-                            uploadData.putAll(sliceData);
-                        }
+                    // 只记录分片区域，发送时直接从文件读取写入请求体，内存占用和分片大小无关
+                    long position = currentChunk * chunkSize;
+                    long size = Math.min(chunkSize, length - position);
+                    FileSliceResource resource = new FileSliceResource(file, position, size, fileName + StrUtil.DOT + currentChunk);
+                    String sliceMd5;
+                    try (InputStream inputStream = resource.getStream()) {
+                        sliceMd5 = SecureUtil.md5().digestHex(inputStream);
                     }
-                    // 上传
-                    JsonMessage<T> message = transportServer.executeToType(nodeInfo, urlItem, uploadData, typeReference);
-                    if (message.success()) {
-                        // 使用成功的个数计算
-                        success.add(currentChunk);
-                        long end = Math.min(length, ((success.size() - 1) * chunkSize) + chunkSize);
-                        // 保存线程安全顺序回调进度信息
-                        atomicProgressSize.set(Math.max(end, atomicProgressSize.get()));
-                        streamProgress.accept(length, atomicProgressSize.get());
-                        succeedMessage.set(message);
-                    } else {
-                        log.warn("分片上传异常：{} {}", nodeUrl, message);
-                        // 终止上传
-                        queueList.clear();
-                        failureMessage.set(message);
+                    if (!StrUtil.equalsIgnoreCase(sliceMd5, uploaded.getString(String.valueOf(currentChunk)))) {
+                        JSONObject uploadData = jsonObject.clone();
+                        uploadData.put("file", resource);
+                        uploadData.put("nowSlice", currentChunk);
+                        uploadData.put("sliceMd5", sliceMd5);
+                        uploadData.putAll(sliceData);
+                        // 上传
+                        JsonMessage<T> message = uploadSlice(transportServer, nodeInfo, urlItem, uploadData, typeReference, retry, failureMessage);
+                        if (message == null) {
+                            // 其他分片已经失败
+                            return;
+                        }
+                        if (!message.success()) {
+                            log.warn("分片上传异常：{} {}", urlItem.path(), message);
+                            // 终止上传
+                            queueList.clear();
+                            failureMessage.set(message);
+                            return;
+                        }
                     }
+                    // 使用成功的个数计算
+                    success.add(currentChunk);
+                    long end = Math.min(length, ((success.size() - 1) * chunkSize) + chunkSize);
+                    // 保存线程安全顺序回调进度信息
+                    atomicProgressSize.set(Math.max(end, atomicProgressSize.get()));
+                    streamProgress.accept(length, atomicProgressSize.get());
                 } catch (Exception e) {
                     log.error("分片上传文件异常", e);
                     // 终止上传
@@ -425,10 +486,31 @@ public class NodeForward {
         }
         // 判断是否都成功
         Assert.state(success.size() == total, "上传异常,完成数量不匹配");
-        //
-        return Optional.ofNullable(doneCallback)
-            .map(function -> function.apply(sliceData))
-            .orElseGet(succeedMessage::get);
+        return null;
+    }
+
+    /**
+     * 上传单个分片，网络异常时按照 1、2、4... 秒（最长 30 秒）的间隔重试
+     *
+     * @return 其他分片已经失败时返回 null
+     */
+    private static <T> JsonMessage<T> uploadSlice(TransportServer transportServer, INodeInfo nodeInfo, IUrlItem urlItem, JSONObject uploadData,
+                                                  TypeReference<JsonMessage<T>> typeReference, int retry, AtomicReference<JsonMessage<T>> failureMessage) {
+        for (int i = 0; ; i++) {
+            if (failureMessage.get() != null) {
+                return null;
+            }
+            try {
+                return transportServer.executeToType(nodeInfo, urlItem, uploadData, typeReference);
+            } catch (Exception e) {
+                if (i >= retry) {
+                    throw e;
+                }
+                long sleep = Math.min(1000L << i, 30_000L);
+                log.warn("分片上传失败,{} 毫秒后重试({}/{})：{} {}", sleep, i + 1, retry, uploadData.get("nowSlice"), e.getMessage());
+                ThreadUtil.sleep(sleep);
+            }
+        }
     }
 
     /**
@@ -665,4 +747,14 @@ public class NodeForward {
         }
         return data;
     }
+
+    /**
+     * 分片上传锁
+     */
+    private static class ShardingLock {
+        /**
+         * 使用（等待）中的数量，只在 map 的 compute 中修改
+         */
+        private int count;
+    }
 }
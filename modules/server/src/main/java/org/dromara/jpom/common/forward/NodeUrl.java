@@ -78,6 +78,8 @@ public enum NodeUrl {
 
     Manage_GetProjectStatus("/manage/getProjectStatus"),
 
+    Manage_GetProjectStatusList("/manage/getProjectStatusList"),
+
     Manage_Operate("/manage/operate"),
 
     Manage_GetProjectPort("/manage/getProjectPort"),
@@ -94,6 +96,10 @@ public enum NodeUrl {
     MANAGE_FILE_BACKUP_RECOVER("/manage/file/backup-recover"),
     Manage_File_Upload_Sharding("/manage/file/upload-sharding", true),
     Manage_File_Sharding_Merge("/manage/file/sharding-merge", true),
+    /**
+     * 合并差异发布的文件包
+     */
+    Manage_File_Sharding_Merge_Bundle("/manage/file/sharding-merge-bundle", true),
     Manage_File_Upload_Sharding2("/manage/file2/upload-sharding", true),
     Manage_File_Sharding_Merge2("/manage/file2/sharding-merge", true),
 
@@ -173,6 +179,10 @@ public enum NodeUrl {
      * 更新系统jar包
      */
     SystemUploadJarMerge("/system/upload-jar-sharding-merge", true),
+    /**
+     * 查询已经上传的分片（断点续传）
+     */
+    SystemShardingUploaded("/system/sharding-uploaded"),
     /**
      * 更新系统jar包
      */
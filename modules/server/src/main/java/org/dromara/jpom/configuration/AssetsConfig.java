@@ -75,6 +75,14 @@ public class AssetsConfig {
          * 禁用监控的分组名 （如果想禁用所有配置 * 即可）
          */
         private List<String> disableMonitorGroupName;
+        /**
+         * 会话空闲多久自动断开（秒），小于等于 0 不复用会话
+         */
+        private int sessionPoolIdle = 300;
+        /**
+         * 单个会话同时执行的任务数上限
+         */
+        private int sessionPoolMaxChannel = 4;
 
     }
 
@@ -89,5 +97,17 @@ public class AssetsConfig {
          * 监控频率
          */
         private String monitorCron;
+        /**
+         * 容器监控订阅多久没有请求自动取消（秒），小于等于 0 不订阅
+         */
+        private int statsStreamIdle = 60;
+        /**
+         * 单个 docker 同时订阅容器监控的上限（通过 ssh 连接的 docker 最多 4 个）
+         */
+        private int statsStreamMaxSize = 20;
+        /**
+         * 并行获取容器监控的线程数
+         */
+        private int statsPoolSize = 8;
     }
 }
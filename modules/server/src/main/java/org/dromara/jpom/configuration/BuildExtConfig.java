@@ -42,9 +42,47 @@ public class BuildExtConfig {
     private int poolSize = 5;
 
     /**
-     * 构建任务等待数量，超过此数量将取消构建任务，值最小为 1
+     * 构建任务等待数量，超过此数量将取消优先级最低的等待任务（手动 > 触发器 > 定时），值最小为 1
      */
     private int poolWaitQueue = 10;
+
+    /**
+     * 每个工作空间同时执行的构建数量,小于 1 则为不限制
+     */
+    private int workspacePoolSize = 0;
+
+    /**
+     * 差异发布需要上传多个文件时打包为一个文件上传，节点解压后一次性替换（只备份一次、只执行一次发布后操作）
+     */
+    private boolean diffSyncBundle = true;
+    /**
+     * 同一个仓库的构建共用一份本地镜像，构建目录引用镜像中的对象（使用 JGit 拉取时生效，指定克隆深度时不使用）
+     */
+    private boolean repositoryMirror = true;
+    /**
+     * 仓库镜像分支、标签列表的有效期（秒），有效期内获取列表共用同一次 fetch（拉取代码时始终 fetch）
+     */
+    private int repositoryMirrorTtl = 10;
+    /**
+     * 仓库分支、标签缓存有效期（秒），小于等于 0 不缓存
+     */
+    private int repositoryRefCacheTtl = 60;
+    /**
+     * 仓库分支、标签缓存后台刷新的范围（秒），最近这段时间内使用过的仓库定时在后台刷新
+     */
+    private int repositoryRefCacheActive = 600;
+    /**
+     * ssh 发布同时发布的 ssh 数量
+     */
+    private int sshSyncHostSize = 4;
+    /**
+     * ssh 发布单个 ssh 同时使用的 sftp 通道数量，每个通道占用一个 ssh 会话池名额，名额不足时减少通道数
+     */
+    private int sshSyncChannelSize = 3;
+    /**
+     * ssh 发布使用打包模式：打包为 tar.gz 直接传给远程 tar 命令解压（需要远程有 tar 命令，不对比文件差异）
+     */
+    private boolean sshSyncTar = false;
     /**
      * 压缩折叠显示进度比例 范围 1-100
      */
@@ -11,6 +11,7 @@ package org.dromara.jpom.configuration;
 
 import cn.hutool.core.util.RuntimeUtil;
 import lombok.Data;
+import org.dromara.jpom.transport.HttpPoolConfig;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.util.unit.DataSize;
 
@@ -44,6 +45,11 @@ public class NodeConfig {
      * 节点文件分片上传并发数,最小1 最大 服务端 CPU 核心数
      */
     private int uploadFileConcurrent = 2;
+
+    /**
+     * 节点文件分片上传失败重试次数（每个分片单独重试，间隔时间递增），小于等于 0 不重试
+     */
+    private int uploadFileSliceRetry = 3;
     /**
      * web socket 消息最大长度
      */
@@ -65,4 +71,64 @@ public class NodeConfig {
      * 节点统计日志保留天数，如果小于等于 0 不自动删除
      */
     private int statLogKeepDays = 3;
+
+    /**
+     * 机器统计信息时序存储配置（原始数据保留天数使用 statLogKeepDays）
+     */
+    private StatStoreConfig statStore = new StatStoreConfig();
+
+    /**
+     * 节点通讯引擎 http：每次请求新建连接，http-pool：使用连接池复用连接
+     */
+    private String transportEngine = "http";
+
+    /**
+     * 节点通讯连接池配置（transportEngine 为 http-pool 时生效）
+     */
+    private HttpPoolConfig transportPool = new HttpPoolConfig();
+
+    /**
+     * 节点推送心跳（监控方式为节点推送）连续丢失多少次后标记为离线，最小 2 次
+     */
+    private int heartbeatMissCount = 3;
+
+    public int getHeartbeatMissCount() {
+        return Math.max(this.heartbeatMissCount, 2);
+    }
+
+    /**
+     * 节点统计信息批量写入间隔 单位秒，最小 1 秒
+     */
+    private int statFlushInterval = 5;
+
+    /**
+     * 节点统计信息待写入的统计日志达到多少条立即写入
+     */
+    private int statFlushSize = 500;
+
+    public int getStatFlushInterval() {
+        return Math.max(this.statFlushInterval, 1);
+    }
+
+    public int getStatFlushSize() {
+        return Math.max(this.statFlushSize, 1);
+    }
+
+    /**
+     * 同步节点项目、脚本缓存的线程数，小于等于 0 使用 CPU 核心数
+     */
+    private int syncPoolSize = 0;
+
+    /**
+     * 同步节点项目、脚本缓存时间隔多久强制全量同步一次 单位分钟，最小 1 分钟（其他时间只同步修改过的数据）
+     */
+    private int syncFullInterval = 60;
+
+    public int getSyncPoolSize() {
+        return this.syncPoolSize <= 0 ? RuntimeUtil.getProcessorCount() : this.syncPoolSize;
+    }
+
+    public int getSyncFullInterval() {
+        return Math.max(this.syncFullInterval, 1);
+    }
 }
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.configuration;
+
+import lombok.Data;
+
+/**
+ * 机器统计信息时序存储配置
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+@Data
+public class StatStoreConfig {
+
+    /**
+     * 是否开启，开启后统计日志写入本地时序存储，有本地数据的机器优先查询时序存储。未开启时保存到数据库表
+     */
+    private boolean enabled = true;
+
+    /**
+     * 开启时序存储后是否同时保存到数据库表（集群兜底）。时序存储只在写入的服务端本地，
+     * 集群部署时其他服务端只能查询数据库表中的数据，需要开启；单机部署关闭可以避免数据库表持续增长
+     */
+    private boolean dbWrite = false;
+
+    /**
+     * 分钟汇总数据保留天数，小于等于 0 不自动删除
+     */
+    private int minuteKeepDays = 30;
+
+    /**
+     * 小时汇总数据保留天数，小于等于 0 不自动删除
+     */
+    private int hourKeepDays = 365;
+
+    /**
+     * 天汇总数据保留天数，小于等于 0 不自动删除
+     */
+    private int dayKeepDays = 1825;
+
+    /**
+     * 单次查询最多返回的数据点，根据查询时间范围自动选择精度
+     */
+    private int maxQueryPoints = 2000;
+
+    public int getMaxQueryPoints() {
+        return Math.max(this.maxQueryPoints, 100);
+    }
+}
@@ -20,13 +20,13 @@ import cn.hutool.core.util.ObjectUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.keepbx.jpom.IJsonMessage;
 import cn.keepbx.jpom.model.JsonMessage;
-import cn.keepbx.jpom.plugins.IPlugin;
 import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.JSONObject;
 import org.dromara.jpom.IDockerConfigPlugin;
 import org.dromara.jpom.build.BuildExecuteService;
 import org.dromara.jpom.build.BuildUtil;
 import org.dromara.jpom.build.DockerYmlDsl;
+import org.dromara.jpom.build.RepositoryRefCacheService;
 import org.dromara.jpom.build.ResultDirFileAction;
 import org.dromara.jpom.common.BaseServerController;
 import org.dromara.jpom.common.ServerConst;
@@ -61,7 +61,6 @@ import org.springframework.web.bind.annotation.*;
 import javax.servlet.http.HttpServletRequest;
 import java.io.File;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 
 /**
@@ -83,6 +82,7 @@ public class BuildInfoController extends BaseServerController {
     private final DockerInfoService dockerInfoService;
     private final ScriptServer scriptServer;
     private final BuildExtConfig buildExtConfig;
+    private final RepositoryRefCacheService repositoryRefCacheService;
     protected final MachineDockerServer machineDockerServer;
 
     public BuildInfoController(DbBuildHistoryLogService dbBuildHistoryLogService,
@@ -93,7 +93,8 @@ public class BuildInfoController extends BaseServerController {
                                DockerInfoService dockerInfoService,
                                ScriptServer scriptServer,
                                BuildExtConfig buildExtConfig,
-                               MachineDockerServer machineDockerServer) {
+                               MachineDockerServer machineDockerServer,
+                               RepositoryRefCacheService repositoryRefCacheService) {
         this.dbBuildHistoryLogService = dbBuildHistoryLogService;
         this.sshService = sshService;
         this.buildInfoService = buildInfoService;
@@ -103,6 +104,7 @@ public class BuildInfoController extends BaseServerController {
         this.scriptServer = scriptServer;
         this.buildExtConfig = buildExtConfig;
         this.machineDockerServer = machineDockerServer;
+        this.repositoryRefCacheService = repositoryRefCacheService;
     }
 
     /**
@@ -440,9 +442,7 @@ public class BuildInfoController extends BaseServerController {
         Assert.notNull(repositoryModel, "无效的仓库信息");
         //
         Assert.state(repositoryModel.getRepoType() == 0, "只有 GIT 仓库才有分支信息");
-        IPlugin plugin = PluginFactory.getPlugin("git-clone");
-        Map<String, Object> map = repositoryModel.toMap();
-        Tuple branchAndTagList = (Tuple) plugin.execute("branchAndTagList", map);
+        Tuple branchAndTagList = repositoryRefCacheService.get(repositoryModel);
         Assert.notNull(branchAndTagList, "没有任何分支");
         JSONObject jsonObject = new JSONObject();
         List<Object> collection = branchAndTagList.toList();
@@ -17,6 +17,7 @@ import cn.keepbx.jpom.model.JsonMessage;
 import com.alibaba.fastjson2.JSONObject;
 import org.dromara.jpom.build.BuildExecuteManage;
 import org.dromara.jpom.build.BuildExecuteService;
+import org.dromara.jpom.build.BuildQueueService;
 import org.dromara.jpom.build.BuildUtil;
 import org.dromara.jpom.build.ResultDirFileAction;
 import org.dromara.jpom.common.BaseServerController;
@@ -42,6 +43,7 @@ import org.springframework.web.bind.annotation.RestController;
 
 import javax.servlet.http.HttpServletRequest;
 import java.io.File;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -59,13 +61,16 @@ public class BuildInfoManageController extends BaseServerController {
     private final BuildInfoService buildInfoService;
     private final DbBuildHistoryLogService dbBuildHistoryLogService;
     private final BuildExecuteService buildExecuteService;
+    private final BuildQueueService buildQueueService;
 
     public BuildInfoManageController(BuildInfoService buildInfoService,
                                      DbBuildHistoryLogService dbBuildHistoryLogService,
-                                     BuildExecuteService buildExecuteService) {
+                                     BuildExecuteService buildExecuteService,
+                                     BuildQueueService buildQueueService) {
         this.buildInfoService = buildInfoService;
         this.dbBuildHistoryLogService = dbBuildHistoryLogService;
         this.buildExecuteService = buildExecuteService;
+        this.buildQueueService = buildQueueService;
     }
 
     /**
@@ -141,6 +146,18 @@ public class BuildInfoManageController extends BaseServerController {
         return JsonMessage.success("取消成功");
     }
 
+    /**
+     * 构建队列（执行中和等待中的构建、排队位置、估算的开始时间）
+     *
+     * @return json
+     */
+    @RequestMapping(value = "/build/manage/queue", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    @Feature(method = MethodFeature.LIST)
+    public IJsonMessage<List<JSONObject>> queue(HttpServletRequest request) {
+        String workspaceId = buildInfoService.getCheckUserWorkspace(request);
+        return JsonMessage.success("", buildQueueService.list(workspaceId));
+    }
+
     /**
      * 重新发布
      *
@@ -32,6 +32,7 @@ import cn.keepbx.jpom.plugins.IPlugin;
 import com.alibaba.fastjson2.JSONObject;
 import lombok.extern.slf4j.Slf4j;
 import org.dromara.jpom.build.BuildUtil;
+import org.dromara.jpom.build.RepositoryRefCacheService;
 import org.dromara.jpom.common.BaseServerController;
 import org.dromara.jpom.common.ServerConst;
 import org.dromara.jpom.common.validator.ValidatorItem;
@@ -75,11 +76,14 @@ public class RepositoryController extends BaseServerController {
 
     private final RepositoryService repositoryService;
     private final BuildInfoService buildInfoService;
+    private final RepositoryRefCacheService repositoryRefCacheService;
 
     public RepositoryController(RepositoryService repositoryService,
-                                BuildInfoService buildInfoService) {
+                                BuildInfoService buildInfoService,
+                                RepositoryRefCacheService repositoryRefCacheService) {
         this.repositoryService = repositoryService;
         this.buildInfoService = buildInfoService;
+        this.repositoryRefCacheService = repositoryRefCacheService;
     }
 
     /**
@@ -260,6 +264,7 @@ public class RepositoryController extends BaseServerController {
             } else {
                 where.setId(repositoryModel.getId());
                 repositoryService.updateById(where);
+                repositoryRefCacheService.invalidate(where.getId());
                 updateCount++;
             }
         }
@@ -342,6 +347,7 @@ public class RepositoryController extends BaseServerController {
             repositoryService.getByKeyAndGlobal(repositoryModelReq.getId(), request);
             //repositoryModelReq.setWorkspaceId(repositoryService.getCheckUserWorkspace(getRequest()));
             repositoryService.updateById(repositoryModelReq);
+            repositoryRefCacheService.invalidate(repositoryModelReq.getId());
         }
 
         return new JsonMessage<>(200, "操作成功");
@@ -363,6 +369,7 @@ public class RepositoryController extends BaseServerController {
         repositoryModel.setRsaPrv(StrUtil.EMPTY);
         repositoryModel.setRsaPub(StrUtil.EMPTY);
         repositoryService.updateById(repositoryModel, request);
+        repositoryRefCacheService.invalidate(repositoryModel.getId());
         return new JsonMessage<>(200, "操作成功");
     }
 
@@ -511,6 +518,8 @@ public class RepositoryController extends BaseServerController {
         repositoryService.delByKey(keyAndGlobal.getId());
         File rsaFile = BuildUtil.getRepositoryRsaFile(id + ServerConst.ID_RSA);
         FileUtil.del(rsaFile);
+        FileUtil.del(BuildUtil.getRepositoryMirrorFile(id));
+        repositoryRefCacheService.invalidate(id);
         return JsonMessage.success("删除成功");
     }
 
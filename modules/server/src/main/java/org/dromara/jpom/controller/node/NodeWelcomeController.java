@@ -26,6 +26,7 @@ import org.dromara.jpom.configuration.NodeConfig;
 import org.dromara.jpom.func.assets.model.MachineNodeModel;
 import org.dromara.jpom.func.assets.model.MachineNodeStatLogModel;
 import org.dromara.jpom.func.assets.server.MachineNodeStatLogServer;
+import org.dromara.jpom.func.assets.stat.MachineStatStore;
 import org.dromara.jpom.model.BaseMachineModel;
 import org.dromara.jpom.model.data.NodeModel;
 import org.dromara.jpom.permission.SystemPermission;
@@ -49,11 +50,14 @@ public class NodeWelcomeController extends BaseServerController {
 
     private final MachineNodeStatLogServer machineNodeStatLogServer;
     private final NodeConfig nodeConfig;
+    private final MachineStatStore machineStatStore;
 
     public NodeWelcomeController(MachineNodeStatLogServer machineNodeStatLogServer,
-                                 ServerConfig serverConfig) {
+                                 ServerConfig serverConfig,
+                                 MachineStatStore machineStatStore) {
         this.machineNodeStatLogServer = machineNodeStatLogServer;
         this.nodeConfig = serverConfig.getNode();
+        this.machineStatStore = machineStatStore;
     }
 
     @PostMapping(value = "node_monitor_data.json", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -67,7 +71,12 @@ public class NodeWelcomeController extends BaseServerController {
         String useMachineId = Optional.ofNullable(node).map(BaseMachineModel::getMachineId).orElse(machineId);
         String startDateStr = getParameter("startTime");
         String endDateStr = getParameter("endTime");
+        // 没有时序数据（未开启或者升级前的数据）查询数据库
+        boolean useStore = machineStatStore.isEnabled() && machineStatStore.hasData(useMachineId);
         if (StrUtil.hasEmpty(startDateStr, endDateStr)) {
+            if (useStore) {
+                return machineStatStore.latest(useMachineId, 500);
+            }
             MachineNodeStatLogModel systemMonitorLog = new MachineNodeStatLogModel();
             systemMonitorLog.setMachineId(useMachineId);
             return machineNodeStatLogServer.queryList(systemMonitorLog, 500, new Order("monitorTime", Direction.DESC));
@@ -81,6 +90,9 @@ public class NodeWelcomeController extends BaseServerController {
             endDate = DateUtil.endOfDay(endDate);
         }
         long endTime = endDate.getTime();
+        if (useStore) {
+            return machineStatStore.query(useMachineId, startTime, endTime);
+        }
         // 开启了节点信息采集
         Page pageObj = new Page(1, 5000);
         pageObj.addOrder(new Order("monitorTime", Direction.DESC));
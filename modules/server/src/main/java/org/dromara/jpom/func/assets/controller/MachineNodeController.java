@@ -19,6 +19,7 @@ import org.dromara.jpom.common.validator.ValidatorItem;
 import org.dromara.jpom.func.BaseGroupNameController;
 import org.dromara.jpom.func.assets.model.MachineNodeModel;
 import org.dromara.jpom.func.assets.server.MachineNodeServer;
+import org.dromara.jpom.func.assets.stat.MachineStatStore;
 import org.dromara.jpom.model.PageResultDto;
 import org.dromara.jpom.model.data.NodeModel;
 import org.dromara.jpom.model.data.WorkspaceModel;
@@ -57,17 +58,20 @@ public class MachineNodeController extends BaseGroupNameController {
     private final ProjectInfoCacheService projectInfoCacheService;
     private final NodeScriptServer nodeScriptServer;
     private final NodeService nodeService;
+    private final MachineStatStore machineStatStore;
 
     public MachineNodeController(WorkspaceService workspaceService,
                                  MachineNodeServer machineNodeServer,
                                  ProjectInfoCacheService projectInfoCacheService,
                                  NodeScriptServer nodeScriptServer,
-                                 NodeService nodeService) {
+                                 NodeService nodeService,
+                                 MachineStatStore machineStatStore) {
         super(machineNodeServer);
         this.workspaceService = workspaceService;
         this.projectInfoCacheService = projectInfoCacheService;
         this.nodeScriptServer = nodeScriptServer;
         this.nodeService = nodeService;
+        this.machineStatStore = machineStatStore;
     }
 
     @PostMapping(value = "list-data", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -90,6 +94,7 @@ public class MachineNodeController extends BaseGroupNameController {
         long count = nodeService.countByMachine(id);
         Assert.state(count <= 0, "当前机器还关联" + count + "个节点不能删除");
         machineNodeServer.delByKey(id);
+        machineStatStore.delete(id);
         return JsonMessage.success("操作成功");
     }
 
@@ -49,6 +49,7 @@ import org.dromara.jpom.permission.ClassFeature;
 import org.dromara.jpom.permission.Feature;
 import org.dromara.jpom.permission.MethodFeature;
 import org.dromara.jpom.permission.SystemPermission;
+import org.dromara.jpom.plugins.SshSessionPool;
 import org.dromara.jpom.service.dblog.SshTerminalExecuteLogService;
 import org.dromara.jpom.service.node.ssh.SshService;
 import org.dromara.jpom.service.system.WorkspaceService;
@@ -213,6 +214,10 @@ public class MachineSshController extends BaseGroupNameController {
         }
         sshModel.setStatus(1);
         int i = add ? machineSshServer.insert(sshModel) : machineSshServer.updateById(sshModel);
+        if (!add) {
+            // 连接信息可能变更，断开缓存的会话
+            SshSessionPool.invalidate(sshModel.getId());
+        }
         return JsonMessage.success("操作成功");
     }
 
@@ -223,6 +228,7 @@ public class MachineSshController extends BaseGroupNameController {
         long count = sshService.countByMachine(id);
         Assert.state(count <= 0, "当前机器SSH还关联" + count + "个ssh不能删除");
         machineSshServer.delByKey(id);
+        SshSessionPool.invalidate(id);
         return JsonMessage.success("操作成功");
     }
 
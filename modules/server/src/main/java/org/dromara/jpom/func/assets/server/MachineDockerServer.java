@@ -26,6 +26,7 @@ import cn.keepbx.jpom.plugins.IPlugin;
 import com.alibaba.fastjson2.JSONObject;
 import com.jcraft.jsch.Session;
 import lombok.extern.slf4j.Slf4j;
+import org.dromara.jpom.DockerStatsCache;
 import org.dromara.jpom.common.Const;
 import org.dromara.jpom.common.ILoadEvent;
 import org.dromara.jpom.configuration.AssetsConfig;
@@ -156,6 +157,7 @@ public class MachineDockerServer extends BaseDbService<MachineDockerModel> imple
         String monitorCron = dockerConfig.getMonitorCron();
         String cron = Opt.ofBlankAble(monitorCron).orElse("0 0/1 * * * ?");
         CronUtils.add(CRON_ID, cron, () -> MachineDockerServer.this);
+        DockerStatsCache.config(dockerConfig.getStatsStreamIdle(), dockerConfig.getStatsStreamMaxSize(), dockerConfig.getStatsPoolSize());
     }
 
     @Override
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.func.assets.server;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.date.SystemClock;
+import cn.hutool.core.map.SafeConcurrentHashMap;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.db.Entity;
+import com.alibaba.fastjson2.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.jpom.JpomApplication;
+import org.dromara.jpom.common.ILoadEvent;
+import org.dromara.jpom.configuration.NodeConfig;
+import org.dromara.jpom.func.assets.model.MachineNodeModel;
+import org.dromara.jpom.func.system.service.ClusterInfoService;
+import org.dromara.jpom.system.ServerConfig;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 节点推送心跳（transportMode = 1）
+ * <p>
+ * 节点通过 websocket 定时推送统计信息，服务端收到后交给 {@link MachineNodeStatWriter} 合并批量写入。
+ * 连续多个推送周期没有收到心跳则标记为离线
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+@Service
+@Slf4j
+public class MachineNodeHeartbeatServer implements ILoadEvent, DisposableBean {
+
+    private final MachineNodeServer machineNodeServer;
+    private final ClusterInfoService clusterInfoService;
+    private final NodeConfig nodeConfig;
+    /**
+     * 机器id -> 心跳状态
+     */
+    private final Map<String, HeartbeatState> stateMap = new SafeConcurrentHashMap<>();
+    private final long startTime = SystemClock.now();
+    private ScheduledFuture<?> scheduledFuture;
+
+    public MachineNodeHeartbeatServer(MachineNodeServer machineNodeServer,
+                                      ClusterInfoService clusterInfoService,
+                                      ServerConfig serverConfig) {
+        this.machineNodeServer = machineNodeServer;
+        this.clusterInfoService = clusterInfoService;
+        this.nodeConfig = serverConfig.getNode();
+    }
+
+    @Override
+    public void afterPropertiesSet(ApplicationContext applicationContext) throws Exception {
+        int heartSecond = nodeConfig.getHeartSecond();
+        this.scheduledFuture = JpomApplication.getScheduledExecutorService()
+            .scheduleWithFixedDelay(this::checkOffline, heartSecond, heartSecond, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 节点认证
+     *
+     * @param installId 节点安装id
+     * @param authorize 节点授权信息
+     * @return 认证失败返回 null
+     */
+    public MachineNodeModel authorize(String installId, String authorize) {
+        if (StrUtil.hasEmpty(installId, authorize)) {
+            return null;
+        }
+        Entity where = Entity.create();
+        where.set("installId", installId);
+        where.set("transportMode", 1);
+        // 需要保留授权信息
+        List<MachineNodeModel> list = machineNodeServer.listByEntity(where, false);
+        if (CollUtil.isEmpty(list)) {
+            return null;
+        }
+        return list.stream()
+            .filter(machineNodeModel -> StrUtil.equals(machineNodeModel.authorize(), authorize))
+            .findFirst()
+            .orElse(null);
+    }
+
+    /**
+     * 节点连接成功
+     *
+     * @param machineNode 机器
+     * @param session     会话
+     */
+    public void online(MachineNodeModel machineNode, WebSocketSession session) {
+        HeartbeatState old = stateMap.put(machineNode.getId(), new HeartbeatState(session));
+        if (old != null && old.session != session) {
+            // 同一个节点重复连接，关闭旧连接
+            this.close(old.session);
+        }
+    }
+
+    /**
+     * 收到节点推送
+     *
+     * @param machineId 机器id
+     * @param session   会话
+     * @param data      推送数据
+     */
+    public void receive(String machineId, WebSocketSession session, JSONObject data) {
+        HeartbeatState state = stateMap.get(machineId);
+        if (state == null || state.session != session) {
+            // 已经被新的连接替代
+            this.close(session);
+            return;
+        }
+        state.lastTime = SystemClock.now();
+        state.interval = Math.max(data.getIntValue("interval"), 1);
+        machineNodeServer.saveStatInfo(machineId, data);
+    }
+
+    /**
+     * 节点断开连接，不立即标记离线，等待超时检查
+     *
+     * @param machineId 机器id
+     * @param session   会话
+     */
+    public void offline(String machineId, WebSocketSession session) {
+        HeartbeatState state = stateMap.get(machineId);
+        if (state != null && state.session == session) {
+            state.session = null;
+        }
+    }
+
+    /**
+     * 检查节点推送是否超时
+     */
+    private void checkOffline() {
+        try {
+            Entity entity = Entity.create();
+            entity.set("transportMode", 1);
+            if (clusterInfoService.isMultiServer()) {
+                String linkGroup = clusterInfoService.getCurrent().getLinkGroup();
+                List<String> linkGroups = StrUtil.splitTrim(linkGroup, StrUtil.COMMA);
+                if (CollUtil.isEmpty(linkGroups)) {
+                    return;
+                }
+                entity.set("groupName", linkGroups);
+            }
+            List<MachineNodeModel> list = machineNodeServer.listByEntity(entity);
+            if (CollUtil.isEmpty(list)) {
+                return;
+            }
+            long now = SystemClock.now();
+            int missCount = nodeConfig.getHeartbeatMissCount();
+            for (MachineNodeModel machineNodeModel : list) {
+                HeartbeatState state = stateMap.get(machineNodeModel.getId());
+                long lastTime;
+                long timeout;
+                if (state == null) {
+                    // 服务端刚启动，等待节点重新连接
+                    lastTime = startTime;
+                    timeout = TimeUnit.SECONDS.toMillis((long) nodeConfig.getHeartSecond() * missCount);
+                } else {
+                    lastTime = state.lastTime;
+                    timeout = TimeUnit.SECONDS.toMillis((long) state.interval * missCount);
+                }
+                if (now - lastTime <= timeout) {
+                    continue;
+                }
+                Integer status = machineNodeModel.getStatus();
+                if (status != null && status == 0) {
+                    // 已经是离线状态
+                    continue;
+                }
+                machineNodeServer.updateStatus(machineNodeModel, 0, "节点心跳超时");
+            }
+            // 清理已经删除或者修改为拉取的节点
+            Set<String> ids = new HashSet<>(CollUtil.map(list, MachineNodeModel::getId, true));
+            stateMap.entrySet().removeIf(entry -> {
+                if (ids.contains(entry.getKey())) {
+                    return false;
+                }
+                this.close(entry.getValue().session);
+                return true;
+            });
+        } catch (Throwable e) {
+            log.error("检查节点推送心跳异常", e);
+        }
+    }
+
+    private void close(WebSocketSession session) {
+        if (session == null || !session.isOpen()) {
+            return;
+        }
+        try {
+            session.close(CloseStatus.NORMAL);
+        } catch (IOException e) {
+            log.warn("关闭节点心跳连接失败：{}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (scheduledFuture != null) {
+            scheduledFuture.cancel(false);
+        }
+    }
+
+    private static class HeartbeatState {
+        private volatile WebSocketSession session;
+        private volatile long lastTime = SystemClock.now();
+        /**
+         * 节点推送间隔 单位秒
+         */
+        private volatile int interval = 10;
+
+        private HeartbeatState(WebSocketSession session) {
+            this.session = session;
+        }
+    }
+}
@@ -39,6 +39,7 @@ import org.dromara.jpom.exception.AgentException;
 import org.dromara.jpom.func.assets.AssetsExecutorPoolService;
 import org.dromara.jpom.func.assets.model.MachineNodeModel;
 import org.dromara.jpom.func.assets.model.MachineNodeStatLogModel;
+import org.dromara.jpom.func.assets.stat.MachineStatStore;
 import org.dromara.jpom.func.system.service.ClusterInfoService;
 import org.dromara.jpom.model.data.NodeModel;
 import org.dromara.jpom.model.user.UserModel;
@@ -46,6 +47,7 @@ import org.dromara.jpom.service.h2db.BaseDbService;
 import org.dromara.jpom.service.node.NodeService;
 import org.dromara.jpom.system.ServerConfig;
 import org.dromara.jpom.system.db.InitDb;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
@@ -57,6 +59,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -65,13 +68,14 @@ import java.util.stream.Collectors;
  */
 @Service
 @Slf4j
-public class MachineNodeServer extends BaseDbService<MachineNodeModel> implements ILoadEvent, IAsyncLoad, Runnable {
+public class MachineNodeServer extends BaseDbService<MachineNodeModel> implements ILoadEvent, IAsyncLoad, Runnable, DisposableBean {
 
     private final NodeService nodeService;
     private final NodeConfig nodeConfig;
     private final MachineNodeStatLogServer machineNodeStatLogServer;
     private final ClusterInfoService clusterInfoService;
     private final AssetsExecutorPoolService assetsExecutorPoolService;
+    private final MachineNodeStatWriter machineNodeStatWriter;
 
     private static final String TASK_ID = "system_monitor_node";
 
@@ -79,12 +83,54 @@ public class MachineNodeServer extends BaseDbService<MachineNodeModel> implement
                              ServerConfig serverConfig,
                              MachineNodeStatLogServer machineNodeStatLogServer,
                              ClusterInfoService clusterInfoService,
-                             AssetsExecutorPoolService assetsExecutorPoolService) {
+                             AssetsExecutorPoolService assetsExecutorPoolService,
+                             MachineStatStore machineStatStore) {
         this.nodeService = nodeService;
         this.nodeConfig = serverConfig.getNode();
         this.machineNodeStatLogServer = machineNodeStatLogServer;
         this.clusterInfoService = clusterInfoService;
         this.assetsExecutorPoolService = assetsExecutorPoolService;
+        this.machineNodeStatWriter = new MachineNodeStatWriter(this, machineNodeStatLogServer, nodeService, nodeConfig, machineStatStore);
+    }
+
+    /**
+     * 统计信息批量写入
+     *
+     * @return writer
+     */
+    public MachineNodeStatWriter getStatWriter() {
+        return machineNodeStatWriter;
+    }
+
+    @Override
+    public int updateById(MachineNodeModel info, Consumer<Entity> whereConsumer) {
+        int count = super.updateById(info, whereConsumer);
+        machineNodeStatWriter.evict(info.getId());
+        return count;
+    }
+
+    @Override
+    public int update(Entity entity, Entity where) {
+        int count = super.update(entity, where);
+        machineNodeStatWriter.evict(null);
+        return count;
+    }
+
+    @Override
+    public int delByKey(Object keyValue, Consumer<Entity> consumer) {
+        int count = super.delByKey(keyValue, consumer);
+        machineNodeStatWriter.evict(keyValue instanceof String ? (String) keyValue : null);
+        return count;
+    }
+
+    /**
+     * 批量写入统计信息（不清除写入缓存）
+     *
+     * @param info 数据
+     * @return 影响的行数
+     */
+    int updateStatById(MachineNodeModel info) {
+        return super.updateById(info, null);
     }
 
     @Override
@@ -97,7 +143,7 @@ public class MachineNodeServer extends BaseDbService<MachineNodeModel> implement
         super.fillInsert(machineNodeModel);
         machineNodeModel.setGroupName(StrUtil.emptyToDefault(machineNodeModel.getGroupName(), Const.DEFAULT_GROUP_NAME));
         //
-        machineNodeModel.setTransportMode(0);
+        machineNodeModel.setTransportMode(ObjectUtil.defaultIfNull(machineNodeModel.getTransportMode(), 0));
     }
 
     /**
@@ -183,6 +229,7 @@ public class MachineNodeServer extends BaseDbService<MachineNodeModel> implement
 
     @Override
     public void startLoad() {
+        machineNodeStatWriter.start();
         // 启动心跳检测
         int heartSecond = nodeConfig.getHeartSecond();
         ScheduledExecutorService scheduler = JpomApplication.getScheduledExecutorService();
@@ -241,7 +288,7 @@ public class MachineNodeServer extends BaseDbService<MachineNodeModel> implement
                         return;
                     }
                     jsonObject.put("networkDelay", networkTime);
-                    this.saveStatInfo(machineNodeModel, jsonObject);
+                    this.saveStatInfo(machineNodeModel.getId(), jsonObject);
                 } catch (AgentAuthorizeException agentException) {
                     this.updateStatus(machineNodeModel, 2, agentException.getMessage());
                 } catch (AgentException e) {
@@ -257,14 +304,31 @@ public class MachineNodeServer extends BaseDbService<MachineNodeModel> implement
     }
 
     /**
-     * 更新统计信息
+     * 保存统计信息（放入队列异步批量写入）
      *
-     * @param machineNode 机器数据
-     * @param data        统计数据
+     * @param machineId 机器id
+     * @param data      统计数据
      */
-    private void saveStatInfo(MachineNodeModel machineNode, JSONObject data) {
+    public void saveStatInfo(String machineId, JSONObject data) {
+        List<MachineNodeStatLogModel> statLogs = new ArrayList<>();
+        MachineNodeModel machineNodeModel = this.resolveStatInfo(machineId, data, statLogs);
+        JSONObject workspaceStat = Optional.ofNullable(data.getJSONObject("jpomInfo"))
+            .map(jsonObject -> jsonObject.getJSONObject("workspaceStat"))
+            .orElse(null);
+        machineNodeStatWriter.offer(machineNodeModel, statLogs, workspaceStat);
+    }
+
+    /**
+     * 解析统计信息
+     *
+     * @param machineId 机器id
+     * @param data      统计数据
+     * @param statLogs  统计日志
+     * @return 需要更新的机器数据
+     */
+    private MachineNodeModel resolveStatInfo(String machineId, JSONObject data, List<MachineNodeStatLogModel> statLogs) {
         MachineNodeModel machineNodeModel = new MachineNodeModel();
-        machineNodeModel.setId(machineNode.getId());
+        machineNodeModel.setId(machineId);
         String oshiError = data.getString("oshiError");
         if (StrUtil.isEmpty(oshiError)) {
             machineNodeModel.setStatus(1);
@@ -273,10 +337,11 @@ public class MachineNodeServer extends BaseDbService<MachineNodeModel> implement
             machineNodeModel.setStatus(4);
             machineNodeModel.setStatusMsg(oshiError);
         }
-        int networkDelay = data.getIntValue("networkDelay");
-        int systemSleep = data.getIntValue("systemSleep");
-        // 减去系统固定休眠时间
-        networkDelay = networkDelay - systemSleep;
+        // 节点推送时没有网络延迟
+        Integer networkDelay = Optional.ofNullable(data.getInteger("networkDelay"))
+            // 减去系统固定休眠时间
+            .map(integer -> integer - data.getIntValue("systemSleep"))
+            .orElse(null);
         machineNodeModel.setNetworkDelay(networkDelay);
         // jpom 相关信息
         JSONObject jpomInfo = data.getJSONObject("jpomInfo");
@@ -297,23 +362,22 @@ public class MachineNodeServer extends BaseDbService<MachineNodeModel> implement
             machineNodeModel.setJavaVersion(jsonObject.getString("javaVersion"));
         });
         // 基础状态信息
-        MachineNodeStatLogModel machineNodeStatLogModel = new MachineNodeStatLogModel();
-        machineNodeStatLogModel.setMachineId(machineNodeModel.getId());
-        machineNodeStatLogModel.setNetworkDelay(networkDelay);
         Optional.ofNullable(data.getJSONObject("simpleStatus")).ifPresent(jsonObject -> {
             machineNodeModel.setOsOccupyMemory(ObjectUtil.defaultIfNull(jsonObject.getDouble("memory"), -1D));
             machineNodeModel.setOsOccupyDisk(ObjectUtil.defaultIfNull(jsonObject.getDouble("disk"), -1D));
             machineNodeModel.setOsOccupyCpu(ObjectUtil.defaultIfNull(jsonObject.getDouble("cpu"), -1D));
-            //
-            machineNodeStatLogModel.setOccupyCpu(machineNodeModel.getOsOccupyCpu());
-            machineNodeStatLogModel.setOccupyMemory(machineNodeModel.getOsOccupyMemory());
-            machineNodeStatLogModel.setOccupyDisk(machineNodeModel.getOsOccupyDisk());
-            machineNodeStatLogModel.setOccupySwapMemory(jsonObject.getDouble("swapMemory"));
-            machineNodeStatLogModel.setOccupyVirtualMemory(jsonObject.getDouble("virtualMemory"));
-            machineNodeStatLogModel.setNetTxBytes(jsonObject.getLong("netTxBytes"));
-            machineNodeStatLogModel.setNetRxBytes(jsonObject.getLong("netRxBytes"));
-            machineNodeStatLogModel.setMonitorTime(jsonObject.getLongValue("time"));
         });
+        // 节点推送时携带了两次推送之间的采样
+        List<JSONObject> history = data.getList("simpleStatusHistory", JSONObject.class);
+        if (CollUtil.isEmpty(history) || networkDelay != null) {
+            Optional.ofNullable(data.getJSONObject("simpleStatus"))
+                .map(jsonObject -> this.createStatLog(machineId, networkDelay, jsonObject))
+                .ifPresent(statLogs::add);
+        } else {
+            for (JSONObject jsonObject : history) {
+                statLogs.add(this.createStatLog(machineId, null, jsonObject));
+            }
+        }
         // 系统信息
         Optional.ofNullable(data.getJSONObject("systemInfo")).ifPresent(jsonObject -> {
             machineNodeModel.setOsSystemUptime(jsonObject.getLong("systemUptime"));
@@ -336,30 +400,22 @@ public class MachineNodeServer extends BaseDbService<MachineNodeModel> implement
             machineNodeModel.setOsLoadAverage(CollUtil.join(osLoadAverage, StrUtil.COMMA));
             machineNodeModel.setOsFileStoreTotal(jsonObject.getLong("osFileStoreTotal"));
         });
-        this.updateById(machineNodeModel);
-        if (machineNodeStatLogModel.getMonitorTime() != null) {
-            machineNodeStatLogServer.insert(machineNodeStatLogModel);
-        }
-        //
-        Optional.ofNullable(jpomInfo).ifPresent(jsonObject -> {
-            JSONObject workspaceStat = jsonObject.getJSONObject("workspaceStat");
-            if (workspaceStat == null) {
-                return;
-            }
-            for (Map.Entry<String, Object> entry : workspaceStat.entrySet()) {
-                String key = entry.getKey();
-                JSONObject value = (JSONObject) entry.getValue();
-                int projectCount = value.getIntValue("projectCount", 0);
-                int scriptCount = value.getIntValue("scriptCount", 0);
-                Entity entity = Entity.create();
-                entity.set("jpomProjectCount", projectCount);
-                entity.set("jpomScriptCount", scriptCount);
-                Entity where = Entity.create();
-                where.set("machineId", machineNodeModel.getId());
-                where.set("workspaceId", key);
-                nodeService.update(entity, where);
-            }
-        });
+        return machineNodeModel;
+    }
+
+    private MachineNodeStatLogModel createStatLog(String machineId, Integer networkDelay, JSONObject jsonObject) {
+        MachineNodeStatLogModel machineNodeStatLogModel = new MachineNodeStatLogModel();
+        machineNodeStatLogModel.setMachineId(machineId);
+        machineNodeStatLogModel.setNetworkDelay(networkDelay);
+        machineNodeStatLogModel.setOccupyCpu(ObjectUtil.defaultIfNull(jsonObject.getDouble("cpu"), -1D));
+        machineNodeStatLogModel.setOccupyMemory(ObjectUtil.defaultIfNull(jsonObject.getDouble("memory"), -1D));
+        machineNodeStatLogModel.setOccupyDisk(ObjectUtil.defaultIfNull(jsonObject.getDouble("disk"), -1D));
+        machineNodeStatLogModel.setOccupySwapMemory(jsonObject.getDouble("swapMemory"));
+        machineNodeStatLogModel.setOccupyVirtualMemory(jsonObject.getDouble("virtualMemory"));
+        machineNodeStatLogModel.setNetTxBytes(jsonObject.getLong("netTxBytes"));
+        machineNodeStatLogModel.setNetRxBytes(jsonObject.getLong("netRxBytes"));
+        machineNodeStatLogModel.setMonitorTime(jsonObject.getLongValue("time"));
+        return machineNodeStatLogModel;
     }
 
     /**
@@ -369,7 +425,7 @@ public class MachineNodeServer extends BaseDbService<MachineNodeModel> implement
      * @param status      状态
      * @param msg         状态消息
      */
-    private void updateStatus(MachineNodeModel machineNode, int status, String msg) {
+    void updateStatus(MachineNodeModel machineNode, int status, String msg) {
         MachineNodeModel machineNodeModel = new MachineNodeModel();
         machineNodeModel.setId(machineNode.getId());
         machineNodeModel.setStatus(status);
@@ -379,7 +435,7 @@ public class MachineNodeServer extends BaseDbService<MachineNodeModel> implement
         machineNodeModel.setOsOccupyCpu(-99D);
         machineNodeModel.setOsOccupyMemory(-99D);
         machineNodeModel.setOsOccupyDisk(-99D);
-        this.updateById(machineNodeModel);
+        machineNodeStatWriter.offer(machineNodeModel, null, null);
     }
 
     private MachineNodeModel resolveMachineData(HttpServletRequest request) {
@@ -404,6 +460,7 @@ public class MachineNodeServer extends BaseDbService<MachineNodeModel> implement
         update.setJpomTimeout(machineNodeModel.getJpomTimeout());
         update.setTemplateNode(machineNodeModel.getTemplateNode());
         update.setTransportEncryption(machineNodeModel.getTransportEncryption());
+        update.setTransportMode(ObjectUtil.defaultIfNull(machineNodeModel.getTransportMode(), 0));
         return update;
     }
 
@@ -457,6 +514,8 @@ public class MachineNodeServer extends BaseDbService<MachineNodeModel> implement
         try {
             JpomManifest jpomManifest = objectJsonMessage.getData(JpomManifest.class);
             Assert.notNull(jpomManifest, "节点连接失败，请检查节点是否在线");
+            // 节点推送心跳时使用安装 id 识别机器
+            nodeModel.setInstallId(jpomManifest.getInstallId());
         } catch (Exception e) {
             log.error("节点连接失败，请检查节点是否在线", e);
             throw new IllegalStateException("节点返回信息异常,请检查节点地址是否配置正确或者代理配置是否正确");
@@ -513,4 +572,9 @@ public class MachineNodeServer extends BaseDbService<MachineNodeModel> implement
         nodeModel.setGroup(machineNodeModel.getGroupName());
         return nodeModel;
     }
+
+    @Override
+    public void destroy() throws Exception {
+        machineNodeStatWriter.stop();
+    }
 }
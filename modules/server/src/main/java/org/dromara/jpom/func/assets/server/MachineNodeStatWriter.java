@@ -0,0 +1,349 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.func.assets.server;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.bean.copier.CopyOptions;
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.date.SystemClock;
+import cn.hutool.core.map.SafeConcurrentHashMap;
+import cn.hutool.db.Entity;
+import com.alibaba.fastjson2.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.jpom.JpomApplication;
+import org.dromara.jpom.configuration.NodeConfig;
+import org.dromara.jpom.func.assets.model.MachineNodeModel;
+import org.dromara.jpom.func.assets.model.MachineNodeStatLogModel;
+import org.dromara.jpom.func.assets.stat.MachineStatStore;
+import org.dromara.jpom.service.node.NodeService;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 机器统计信息异步批量写入
+ * <p>
+ * 心跳结果先放入队列，同一个机器多次的状态合并为一次更新，统计日志批量插入。
+ * 和上一次写入的值相同的字段不再更新，工作空间的项目、脚本数没有变化不更新。
+ * 按间隔或者待写入的统计日志个数触发写入
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+@Slf4j
+public class MachineNodeStatWriter {
+
+    /**
+     * 没有变化的机器最长多久强制更新一次（刷新修改时间） 单位毫秒
+     */
+    private static final long FORCE_UPDATE_TIME = TimeUnit.MINUTES.toMillis(5);
+    /**
+     * 对比时忽略的字段
+     */
+    private static final String[] IGNORE_FIELDS = new String[]{"id", "modifyTimeMillis"};
+
+    private final MachineNodeServer machineNodeServer;
+    private final MachineNodeStatLogServer machineNodeStatLogServer;
+    private final NodeService nodeService;
+    private final NodeConfig nodeConfig;
+    private final MachineStatStore machineStatStore;
+
+    /**
+     * 机器id -> 待写入的数据
+     */
+    private final ConcurrentMap<String, Pending> pendingMap = new SafeConcurrentHashMap<>();
+    private final AtomicInteger pendingLogCount = new AtomicInteger();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    /**
+     * 机器id -> 最后一次写入的值
+     */
+    private final Map<String, Written> writtenMap = new SafeConcurrentHashMap<>();
+    /**
+     * 其他地方直接修改机器数据的次数，写入期间有变化不记录写入的值
+     */
+    private final AtomicLong evictVersion = new AtomicLong();
+    /**
+     * 机器id:工作空间id -> 最后一次写入的项目、脚本数（机器修改、删除时清除）
+     */
+    private final Map<String, String> workspaceWrittenMap = new SafeConcurrentHashMap<>();
+    private ScheduledFuture<?> scheduledFuture;
+
+    // 监控指标
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong updateCount = new AtomicLong();
+    private final AtomicLong skipCount = new AtomicLong();
+    private final AtomicLong insertCount = new AtomicLong();
+    private final AtomicLong workspaceUpdateCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private volatile long lastFlushTime;
+    private volatile long lastFlushCost;
+    private volatile long maxFlushCost;
+    private volatile long totalFlushCost;
+
+    public MachineNodeStatWriter(MachineNodeServer machineNodeServer,
+                                 MachineNodeStatLogServer machineNodeStatLogServer,
+                                 NodeService nodeService,
+                                 NodeConfig nodeConfig,
+                                 MachineStatStore machineStatStore) {
+        this.machineNodeServer = machineNodeServer;
+        this.machineNodeStatLogServer = machineNodeStatLogServer;
+        this.nodeService = nodeService;
+        this.nodeConfig = nodeConfig;
+        this.machineStatStore = machineStatStore;
+    }
+
+    /**
+     * 开始定时写入
+     */
+    public void start() {
+        int interval = nodeConfig.getStatFlushInterval();
+        this.scheduledFuture = JpomApplication.getScheduledExecutorService()
+            .scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 停止定时写入，并写入剩余的数据
+     */
+    public void stop() {
+        if (scheduledFuture != null) {
+            scheduledFuture.cancel(false);
+        }
+        this.flush();
+    }
+
+    /**
+     * 添加待写入的数据
+     *
+     * @param update        机器需要更新的字段
+     * @param statLogs      统计日志
+     * @param workspaceStat 工作空间的项目、脚本数，可以为 null
+     */
+    public void offer(MachineNodeModel update, List<MachineNodeStatLogModel> statLogs, JSONObject workspaceStat) {
+        pendingMap.compute(update.getId(), (id, pending) -> {
+            if (pending == null) {
+                pending = new Pending(update);
+            } else {
+                // 后面的值覆盖前面的值
+                BeanUtil.copyProperties(update, pending.update, CopyOptions.create().ignoreNullValue());
+            }
+            if (statLogs != null) {
+                pending.statLogs.addAll(statLogs);
+            }
+            if (workspaceStat != null) {
+                pending.workspaceStat = workspaceStat;
+            }
+            return pending;
+        });
+        int count = pendingLogCount.addAndGet(CollUtil.size(statLogs));
+        if (count >= nodeConfig.getStatFlushSize() && flushRequested.compareAndSet(false, true)) {
+            JpomApplication.getScheduledExecutorService().execute(this::flush);
+        }
+    }
+
+    /**
+     * 写入队列中的数据
+     */
+    public synchronized void flush() {
+        flushRequested.set(false);
+        if (pendingMap.isEmpty()) {
+            return;
+        }
+        long start = SystemClock.now();
+        List<MachineNodeStatLogModel> statLogs = new ArrayList<>();
+        for (String machineId : new ArrayList<>(pendingMap.keySet())) {
+            Pending pending = pendingMap.remove(machineId);
+            if (pending == null) {
+                continue;
+            }
+            pendingLogCount.addAndGet(-pending.statLogs.size());
+            statLogs.addAll(pending.statLogs);
+            try {
+                this.writeMachine(machineId, pending.update);
+                this.writeWorkspace(machineId, pending.workspaceStat);
+            } catch (Exception e) {
+                errorCount.incrementAndGet();
+                // 写入失败后下一次全部字段重新写入
+                writtenMap.remove(machineId);
+                log.error("保存机器统计信息失败：{}", machineId, e);
+            }
+        }
+        this.insertStatLogs(statLogs);
+        long cost = SystemClock.now() - start;
+        this.lastFlushTime = start;
+        this.lastFlushCost = cost;
+        this.maxFlushCost = Math.max(maxFlushCost, cost);
+        this.totalFlushCost += cost;
+        flushCount.incrementAndGet();
+    }
+
+    private void writeMachine(String machineId, MachineNodeModel update) {
+        Map<String, Object> values = BeanUtil.beanToMap(update, false, true);
+        for (String field : IGNORE_FIELDS) {
+            values.remove(field);
+        }
+        long now = SystemClock.now();
+        long version = evictVersion.get();
+        Written written = writtenMap.get(machineId);
+        Map<String, Object> changed = new HashMap<>(values);
+        if (written != null) {
+            changed.entrySet().removeIf(entry -> Objects.equals(written.values.get(entry.getKey()), entry.getValue()));
+            if (changed.isEmpty() && now - written.time < FORCE_UPDATE_TIME) {
+                skipCount.incrementAndGet();
+                return;
+            }
+        }
+        MachineNodeModel machineNodeModel = BeanUtil.fillBeanWithMap(changed, new MachineNodeModel(), false);
+        machineNodeModel.setId(machineId);
+        int count = machineNodeServer.updateStatById(machineNodeModel);
+        updateCount.incrementAndGet();
+        if (count <= 0) {
+            // 机器已经被删除
+            writtenMap.remove(machineId);
+            return;
+        }
+        Written newWritten = new Written();
+        if (written != null) {
+            newWritten.values.putAll(written.values);
+        }
+        newWritten.values.putAll(values);
+        newWritten.time = now;
+        writtenMap.put(machineId, newWritten);
+        if (evictVersion.get() != version) {
+            // 写入期间机器数据被直接修改，下次全部字段重新写入
+            writtenMap.remove(machineId);
+        }
+    }
+
+    /**
+     * 机器数据被直接修改（没有经过批量写入）或者删除时清除最后一次写入的值（包含工作空间的项目、脚本数），避免后续相同的值被忽略
+     *
+     * @param machineId 机器id，为空清除全部
+     */
+    public void evict(String machineId) {
+        evictVersion.incrementAndGet();
+        if (machineId == null) {
+            writtenMap.clear();
+            workspaceWrittenMap.clear();
+        } else {
+            writtenMap.remove(machineId);
+            String prefix = machineId + ":";
+            workspaceWrittenMap.keySet().removeIf(key -> key.startsWith(prefix));
+        }
+    }
+
+    private void writeWorkspace(String machineId, JSONObject workspaceStat) {
+        if (workspaceStat == null) {
+            return;
+        }
+        for (Map.Entry<String, Object> entry : workspaceStat.entrySet()) {
+            String workspaceId = entry.getKey();
+            JSONObject value = (JSONObject) entry.getValue();
+            int projectCount = value.getIntValue("projectCount", 0);
+            int scriptCount = value.getIntValue("scriptCount", 0);
+            String key = machineId + ":" + workspaceId;
+            String stat = projectCount + "," + scriptCount;
+            if (Objects.equals(workspaceWrittenMap.get(key), stat)) {
+                continue;
+            }
+            Entity entity = Entity.create();
+            entity.set("jpomProjectCount", projectCount);
+            entity.set("jpomScriptCount", scriptCount);
+            Entity where = Entity.create();
+            where.set("machineId", machineId);
+            where.set("workspaceId", workspaceId);
+            nodeService.update(entity, where);
+            workspaceWrittenMap.put(key, stat);
+            workspaceUpdateCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * 批量插入统计日志（开启时序存储时写入本地时序存储，开启 db-write 或者写入失败时保存到数据库表），批量插入时以第一条数据的字段生成 sql，需要按非空字段分组
+     *
+     * @param statLogs 统计日志
+     */
+    private void insertStatLogs(List<MachineNodeStatLogModel> statLogs) {
+        if (statLogs.isEmpty()) {
+            return;
+        }
+        if (machineStatStore.isEnabled()) {
+            try {
+                machineStatStore.append(statLogs);
+                if (!nodeConfig.getStatStore().isDbWrite()) {
+                    return;
+                }
+            } catch (Exception e) {
+                // 写入时序存储失败时保存到数据库表
+                errorCount.incrementAndGet();
+                log.error("保存机器统计数据失败：{}", statLogs.size(), e);
+            }
+        }
+        Map<Set<String>, List<MachineNodeStatLogModel>> group = new HashMap<>(4);
+        for (MachineNodeStatLogModel statLog : statLogs) {
+            Set<String> fields = BeanUtil.beanToMap(statLog, false, true).keySet();
+            group.computeIfAbsent(fields, s -> new ArrayList<>()).add(statLog);
+        }
+        int size = nodeConfig.getStatFlushSize();
+        for (List<MachineNodeStatLogModel> list : group.values()) {
+            for (List<MachineNodeStatLogModel> split : CollUtil.split(list, size)) {
+                try {
+                    machineNodeStatLogServer.insert(split);
+                    insertCount.addAndGet(split.size());
+                } catch (Exception e) {
+                    errorCount.incrementAndGet();
+                    log.error("批量保存机器统计日志失败：{}", split.size(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 监控指标
+     *
+     * @return json
+     */
+    public JSONObject stat() {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("pendingMachine", pendingMap.size());
+        jsonObject.put("pendingLog", pendingLogCount.get());
+        long count = flushCount.get();
+        jsonObject.put("flushCount", count);
+        jsonObject.put("lastFlushTime", lastFlushTime);
+        jsonObject.put("lastFlushCost", lastFlushCost);
+        jsonObject.put("maxFlushCost", maxFlushCost);
+        jsonObject.put("avgFlushCost", count == 0 ? 0 : totalFlushCost / count);
+        jsonObject.put("updateCount", updateCount.get());
+        jsonObject.put("skipCount", skipCount.get());
+        jsonObject.put("insertCount", insertCount.get());
+        jsonObject.put("workspaceUpdateCount", workspaceUpdateCount.get());
+        jsonObject.put("errorCount", errorCount.get());
+        return jsonObject;
+    }
+
+    private static class Pending {
+        private final MachineNodeModel update;
+        private final List<MachineNodeStatLogModel> statLogs = new ArrayList<>();
+        private JSONObject workspaceStat;
+
+        private Pending(MachineNodeModel update) {
+            this.update = update;
+        }
+    }
+
+    private static class Written {
+        private final Map<String, Object> values = new HashMap<>();
+        private long time;
+    }
+}
@@ -47,6 +47,7 @@ import org.dromara.jpom.plugin.IWorkspaceEnvPlugin;
 import org.dromara.jpom.plugin.PluginFactory;
 import org.dromara.jpom.plugins.ISshInfo;
 import org.dromara.jpom.plugins.JschUtils;
+import org.dromara.jpom.plugins.SshSessionPool;
 import org.dromara.jpom.service.h2db.BaseDbService;
 import org.dromara.jpom.service.node.ssh.SshService;
 import org.dromara.jpom.system.ExtConfigBean;
@@ -178,6 +179,7 @@ public class MachineSshServer extends BaseDbService<MachineSshModel> implements
         String monitorCron = sshConfig.getMonitorCron();
         String cron = Opt.ofBlankAble(monitorCron).orElse("0 0/1 * * * ?");
         CronUtils.add(CRON_ID, cron, () -> MachineSshServer.this);
+        SshSessionPool.config(sshConfig.getSessionPoolIdle(), sshConfig.getSessionPoolMaxChannel());
     }
 
     @Override
@@ -219,8 +221,7 @@ public class MachineSshServer extends BaseDbService<MachineSshModel> implements
             this.updateStatus(machineSshModel.id(), 2, "禁用监控");
             return;
         }
-        Session session = null;
-        try {
+        try (SshSessionPool.Lease lease = this.borrowSession(machineSshModel)) {
             InputStream sshExecTemplateInputStream = ExtConfigBean.getConfigResourceInputStream("/ssh/monitor-script.sh");
             String sshExecTemplate = IoUtil.readUtf8(sshExecTemplateInputStream);
             Map<String, String> map = new HashMap<>(10);
@@ -228,7 +229,7 @@ public class MachineSshServer extends BaseDbService<MachineSshModel> implements
             sshExecTemplate = StringUtil.formatStrByMap(sshExecTemplate, map);
             Charset charset = machineSshModel.charset();
             //
-            session = this.getSessionByModelNoFill(machineSshModel);
+            Session session = lease.getSession();
             int timeout = machineSshModel.timeout();
             List<String> listStr = new ArrayList<>();
             List<String> error = new ArrayList<>();
@@ -242,8 +243,6 @@ public class MachineSshServer extends BaseDbService<MachineSshModel> implements
                 log.error("监控 ssh[{}] 异常", machineSshModel.getName(), e);
             }
             this.updateStatus(machineSshModel.getId(), 0, message);
-        } finally {
-            JschUtil.close(session);
         }
     }
 
@@ -373,6 +372,17 @@ public class MachineSshServer extends BaseDbService<MachineSshModel> implements
         super.updateById(machineSshModel);
     }
 
+    /**
+     * 从会话池借出 ssh 会话，使用完成需要关闭（归还）
+     *
+     * @param sshModel sshModel
+     * @return 借出的会话
+     */
+    public SshSessionPool.Lease borrowSession(ISshInfo sshModel) {
+        Assert.notNull(sshModel, "没有对应 SSH 信息");
+        return SshSessionPool.borrow(sshModel, () -> this.getSessionByModelNoFill(sshModel));
+    }
+
     /**
      * 获取 ssh 回话
      * GLOBAL
@@ -0,0 +1,525 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.func.assets.stat;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.date.DateTime;
+import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.date.SystemClock;
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.map.SafeConcurrentHashMap;
+import cn.hutool.core.util.ArrayUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.extra.spring.SpringUtil;
+import cn.keepbx.jpom.event.ISystemTask;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.jpom.JpomApplication;
+import org.dromara.jpom.common.ILoadEvent;
+import org.dromara.jpom.configuration.NodeConfig;
+import org.dromara.jpom.configuration.StatStoreConfig;
+import org.dromara.jpom.func.assets.model.MachineNodeStatLogModel;
+import org.dromara.jpom.func.assets.server.MachineNodeServer;
+import org.dromara.jpom.system.ServerConfig;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 机器统计信息时序存储
+ * <p>
+ * 每个机器、每种精度一个目录，按周期分文件追加写入压缩的数据块（{@link StatSegmentFile}）。
+ * 每次写入的数据点很少，同一个文件追加一定数量的数据块后、切换到下一个周期的文件时以及每天清理时合并为一个数据块。
+ * 原始数据写入后在内存中按分钟汇总，分钟数据再汇总为小时、小时汇总为天，重启后从文件中恢复未完成的汇总区间。
+ * 查询时根据时间范围只读取需要的精度的文件，过期的文件按精度分别删除
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+@Service
+@Slf4j
+public class MachineStatStore implements ILoadEvent, ISystemTask, DisposableBean {
+
+    private static final String SUFFIX = ".dat";
+    /**
+     * 汇总的精度（需要按顺序）
+     */
+    private static final StatTier[] ROLLUP_TIERS = new StatTier[]{StatTier.MINUTE, StatTier.HOUR, StatTier.DAY};
+    /**
+     * 文件追加多少个数据块后合并
+     */
+    private static final int COMPACT_BLOCKS = 64;
+
+    private final JpomApplication jpomApplication;
+    private final NodeConfig nodeConfig;
+    private final StatStoreConfig storeConfig;
+    /**
+     * 机器id -> 汇总状态
+     */
+    private final Map<String, MachineSeries> seriesMap = new SafeConcurrentHashMap<>();
+    private ScheduledFuture<?> scheduledFuture;
+
+    public MachineStatStore(JpomApplication jpomApplication,
+                            ServerConfig serverConfig) {
+        this.jpomApplication = jpomApplication;
+        this.nodeConfig = serverConfig.getNode();
+        this.storeConfig = nodeConfig.getStatStore();
+    }
+
+    @Override
+    public void afterPropertiesSet(ApplicationContext applicationContext) throws Exception {
+        if (!this.isEnabled()) {
+            return;
+        }
+        this.scheduledFuture = JpomApplication.getScheduledExecutorService()
+            .scheduleWithFixedDelay(this::rollupTask, 1, 1, TimeUnit.MINUTES);
+    }
+
+    public boolean isEnabled() {
+        return storeConfig.isEnabled();
+    }
+
+    /**
+     * 机器是否有时序数据
+     *
+     * @param machineId 机器id
+     * @return true 有
+     */
+    public boolean hasData(String machineId) {
+        return FileUtil.isDirectory(this.tierDir(machineId, StatTier.RAW));
+    }
+
+    /**
+     * 删除机器的时序数据
+     *
+     * @param machineId 机器id
+     */
+    public void delete(String machineId) {
+        if (StrUtil.isEmpty(machineId)) {
+            return;
+        }
+        MachineSeries series = seriesMap.computeIfAbsent(machineId, MachineSeries::new);
+        synchronized (series) {
+            FileUtil.del(FileUtil.file(this.rootDir(), machineId));
+            seriesMap.remove(machineId, series);
+        }
+    }
+
+    /**
+     * 追加统计日志
+     *
+     * @param statLogs 统计日志
+     */
+    public void append(Collection<MachineNodeStatLogModel> statLogs) {
+        Map<String, List<StatPoint>> group = new LinkedHashMap<>();
+        for (MachineNodeStatLogModel statLog : statLogs) {
+            StatPoint point = StatPoint.of(statLog);
+            if (point == null || StrUtil.isEmpty(statLog.getMachineId())) {
+                continue;
+            }
+            group.computeIfAbsent(statLog.getMachineId(), s -> new ArrayList<>()).add(point);
+        }
+        for (Map.Entry<String, List<StatPoint>> entry : group.entrySet()) {
+            List<StatPoint> points = entry.getValue();
+            points.sort(Comparator.comparingLong(StatPoint::getTime));
+            MachineSeries series = seriesMap.computeIfAbsent(entry.getKey(), MachineSeries::new);
+            synchronized (series) {
+                this.load(series);
+                this.write(series, StatTier.RAW, points);
+                Map<StatTier, List<StatPoint>> emitted = new EnumMap<>(StatTier.class);
+                this.feed(series, StatTier.MINUTE, points, emitted, true);
+                this.write(series, emitted);
+            }
+        }
+    }
+
+    /**
+     * 查询统计数据，根据时间范围自动选择精度
+     *
+     * @param machineId 机器id
+     * @param startTime 开始时间
+     * @param endTime   结束时间
+     * @return 时间倒序
+     */
+    public List<MachineNodeStatLogModel> query(String machineId, long startTime, long endTime) {
+        int maxPoints = storeConfig.getMaxQueryPoints();
+        long now = SystemClock.now();
+        List<StatPoint> points = Collections.emptyList();
+        for (StatTier tier : StatTier.values()) {
+            if (tier != StatTier.DAY && !this.covered(tier, startTime, now)) {
+                // 数据已经被清理
+                continue;
+            }
+            long step = tier == StatTier.RAW ? TimeUnit.SECONDS.toMillis(nodeConfig.getHeartSecond()) : tier.getStep();
+            if (tier != StatTier.DAY && (endTime - startTime) / step > maxPoints) {
+                continue;
+            }
+            points = this.read(machineId, tier, startTime, endTime);
+            if (points.size() <= maxPoints) {
+                break;
+            }
+        }
+        return this.toModels(machineId, points, maxPoints);
+    }
+
+    /**
+     * 查询最新的原始数据
+     *
+     * @param machineId 机器id
+     * @param count     个数
+     * @return 时间倒序
+     */
+    public List<MachineNodeStatLogModel> latest(String machineId, int count) {
+        List<StatPoint> points = new ArrayList<>();
+        List<File> files = this.listFiles(machineId, StatTier.RAW);
+        for (int i = files.size() - 1; i >= 0 && points.size() < count; i--) {
+            points.addAll(StatSegmentFile.read(files.get(i)));
+        }
+        points.sort(Comparator.comparingLong(StatPoint::getTime));
+        return this.toModels(machineId, points, count);
+    }
+
+    private List<MachineNodeStatLogModel> toModels(String machineId, List<StatPoint> points, int limit) {
+        int size = points.size();
+        List<MachineNodeStatLogModel> list = new ArrayList<>(Math.min(size, limit));
+        for (int i = size - 1; i >= 0 && list.size() < limit; i--) {
+            list.add(points.get(i).toModel(machineId));
+        }
+        return list;
+    }
+
+    /**
+     * 精度的数据是否包含开始时间（没有被清理）
+     */
+    private boolean covered(StatTier tier, long startTime, long now) {
+        int keepDays = this.keepDays(tier);
+        if (keepDays <= 0) {
+            return true;
+        }
+        return startTime >= DateUtil.offsetDay(DateUtil.beginOfDay(DateUtil.date(now)), -keepDays).getTime();
+    }
+
+    private int keepDays(StatTier tier) {
+        switch (tier) {
+            case RAW:
+                return nodeConfig.getStatLogKeepDays();
+            case MINUTE:
+                return storeConfig.getMinuteKeepDays();
+            case HOUR:
+                return storeConfig.getHourKeepDays();
+            case DAY:
+            default:
+                return storeConfig.getDayKeepDays();
+        }
+    }
+
+    /**
+     * 数据点汇总到指定精度
+     *
+     * @param series  机器
+     * @param tier    汇总精度
+     * @param points  低一级精度的数据点（时间正序）
+     * @param emitted 完成汇总的数据点
+     * @param cascade 是否继续汇总到下一个精度
+     */
+    private void feed(MachineSeries series, StatTier tier, List<StatPoint> points, Map<StatTier, List<StatPoint>> emitted, boolean cascade) {
+        TierState state = series.states.get(tier);
+        for (StatPoint point : points) {
+            long bucket = tier.bucket(point.getTime());
+            if (bucket <= state.watermark) {
+                // 已经汇总过
+                continue;
+            }
+            if (state.openBucket >= 0 && bucket != state.openBucket) {
+                if (bucket < state.openBucket) {
+                    // 迟到的数据
+                    continue;
+                }
+                this.close(series, tier, emitted, cascade);
+            }
+            state.openBucket = bucket;
+            state.pending.add(point);
+        }
+    }
+
+    private void close(MachineSeries series, StatTier tier, Map<StatTier, List<StatPoint>> emitted, boolean cascade) {
+        TierState state = series.states.get(tier);
+        if (state.pending.isEmpty()) {
+            return;
+        }
+        StatPoint point = StatPoint.average(state.openBucket, state.pending);
+        emitted.computeIfAbsent(tier, t -> new ArrayList<>()).add(point);
+        state.watermark = state.openBucket;
+        state.openBucket = -1;
+        state.pending.clear();
+        StatTier next = tier.next();
+        if (cascade && next != null) {
+            this.feed(series, next, Collections.singletonList(point), emitted, true);
+        }
+    }
+
+    /**
+     * 首次使用时从文件恢复汇总状态
+     *
+     * @param series 机器
+     */
+    private void load(MachineSeries series) {
+        if (series.loaded) {
+            return;
+        }
+        long now = SystemClock.now();
+        for (StatTier tier : ROLLUP_TIERS) {
+            TierState state = series.states.get(tier);
+            state.watermark = this.lastTime(series.machineId, tier);
+            long from = state.watermark >= 0 ? state.watermark + tier.getStep() : tier.bucket(now);
+            StatTier source = StatTier.values()[tier.ordinal() - 1];
+            List<StatPoint> points = this.read(series.machineId, source, from, now);
+            Map<StatTier, List<StatPoint>> emitted = new EnumMap<>(StatTier.class);
+            // 下一个精度从文件恢复，不需要级联
+            this.feed(series, tier, points, emitted, false);
+            this.write(series, emitted);
+        }
+        series.loaded = true;
+    }
+
+    /**
+     * 定时关闭已经结束的汇总区间
+     */
+    private void rollupTask() {
+        long now = SystemClock.now();
+        // 等待延迟上报的数据
+        long grace = TimeUnit.SECONDS.toMillis(nodeConfig.getHeartSecond() * 2L + nodeConfig.getStatFlushInterval());
+        for (MachineSeries series : seriesMap.values()) {
+            try {
+                synchronized (series) {
+                    this.load(series);
+                    Map<StatTier, List<StatPoint>> emitted = new EnumMap<>(StatTier.class);
+                    for (StatTier tier : ROLLUP_TIERS) {
+                        TierState state = series.states.get(tier);
+                        if (state.openBucket >= 0 && state.openBucket + tier.getStep() + grace <= now) {
+                            this.close(series, tier, emitted, true);
+                        }
+                    }
+                    this.write(series, emitted);
+                }
+            } catch (Exception e) {
+                log.error("汇总机器统计数据失败：{}", series.machineId, e);
+            }
+        }
+    }
+
+    private File rootDir() {
+        return FileUtil.file(jpomApplication.getDataPath(), "machine-stat");
+    }
+
+    private File tierDir(String machineId, StatTier tier) {
+        return FileUtil.file(this.rootDir(), machineId, tier.name().toLowerCase());
+    }
+
+    private void write(MachineSeries series, Map<StatTier, List<StatPoint>> emitted) {
+        for (Map.Entry<StatTier, List<StatPoint>> entry : emitted.entrySet()) {
+            this.write(series, entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * 按文件周期分组追加数据块，追加的数据块达到数量或者切换到下一个周期的文件时合并
+     */
+    private void write(MachineSeries series, StatTier tier, List<StatPoint> points) {
+        if (CollUtil.isEmpty(points)) {
+            return;
+        }
+        Map<String, List<StatPoint>> group = points.stream()
+            .collect(Collectors.groupingBy(point -> tier.period(point.getTime()), LinkedHashMap::new, Collectors.toList()));
+        File dir = this.tierDir(series.machineId, tier);
+        FileUtil.mkdir(dir);
+        Map<File, Integer> appended = series.appended.get(tier);
+        for (Map.Entry<String, List<StatPoint>> entry : group.entrySet()) {
+            File file = FileUtil.file(dir, entry.getKey() + SUFFIX);
+            try {
+                StatSegmentFile.append(file, entry.getValue());
+            } catch (IOException e) {
+                log.error("写入机器统计数据失败：{}", file.getAbsolutePath(), e);
+                continue;
+            }
+            for (File item : new ArrayList<>(appended.keySet())) {
+                if (!item.equals(file)) {
+                    // 上一个周期的文件已经写完
+                    this.compact(item);
+                    appended.remove(item);
+                }
+            }
+            int count = appended.merge(file, 1, Integer::sum);
+            if (count >= COMPACT_BLOCKS) {
+                this.compact(file);
+                appended.remove(file);
+            }
+        }
+    }
+
+    /**
+     * 合并文件中的数据块，失败时等待每天清理时再合并
+     */
+    private void compact(File file) {
+        try {
+            StatSegmentFile.compact(file);
+        } catch (IOException e) {
+            log.warn("合并机器统计数据失败：{} {}", file.getAbsolutePath(), e.getMessage());
+        }
+    }
+
+    /**
+     * 按周期排序的文件
+     */
+    private List<File> listFiles(String machineId, StatTier tier) {
+        File[] files = this.tierDir(machineId, tier).listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (ArrayUtil.isEmpty(files)) {
+            return Collections.emptyList();
+        }
+        return Arrays.stream(files)
+            .filter(file -> tier.periodStart(FileUtil.mainName(file)) != null)
+            .sorted(Comparator.comparing(File::getName))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * 读取时间范围内的数据，只读取时间范围覆盖的文件
+     */
+    private List<StatPoint> read(String machineId, StatTier tier, long startTime, long endTime) {
+        List<StatPoint> points = new ArrayList<>();
+        for (File file : this.listFiles(machineId, tier)) {
+            String period = FileUtil.mainName(file);
+            DateTime periodStart = tier.periodStart(period);
+            DateTime periodEnd = tier.periodEnd(period);
+            if (periodStart.getTime() > endTime || periodEnd.getTime() <= startTime) {
+                continue;
+            }
+            for (StatPoint point : StatSegmentFile.read(file)) {
+                if (point.getTime() >= startTime && point.getTime() <= endTime) {
+                    points.add(point);
+                }
+            }
+        }
+        points.sort(Comparator.comparingLong(StatPoint::getTime));
+        return points;
+    }
+
+    /**
+     * 最后一个数据点的时间
+     *
+     * @return 没有数据返回 -1
+     */
+    private long lastTime(String machineId, StatTier tier) {
+        List<File> files = this.listFiles(machineId, tier);
+        for (int i = files.size() - 1; i >= 0; i--) {
+            long max = -1;
+            for (StatPoint point : StatSegmentFile.read(files.get(i))) {
+                max = Math.max(max, point.getTime());
+            }
+            if (max >= 0) {
+                return max;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 按精度清理过期的文件，合并文件中的数据块
+     */
+    @Override
+    public void executeTask() {
+        File[] machineDirs = this.rootDir().listFiles(File::isDirectory);
+        if (ArrayUtil.isEmpty(machineDirs)) {
+            return;
+        }
+        DateTime today = DateUtil.beginOfDay(DateTime.now());
+        MachineNodeServer machineNodeServer = SpringUtil.getBean(MachineNodeServer.class);
+        int count = 0;
+        int compactCount = 0;
+        for (File machineDir : machineDirs) {
+            String machineId = machineDir.getName();
+            if (!machineNodeServer.exists(machineId)) {
+                // 机器已经被删除（集群中其他服务端删除）
+                this.delete(machineId);
+                continue;
+            }
+            MachineSeries series = seriesMap.computeIfAbsent(machineId, MachineSeries::new);
+            for (StatTier tier : StatTier.values()) {
+                int keepDays = this.keepDays(tier);
+                long cutoff = keepDays <= 0 ? Long.MIN_VALUE : DateUtil.offsetDay(today, -keepDays).getTime();
+                for (File file : this.listFiles(machineId, tier)) {
+                    DateTime periodEnd = tier.periodEnd(FileUtil.mainName(file));
+                    if (periodEnd.getTime() <= cutoff) {
+                        if (FileUtil.del(file)) {
+                            count++;
+                        }
+                        continue;
+                    }
+                    synchronized (series) {
+                        try {
+                            if (StatSegmentFile.compact(file)) {
+                                series.appended.get(tier).remove(file);
+                                compactCount++;
+                            }
+                        } catch (IOException e) {
+                            log.warn("合并机器统计数据失败：{} {}", file.getAbsolutePath(), e.getMessage());
+                        }
+                    }
+                }
+            }
+        }
+        log.info("自动清理 {} 个机器统计数据文件，合并 {} 个文件", count, compactCount);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (scheduledFuture != null) {
+            scheduledFuture.cancel(false);
+        }
+    }
+
+    private static class MachineSeries {
+        private final String machineId;
+        private final Map<StatTier, TierState> states = new EnumMap<>(StatTier.class);
+        /**
+         * 文件 -> 追加后还没有合并的数据块数量
+         */
+        private final Map<StatTier, Map<File, Integer>> appended = new EnumMap<>(StatTier.class);
+        private boolean loaded;
+
+        private MachineSeries(String machineId) {
+            this.machineId = machineId;
+            for (StatTier tier : ROLLUP_TIERS) {
+                states.put(tier, new TierState());
+            }
+            for (StatTier tier : StatTier.values()) {
+                appended.put(tier, new HashMap<>(2));
+            }
+        }
+    }
+
+    private static class TierState {
+        /**
+         * 最后一个已经汇总的区间
+         */
+        private long watermark = -1;
+        /**
+         * 正在汇总的区间
+         */
+        private long openBucket = -1;
+        private final List<StatPoint> pending = new ArrayList<>();
+    }
+}
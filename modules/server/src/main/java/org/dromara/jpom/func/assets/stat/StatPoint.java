@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.func.assets.stat;
+
+import org.dromara.jpom.func.assets.model.MachineNodeStatLogModel;
+
+import java.util.List;
+
+/**
+ * 机器统计数据点
+ * <p>
+ * 百分比类数据保留两位小数，使用定点数（乘以 100）保存，方便做差值压缩
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+public class StatPoint {
+
+    /**
+     * 列：cpu、内存、交换内存、虚拟内存、磁盘、网络延迟、发送流量、接收流量
+     */
+    public static final int COLUMNS = 8;
+    private static final int CPU = 0;
+    private static final int MEMORY = 1;
+    private static final int SWAP_MEMORY = 2;
+    private static final int VIRTUAL_MEMORY = 3;
+    private static final int DISK = 4;
+    private static final int NETWORK_DELAY = 5;
+    private static final int NET_TX = 6;
+    private static final int NET_RX = 7;
+    /**
+     * 定点数倍数
+     */
+    private static final double SCALE = 100D;
+
+    final long time;
+    final long[] values = new long[COLUMNS];
+    /**
+     * 非空列标记
+     */
+    int mask;
+
+    StatPoint(long time) {
+        this.time = time;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    boolean has(int column) {
+        return (mask & (1 << column)) != 0;
+    }
+
+    void set(int column, long value) {
+        values[column] = value;
+        mask |= 1 << column;
+    }
+
+    private void setDouble(int column, Double value) {
+        if (value != null) {
+            this.set(column, Math.round(value * SCALE));
+        }
+    }
+
+    private void setLong(int column, Number value) {
+        if (value != null) {
+            this.set(column, value.longValue());
+        }
+    }
+
+    private Double getDouble(int column) {
+        return this.has(column) ? values[column] / SCALE : null;
+    }
+
+    private Long getLong(int column) {
+        return this.has(column) ? values[column] : null;
+    }
+
+    /**
+     * 统计日志转换为数据点
+     *
+     * @param model 统计日志
+     * @return 没有监控时间返回 null
+     */
+    public static StatPoint of(MachineNodeStatLogModel model) {
+        Long monitorTime = model.getMonitorTime();
+        if (monitorTime == null || monitorTime <= 0) {
+            return null;
+        }
+        StatPoint point = new StatPoint(monitorTime);
+        point.setDouble(CPU, model.getOccupyCpu());
+        point.setDouble(MEMORY, model.getOccupyMemory());
+        point.setDouble(SWAP_MEMORY, model.getOccupySwapMemory());
+        point.setDouble(VIRTUAL_MEMORY, model.getOccupyVirtualMemory());
+        point.setDouble(DISK, model.getOccupyDisk());
+        point.setLong(NETWORK_DELAY, model.getNetworkDelay());
+        point.setLong(NET_TX, model.getNetTxBytes());
+        point.setLong(NET_RX, model.getNetRxBytes());
+        return point;
+    }
+
+    /**
+     * 数据点转换为统计日志
+     *
+     * @param machineId 机器id
+     * @return 统计日志
+     */
+    public MachineNodeStatLogModel toModel(String machineId) {
+        MachineNodeStatLogModel model = new MachineNodeStatLogModel();
+        model.setMachineId(machineId);
+        model.setMonitorTime(time);
+        model.setOccupyCpu(this.getDouble(CPU));
+        model.setOccupyMemory(this.getDouble(MEMORY));
+        model.setOccupySwapMemory(this.getDouble(SWAP_MEMORY));
+        model.setOccupyVirtualMemory(this.getDouble(VIRTUAL_MEMORY));
+        model.setOccupyDisk(this.getDouble(DISK));
+        model.setNetworkDelay(this.has(NETWORK_DELAY) ? (int) values[NETWORK_DELAY] : null);
+        model.setNetTxBytes(this.getLong(NET_TX));
+        model.setNetRxBytes(this.getLong(NET_RX));
+        return model;
+    }
+
+    /**
+     * 汇总多个数据点（平均值，忽略空值）
+     *
+     * @param time   汇总后的时间
+     * @param points 数据点
+     * @return 汇总的数据点
+     */
+    static StatPoint average(long time, List<StatPoint> points) {
+        StatPoint result = new StatPoint(time);
+        for (int column = 0; column < COLUMNS; column++) {
+            long sum = 0;
+            int count = 0;
+            for (StatPoint point : points) {
+                if (point.has(column)) {
+                    sum += point.values[column];
+                    count++;
+                }
+            }
+            if (count > 0) {
+                result.set(column, Math.round((double) sum / count));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.func.assets.stat;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 统计数据块编解码
+ * <p>
+ * 一个数据块按列存储：先存时间列（二阶差值），再依次存每一列（非空标记位图 + 和上一个值的差值）。
+ * 差值使用 zigzag + 变长整数编码，相邻采样变化不大时每个值只占 1~2 个字节
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+public class StatSegmentCodec {
+
+    private StatSegmentCodec() {
+    }
+
+    /**
+     * 编码数据块
+     *
+     * @param points 数据点（时间正序）
+     * @return bytes
+     */
+    public static byte[] encode(List<StatPoint> points) {
+        int size = points.size();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + size * 12);
+        writeVarLong(out, size);
+        // 时间列
+        long prevTime = 0;
+        long prevDelta = 0;
+        for (int i = 0; i < size; i++) {
+            long time = points.get(i).time;
+            long delta = time - prevTime;
+            writeVarLong(out, zigzag(delta - prevDelta));
+            prevTime = time;
+            prevDelta = i == 0 ? 0 : delta;
+        }
+        // 数据列
+        byte[] bitmap = new byte[(size + 7) / 8];
+        for (int column = 0; column < StatPoint.COLUMNS; column++) {
+            for (int i = 0; i < bitmap.length; i++) {
+                bitmap[i] = 0;
+            }
+            for (int i = 0; i < size; i++) {
+                if (points.get(i).has(column)) {
+                    bitmap[i >> 3] |= (byte) (1 << (i & 7));
+                }
+            }
+            out.write(bitmap, 0, bitmap.length);
+            long prev = 0;
+            for (StatPoint point : points) {
+                if (point.has(column)) {
+                    long value = point.values[column];
+                    writeVarLong(out, zigzag(value - prev));
+                    prev = value;
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 解码数据块
+     *
+     * @param bytes  bytes
+     * @param offset 开始位置
+     * @param length 长度
+     * @return 数据点
+     */
+    public static List<StatPoint> decode(byte[] bytes, int offset, int length) {
+        Reader reader = new Reader(bytes, offset, offset + length);
+        int size = (int) reader.readVarLong();
+        List<StatPoint> points = new ArrayList<>(size);
+        long prevTime = 0;
+        long prevDelta = 0;
+        for (int i = 0; i < size; i++) {
+            long delta = unzigzag(reader.readVarLong()) + prevDelta;
+            long time = prevTime + delta;
+            points.add(new StatPoint(time));
+            prevTime = time;
+            prevDelta = i == 0 ? 0 : delta;
+        }
+        int bitmapLength = (size + 7) / 8;
+        for (int column = 0; column < StatPoint.COLUMNS; column++) {
+            int bitmapOffset = reader.skip(bitmapLength);
+            long prev = 0;
+            for (int i = 0; i < size; i++) {
+                if ((bytes[bitmapOffset + (i >> 3)] & (1 << (i & 7))) != 0) {
+                    prev += unzigzag(reader.readVarLong());
+                    points.get(i).set(column, prev);
+                }
+            }
+        }
+        return points;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static class Reader {
+        private final byte[] bytes;
+        private final int end;
+        private int position;
+
+        private Reader(byte[] bytes, int position, int end) {
+            this.bytes = bytes;
+            this.position = position;
+            this.end = end;
+        }
+
+        private long readVarLong() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= end) {
+                    throw new IllegalStateException("统计数据块已经损坏");
+                }
+                byte b = bytes[position++];
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IllegalStateException("统计数据块已经损坏");
+        }
+
+        private int skip(int length) {
+            if (position + length > end) {
+                throw new IllegalStateException("统计数据块已经损坏");
+            }
+            int start = position;
+            position += length;
+            return start;
+        }
+    }
+}
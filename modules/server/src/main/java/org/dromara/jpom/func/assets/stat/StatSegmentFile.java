@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.func.assets.stat;
+
+import cn.hutool.core.io.FileUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.jpom.util.FileUtils;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 统计数据文件
+ * <p>
+ * 文件由多个数据块组成（4 字节长度 + {@link StatSegmentCodec} 编码的数据块），写入时追加数据块。
+ * 每次追加的数据点很少时数据块的压缩效果很差，需要定期合并为一个数据块
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+@Slf4j
+public class StatSegmentFile {
+
+    private StatSegmentFile() {
+    }
+
+    /**
+     * 追加数据块
+     *
+     * @param file   文件
+     * @param points 数据点（时间正序）
+     * @throws IOException io
+     */
+    public static void append(File file, List<StatPoint> points) throws IOException {
+        byte[] block = StatSegmentCodec.encode(points);
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            outputStream.writeInt(block.length);
+            outputStream.write(block);
+        }
+    }
+
+    /**
+     * 读取文件中的所有数据点，跳过损坏的数据块
+     *
+     * @param file 文件
+     * @return 数据点（按写入顺序）
+     */
+    public static List<StatPoint> read(File file) {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            // 文件已经被清理
+            return Collections.emptyList();
+        }
+        List<StatPoint> points = new ArrayList<>();
+        int position = 0;
+        while (position + 4 <= bytes.length) {
+            int length = ((bytes[position] & 0xFF) << 24) | ((bytes[position + 1] & 0xFF) << 16)
+                | ((bytes[position + 2] & 0xFF) << 8) | (bytes[position + 3] & 0xFF);
+            position += 4;
+            if (length < 0 || position + length > bytes.length) {
+                // 写入未完成的数据块
+                break;
+            }
+            try {
+                points.addAll(StatSegmentCodec.decode(bytes, position, length));
+            } catch (IllegalStateException e) {
+                log.warn("机器统计数据块损坏：{} {}", file.getAbsolutePath(), position);
+            }
+            position += length;
+        }
+        return points;
+    }
+
+    /**
+     * 文件中的数据块数量（只读取数据块长度）
+     *
+     * @param file 文件
+     * @return 数据块数量
+     */
+    public static int countBlocks(File file) {
+        int count = 0;
+        try (RandomAccessFile accessFile = new RandomAccessFile(file, "r")) {
+            long length = accessFile.length();
+            long position = 0;
+            while (position + 4 <= length) {
+                accessFile.seek(position);
+                int blockLength = accessFile.readInt();
+                position += 4L + blockLength;
+                if (blockLength < 0 || position > length) {
+                    break;
+                }
+                count++;
+            }
+        } catch (IOException e) {
+            return 0;
+        }
+        return count;
+    }
+
+    /**
+     * 多个数据块合并为一个数据块（先写临时文件再替换）
+     *
+     * @param file 文件
+     * @return 是否合并
+     * @throws IOException io
+     */
+    public static boolean compact(File file) throws IOException {
+        if (countBlocks(file) <= 1) {
+            return false;
+        }
+        List<StatPoint> points = new ArrayList<>(read(file));
+        points.sort(Comparator.comparingLong(StatPoint::getTime));
+        File temp = FileUtil.file(file.getParentFile(), "." + file.getName() + ".tmp");
+        try {
+            Files.deleteIfExists(temp.toPath());
+            if (points.isEmpty()) {
+                FileUtil.touch(temp);
+            } else {
+                append(temp, points);
+            }
+            FileUtils.move(temp, file);
+        } finally {
+            FileUtil.del(temp);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.func.assets.stat;
+
+import cn.hutool.core.date.DateField;
+import cn.hutool.core.date.DateTime;
+import cn.hutool.core.date.DateUtil;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 统计数据精度
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+public enum StatTier {
+    /**
+     * 原始数据，一天一个文件
+     */
+    RAW(0, "yyyyMMdd", DateField.DAY_OF_YEAR),
+    /**
+     * 分钟汇总，一天一个文件
+     */
+    MINUTE(TimeUnit.MINUTES.toMillis(1), "yyyyMMdd", DateField.DAY_OF_YEAR),
+    /**
+     * 小时汇总，一个月一个文件
+     */
+    HOUR(TimeUnit.HOURS.toMillis(1), "yyyyMM", DateField.MONTH),
+    /**
+     * 天汇总，一年一个文件
+     */
+    DAY(TimeUnit.DAYS.toMillis(1), "yyyy", DateField.YEAR),
+    ;
+
+    /**
+     * 汇总间隔 单位毫秒
+     */
+    private final long step;
+    /**
+     * 文件周期格式
+     */
+    private final String periodPattern;
+    private final DateField periodField;
+
+    StatTier(long step, String periodPattern, DateField periodField) {
+        this.step = step;
+        this.periodPattern = periodPattern;
+        this.periodField = periodField;
+    }
+
+    public long getStep() {
+        return step;
+    }
+
+    /**
+     * 时间所在的汇总区间开始时间
+     *
+     * @param time 时间
+     * @return 区间开始时间
+     */
+    public long bucket(long time) {
+        if (this == DAY) {
+            // 按本地时区的天汇总
+            return DateUtil.beginOfDay(DateUtil.date(time)).getTime();
+        }
+        if (step <= 0) {
+            return time;
+        }
+        return time - Math.floorMod(time, step);
+    }
+
+    /**
+     * 时间对应的文件周期
+     *
+     * @param time 时间
+     * @return 文件名（不含后缀）
+     */
+    public String period(long time) {
+        return DateUtil.format(DateUtil.date(time), periodPattern);
+    }
+
+    /**
+     * 文件周期的开始时间
+     *
+     * @param period 文件周期
+     * @return 时间，格式错误返回 null
+     */
+    public DateTime periodStart(String period) {
+        if (period == null || period.length() != periodPattern.length()) {
+            return null;
+        }
+        try {
+            return DateUtil.parse(period, periodPattern);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 文件周期的结束时间（不包含）
+     *
+     * @param period 文件周期
+     * @return 时间，格式错误返回 null
+     */
+    public DateTime periodEnd(String period) {
+        DateTime start = this.periodStart(period);
+        return start == null ? null : DateUtil.offset(start, periodField, 1);
+    }
+
+    /**
+     * 下一个精度
+     *
+     * @return 没有返回 null
+     */
+    public StatTier next() {
+        StatTier[] values = values();
+        return this.ordinal() + 1 < values.length ? values[this.ordinal() + 1] : null;
+    }
+}
@@ -41,6 +41,7 @@ import org.dromara.jpom.model.PageResultDto;
 import org.dromara.jpom.model.data.NodeModel;
 import org.dromara.jpom.model.data.SshModel;
 import org.dromara.jpom.plugins.JschUtils;
+import org.dromara.jpom.plugins.SshSessionPool;
 import org.dromara.jpom.service.IStatusRecover;
 import org.dromara.jpom.service.h2db.BaseWorkspaceService;
 import org.dromara.jpom.service.node.NodeService;
@@ -452,7 +453,7 @@ public class FileReleaseTaskService extends BaseWorkspaceService<FileReleaseTask
             model.setBeforeScript(taskRoot.getBeforeScript());
             strictSyncFinisher.addWorker(() -> {
                 String modelId = model.getId();
-                Session session = null;
+                SshSessionPool.Lease lease = null;
                 ChannelSftp channelSftp = null;
                 LogRecorder logRecorder = null;
                 try {
@@ -468,7 +469,8 @@ public class FileReleaseTaskService extends BaseWorkspaceService<FileReleaseTask
                     MachineSshModel machineSshModel = sshService.getMachineSshModel(item);
                     Charset charset = machineSshModel.charset();
                     int timeout = machineSshModel.timeout();
-                    session = sshService.getSessionByModel(machineSshModel);
+                    lease = sshService.borrowSession(machineSshModel);
+                    Session session = lease.getSession();
                     Map<String, String> environment = environmentMapBuilder.environment();
                     environmentMapBuilder.eachStr(logRecorder::system);
                     if (StrUtil.isNotEmpty(model.getBeforeScript())) {
@@ -496,7 +498,7 @@ public class FileReleaseTaskService extends BaseWorkspaceService<FileReleaseTask
                 } finally {
                     IoUtil.close(logRecorder);
                     JschUtil.close(channelSftp);
-                    JschUtil.close(session);
+                    IoUtil.close(lease);
                 }
             });
         }
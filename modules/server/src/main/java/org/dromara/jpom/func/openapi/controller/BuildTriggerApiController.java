@@ -29,6 +29,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.dromara.jpom.JpomApplication;
 import org.dromara.jpom.build.BuildExecuteService;
 import org.dromara.jpom.build.BuildUtil;
+import org.dromara.jpom.build.RepositoryRefCacheService;
 import org.dromara.jpom.build.ResultDirFileAction;
 import org.dromara.jpom.common.BaseJpomController;
 import org.dromara.jpom.common.BaseServerController;
@@ -71,6 +72,7 @@ public class BuildTriggerApiController extends BaseJpomController implements IAs
     private final BuildInfoService buildInfoService;
     private final BuildExecuteService buildExecuteService;
     private final TriggerTokenLogServer triggerTokenLogServer;
+    private final RepositoryRefCacheService repositoryRefCacheService;
     /**
      * 等待执行构建的队列
      */
@@ -78,10 +80,12 @@ public class BuildTriggerApiController extends BaseJpomController implements IAs
 
     public BuildTriggerApiController(BuildInfoService buildInfoService,
                                      BuildExecuteService buildExecuteService,
-                                     TriggerTokenLogServer triggerTokenLogServer) {
+                                     TriggerTokenLogServer triggerTokenLogServer,
+                                     RepositoryRefCacheService repositoryRefCacheService) {
         this.buildInfoService = buildInfoService;
         this.buildExecuteService = buildExecuteService;
         this.triggerTokenLogServer = triggerTokenLogServer;
+        this.repositoryRefCacheService = repositoryRefCacheService;
     }
 
 
@@ -121,6 +125,8 @@ public class BuildTriggerApiController extends BaseJpomController implements IAs
         Assert.notNull(userModel, "触发token错误,或者已经失效:-1");
 
         Assert.state(StrUtil.equals(token, item.getTriggerToken()), "触发token错误,或者已经失效");
+        // 仓库有推送，分支、标签可能有变化
+        repositoryRefCacheService.invalidate(item.getRepositoryId());
         // 构建外部参数
         Object[] parametersEnv = this.buildParametersEnv(request, null);
         Integer delay1 = Convert.toInt(delay, 0);
@@ -197,6 +203,7 @@ public class BuildTriggerApiController extends BaseJpomController implements IAs
                     jsonObject.put("msg", "触发token错误,或者已经失效");
                     return;
                 }
+                repositoryRefCacheService.invalidate(item.getRepositoryId());
                 // 更新字段
                 String updateItemErrorMsg = this.updateItem(jsonObject);
                 if (updateItemErrorMsg != null) {
@@ -21,9 +21,11 @@ import cn.keepbx.jpom.event.ISystemTask;
 import cn.keepbx.jpom.model.JsonMessage;
 import com.alibaba.fastjson2.JSONObject;
 import lombok.extern.slf4j.Slf4j;
+import org.dromara.jpom.DockerStatsCache;
 import org.dromara.jpom.JpomApplication;
 import org.dromara.jpom.build.BuildExecuteManage;
 import org.dromara.jpom.build.BuildUtil;
+import org.dromara.jpom.build.RepositoryRefCacheService;
 import org.dromara.jpom.common.BaseServerController;
 import org.dromara.jpom.common.JpomManifest;
 import org.dromara.jpom.common.forward.NodeUrl;
@@ -33,14 +35,17 @@ import org.dromara.jpom.configuration.ClusterConfig;
 import org.dromara.jpom.configuration.SystemConfig;
 import org.dromara.jpom.controller.LoginControl;
 import org.dromara.jpom.cron.CronUtils;
+import org.dromara.jpom.func.assets.server.MachineNodeServer;
 import org.dromara.jpom.permission.ClassFeature;
 import org.dromara.jpom.permission.Feature;
 import org.dromara.jpom.permission.MethodFeature;
 import org.dromara.jpom.permission.SystemPermission;
 import org.dromara.jpom.plugin.PluginFactory;
+import org.dromara.jpom.service.h2db.DataRetentionService;
 import org.dromara.jpom.socket.ServiceFileTailWatcher;
 import org.dromara.jpom.system.ServerConfig;
 import org.dromara.jpom.system.db.DataInitEvent;
+import org.dromara.jpom.transport.TransportServerFactory;
 import org.dromara.jpom.util.CommandUtil;
 import org.dromara.jpom.util.SyncFinisherUtil;
 import org.springframework.http.MediaType;
@@ -75,6 +80,9 @@ public class CacheManageController extends BaseServerController implements ICach
     private final DataInitEvent dataInitEvent;
     private final ClusterConfig clusterConfig;
     private final SystemConfig systemConfig;
+    private final MachineNodeServer machineNodeServer;
+    private final RepositoryRefCacheService repositoryRefCacheService;
+    private final DataRetentionService dataRetentionService;
     /**
      * 标记是否正在刷新缓存
      */
@@ -82,11 +90,17 @@ public class CacheManageController extends BaseServerController implements ICach
 
     public CacheManageController(JpomApplication jpomApplication,
                                  DataInitEvent dataInitEvent,
-                                 ServerConfig serverConfig) {
+                                 ServerConfig serverConfig,
+                                 MachineNodeServer machineNodeServer,
+                                 RepositoryRefCacheService repositoryRefCacheService,
+                                 DataRetentionService dataRetentionService) {
         this.jpomApplication = jpomApplication;
         this.dataInitEvent = dataInitEvent;
         this.clusterConfig = serverConfig.getCluster();
         this.systemConfig = serverConfig.getSystem();
+        this.machineNodeServer = machineNodeServer;
+        this.repositoryRefCacheService = repositoryRefCacheService;
+        this.dataRetentionService = dataRetentionService;
     }
 
     /**
@@ -126,6 +140,11 @@ public class CacheManageController extends BaseServerController implements ICach
         map.put("dataPath", jpomApplication.getDataPath());
         map.put("buildPath", BuildUtil.getBuildDataDir());
         map.put("timerMatchSecond", systemConfig.isTimerMatchSecond());
+        map.put("transportStat", TransportServerFactory.get().stat());
+        map.put("machineStatWriter", machineNodeServer.getStatWriter().stat());
+        map.put("repositoryRefCache", repositoryRefCacheService.stat());
+        map.put("dockerStats", DockerStatsCache.stat());
+        map.put("dataRetention", dataRetentionService.stat());
         //
         return JsonMessage.success("", map);
     }
@@ -174,6 +193,9 @@ public class CacheManageController extends BaseServerController implements ICach
                 Assert.state(!clean, "清空旧版本重新包失败");
                 break;
             }
+            case "repositoryRefCache":
+                repositoryRefCacheService.clear();
+                break;
             default:
                 return this.tryRequestMachine(machineId, request, NodeUrl.ClearCache);
         }
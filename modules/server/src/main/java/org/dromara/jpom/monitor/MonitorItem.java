@@ -13,6 +13,7 @@ import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.exceptions.ExceptionUtil;
 import cn.hutool.core.thread.ThreadUtil;
 import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.RuntimeUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.cron.task.Task;
 import cn.hutool.db.sql.Direction;
@@ -36,11 +37,14 @@ import org.dromara.jpom.service.monitor.MonitorService;
 import org.dromara.jpom.service.node.NodeService;
 import org.dromara.jpom.service.node.ProjectInfoCacheService;
 import org.dromara.jpom.service.user.UserService;
+import org.dromara.jpom.util.StrictSyncFinisher;
 import org.dromara.jpom.webhook.DefaultWebhookPluginImpl;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 /**
@@ -75,18 +79,78 @@ public class MonitorItem implements Task {
         // 重新查询
         this.monitorModel = monitorService.getByKey(monitorId);
         List<MonitorModel.NodeProject> nodeProjects = monitorModel.projects();
-        //
-        List<Boolean> collect = nodeProjects.stream().map(nodeProject -> {
-            String nodeId = nodeProject.getNode();
-            NodeModel nodeModel = nodeService.getByKey(nodeId);
-            if (nodeModel == null) {
-                return true;
+        int size = CollUtil.size(nodeProjects);
+        AtomicBoolean allRun = new AtomicBoolean(true);
+        if (size > 0) {
+            // 多个节点并发检查，每个节点只发起一次批量请求
+            try (StrictSyncFinisher syncFinisher = new StrictSyncFinisher(Math.min(size, RuntimeUtil.getProcessorCount()), size)) {
+                for (MonitorModel.NodeProject nodeProject : nodeProjects) {
+                    syncFinisher.addWorker(() -> {
+                        String nodeId = nodeProject.getNode();
+                        NodeModel nodeModel = nodeService.getByKey(nodeId);
+                        if (nodeModel == null) {
+                            return;
+                        }
+                        try {
+                            if (!this.reqNodeStatus(nodeModel, nodeProject.getProjects())) {
+                                allRun.set(false);
+                            }
+                        } catch (Exception e) {
+                            log.error("监控 {} 节点异常", nodeModel.getName(), e);
+                            allRun.set(false);
+                        }
+                    });
+                }
+                syncFinisher.start();
+            } catch (IOException e) {
+                log.warn("关闭监控线程同步器异常 {}", e.getMessage());
             }
-            return this.reqNodeStatus(nodeModel, nodeProject.getProjects());
-        }).filter(aBoolean -> !aBoolean).collect(Collectors.toList());
-        boolean allRun = CollUtil.isEmpty(collect);
+        }
         // 报警状态
-        monitorService.setAlarm(monitorModel.getId(), !allRun);
+        monitorService.setAlarm(monitorModel.getId(), !allRun.get());
+    }
+
+    /**
+     * 批量获取节点中项目的状态
+     *
+     * @param nodeModel 节点
+     * @param projects  项目
+     * @return key 为项目id，获取失败返回 null（低版本插件端不支持批量获取）
+     */
+    private JSONObject reqNodeStatusList(NodeModel nodeModel, List<String> projects) {
+        try {
+            JsonMessage<JSONObject> jsonMessage = NodeForward.request(nodeModel, NodeUrl.Manage_GetProjectStatusList, "ids", JSONArray.toJSONString(projects));
+            if (jsonMessage.success()) {
+                return jsonMessage.getData();
+            }
+            log.warn("批量获取 {} 节点项目状态失败,将逐个获取：{}", nodeModel.getName(), jsonMessage);
+        } catch (Exception e) {
+            log.warn("批量获取 {} 节点项目状态失败,将逐个获取：{}", nodeModel.getName(), e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * 获取项目状态，优先使用批量获取的结果
+     *
+     * @param nodeModel  节点
+     * @param statusList 批量获取的结果
+     * @param id         项目id
+     * @return 状态
+     */
+    private JsonMessage<JSONObject> reqProjectStatus(NodeModel nodeModel, JSONObject statusList, String id) {
+        if (statusList == null) {
+            return NodeForward.request(nodeModel, NodeUrl.Manage_GetProjectStatus, "id", id);
+        }
+        JSONObject jsonObject = statusList.getJSONObject(id);
+        if (jsonObject == null) {
+            return new JsonMessage<>(500, "节点没有返回项目状态");
+        }
+        String error = jsonObject.getString("error");
+        if (StrUtil.isNotEmpty(error)) {
+            return new JsonMessage<>(500, error);
+        }
+        return new JsonMessage<>(200, "", jsonObject);
     }
 
     /**
@@ -100,13 +164,14 @@ public class MonitorItem implements Task {
         if (projects == null || projects.isEmpty()) {
             return true;
         }
+        JSONObject statusList = this.reqNodeStatusList(nodeModel, projects);
         List<Boolean> collect = projects.stream().map(id -> {
             //
             String title;
             String context;
             try {
                 //查询项目运行状态
-                JsonMessage<JSONObject> jsonMessage = NodeForward.request(nodeModel, NodeUrl.Manage_GetProjectStatus, "id", id);
+                JsonMessage<JSONObject> jsonMessage = this.reqProjectStatus(nodeModel, statusList, id);
                 if (jsonMessage.success()) {
                     JSONObject jsonObject = jsonMessage.getData();
                     int pid = jsonObject.getIntValue("pId");
@@ -31,6 +31,7 @@ import org.dromara.jpom.model.data.BuildInfoModel;
 import org.dromara.jpom.model.enums.BuildStatus;
 import org.dromara.jpom.model.log.BuildHistoryLog;
 import org.dromara.jpom.service.h2db.BaseWorkspaceService;
+import org.dromara.jpom.service.h2db.DataRetentionPolicy;
 import org.dromara.jpom.configuration.BuildExtConfig;
 import org.springframework.stereotype.Service;
 
@@ -158,29 +159,13 @@ public class DbBuildHistoryLogService extends BaseWorkspaceService<BuildHistoryL
     }
 
     @Override
-    protected void executeClearImpl(int count) {
+    protected DataRetentionPolicy<BuildHistoryLog> retentionPolicy() {
         // 清理总数据
-        int buildMaxHistoryCount = buildExtConfig.getMaxHistoryCount();
-        int saveCount = Math.min(count, buildMaxHistoryCount);
-        if (saveCount <= 0) {
-            // 不清除
-            return;
-        }
-        super.autoLoopClear("startTime", saveCount,
-            null,
-            buildHistoryLog1 -> {
-                IJsonMessage<String> jsonMessage = this.deleteLogAndFile(buildHistoryLog1);
-                if (!jsonMessage.success()) {
-                    log.warn("{} {} {}", buildHistoryLog1.getBuildName(), buildHistoryLog1.getBuildNumberId(), jsonMessage);
-                    return false;
-                }
-                return true;
-            });
-    }
-
-    @Override
-    protected String[] clearTimeColumns() {
-        return super.clearTimeColumns();
+        return DataRetentionPolicy.<BuildHistoryLog>builder()
+            .timeColumn("startTime")
+            .maxCount(buildExtConfig::getMaxHistoryCount)
+            .beforeDelete(this.predicate())
+            .build();
     }
 
     @Override
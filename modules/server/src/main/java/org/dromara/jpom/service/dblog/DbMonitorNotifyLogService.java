@@ -13,6 +13,7 @@ import org.dromara.jpom.common.BaseServerController;
 import org.dromara.jpom.model.log.MonitorNotifyLog;
 import org.dromara.jpom.model.user.UserModel;
 import org.dromara.jpom.service.h2db.BaseWorkspaceService;
+import org.dromara.jpom.service.h2db.DataRetentionPolicy;
 import org.springframework.stereotype.Service;
 
 /**
@@ -38,8 +39,8 @@ public class DbMonitorNotifyLogService extends BaseWorkspaceService<MonitorNotif
     }
 
     @Override
-    protected String[] clearTimeColumns() {
-        return new String[]{"createTime", "createTimeMillis"};
+    protected DataRetentionPolicy<MonitorNotifyLog> retentionPolicy() {
+        return DataRetentionPolicy.of("createTimeMillis");
     }
 
     /**
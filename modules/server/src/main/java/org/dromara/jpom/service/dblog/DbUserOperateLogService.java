@@ -29,6 +29,7 @@ import org.dromara.jpom.permission.ClassFeature;
 import org.dromara.jpom.permission.MethodFeature;
 import org.dromara.jpom.service.h2db.BaseDbService;
 import org.dromara.jpom.service.h2db.BaseWorkspaceService;
+import org.dromara.jpom.service.h2db.DataRetentionPolicy;
 import org.dromara.jpom.service.monitor.MonitorUserOptService;
 import org.dromara.jpom.service.system.WorkspaceService;
 import org.dromara.jpom.service.user.UserService;
@@ -300,7 +301,7 @@ public class DbUserOperateLogService extends BaseWorkspaceService<UserOperateLog
     }
 
     @Override
-    protected String[] clearTimeColumns() {
-        return new String[]{"optTime", "createTimeMillis"};
+    protected DataRetentionPolicy<UserOperateLogV1> retentionPolicy() {
+        return DataRetentionPolicy.of("createTimeMillis");
     }
 }
@@ -18,6 +18,7 @@ import org.dromara.jpom.model.data.SshModel;
 import org.dromara.jpom.model.log.SshTerminalExecuteLog;
 import org.dromara.jpom.model.user.UserModel;
 import org.dromara.jpom.service.h2db.BaseWorkspaceService;
+import org.dromara.jpom.service.h2db.DataRetentionPolicy;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
@@ -34,8 +35,8 @@ import java.util.stream.Collectors;
 public class SshTerminalExecuteLogService extends BaseWorkspaceService<SshTerminalExecuteLog> {
 
     @Override
-    protected String[] clearTimeColumns() {
-        return new String[]{"createTimeMillis"};
+    protected DataRetentionPolicy<SshTerminalExecuteLog> retentionPolicy() {
+        return DataRetentionPolicy.of("createTimeMillis");
     }
 
     /**
@@ -27,18 +27,16 @@ import lombok.extern.slf4j.Slf4j;
 import org.dromara.jpom.common.BaseServerController;
 import org.dromara.jpom.common.Const;
 import org.dromara.jpom.db.BaseDbCommonService;
-import org.dromara.jpom.db.DbExtConfig;
 import org.dromara.jpom.dialect.DialectUtil;
 import org.dromara.jpom.model.BaseDbModel;
 import org.dromara.jpom.model.BaseUserModifyDbModel;
 import org.dromara.jpom.model.PageResultDto;
 import org.dromara.jpom.model.user.UserModel;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Lazy;
 import org.springframework.util.Assert;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -53,9 +51,10 @@ import java.util.stream.Stream;
 @Slf4j
 public abstract class BaseDbService<T extends BaseDbModel> extends BaseDbCommonService<T> {
 
-    @Autowired
-    @Lazy
-    private DbExtConfig extConfig;
+    /**
+     * 上次自动清理检查后写入的条数
+     */
+    private final AtomicLong retentionInsertCount = new AtomicLong();
     /**
      * 旧版本分组
      */
@@ -144,7 +143,7 @@ public abstract class BaseDbService<T extends BaseDbModel> extends BaseDbCommonS
     public int insert(T t) {
         this.fillInsert(t);
         int count = super.insertDb(t);
-        this.executeClear();
+        retentionInsertCount.incrementAndGet();
         return count;
     }
 
@@ -164,7 +163,7 @@ public abstract class BaseDbService<T extends BaseDbModel> extends BaseDbCommonS
         // def create time
         t.forEach(this::fillInsert);
         super.insertDb(t);
-        this.executeClear();
+        retentionInsertCount.addAndGet(t.size());
     }
 
     /**
@@ -710,62 +709,31 @@ public abstract class BaseDbService<T extends BaseDbModel> extends BaseDbCommonS
     }
 
     /**
-     * 执行清理
-     */
-    private void executeClear() {
-        int h2DbLogStorageCount = extConfig.getLogStorageCount();
-        if (h2DbLogStorageCount <= 0) {
-            return;
-        }
-        this.executeClearImpl(h2DbLogStorageCount);
-    }
-
-    /**
-     * 清理分发实现
+     * 自动清理策略，返回 null 不自动清理
      *
-     * @param h2DbLogStorageCount 保留数量
+     * @return policy
+     * @see DataRetentionService
      */
-    protected void executeClearImpl(int h2DbLogStorageCount) {
-        String[] strings = this.clearTimeColumns();
-        for (String timeColumn : strings) {
-            this.autoClear(timeColumn, h2DbLogStorageCount, time -> {
-                Entity entity = Entity.create(super.getTableName());
-                entity.set(timeColumn, "< " + time);
-                int count = super.del(entity);
-                if (count > 0) {
-                    log.debug("{} 清理了 {}条数据", super.getTableName(), count);
-                }
-            });
-        }
+    protected DataRetentionPolicy<T> retentionPolicy() {
+        return null;
     }
 
     /**
-     * 安装时间自动清理数据对字段
+     * 获取并重置上次自动清理检查后写入的条数
      *
-     * @return 数组
+     * @return 条数
      */
-    protected String[] clearTimeColumns() {
-        return new String[]{};
+    long takeRetentionInsertCount() {
+        return retentionInsertCount.getAndSet(0);
     }
 
     /**
-     * 自动清理数据接口
+     * 上次自动清理检查后写入的条数
      *
-     * @param timeColumn 时间字段
-     * @param maxCount   最大数量
-     * @param consumer   查询出超过范围的时间回调
+     * @return 条数
      */
-    protected void autoClear(String timeColumn, int maxCount, Consumer<Long> consumer) {
-        if (maxCount <= 0) {
-            return;
-        }
-        ThreadUtil.execute(() -> {
-            long timeValue = this.getLastTimeValue(timeColumn, maxCount, null);
-            if (timeValue <= 0) {
-                return;
-            }
-            consumer.accept(timeValue);
-        });
+    long getRetentionInsertCount() {
+        return retentionInsertCount.get();
     }
 
     /**
@@ -830,8 +798,11 @@ public abstract class BaseDbService<T extends BaseDbModel> extends BaseDbCommonS
                 if (pageResult.isEmpty()) {
                     return;
                 }
-//                pageResult.each(consumer);
                 List<String> ids = pageResult.getResult().stream().filter(predicate).map(BaseDbModel::getId).collect(Collectors.toList());
+                if (CollUtil.isEmpty(ids)) {
+                    // 回调全部未通过，避免重复查询到相同的数据
+                    return;
+                }
                 this.delByKey(ids, null);
             }
         });
@@ -11,19 +11,26 @@ package org.dromara.jpom.service.h2db;
 
 import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.date.SystemClock;
 import cn.hutool.core.lang.Opt;
+import cn.hutool.core.map.SafeConcurrentHashMap;
+import cn.hutool.core.thread.ExecutorBuilder;
 import cn.hutool.core.thread.ThreadUtil;
 import cn.hutool.core.util.ObjectUtil;
 import cn.hutool.core.util.ReflectUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.db.Entity;
 import cn.hutool.extra.servlet.ServletUtil;
+import cn.hutool.extra.spring.SpringUtil;
 import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
+import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.dromara.jpom.JpomApplication;
 import org.dromara.jpom.common.BaseServerController;
 import org.dromara.jpom.common.Const;
 import org.dromara.jpom.common.ServerConst;
+import org.dromara.jpom.configuration.NodeConfig;
 import org.dromara.jpom.exception.AgentAuthorizeException;
 import org.dromara.jpom.exception.AgentException;
 import org.dromara.jpom.func.assets.model.MachineNodeModel;
@@ -36,6 +43,9 @@ import org.dromara.jpom.service.system.WorkspaceService;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -47,9 +57,24 @@ import java.util.stream.Stream;
 @Slf4j
 public abstract class BaseNodeService<T extends BaseNodeModel> extends BaseGlobalOrWorkspaceService<T> {
 
+    /**
+     * 同步线程池
+     */
+    private static volatile ThreadPoolExecutor syncExecutor;
+
     protected final NodeService nodeService;
     protected final WorkspaceService workspaceService;
     private final String dataName;
+    private final NodeConfig nodeConfig;
+    /**
+     * 节点同步状态
+     */
+    private final Map<String, SyncState> syncStateMap = new SafeConcurrentHashMap<>();
+    /**
+     * 等待同步的节点
+     */
+    private final Set<String> waitSyncNodes = ConcurrentHashMap.newKeySet();
+    private final Map<String, Object> nodeLockMap = new SafeConcurrentHashMap<>();
 
     protected BaseNodeService(NodeService nodeService,
                               WorkspaceService workspaceService,
@@ -57,6 +82,7 @@ public abstract class BaseNodeService<T extends BaseNodeModel> extends BaseGloba
         this.nodeService = nodeService;
         this.workspaceService = workspaceService;
         this.dataName = dataName;
+        this.nodeConfig = SpringUtil.getBean(NodeConfig.class);
     }
 
     @Override
@@ -75,7 +101,7 @@ public abstract class BaseNodeService<T extends BaseNodeModel> extends BaseGloba
      * 同步所有节点的项目
      */
     public void syncAllNode() {
-        ThreadUtil.execute(() -> {
+        BaseNodeService.getSyncExecutor().execute(() -> {
             List<NodeModel> list = nodeService.list();
             if (CollUtil.isEmpty(list)) {
                 log.debug("没有任何节点");
@@ -91,20 +117,60 @@ public abstract class BaseNodeService<T extends BaseNodeModel> extends BaseGloba
                 }
                 return 0;
             });
-            for (NodeModel nodeModel : list) {
-                this.syncNode(nodeModel);
+            // 同一个机器的节点按顺序同步，不同机器并行同步
+            Map<String, List<NodeModel>> machineMap = list.stream()
+                .collect(Collectors.groupingBy(nodeModel -> StrUtil.emptyToDefault(nodeModel.getMachineId(), nodeModel.getId()),
+                    LinkedHashMap::new, Collectors.toList()));
+            for (List<NodeModel> nodeModels : machineMap.values()) {
+                BaseNodeService.getSyncExecutor().execute(() -> {
+                    for (NodeModel nodeModel : nodeModels) {
+                        this.syncExecuteNode(nodeModel, true);
+                    }
+                });
             }
         });
     }
 
 
     /**
-     * 同步节点的项目
+     * 同步节点的项目（后台增量同步，节点已经在等待同步时不重复同步）
      *
      * @param nodeModel 节点
      */
     public void syncNode(final NodeModel nodeModel) {
-        ThreadUtil.execute(() -> this.syncExecuteNode(nodeModel));
+        String nodeId = nodeModel.getId();
+        if (!waitSyncNodes.add(nodeId)) {
+            log.debug("{} 节点已经在等待同步{}", nodeModel.getName(), dataName);
+            return;
+        }
+        BaseNodeService.getSyncExecutor().execute(() -> {
+            waitSyncNodes.remove(nodeId);
+            this.syncExecuteNode(nodeModel, true);
+        });
+    }
+
+    /**
+     * 获取同步线程池
+     *
+     * @return 线程池
+     */
+    private static ThreadPoolExecutor getSyncExecutor() {
+        if (syncExecutor == null) {
+            synchronized (BaseNodeService.class) {
+                if (syncExecutor == null) {
+                    int poolSize = SpringUtil.getBean(NodeConfig.class).getSyncPoolSize();
+                    ExecutorBuilder executorBuilder = ExecutorBuilder.create();
+                    executorBuilder.setCorePoolSize(poolSize).setMaxPoolSize(poolSize);
+                    executorBuilder.setThreadFactory(ThreadUtil.newNamedThreadFactory("node-sync-", true));
+                    // 队列满时由提交线程执行，不丢弃同步任务
+                    executorBuilder.setHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+                    ThreadPoolExecutor threadPoolExecutor = executorBuilder.build();
+                    JpomApplication.register("node-sync", threadPoolExecutor);
+                    syncExecutor = threadPoolExecutor;
+                }
+            }
+        }
+        return syncExecutor;
     }
 
     /**
@@ -189,31 +255,84 @@ public abstract class BaseNodeService<T extends BaseNodeModel> extends BaseGloba
      * @return json
      */
     public String syncExecuteNode(NodeModel nodeModel) {
+        return this.syncExecuteNode(nodeModel, false);
+    }
+
+    /**
+     * 同步执行 同步节点信息
+     * <p>
+     * 对比已经缓存的数据，只新增、修改有变动的数据，删除节点已经不存在的数据，并在一个事务中执行
+     *
+     * @param nodeModel   节点信息
+     * @param incremental 是否增量同步（节点只返回上次同步后修改过的数据）
+     * @return json
+     */
+    public String syncExecuteNode(NodeModel nodeModel, boolean incremental) {
         String nodeModelName = nodeModel.getName();
         if (!nodeModel.isOpenStatus()) {
             log.debug("{} 节点未启用", nodeModelName);
             return "节点未启用";
         }
+        // 同一个节点同时只能有一个同步
+        Object lock = nodeLockMap.computeIfAbsent(nodeModel.getId(), s -> new Object());
+        synchronized (lock) {
+            return this.syncExecuteNodeImpl(nodeModel, incremental);
+        }
+    }
+
+    private String syncExecuteNodeImpl(NodeModel nodeModel, boolean incremental) {
+        String nodeModelName = nodeModel.getName();
+        String nodeId = nodeModel.getId();
+        SyncState syncState = incremental ? syncStateMap.get(nodeId) : null;
+        if (syncState != null && SystemClock.now() - syncState.fullTime > TimeUnit.MINUTES.toMillis(nodeConfig.getSyncFullInterval())) {
+            // 定期全量同步
+            syncState = null;
+        }
         try {
-            JSONArray jsonArray = this.getLitDataArray(nodeModel);
-            if (CollUtil.isEmpty(jsonArray)) {
+            Object data = this.getIncrementalData(nodeModel, syncState == null ? 0 : syncState.time);
+            JSONArray jsonArray;
+            // 节点当前全部的数据ID，仅增量同步时有值
+            Set<String> dataIds = null;
+            Long time = null;
+            if (data instanceof JSONObject) {
+                JSONObject jsonObject = (JSONObject) data;
+                jsonArray = jsonObject.getJSONArray("list");
+                time = jsonObject.getLong("time");
+                if (syncState != null) {
+                    dataIds = Optional.ofNullable(jsonObject.getList("ids", String.class))
+                        .map(HashSet::new)
+                        .orElseGet(HashSet::new);
+                }
+            } else {
+                // 旧版本节点不支持增量查询
+                jsonArray = (JSONArray) data;
+            }
+            if (dataIds == null ? CollUtil.isEmpty(jsonArray) : dataIds.isEmpty()) {
                 Entity entity = Entity.create();
-                entity.set("nodeId", nodeModel.getId());
+                entity.set("nodeId", nodeId);
                 int del = super.del(entity);
+                this.saveSyncState(nodeId, syncState, time);
                 //
                 log.debug("{} 节点没有拉取到任何 {},但是删除了数据：{}", nodeModelName, dataName, del);
                 return "节点没有拉取到任何" + dataName;
             }
+            jsonArray = ObjectUtil.defaultIfNull(jsonArray, new JSONArray());
             // 查询现在存在的项目
             T where = ReflectUtil.newInstance(this.tClass);
             // where.setWorkspaceId(nodeModel.getWorkspaceId());
-            where.setNodeId(nodeModel.getId());
-            List<T> cacheAll = super.listByBean(where);
+            where.setNodeId(nodeId);
+            List<T> cacheAll = super.listByBean(where, false);
             cacheAll = ObjectUtil.defaultIfNull(cacheAll, Collections.emptyList());
+            Map<String, T> cacheMap = cacheAll.stream().collect(Collectors.toMap(BaseNodeModel::getId, t -> t, (t, t2) -> t));
             Set<String> needDelete = new HashSet<>();
             Set<String> cacheIds = cacheAll.stream()
                 .map(BaseNodeModel::dataId)
                 .collect(Collectors.toSet());
+            // 本次同步中的工作空间缓存
+            Map<String, Boolean> workspaceExists = new HashMap<>(4);
+            String workspaceName = Optional.ofNullable(workspaceService.getByKey(nodeModel.getWorkspaceId()))
+                .map(WorkspaceModel::getName)
+                .orElse("数据不存在");
             // 转换数据修改时间
             List<T> projectInfoModels = jsonArray.stream()
                 .map(o -> {
@@ -244,13 +363,13 @@ public abstract class BaseNodeService<T extends BaseNodeModel> extends BaseGloba
                 })
                 .peek(item -> this.fullData(item, nodeModel))
                 // 只保留自己节点的数据
-                .filter(t -> StrUtil.equals(t.getNodeId(), nodeModel.getId()))
+                .filter(t -> StrUtil.equals(t.getNodeId(), nodeId))
                 .filter(item -> {
                     if (StrUtil.equals(item.getWorkspaceId(), ServerConst.WORKSPACE_GLOBAL)) {
                         return true;
                     }
                     // 检查对应的工作空间 是否存在
-                    return workspaceService.exists(new WorkspaceModel(item.getWorkspaceId()));
+                    return workspaceExists.computeIfAbsent(item.getWorkspaceId(), s -> workspaceService.exists(new WorkspaceModel(s)));
                 })
                 .filter(item -> {
                     if (StrUtil.equals(item.getWorkspaceId(), ServerConst.WORKSPACE_GLOBAL)) {
@@ -260,51 +379,147 @@ public abstract class BaseNodeService<T extends BaseNodeModel> extends BaseGloba
                     return StrUtil.equals(nodeModel.getWorkspaceId(), item.getWorkspaceId());
                 })
                 .peek(item -> {
-                    item.setNodeName(nodeModel.getName());
-                    WorkspaceModel workspaceModel = workspaceService.getByKey(nodeModel.getWorkspaceId());
-                    item.setWorkspaceName(Optional.ofNullable(workspaceModel).map(WorkspaceModel::getName).orElse("数据不存在"));
+                    item.setNodeName(nodeModelName);
+                    item.setWorkspaceName(workspaceName);
                     cacheIds.remove(item.dataId());
                     // 需要删除相反的工作空间的数据（避免出现一个脚本同步出2条数据的问题）
                     if (StrUtil.equals(item.getWorkspaceId(), ServerConst.WORKSPACE_GLOBAL)) {
-                        needDelete.add(BaseNodeModel.fullId(nodeModel.getWorkspaceId(), nodeModel.getId(), item.dataId()));
+                        needDelete.add(BaseNodeModel.fullId(nodeModel.getWorkspaceId(), nodeId, item.dataId()));
                     } else {
-                        needDelete.add(BaseNodeModel.fullId(ServerConst.WORKSPACE_GLOBAL, nodeModel.getId(), item.dataId()));
+                        needDelete.add(BaseNodeModel.fullId(ServerConst.WORKSPACE_GLOBAL, nodeId, item.dataId()));
                     }
                 })
                 .collect(Collectors.toList());
-            // 设置 临时缓存，便于放行检查
-            BaseServerController.resetInfo(UserModel.EMPTY);
-            //
-            projectInfoModels.forEach(BaseNodeService.super::upsert);
+            // 对比缓存的数据
+            List<T> insertList = new ArrayList<>();
+            List<T> updateList = new ArrayList<>();
+            for (T item : projectInfoModels) {
+                T cache = cacheMap.get(item.getId());
+                if (cache == null) {
+                    insertList.add(item);
+                } else if (this.isChanged(item, cache)) {
+                    updateList.add(item);
+                }
+            }
+            // 增量同步时节点、工作空间名称是否需要更新
+            boolean renamed = false;
+            if (dataIds != null) {
+                // 增量同步：节点还存在但是没有修改的数据不删除
+                cacheIds.removeAll(dataIds);
+                renamed = cacheAll.stream()
+                    .anyMatch(cache -> !StrUtil.equals(cache.getNodeName(), nodeModelName) || !StrUtil.equals(cache.getWorkspaceName(), workspaceName));
+            }
             // 删除项目
-            int delCount = 0;
             Set<String> strings = cacheIds.stream()
                 .flatMap((Function<String, Stream<String>>) s -> Stream.of(
-                    BaseNodeModel.fullId(nodeModel.getWorkspaceId(), nodeModel.getId(), s),
-                    BaseNodeModel.fullId(ServerConst.WORKSPACE_GLOBAL, nodeModel.getId(), s)))
+                    BaseNodeModel.fullId(nodeModel.getWorkspaceId(), nodeId, s),
+                    BaseNodeModel.fullId(ServerConst.WORKSPACE_GLOBAL, nodeId, s)))
                 .collect(Collectors.toSet());
             //
             needDelete.addAll(strings);
-            if (CollUtil.isNotEmpty(needDelete)) {
-                delCount = super.delByKey(needDelete, null);
-            }
-            int size = CollUtil.size(projectInfoModels);
+            // 只删除已经缓存的数据
+            needDelete.retainAll(cacheMap.keySet());
+            // 设置 临时缓存，便于放行检查
+            BaseServerController.resetInfo(UserModel.EMPTY);
+            //
+            boolean finalRenamed = renamed;
+            this.executeTransaction(() -> {
+                this.insertGroupByField(insertList);
+                updateList.forEach(BaseNodeService.super::updateById);
+                if (CollUtil.isNotEmpty(needDelete)) {
+                    super.delByKey(needDelete, null);
+                }
+                if (finalRenamed) {
+                    Entity entity = Entity.create();
+                    entity.set("nodeName", nodeModelName);
+                    entity.set("workspaceName", workspaceName);
+                    Entity updateWhere = Entity.create();
+                    updateWhere.set("nodeId", nodeId);
+                    super.update(entity, updateWhere);
+                }
+            });
+            this.saveSyncState(nodeId, syncState, time);
+            int delCount = CollUtil.size(needDelete);
+            int size = dataIds == null ? CollUtil.size(projectInfoModels) : CollUtil.size(cacheAll) - delCount + insertList.size();
             String format = StrUtil.format(
-                "{} 物理节点拉取到 {} 个{},当前工作空间逻辑节点已经缓存 {} 个{},更新 {} 个{},删除 {} 个缓存",
+                "{} 物理节点拉取到 {} 个{},当前工作空间逻辑节点已经缓存 {} 个{},新增 {} 个{},更新 {} 个{},删除 {} 个缓存",
                 nodeModelName, CollUtil.size(jsonArray), dataName,
                 CollUtil.size(cacheAll), dataName,
-                size, dataName,
+                insertList.size(), dataName,
+                updateList.size(), dataName,
                 delCount);
-            this.refreshCacheStat(nodeModel.getId(), size);
+            this.refreshCacheStat(nodeId, size);
             log.debug(format);
             return format;
         } catch (Exception e) {
+            syncStateMap.remove(nodeId);
             return this.checkException(e, nodeModelName);
         } finally {
             BaseServerController.removeEmpty();
         }
     }
 
+    /**
+     * 记录同步状态，便于下次增量同步
+     *
+     * @param nodeId    节点ID
+     * @param syncState 本次同步前的状态，为 null 表示本次为全量同步
+     * @param time      节点返回的本次查询时间，为 null 表示节点不支持增量查询
+     */
+    private void saveSyncState(String nodeId, SyncState syncState, Long time) {
+        if (time == null) {
+            syncStateMap.remove(nodeId);
+            return;
+        }
+        long fullTime = syncState == null ? SystemClock.now() : syncState.fullTime;
+        syncStateMap.put(nodeId, new SyncState(time, fullTime));
+    }
+
+    /**
+     * 判断数据是否有变动
+     *
+     * @param item  节点返回的数据
+     * @param cache 已经缓存的数据
+     * @return true 有变动
+     */
+    private boolean isChanged(T item, T cache) {
+        Entity entity = this.dataBeanToEntity(item);
+        Entity cacheEntity = this.dataBeanToEntity(cache);
+        for (Map.Entry<String, Object> entry : entity.entrySet()) {
+            if (!ObjectUtil.equals(entry.getValue(), cacheEntity.get(entry.getKey()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 批量插入，批量插入的 sql 由第一条数据的字段生成，需要按照非空字段分组插入
+     *
+     * @param list 数据
+     */
+    private void insertGroupByField(List<T> list) {
+        if (CollUtil.isEmpty(list)) {
+            return;
+        }
+        Map<Set<String>, List<T>> group = list.stream()
+            .collect(Collectors.groupingBy(t -> this.dataBeanToEntity(t).getFieldNames()));
+        for (List<T> value : group.values()) {
+            super.insert(value);
+        }
+    }
+
+    /**
+     * 查询需要同步的数据
+     *
+     * @param nodeModel       节点
+     * @param incrementalTime 增量开始时间（节点时间），0 表示查询全部
+     * @return 节点支持增量查询返回 JSONObject（time、ids、list），否则返回全部数据 JSONArray
+     */
+    protected Object getIncrementalData(NodeModel nodeModel, long incrementalTime) {
+        return this.getLitDataArray(nodeModel);
+    }
+
     /**
      * 刷新缓存统计
      *
@@ -345,7 +560,7 @@ public abstract class BaseNodeService<T extends BaseNodeModel> extends BaseGloba
             log.debug("{} 节点未启用", nodeModelName);
             return;
         }
-        ThreadUtil.execute(() -> {
+        BaseNodeService.getSyncExecutor().execute(() -> {
             try {
                 JSONObject data = this.getItem(nodeModel, id);
                 if (data == null) {
@@ -459,4 +674,19 @@ public abstract class BaseNodeService<T extends BaseNodeModel> extends BaseGloba
      * @return json
      */
     public abstract List<T> lonelyDataArray(MachineNodeModel machineNodeModel);
+
+    /**
+     * 节点同步状态
+     */
+    @AllArgsConstructor
+    private static class SyncState {
+        /**
+         * 节点返回的上一次查询时间，下次增量查询的开始时间
+         */
+        private final long time;
+        /**
+         * 上一次全量同步的时间
+         */
+        private final long fullTime;
+    }
 }
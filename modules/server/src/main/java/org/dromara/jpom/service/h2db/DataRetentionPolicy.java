@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.service.h2db;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.function.IntSupplier;
+import java.util.function.Predicate;
+
+/**
+ * 数据表自动清理策略
+ * <p>
+ * 按时间字段从旧到新清理，超过最大条数或者超过最多保留天数的数据将被删除
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+@Builder
+@Getter
+public class DataRetentionPolicy<T> {
+
+    /**
+     * 时间字段（需要有索引）
+     */
+    private final String timeColumn;
+    /**
+     * 最多保留条数，为空使用全局配置。全局配置小于等于 0 时不按条数清理，否则取两者的最小值，结果小于等于 0 不按条数清理
+     */
+    private final IntSupplier maxCount;
+    /**
+     * 最多保留天数，为空使用全局配置，小于等于 0 不按时间清理
+     */
+    private final IntSupplier maxDay;
+    /**
+     * 删除数据前回调，返回 true 才删除对应数据（用于清理关联的文件等）
+     */
+    private final Predicate<T> beforeDelete;
+
+    /**
+     * 使用全局配置的清理策略
+     *
+     * @param timeColumn 时间字段
+     * @param <T>        泛型
+     * @return policy
+     */
+    public static <T> DataRetentionPolicy<T> of(String timeColumn) {
+        return DataRetentionPolicy.<T>builder().timeColumn(timeColumn).build();
+    }
+}
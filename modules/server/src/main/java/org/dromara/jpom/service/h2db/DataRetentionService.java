@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.service.h2db;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.convert.Convert;
+import cn.hutool.core.date.SystemClock;
+import cn.hutool.core.map.SafeConcurrentHashMap;
+import cn.hutool.core.thread.ExecutorBuilder;
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.core.util.ReflectUtil;
+import cn.hutool.db.Entity;
+import cn.hutool.db.Page;
+import cn.hutool.db.sql.Direction;
+import cn.hutool.db.sql.Order;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.jpom.JpomApplication;
+import org.dromara.jpom.common.ILoadEvent;
+import org.dromara.jpom.db.BaseDbCommonService;
+import org.dromara.jpom.db.DbExtConfig;
+import org.dromara.jpom.model.BaseDbModel;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * 数据表自动清理
+ * <p>
+ * 写入数据时只记录写入条数，由后台定时按表的清理策略统一清理。
+ * 按时间字段升序分批查询最旧的数据再按主键删除（不使用 offset 定位），单表单次最多执行配置的批次，剩余的下次继续
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+@Service
+@Slf4j
+public class DataRetentionService implements ILoadEvent, DisposableBean {
+
+    /**
+     * 没有新数据写入时按时间清理的检查间隔
+     */
+    private static final long AGE_CHECK_INTERVAL = TimeUnit.HOURS.toMillis(1);
+
+    private final DbExtConfig dbExtConfig;
+    /**
+     * 表名 -> 清理信息
+     */
+    private final Map<String, Table<?>> tableMap = new SafeConcurrentHashMap<>();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile ThreadPoolExecutor executor;
+    private ScheduledFuture<?> scheduledFuture;
+
+    public DataRetentionService(DbExtConfig dbExtConfig) {
+        this.dbExtConfig = dbExtConfig;
+    }
+
+    @Override
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public void afterPropertiesSet(ApplicationContext applicationContext) throws Exception {
+        Map<String, BaseDbService> serviceMap = applicationContext.getBeansOfType(BaseDbService.class);
+        for (BaseDbService service : serviceMap.values()) {
+            DataRetentionPolicy policy = service.retentionPolicy();
+            if (policy == null) {
+                continue;
+            }
+            tableMap.put(service.getTableName(), new Table<>(service, policy));
+        }
+        int interval = dbExtConfig.getRetentionInterval();
+        if (interval <= 0) {
+            log.debug("未开启数据自动清理");
+            return;
+        }
+        this.scheduledFuture = JpomApplication.getScheduledExecutorService()
+            .scheduleWithFixedDelay(this::trigger, interval, interval, TimeUnit.SECONDS);
+    }
+
+    private void trigger() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            this.getExecutor().execute(() -> {
+                try {
+                    for (Table<?> table : tableMap.values()) {
+                        this.execute(table);
+                    }
+                } finally {
+                    running.set(false);
+                }
+            });
+        } catch (Exception e) {
+            running.set(false);
+            log.warn("提交数据自动清理任务失败 {}", e.getMessage());
+        }
+    }
+
+    private <T extends BaseDbModel> void execute(Table<T> table) {
+        long insertCount = table.service.takeRetentionInsertCount();
+        boolean changed = insertCount > 0 || table.backlog;
+        long now = SystemClock.now();
+        int maxDay = this.maxDay(table.policy);
+        int maxCount = this.maxCount(table.policy);
+        boolean ageDue = maxDay > 0 && (changed || now - table.lastAgeCheck >= AGE_CHECK_INTERVAL);
+        boolean countDue = maxCount > 0 && changed;
+        if (!ageDue && !countDue) {
+            table.backlog = false;
+            return;
+        }
+        table.batchBudget = Math.max(dbExtConfig.getRetentionMaxBatch(), 1);
+        boolean backlog = false;
+        try {
+            if (ageDue) {
+                long cutoff = now - TimeUnit.DAYS.toMillis(maxDay);
+                backlog = this.purge(table, cutoff, Long.MAX_VALUE);
+                table.lastAgeCheck = now;
+            }
+            if (countDue) {
+                if (table.batchBudget > 0) {
+                    long excess = table.service.count() - maxCount;
+                    if (excess > 0) {
+                        backlog = this.purge(table, 0, excess) || backlog;
+                    }
+                } else {
+                    backlog = true;
+                }
+            }
+            table.backlog = backlog;
+            table.runCount.incrementAndGet();
+        } catch (Exception e) {
+            // 下次重试
+            table.backlog = true;
+            table.errorCount.incrementAndGet();
+            table.lastError = e.getMessage();
+            log.error("{} 自动清理数据异常", table.service.getTableName(), e);
+        } finally {
+            table.lastRunTime = now;
+            table.lastCost = SystemClock.now() - now;
+        }
+    }
+
+    /**
+     * 按时间从旧到新分批删除数据
+     *
+     * @param table  表
+     * @param cutoff 只删除早于该时间的数据，小于等于 0 不限制
+     * @param limit  最多删除条数
+     * @return true 批次用完还有数据未清理
+     */
+    private <T extends BaseDbModel> boolean purge(Table<T> table, long cutoff, long limit) {
+        BaseDbService<T> service = table.service;
+        String timeColumn = table.policy.getTimeColumn();
+        Predicate<T> beforeDelete = table.policy.getBeforeDelete();
+        int batchSize = Math.max(dbExtConfig.getRetentionBatchSize(), 1);
+        long remaining = limit;
+        // 存在未删除的数据时从该时间之后继续查询
+        Long cursor = null;
+        while (remaining > 0) {
+            if (table.batchBudget <= 0) {
+                return true;
+            }
+            table.batchBudget--;
+            Entity where = Entity.create();
+            if (beforeDelete == null) {
+                // 不需要回调只查询主键
+                where.setFieldNames(BaseDbCommonService.ID_STR, timeColumn);
+            }
+            if (cutoff > 0) {
+                where.set(timeColumn, "< " + cutoff);
+            }
+            if (cursor != null) {
+                // 防止字段重复
+                where.set(timeColumn + " ", "> " + cursor);
+            }
+            int size = (int) Math.min(batchSize, remaining);
+            Page page = new Page(1, size);
+            page.addOrder(new Order(timeColumn, Direction.ASC));
+            List<T> list = service.listLimitDb(where, page, beforeDelete != null);
+            if (CollUtil.isEmpty(list)) {
+                return false;
+            }
+            List<String> ids = list.stream()
+                .filter(t -> beforeDelete == null || beforeDelete.test(t))
+                .map(BaseDbModel::getId)
+                .collect(Collectors.toList());
+            int skip = list.size() - ids.size();
+            if (skip > 0) {
+                table.skipCount.addAndGet(skip);
+                T last = CollUtil.getLast(list);
+                cursor = Convert.toLong(ReflectUtil.getFieldValue(last, timeColumn));
+                if (cursor == null) {
+                    return false;
+                }
+            }
+            int count = service.delByKey(ids);
+            table.deleteCount.addAndGet(count);
+            if (count > 0) {
+                log.debug("{} 清理了 {}条数据", service.getTableName(), count);
+            }
+            remaining -= list.size();
+            if (list.size() < size) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private int maxCount(DataRetentionPolicy<?> policy) {
+        int count = dbExtConfig.getLogStorageCount();
+        if (count <= 0) {
+            return 0;
+        }
+        IntSupplier maxCount = policy.getMaxCount();
+        return maxCount == null ? count : Math.min(count, maxCount.getAsInt());
+    }
+
+    private int maxDay(DataRetentionPolicy<?> policy) {
+        IntSupplier maxDay = policy.getMaxDay();
+        return maxDay == null ? dbExtConfig.getLogStorageDay() : maxDay.getAsInt();
+    }
+
+    private ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            synchronized (this) {
+                if (executor == null) {
+                    ExecutorBuilder executorBuilder = ExecutorBuilder.create();
+                    executorBuilder.setCorePoolSize(1).setMaxPoolSize(1);
+                    executorBuilder.setWorkQueue(new LinkedBlockingQueue<>(1));
+                    executorBuilder.setThreadFactory(ThreadUtil.newNamedThreadFactory("data-retention-", true));
+                    ThreadPoolExecutor threadPoolExecutor = executorBuilder.build();
+                    JpomApplication.register("data-retention", threadPoolExecutor);
+                    executor = threadPoolExecutor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * 清理统计信息
+     *
+     * @return json
+     */
+    public JSONObject stat() {
+        JSONObject jsonObject = new JSONObject();
+        JSONArray tables = new JSONArray();
+        long deleteCount = 0, errorCount = 0;
+        for (Table<?> table : tableMap.values()) {
+            JSONObject item = new JSONObject();
+            item.put("tableName", table.service.getTableName());
+            item.put("name", table.service.getDataDesc());
+            item.put("timeColumn", table.policy.getTimeColumn());
+            item.put("maxCount", this.maxCount(table.policy));
+            item.put("maxDay", this.maxDay(table.policy));
+            item.put("insertCount", table.service.getRetentionInsertCount());
+            item.put("runCount", table.runCount.get());
+            item.put("deleteCount", table.deleteCount.get());
+            item.put("skipCount", table.skipCount.get());
+            item.put("errorCount", table.errorCount.get());
+            item.put("lastError", table.lastError);
+            item.put("lastRunTime", table.lastRunTime);
+            item.put("lastCost", table.lastCost);
+            item.put("backlog", table.backlog);
+            tables.add(item);
+            deleteCount += table.deleteCount.get();
+            errorCount += table.errorCount.get();
+        }
+        jsonObject.put("tableCount", tableMap.size());
+        jsonObject.put("deleteCount", deleteCount);
+        jsonObject.put("errorCount", errorCount);
+        jsonObject.put("running", running.get());
+        jsonObject.put("tables", tables);
+        return jsonObject;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (scheduledFuture != null) {
+            scheduledFuture.cancel(true);
+        }
+    }
+
+    private static class Table<T extends BaseDbModel> {
+        private final BaseDbService<T> service;
+        private final DataRetentionPolicy<T> policy;
+        /**
+         * 上次未清理完（启动后先检查一次）
+         */
+        private volatile boolean backlog = true;
+        private volatile long lastAgeCheck;
+        /**
+         * 本次执行剩余的批次
+         */
+        private int batchBudget;
+        // 监控指标
+        private final AtomicLong runCount = new AtomicLong();
+        private final AtomicLong deleteCount = new AtomicLong();
+        private final AtomicLong skipCount = new AtomicLong();
+        private final AtomicLong errorCount = new AtomicLong();
+        private volatile String lastError;
+        private volatile long lastRunTime;
+        private volatile long lastCost;
+
+        private Table(BaseDbService<T> service, DataRetentionPolicy<T> policy) {
+            this.service = service;
+            this.policy = policy;
+        }
+    }
+}
@@ -98,6 +98,12 @@ public class ProjectInfoCacheService extends BaseNodeService<ProjectInfoCacheMod
         return tJsonMessage.getData();
     }
 
+    @Override
+    protected Object getIncrementalData(NodeModel nodeModel, long incrementalTime) {
+        JsonMessage<Object> jsonMessage = NodeForward.request(nodeModel, NodeUrl.Manage_GetProjectInfo, "notStatus", "true", "incrementalTime", incrementalTime);
+        return jsonMessage.getData();
+    }
+
     @Override
     public List<ProjectInfoCacheModel> lonelyDataArray(MachineNodeModel machineNodeModel) {
         JSONObject jsonObject = new JSONObject();
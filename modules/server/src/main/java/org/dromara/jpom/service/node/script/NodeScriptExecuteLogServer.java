@@ -28,6 +28,7 @@ import org.dromara.jpom.model.data.WorkspaceModel;
 import org.dromara.jpom.model.node.NodeScriptExecuteLogCacheModel;
 import org.dromara.jpom.model.user.UserModel;
 import org.dromara.jpom.service.h2db.BaseNodeService;
+import org.dromara.jpom.service.h2db.DataRetentionPolicy;
 import org.dromara.jpom.service.node.NodeService;
 import org.dromara.jpom.service.system.WorkspaceService;
 import org.springframework.stereotype.Service;
@@ -51,11 +52,6 @@ public class NodeScriptExecuteLogServer extends BaseNodeService<NodeScriptExecut
         super(nodeService, workspaceService, "脚本模版日志");
     }
 
-    @Override
-    protected String[] clearTimeColumns() {
-        return new String[]{"createTimeMillis"};
-    }
-
     @Override
     public JSONObject getItem(NodeModel nodeModel, String id) {
         return null;
@@ -146,10 +142,10 @@ public class NodeScriptExecuteLogServer extends BaseNodeService<NodeScriptExecut
     }
 
     @Override
-    protected void executeClearImpl(int h2DbLogStorageCount) {
-        super.autoLoopClear("createTimeMillis", h2DbLogStorageCount,
-            null,
-            executeLogModel -> {
+    protected DataRetentionPolicy<NodeScriptExecuteLogCacheModel> retentionPolicy() {
+        return DataRetentionPolicy.<NodeScriptExecuteLogCacheModel>builder()
+            .timeColumn("createTimeMillis")
+            .beforeDelete(executeLogModel -> {
                 try {
                     NodeModel nodeModel = nodeService.getByKey(executeLogModel.getNodeId());
                     JsonMessage<Object> jsonMessage = NodeForward.request(nodeModel, NodeUrl.SCRIPT_DEL_LOG,
@@ -163,6 +159,7 @@ public class NodeScriptExecuteLogServer extends BaseNodeService<NodeScriptExecut
                     log.error("自动清除数据错误 {} {}", executeLogModel.getNodeId(), executeLogModel.getScriptName(), e);
                     return false;
                 }
-            });
+            })
+            .build();
     }
 }
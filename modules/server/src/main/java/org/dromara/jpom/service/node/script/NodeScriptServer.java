@@ -10,6 +10,7 @@
 package org.dromara.jpom.service.node.script;
 
 import cn.hutool.db.Entity;
+import cn.keepbx.jpom.model.JsonMessage;
 import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
 import org.dromara.jpom.common.forward.NodeForward;
@@ -63,6 +64,12 @@ public class NodeScriptServer extends BaseNodeService<NodeScriptCacheModel> impl
         return NodeForward.requestData(nodeModel, NodeUrl.Script_List, null, JSONArray.class);
     }
 
+    @Override
+    protected Object getIncrementalData(NodeModel nodeModel, long incrementalTime) {
+        JsonMessage<Object> jsonMessage = NodeForward.request(nodeModel, NodeUrl.Script_List, "incrementalTime", incrementalTime);
+        return jsonMessage.getData();
+    }
+
     @Override
     public List<NodeScriptCacheModel> lonelyDataArray(MachineNodeModel machineNodeModel) {
         JSONArray jsonArray = NodeForward.requestData(machineNodeModel, NodeUrl.Script_List, null, JSONArray.class);
@@ -12,6 +12,7 @@ package org.dromara.jpom.service.node.ssh;
 import cn.hutool.core.io.FileUtil;
 import org.dromara.jpom.model.data.CommandExecLogModel;
 import org.dromara.jpom.service.h2db.BaseWorkspaceService;
+import org.dromara.jpom.service.h2db.DataRetentionPolicy;
 import org.dromara.jpom.util.CommandUtil;
 import org.springframework.stereotype.Service;
 
@@ -33,21 +34,19 @@ public class CommandExecLogService extends BaseWorkspaceService<CommandExecLogMo
     }
 
     @Override
-    protected void executeClearImpl(int h2DbLogStorageCount) {
-        super.autoLoopClear("createTimeMillis", h2DbLogStorageCount, null, commandExecLogModel -> {
-            File file = commandExecLogModel.logFile();
-            CommandUtil.systemFastDel(file);
-            File parentFile = file.getParentFile();
-            boolean empty = FileUtil.isEmpty(parentFile);
-            if (empty) {
-                CommandUtil.systemFastDel(parentFile);
-            }
-            return true;
-        });
-    }
-
-    @Override
-    protected String[] clearTimeColumns() {
-        return super.clearTimeColumns();
+    protected DataRetentionPolicy<CommandExecLogModel> retentionPolicy() {
+        return DataRetentionPolicy.<CommandExecLogModel>builder()
+            .timeColumn("createTimeMillis")
+            .beforeDelete(commandExecLogModel -> {
+                File file = commandExecLogModel.logFile();
+                CommandUtil.systemFastDel(file);
+                File parentFile = file.getParentFile();
+                boolean empty = FileUtil.isEmpty(parentFile);
+                if (empty) {
+                    CommandUtil.systemFastDel(parentFile);
+                }
+                return true;
+            })
+            .build();
     }
 }
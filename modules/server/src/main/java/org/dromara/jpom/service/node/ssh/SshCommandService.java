@@ -14,7 +14,6 @@ import cn.hutool.core.util.CharsetUtil;
 import cn.hutool.core.util.IdUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.cron.task.Task;
-import cn.hutool.extra.ssh.JschUtil;
 import cn.hutool.system.SystemUtil;
 import cn.keepbx.jpom.cron.ICron;
 import com.jcraft.jsch.Session;
@@ -28,6 +27,7 @@ import org.dromara.jpom.model.data.CommandModel;
 import org.dromara.jpom.model.data.SshModel;
 import org.dromara.jpom.model.user.UserModel;
 import org.dromara.jpom.plugins.JschUtils;
+import org.dromara.jpom.plugins.SshSessionPool;
 import org.dromara.jpom.script.CommandParam;
 import org.dromara.jpom.service.ITriggerToken;
 import org.dromara.jpom.service.h2db.BaseWorkspaceService;
@@ -274,12 +274,11 @@ public class SshCommandService extends BaseWorkspaceService<CommandModel> implem
 
             MachineSshModel machineSshModel = sshService.getMachineSshModel(sshModel);
             //
-            Session session = null;
-            try {
+            try (SshSessionPool.Lease lease = sshService.borrowSession(machineSshModel)) {
                 Charset charset = machineSshModel.charset();
                 int timeout = machineSshModel.timeout();
                 //
-                session = sshService.getSessionByModel(machineSshModel);
+                Session session = lease.getSession();
                 int exitCode = JschUtils.execCallbackLine(session, charset, timeout, commands, commandParamsLine, logRecorder::info);
                 logRecorder.system("执行退出码：{}", exitCode);
                 // 更新状态
@@ -290,8 +289,6 @@ public class SshCommandService extends BaseWorkspaceService<CommandModel> implem
                 this.updateStatus(commandExecLogModel.getId(), CommandExecLogModel.Status.ERROR);
                 // 记录错误日志
                 logRecorder.error("执行命令错误", e);
-            } finally {
-                JschUtil.close(session);
             }
         }
     }
@@ -26,6 +26,7 @@ import org.dromara.jpom.func.assets.model.MachineSshModel;
 import org.dromara.jpom.func.assets.server.MachineSshServer;
 import org.dromara.jpom.model.data.SshModel;
 import org.dromara.jpom.plugins.JschLogger;
+import org.dromara.jpom.plugins.SshSessionPool;
 import org.dromara.jpom.service.h2db.BaseWorkspaceService;
 import org.dromara.jpom.configuration.BuildExtConfig;
 import org.dromara.jpom.util.LogRecorder;
@@ -103,6 +104,16 @@ public class SshService extends BaseWorkspaceService<SshModel> {
     }
 
 
+    /**
+     * 从会话池借出 ssh 会话，使用完成需要关闭（归还）
+     *
+     * @param sshModel sshModel
+     * @return 借出的会话
+     */
+    public SshSessionPool.Lease borrowSession(MachineSshModel sshModel) {
+        return machineSshServer.borrowSession(sshModel);
+    }
+
     /**
      * 获取 ssh 配置对象
      *
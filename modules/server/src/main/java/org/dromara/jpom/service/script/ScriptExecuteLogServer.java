@@ -13,6 +13,7 @@ import org.dromara.jpom.model.data.CommandExecLogModel;
 import org.dromara.jpom.model.script.ScriptExecuteLogModel;
 import org.dromara.jpom.model.script.ScriptModel;
 import org.dromara.jpom.service.h2db.BaseGlobalOrWorkspaceService;
+import org.dromara.jpom.service.h2db.DataRetentionPolicy;
 import org.dromara.jpom.util.CommandUtil;
 import org.springframework.stereotype.Service;
 
@@ -81,16 +82,14 @@ public class ScriptExecuteLogServer extends BaseGlobalOrWorkspaceService<ScriptE
 
 
     @Override
-    protected void executeClearImpl(int h2DbLogStorageCount) {
-        super.autoLoopClear("createTimeMillis", h2DbLogStorageCount, null, scriptExecuteLogModel -> {
-            File logFile = ScriptModel.logFile(scriptExecuteLogModel.getScriptId(), scriptExecuteLogModel.getId());
-            boolean fastDel = CommandUtil.systemFastDel(logFile);
-            return !fastDel;
-        });
-    }
-
-    @Override
-    protected String[] clearTimeColumns() {
-        return super.clearTimeColumns();
+    protected DataRetentionPolicy<ScriptExecuteLogModel> retentionPolicy() {
+        return DataRetentionPolicy.<ScriptExecuteLogModel>builder()
+            .timeColumn("createTimeMillis")
+            .beforeDelete(scriptExecuteLogModel -> {
+                File logFile = ScriptModel.logFile(scriptExecuteLogModel.getScriptId(), scriptExecuteLogModel.getId());
+                boolean fastDel = CommandUtil.systemFastDel(logFile);
+                return !fastDel;
+            })
+            .build();
     }
 }
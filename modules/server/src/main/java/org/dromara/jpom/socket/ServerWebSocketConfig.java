@@ -9,7 +9,9 @@
  */
 package org.dromara.jpom.socket;
 
+import org.dromara.jpom.common.ServerOpenApi;
 import org.dromara.jpom.configuration.NodeConfig;
+import org.dromara.jpom.func.assets.server.MachineNodeHeartbeatServer;
 import org.dromara.jpom.func.assets.server.MachineNodeServer;
 import org.dromara.jpom.service.system.SystemParametersServer;
 import org.dromara.jpom.socket.handler.*;
@@ -31,15 +33,18 @@ public class ServerWebSocketConfig implements WebSocketConfigurer {
     private final SystemParametersServer systemParametersServer;
     private final NodeConfig nodeConfig;
     private final MachineNodeServer machineNodeServer;
+    private final MachineNodeHeartbeatServer machineNodeHeartbeatServer;
 
     public ServerWebSocketConfig(ServerWebSocketInterceptor serverWebSocketInterceptor,
                                  SystemParametersServer systemParametersServer,
                                  ServerConfig serverConfig,
-                                 MachineNodeServer machineNodeServer) {
+                                 MachineNodeServer machineNodeServer,
+                                 MachineNodeHeartbeatServer machineNodeHeartbeatServer) {
         this.serverWebSocketInterceptor = serverWebSocketInterceptor;
         this.systemParametersServer = systemParametersServer;
         this.nodeConfig = serverConfig.getNode();
         this.machineNodeServer = machineNodeServer;
+        this.machineNodeHeartbeatServer = machineNodeHeartbeatServer;
     }
 
     @Override
@@ -71,5 +76,8 @@ public class ServerWebSocketConfig implements WebSocketConfigurer {
         // docker cli
         registry.addHandler(new DockerCliHandler(), "/socket/docker_cli")
             .addInterceptors(serverWebSocketInterceptor).setAllowedOrigins("*");
+        // 节点推送心跳（节点授权信息认证）
+        registry.addHandler(new NodeHeartbeatHandler(machineNodeHeartbeatServer), ServerOpenApi.NODE_HEARTBEAT)
+            .setAllowedOrigins("*");
     }
 }
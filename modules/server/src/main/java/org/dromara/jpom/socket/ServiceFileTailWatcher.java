@@ -20,7 +20,6 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.Collection;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -82,8 +81,8 @@ public class ServiceFileTailWatcher<T extends AutoCloseable> extends BaseFileTai
     public static void offline(WebSocketSession session) {
         Collection<ServiceFileTailWatcher<WebSocketSession>> collection = CONCURRENT_HASH_MAP.values();
         for (ServiceFileTailWatcher<WebSocketSession> agentFileTailWatcher : collection) {
-            agentFileTailWatcher.socketSessions.removeIf(session::equals);
-            if (agentFileTailWatcher.socketSessions.isEmpty()) {
+            agentFileTailWatcher.remove(session);
+            if (agentFileTailWatcher.isEmpty()) {
                 agentFileTailWatcher.close();
             }
         }
@@ -99,8 +98,7 @@ public class ServiceFileTailWatcher<T extends AutoCloseable> extends BaseFileTai
         if (null == agentFileTailWatcher) {
             return;
         }
-        Set<WebSocketSession> socketSessions = agentFileTailWatcher.socketSessions;
-        for (WebSocketSession socketSession : socketSessions) {
+        for (WebSocketSession socketSession : agentFileTailWatcher.sessions()) {
             offline(socketSession);
         }
         agentFileTailWatcher.close();
@@ -117,14 +115,8 @@ public class ServiceFileTailWatcher<T extends AutoCloseable> extends BaseFileTai
         if (null == serviceFileTailWatcher) {
             return;
         }
-        Set<WebSocketSession> socketSessions = serviceFileTailWatcher.socketSessions;
-        for (WebSocketSession socketSession : socketSessions) {
-            if (socketSession.equals(session)) {
-                offline(socketSession);
-                break;
-            }
-        }
-        if (serviceFileTailWatcher.socketSessions.isEmpty()) {
+        serviceFileTailWatcher.remove(session);
+        if (serviceFileTailWatcher.isEmpty()) {
             serviceFileTailWatcher.close();
         }
     }
@@ -134,6 +126,11 @@ public class ServiceFileTailWatcher<T extends AutoCloseable> extends BaseFileTai
         return SocketSessionUtil.send((WebSocketSession) session, msg);
     }
 
+    @Override
+    protected String getId(T session) {
+        return ((WebSocketSession) session).getId();
+    }
+
     /**
      * 关闭
      */
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.socket.handler;
+
+import com.alibaba.fastjson2.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.jpom.common.Const;
+import org.dromara.jpom.common.ServerOpenApi;
+import org.dromara.jpom.func.assets.model.MachineNodeModel;
+import org.dromara.jpom.func.assets.server.MachineNodeHeartbeatServer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+/**
+ * 节点推送心跳
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+@Slf4j
+public class NodeHeartbeatHandler extends TextWebSocketHandler {
+
+    private static final String MACHINE_ID = "machineId";
+
+    private final MachineNodeHeartbeatServer machineNodeHeartbeatServer;
+
+    public NodeHeartbeatHandler(MachineNodeHeartbeatServer machineNodeHeartbeatServer) {
+        this.machineNodeHeartbeatServer = machineNodeHeartbeatServer;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        HttpHeaders headers = session.getHandshakeHeaders();
+        String installId = headers.getFirst(ServerOpenApi.NODE_HEARTBEAT_INSTALL_ID);
+        String authorize = headers.getFirst(Const.JPOM_AGENT_AUTHORIZE);
+        MachineNodeModel machineNode = machineNodeHeartbeatServer.authorize(installId, authorize);
+        if (machineNode == null) {
+            log.warn("节点推送心跳认证失败：{} {}", installId, session.getRemoteAddress());
+            session.close(CloseStatus.POLICY_VIOLATION.withReason("auth failed"));
+            return;
+        }
+        session.getAttributes().put(MACHINE_ID, machineNode.getId());
+        machineNodeHeartbeatServer.online(machineNode, session);
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        String machineId = (String) session.getAttributes().get(MACHINE_ID);
+        if (machineId == null) {
+            return;
+        }
+        JSONObject jsonObject = JSONObject.parseObject(message.getPayload());
+        machineNodeHeartbeatServer.receive(machineId, session, jsonObject);
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
+        log.warn("节点推送心跳连接异常：{}", exception.getMessage());
+        if (session.isOpen()) {
+            session.close(CloseStatus.SERVER_ERROR);
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        String machineId = (String) session.getAttributes().get(MACHINE_ID);
+        if (machineId != null) {
+            machineNodeHeartbeatServer.offline(machineId, session);
+        }
+    }
+}
@@ -25,6 +25,7 @@ import org.dromara.jpom.script.BaseRunScript;
 import org.dromara.jpom.service.node.NodeService;
 import org.dromara.jpom.service.node.script.NodeScriptExecuteLogServer;
 import org.dromara.jpom.service.node.script.NodeScriptServer;
+import org.dromara.jpom.util.FileFingerprintIndex;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Configuration;
 
@@ -106,5 +107,7 @@ public class ServerCheckMonitor implements ILoadEvent, ISystemTask {
         RemoteVersion.loadRemoteInfo();
         // 清空脚本缓存
         BaseRunScript.clearRunScript();
+        // 清理长时间未使用的文件签名索引
+        FileFingerprintIndex.cleanExpired();
     }
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.system.init;
+
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.jpom.common.ILoadEvent;
+import org.dromara.jpom.configuration.NodeConfig;
+import org.dromara.jpom.system.ServerConfig;
+import org.dromara.jpom.transport.HttpPoolTransportServer;
+import org.dromara.jpom.transport.TransportServer;
+import org.dromara.jpom.transport.TransportServerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 节点通讯引擎配置
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/25
+ */
+@Slf4j
+@Configuration
+public class TransportEngineConfig implements ILoadEvent, DisposableBean {
+
+    private final NodeConfig nodeConfig;
+
+    public TransportEngineConfig(ServerConfig serverConfig) {
+        this.nodeConfig = serverConfig.getNode();
+    }
+
+    @Override
+    public void afterPropertiesSet(ApplicationContext applicationContext) throws Exception {
+        TransportServer transportServer = TransportServerFactory.use(nodeConfig.getTransportEngine());
+        if (transportServer instanceof HttpPoolTransportServer) {
+            ((HttpPoolTransportServer) transportServer).config(nodeConfig.getTransportPool());
+        }
+    }
+
+    /**
+     * 需要在节点心跳等任务启动前切换
+     *
+     * @return 最高优先级
+     */
+    @Override
+    public int getOrder() {
+        return HIGHEST_PRECEDENCE;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        TransportServer transportServer = TransportServerFactory.get();
+        if (transportServer instanceof AutoCloseable) {
+            ((AutoCloseable) transportServer).close();
+        }
+    }
+}
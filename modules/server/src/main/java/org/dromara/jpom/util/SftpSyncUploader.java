@@ -0,0 +1,512 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.util;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IoUtil;
+import cn.hutool.core.io.LineHandler;
+import cn.hutool.core.lang.func.VoidFunc1;
+import cn.hutool.core.thread.ExecutorBuilder;
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.extra.ssh.ChannelType;
+import cn.hutool.extra.ssh.JschUtil;
+import com.jcraft.jsch.*;
+import lombok.Lombok;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.dromara.jpom.JpomApplication;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * ssh 同步上传
+ * <p>
+ * 先读取远程目录的文件列表（大小、修改时间），只上传有变化的文件：大小不同直接上传，大小相同修改时间不同的再对比 sha1。
+ * 需要上传的文件使用多个 sftp 通道并行上传，上传后将远程文件修改时间设置为本地文件修改时间。
+ * 也可以使用打包模式：本地打包为 tar.gz 通过 exec 通道的标准输入直接传给远程 tar 解压，不产生临时文件
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+@Slf4j
+public class SftpSyncUploader {
+
+    private static volatile ThreadPoolExecutor syncExecutor;
+
+    private final Session session;
+    private final Charset charset;
+    private final int timeout;
+    private final int channelCount;
+    private final int progressRatio;
+    private final LogRecorder logRecorder;
+
+    /**
+     * @param session       会话
+     * @param charset       编码格式
+     * @param timeout       超时时间
+     * @param channelCount  同时使用的 sftp 通道数
+     * @param progressRatio 进度日志折叠比例 1-100
+     * @param logRecorder   日志
+     */
+    public SftpSyncUploader(Session session, Charset charset, int timeout, int channelCount, int progressRatio, LogRecorder logRecorder) {
+        this.session = session;
+        this.charset = charset;
+        this.timeout = timeout;
+        this.channelCount = Math.max(channelCount, 1);
+        this.progressRatio = Math.min(Math.max(progressRatio, 1), 100);
+        this.logRecorder = logRecorder;
+    }
+
+    /**
+     * 同步上传，文件上传到远程目录中，目录上传目录下的所有文件到远程目录中
+     *
+     * @param local      本地文件或者目录
+     * @param remotePath 远程目录
+     * @param clearOld   是否删除远程目录中本地不存在的文件
+     */
+    public void sync(File local, String remotePath, boolean clearOld) throws SftpException {
+        String remoteDir = remotePath;
+        Map<String, File> localFiles = new TreeMap<>();
+        List<String> uploadList;
+        ChannelSftp channel = this.openSftp();
+        try {
+            if (!StrUtil.startWith(remoteDir, StrUtil.SLASH)) {
+                remoteDir = channel.pwd() + StrUtil.SLASH + remoteDir;
+            }
+            remoteDir = StrUtil.removeSuffix(FileUtil.normalize(remoteDir), StrUtil.SLASH);
+            // 本地文件列表
+            Set<String> localDirs = new TreeSet<>();
+            if (local.isFile()) {
+                localFiles.put(local.getName(), local);
+            } else {
+                this.walkLocal(local, StrUtil.EMPTY, localFiles, localDirs);
+            }
+            // 远程文件列表
+            Map<String, SftpATTRS> remoteFiles = new HashMap<>(localFiles.size());
+            Set<String> remoteDirs = new HashSet<>();
+            boolean remoteExists = this.walkRemote(channel, remoteDir, StrUtil.EMPTY, remoteFiles, remoteDirs);
+            // 删除本地不存在的
+            int deleteCount = 0;
+            if (clearOld) {
+                for (String dir : remoteDirs) {
+                    String parent = StrUtil.subBefore(dir, StrUtil.SLASH, true);
+                    if (!localDirs.contains(dir) && (!dir.contains(StrUtil.SLASH) || localDirs.contains(parent))) {
+                        // 只删除最上层的目录
+                        this.delRemoteDir(channel, remoteDir + StrUtil.SLASH + dir);
+                        deleteCount++;
+                    }
+                }
+                for (String name : remoteFiles.keySet()) {
+                    String parent = StrUtil.subBefore(name, StrUtil.SLASH, true);
+                    if (!localFiles.containsKey(name) && (!name.contains(StrUtil.SLASH) || localDirs.contains(parent))) {
+                        channel.rm(remoteDir + StrUtil.SLASH + name);
+                        deleteCount++;
+                    }
+                }
+            }
+            // 创建目录，父级目录在前
+            if (!remoteExists) {
+                this.mkdirs(channel, remoteDir);
+            }
+            for (String dir : localDirs) {
+                if (remoteFiles.remove(dir) != null) {
+                    // 远程是文件，本地是目录
+                    channel.rm(remoteDir + StrUtil.SLASH + dir);
+                }
+                if (!remoteDirs.contains(dir)) {
+                    channel.mkdir(remoteDir + StrUtil.SLASH + dir);
+                }
+            }
+            for (String name : localFiles.keySet()) {
+                if (remoteDirs.contains(name)) {
+                    // 远程是目录，本地是文件
+                    this.delRemoteDir(channel, remoteDir + StrUtil.SLASH + name);
+                }
+            }
+            uploadList = this.diff(remoteDir, localFiles, remoteFiles);
+            int skip = localFiles.size() - uploadList.size();
+            logRecorder.system("远程目录 {} 共 {} 个文件，需要上传 {} 个，跳过未变化的 {} 个，删除 {} 个", remoteDir, localFiles.size(), uploadList.size(), skip, deleteCount);
+        } finally {
+            JschUtil.close(channel);
+        }
+        // 先关闭读取列表的通道，避免占用过多通道
+        this.upload(remoteDir, localFiles, uploadList);
+    }
+
+    /**
+     * 打包上传，本地打包为 tar.gz 通过标准输入传给远程 tar 命令解压
+     *
+     * @param local      本地文件或者目录
+     * @param remotePath 远程目录
+     * @param clearOld   是否先删除远程目录
+     */
+    public void syncTar(File local, String remotePath, boolean clearOld) throws IOException, JSchException {
+        String dir = StrUtil.format("'{}'", StrUtil.replace(remotePath, "'", "'\\''"));
+        String command = StrUtil.format("{}mkdir -p {} && tar -xzf - -C {}", clearOld ? "rm -rf " + dir + " && " : StrUtil.EMPTY, dir, dir);
+        ChannelExec channel = (ChannelExec) JschUtil.createChannel(session, ChannelType.EXEC);
+        try (ByteArrayOutputStream errorStream = new ByteArrayOutputStream()) {
+            channel.setCommand(StrUtil.bytes(command, charset));
+            channel.setErrStream(errorStream, true);
+            InputStream inputStream = channel.getInputStream();
+            OutputStream outputStream = channel.getOutputStream();
+            channel.connect(timeout);
+            long size = 0;
+            try (CountingOutputStream countingOutputStream = new CountingOutputStream(outputStream);
+                 TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(new GZIPOutputStream(countingOutputStream, 64 * 1024), charset.name())) {
+                tarOutputStream.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+                tarOutputStream.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+                if (local.isFile()) {
+                    this.putTarEntry(tarOutputStream, local, local.getName());
+                } else {
+                    this.walkTar(tarOutputStream, local, StrUtil.EMPTY);
+                }
+                tarOutputStream.finish();
+                tarOutputStream.flush();
+                size = countingOutputStream.count;
+            } catch (IOException e) {
+                // 远程命令提前退出（如没有 tar 命令）
+                log.warn("打包上传写入异常 {}", e.getMessage());
+            }
+            // 关闭输出流后远程 tar 读取结束，等待命令执行完成
+            String out = IoUtil.read(inputStream, charset);
+            while (!channel.isClosed()) {
+                ThreadUtil.sleep(50);
+            }
+            int exitStatus = channel.getExitStatus();
+            String error = errorStream.toString(charset.name());
+            if (StrUtil.isNotEmpty(out)) {
+                logRecorder.info(out);
+            }
+            if (exitStatus != 0) {
+                throw new IllegalStateException(StrUtil.format("远程解压失败，退出码：{} {}", exitStatus, error));
+            }
+            logRecorder.system("打包上传完成 {} 传输大小：{}", remotePath, FileUtil.readableFileSize(size));
+        } finally {
+            JschUtil.close(channel);
+        }
+    }
+
+    private void walkTar(TarArchiveOutputStream tarOutputStream, File dir, String prefix) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = prefix + file.getName();
+            if (file.isDirectory()) {
+                TarArchiveEntry entry = new TarArchiveEntry(file, name + StrUtil.SLASH);
+                tarOutputStream.putArchiveEntry(entry);
+                tarOutputStream.closeArchiveEntry();
+                this.walkTar(tarOutputStream, file, name + StrUtil.SLASH);
+            } else if (file.isFile()) {
+                this.putTarEntry(tarOutputStream, file, name);
+            }
+        }
+    }
+
+    private void putTarEntry(TarArchiveOutputStream tarOutputStream, File file, String name) throws IOException {
+        TarArchiveEntry entry = new TarArchiveEntry(file, name);
+        tarOutputStream.putArchiveEntry(entry);
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(file), 64 * 1024)) {
+            IoUtil.copy(inputStream, tarOutputStream, 64 * 1024);
+        }
+        tarOutputStream.closeArchiveEntry();
+    }
+
+    /**
+     * 对比出需要上传的文件
+     */
+    private List<String> diff(String remoteDir, Map<String, File> localFiles, Map<String, SftpATTRS> remoteFiles) {
+        List<String> uploadList = new ArrayList<>();
+        Map<String, File> checkMap = new LinkedHashMap<>();
+        for (Map.Entry<String, File> entry : localFiles.entrySet()) {
+            String name = entry.getKey();
+            File file = entry.getValue();
+            SftpATTRS attrs = remoteFiles.get(name);
+            if (attrs == null || attrs.getSize() != file.length()) {
+                uploadList.add(name);
+            } else if (attrs.getMTime() != file.lastModified() / 1000) {
+                checkMap.put(name, file);
+            }
+        }
+        if (checkMap.isEmpty()) {
+            return uploadList;
+        }
+        // 大小相同修改时间不同的对比 sha1
+        Map<String, String> remoteSha1 = this.remoteSha1(remoteDir, checkMap.keySet());
+        Map<File, String> localSha1 = FileFingerprintIndex.sha1Parallel(checkMap.values());
+        checkMap.forEach((name, file) -> {
+            if (!StrUtil.equals(remoteSha1.get(name), localSha1.get(file))) {
+                uploadList.add(name);
+            }
+        });
+        return uploadList;
+    }
+
+    /**
+     * 在远程执行 sha1sum 计算文件签名，文件列表通过标准输入传入（不支持 sha1sum 时返回空，文件全部重新上传）
+     */
+    private Map<String, String> remoteSha1(String remoteDir, Collection<String> names) {
+        Map<String, String> result = new HashMap<>(names.size());
+        ChannelExec channel = null;
+        try {
+            channel = (ChannelExec) JschUtil.createChannel(session, ChannelType.EXEC);
+            String dir = StrUtil.format("'{}'", StrUtil.replace(remoteDir, "'", "'\\''"));
+            channel.setCommand(StrUtil.bytes(StrUtil.format("cd {} && tr '\\n' '\\0' | xargs -0 sha1sum --", dir), charset));
+            String input = CollUtil.join(names, StrUtil.LF) + StrUtil.LF;
+            channel.setInputStream(new ByteArrayInputStream(StrUtil.bytes(input, charset)));
+            channel.setErrStream(new ByteArrayOutputStream(), true);
+            try (InputStream inputStream = channel.getInputStream()) {
+                channel.connect(timeout);
+                IoUtil.readLines(inputStream, charset, (LineHandler) line -> {
+                    // sha1 + 两个空格 + 文件名
+                    int index = line.indexOf("  ");
+                    if (index > 0) {
+                        result.put(line.substring(index + 2), line.substring(0, index));
+                    }
+                });
+            }
+        } catch (Exception e) {
+            log.warn("远程计算文件签名失败 {}", e.getMessage());
+        } finally {
+            JschUtil.close(channel);
+        }
+        return result;
+    }
+
+    /**
+     * 多个通道并行上传
+     */
+    private void upload(String remoteDir, Map<String, File> localFiles, List<String> uploadList) {
+        if (uploadList.isEmpty()) {
+            return;
+        }
+        Queue<String> queue = new ConcurrentLinkedQueue<>(uploadList);
+        int total = uploadList.size();
+        AtomicInteger done = new AtomicInteger();
+        AtomicLong bytes = new AtomicLong();
+        Set<Integer> progressRangeList = Collections.synchronizedSet(new HashSet<>());
+        int workers = Math.min(channelCount, total);
+        runWorkers(workers, () -> {
+            ChannelSftp channel = this.openSftp();
+            try {
+                String name;
+                while ((name = queue.poll()) != null) {
+                    File file = localFiles.get(name);
+                    String dest = remoteDir + StrUtil.SLASH + name;
+                    channel.put(FileUtil.getAbsolutePath(file), dest, ChannelSftp.OVERWRITE);
+                    channel.setMtime(dest, (int) (file.lastModified() / 1000));
+                    bytes.addAndGet(file.length());
+                    int now = done.incrementAndGet();
+                    int progressRange = (int) Math.floor(now * 100D / total / progressRatio);
+                    if (progressRangeList.add(progressRange)) {
+                        logRecorder.system("上传文件进度：{}/{} {}", now, total, FileUtil.readableFileSize(bytes.get()));
+                    }
+                }
+            } finally {
+                JschUtil.close(channel);
+            }
+        });
+    }
+
+    private void walkLocal(File dir, String prefix, Map<String, File> localFiles, Set<String> localDirs) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = prefix + file.getName();
+            if (file.isDirectory()) {
+                localDirs.add(name);
+                this.walkLocal(file, name + StrUtil.SLASH, localFiles, localDirs);
+            } else if (file.isFile()) {
+                localFiles.put(name, file);
+            }
+        }
+    }
+
+    /**
+     * 读取远程目录下的文件
+     *
+     * @return 远程目录是否存在
+     */
+    private boolean walkRemote(ChannelSftp channel, String remoteDir, String prefix, Map<String, SftpATTRS> remoteFiles, Set<String> remoteDirs) throws SftpException {
+        Vector<?> vector;
+        try {
+            vector = channel.ls(remoteDir + (prefix.isEmpty() ? StrUtil.EMPTY : StrUtil.SLASH + StrUtil.removeSuffix(prefix, StrUtil.SLASH)));
+        } catch (SftpException e) {
+            if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                return false;
+            }
+            throw e;
+        }
+        for (Object item : vector) {
+            ChannelSftp.LsEntry entry = (ChannelSftp.LsEntry) item;
+            String filename = entry.getFilename();
+            if (StrUtil.equalsAny(filename, ".", "..")) {
+                continue;
+            }
+            String name = prefix + filename;
+            SftpATTRS attrs = entry.getAttrs();
+            if (attrs.isDir()) {
+                remoteDirs.add(name);
+                this.walkRemote(channel, remoteDir, name + StrUtil.SLASH, remoteFiles, remoteDirs);
+            } else {
+                remoteFiles.put(name, attrs);
+            }
+        }
+        return true;
+    }
+
+    private void delRemoteDir(ChannelSftp channel, String path) throws SftpException {
+        Vector<?> vector = channel.ls(path);
+        for (Object item : vector) {
+            ChannelSftp.LsEntry entry = (ChannelSftp.LsEntry) item;
+            String filename = entry.getFilename();
+            if (StrUtil.equalsAny(filename, ".", "..")) {
+                continue;
+            }
+            String itemPath = path + StrUtil.SLASH + filename;
+            if (entry.getAttrs().isDir()) {
+                this.delRemoteDir(channel, itemPath);
+            } else {
+                channel.rm(itemPath);
+            }
+        }
+        channel.rmdir(path);
+    }
+
+    private void mkdirs(ChannelSftp channel, String remoteDir) throws SftpException {
+        StringBuilder builder = new StringBuilder();
+        for (String item : StrUtil.splitTrim(remoteDir, StrUtil.SLASH)) {
+            builder.append(StrUtil.SLASH).append(item);
+            String path = builder.toString();
+            try {
+                channel.stat(path);
+            } catch (SftpException e) {
+                if (e.id != ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+                    throw e;
+                }
+                channel.mkdir(path);
+            }
+        }
+    }
+
+    private ChannelSftp openSftp() {
+        ChannelSftp channel = (ChannelSftp) JschUtil.openChannel(session, ChannelType.SFTP, timeout);
+        channel.setFilenameEncoding(charset);
+        return channel;
+    }
+
+    /**
+     * 并行处理，最多同时处理 concurrency 个（当前线程也参与处理），任意一个失败抛出第一个异常
+     *
+     * @param items       需要处理的数据
+     * @param concurrency 并发数
+     * @param consumer    处理方法
+     * @param <T>         数据类型
+     */
+    public static <T> void parallel(Collection<T> items, int concurrency, VoidFunc1<T> consumer) {
+        Queue<T> queue = new ConcurrentLinkedQueue<>(items);
+        runWorkers(Math.min(Math.max(concurrency, 1), items.size()), () -> {
+            T item;
+            while ((item = queue.poll()) != null) {
+                consumer.call(item);
+            }
+        });
+    }
+
+    private interface Worker {
+        void run() throws Exception;
+    }
+
+    private static void runWorkers(int count, Worker worker) {
+        if (count <= 0) {
+            return;
+        }
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Runnable runnable = () -> {
+            try {
+                worker.run();
+            } catch (Throwable e) {
+                error.compareAndSet(null, e);
+            }
+        };
+        List<Future<?>> futures = new ArrayList<>(count - 1);
+        ThreadPoolExecutor executor = getSyncExecutor();
+        for (int i = 1; i < count; i++) {
+            futures.add(executor.submit(runnable));
+        }
+        runnable.run();
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (Exception e) {
+                error.compareAndSet(null, e);
+            }
+        }
+        Throwable throwable = error.get();
+        if (throwable != null) {
+            throw Lombok.sneakyThrow(throwable);
+        }
+    }
+
+    private static ThreadPoolExecutor getSyncExecutor() {
+        if (syncExecutor == null) {
+            synchronized (SftpSyncUploader.class) {
+                if (syncExecutor == null) {
+                    ExecutorBuilder executorBuilder = ExecutorBuilder.create();
+                    executorBuilder.setCorePoolSize(0).setMaxPoolSize(64);
+                    executorBuilder.setWorkQueue(new SynchronousQueue<>());
+                    executorBuilder.setThreadFactory(ThreadUtil.newNamedThreadFactory("ssh-sync-", true));
+                    // 没有空闲线程时由提交线程执行，避免嵌套并行时互相等待
+                    executorBuilder.setHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+                    ThreadPoolExecutor threadPoolExecutor = executorBuilder.build();
+                    JpomApplication.register("ssh-sync", threadPoolExecutor);
+                    syncExecutor = threadPoolExecutor;
+                }
+            }
+        }
+        return syncExecutor;
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.func.assets.stat;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.RandomUtil;
+import org.dromara.jpom.func.assets.model.MachineNodeStatLogModel;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+public class StatSegmentCodecTest {
+
+    @Test
+    public void testCodec() {
+        List<StatPoint> points = new ArrayList<>();
+        long time = 1714100000000L;
+        for (int i = 0; i < 1000; i++) {
+            MachineNodeStatLogModel model = new MachineNodeStatLogModel();
+            model.setMonitorTime(time + i * 5000L + RandomUtil.randomInt(0, 20));
+            model.setOccupyCpu(RandomUtil.randomDouble(0, 100, 2, java.math.RoundingMode.HALF_UP));
+            model.setOccupyMemory(60.25 + (i % 10) / 100D);
+            model.setOccupyDisk(45.5);
+            // 部分空值
+            model.setOccupySwapMemory(i % 3 == 0 ? null : 1.5);
+            model.setNetworkDelay(i % 2 == 0 ? null : RandomUtil.randomInt(0, 100));
+            model.setNetTxBytes(RandomUtil.randomLong(0, 1024 * 1024));
+            model.setNetRxBytes(0L);
+            points.add(StatPoint.of(model));
+        }
+        byte[] bytes = StatSegmentCodec.encode(points);
+        List<StatPoint> decode = StatSegmentCodec.decode(bytes, 0, bytes.length);
+        Assertions.assertEquals(points.size(), decode.size());
+        for (int i = 0; i < points.size(); i++) {
+            Assertions.assertEquals(points.get(i).toModel("a").toString(), decode.get(i).toModel("a").toString());
+        }
+        System.out.println("points " + points.size() + " bytes " + bytes.length);
+    }
+
+    /**
+     * 每次追加一个数据点（心跳上报），合并后文件大小明显减少并且数据不变
+     */
+    @Test
+    public void testAppendAndCompact() throws Exception {
+        File dir = FileUtil.mkdir(FileUtil.file(FileUtil.getTmpDir(), "jpom-stat-test-" + IdUtil.fastSimpleUUID()));
+        try {
+            File file = FileUtil.file(dir, "20240426.dat");
+            List<StatPoint> points = new ArrayList<>();
+            long time = 1714100000000L;
+            for (int i = 0; i < 2880; i++) {
+                StatPoint point = createPoint(time + i * 30000L + RandomUtil.randomInt(0, 20), i);
+                points.add(point);
+                StatSegmentFile.append(file, Collections.singletonList(point));
+            }
+            long appendSize = file.length();
+            Assertions.assertEquals(points.size(), StatSegmentFile.countBlocks(file));
+            assertPoints(points, StatSegmentFile.read(file));
+
+            Assertions.assertTrue(StatSegmentFile.compact(file));
+            long compactSize = file.length();
+            Assertions.assertEquals(1, StatSegmentFile.countBlocks(file));
+            assertPoints(points, StatSegmentFile.read(file));
+            // 单个数据点的数据块包含绝对时间、绝对值和位图，合并后至少减少一半
+            Assertions.assertTrue(compactSize * 2 < appendSize, appendSize + " -> " + compactSize);
+            // 只有一个数据块时不需要合并
+            Assertions.assertFalse(StatSegmentFile.compact(file));
+
+            // 合并后继续追加
+            StatPoint point = createPoint(time + 2880 * 30000L, 2880);
+            points.add(point);
+            StatSegmentFile.append(file, Collections.singletonList(point));
+            Assertions.assertEquals(2, StatSegmentFile.countBlocks(file));
+            assertPoints(points, StatSegmentFile.read(file));
+        } finally {
+            FileUtil.del(dir);
+        }
+    }
+
+    /**
+     * 写入未完成的数据块读取时忽略
+     */
+    @Test
+    public void testIncompleteBlock() throws Exception {
+        File dir = FileUtil.mkdir(FileUtil.file(FileUtil.getTmpDir(), "jpom-stat-test-" + IdUtil.fastSimpleUUID()));
+        try {
+            File file = FileUtil.file(dir, "20240426.dat");
+            List<StatPoint> points = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                StatPoint point = createPoint(1714100000000L + i * 30000L, i);
+                points.add(point);
+                StatSegmentFile.append(file, Collections.singletonList(point));
+            }
+            try (FileOutputStream outputStream = new FileOutputStream(file, true)) {
+                outputStream.write(new byte[]{0, 0, 1, 0, 1, 2});
+            }
+            Assertions.assertEquals(10, StatSegmentFile.countBlocks(file));
+            assertPoints(points, StatSegmentFile.read(file));
+            Assertions.assertTrue(StatSegmentFile.compact(file));
+            assertPoints(points, StatSegmentFile.read(file));
+        } finally {
+            FileUtil.del(dir);
+        }
+    }
+
+    private static StatPoint createPoint(long time, int i) {
+        MachineNodeStatLogModel model = new MachineNodeStatLogModel();
+        model.setMonitorTime(time);
+        model.setOccupyCpu(RandomUtil.randomDouble(0, 100, 2, java.math.RoundingMode.HALF_UP));
+        model.setOccupyMemory(60.25 + (i % 10) / 100D);
+        model.setOccupyDisk(45.5);
+        model.setOccupySwapMemory(i % 3 == 0 ? null : 1.5);
+        model.setNetworkDelay(i % 2 == 0 ? null : RandomUtil.randomInt(0, 100));
+        model.setNetTxBytes(RandomUtil.randomLong(0, 1024 * 1024));
+        model.setNetRxBytes(0L);
+        return StatPoint.of(model);
+    }
+
+    private static void assertPoints(List<StatPoint> expected, List<StatPoint> actual) {
+        Assertions.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assertions.assertEquals(expected.get(i).toModel("a").toString(), actual.get(i).toModel("a").toString());
+        }
+    }
+}
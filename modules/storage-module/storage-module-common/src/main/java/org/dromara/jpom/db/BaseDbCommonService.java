@@ -351,6 +351,26 @@ public abstract class BaseDbCommonService<T> {
         return pageResultDto;
     }
 
+    /**
+     * 查询指定页的数据（不统计总数）
+     *
+     * @param where 条件
+     * @param page  分页
+     * @param fill  是否填充
+     * @return 结果
+     */
+    public final List<T> listLimitDb(Entity where, Page page, boolean fill) {
+        where.setTableName(getTableName());
+        List<Entity> list;
+        Db db = Db.use(this.getDataSource(), DialectUtil.getDialectByMode(dbMode));
+        try {
+            list = db.pageForEntityList(where, page);
+        } catch (Exception e) {
+            throw warpException(e);
+        }
+        return this.entityToBeanList(list, fill);
+    }
+
 
     /**
      * sql 查询
@@ -391,6 +411,20 @@ public abstract class BaseDbCommonService<T> {
         }
     }
 
+    /**
+     * 在事务中执行（同一线程中的数据库操作共用一个连接）
+     *
+     * @param runnable 数据库操作
+     */
+    protected final void executeTransaction(Runnable runnable) {
+        Db db = Db.use(this.getDataSource(), DialectUtil.getDialectByMode(dbMode));
+        try {
+            db.tx(parameter -> runnable.run());
+        } catch (Exception e) {
+            throw warpException(e);
+        }
+    }
+
     /**
      * 查询结果 填充
      *
@@ -48,6 +48,22 @@ public class DbExtConfig implements InitializingBean {
      * 日志记录最大条数
      */
     private Integer logStorageCount = 10000;
+    /**
+     * 日志记录最多保留天数，小于等于 0 不按时间清理
+     */
+    private int logStorageDay = 0;
+    /**
+     * 日志自动清理检查间隔（秒）
+     */
+    private int retentionInterval = 60;
+    /**
+     * 日志自动清理每批删除条数
+     */
+    private int retentionBatchSize = 500;
+    /**
+     * 日志自动清理单表单次最多执行批次，剩余的下次继续清理
+     */
+    private int retentionMaxBatch = 20;
     /**
      * 数据库默认
      */
@@ -28,7 +28,6 @@ import com.github.dockerjava.api.model.*;
 import com.github.dockerjava.core.InvocationBuilder;
 import com.github.dockerjava.core.NameParser;
 import lombok.Lombok;
-import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.dromara.jpom.util.StringUtil;
 import org.springframework.util.Assert;
@@ -39,6 +38,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -104,17 +104,10 @@ public class DefaultDockerPluginImpl implements IDockerConfigPlugin {
         DockerClient dockerClient = DockerUtil.get(parameter);
         String containerId = (String) parameter.get("containerId");
         List<String> split = StrUtil.split(containerId, StrUtil.COMMA);
-        return split.stream().map(s -> {
-            Statistics statistics = dockerClient.statsCmd(s).exec(new InvocationBuilder.AsyncResultCallback<Statistics>() {
-                @SneakyThrows
-                @Override
-                public void onNext(Statistics object) {
-                    super.onNext(object);
-                    super.close();
-                }
-            }).awaitResult();
-            return new Tuple(s, DockerUtil.toJSON(statistics));
-        }).collect(Collectors.toMap(tuple -> tuple.get(0), tuple -> tuple.get(1)));
+        int timeout = Convert.toInt(parameter.get("timeout"), 0);
+        boolean ssh = parameter.get("session") != null;
+        return DockerStatsCache.stats(dockerClient, DockerUtil.getKey(parameter), ssh, split,
+            TimeUnit.SECONDS.toMillis(timeout > 0 ? timeout : 10));
     }
 
     private JSONObject updateContainerCmd(Map<String, Object> parameter) {
@@ -31,6 +31,7 @@ import org.dromara.jpom.util.StringUtil;
 import org.springframework.util.Assert;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
@@ -66,6 +67,9 @@ public class DockerBuild implements AutoCloseable {
         List<String> copy = (List<String>) parameter.get("copy");
         String resultFile = (String) parameter.get("resultFile");
         String resultFileOut = (String) parameter.get("resultFileOut");
+        // 构建目录使用数据卷增量同步
+        String workspaceSource = (String) parameter.get("workspaceSource");
+        String workingDir = (String) parameter.get("workingDir");
         List<Map<String, Object>> steps = (List<Map<String, Object>>) parameter.get("steps");
 
         String buildId = env.get("JPOM_BUILD_ID");
@@ -82,9 +86,12 @@ public class DockerBuild implements AutoCloseable {
             mounts.addAll(cacheMount);
             // 添加插件到 mount
             mounts.addAll(this.checkDependPlugin(dockerClient, image, steps, buildId, tempDir, logRecorder));
+            if (workspaceSource != null) {
+                mounts.add(DockerWorkspaceSync.checkVolume(dockerClient, buildId, workingDir));
+            }
             containerId = this.buildNewContainer(dockerClient, parameter, mounts);
 
-            String buildShell = this.generateBuildShell(steps, buildId);
+            String buildShell = this.generateBuildShell(steps, buildId, workspaceSource != null ? workingDir : null);
             File tempFile = DockerUtil.createTemp("build.sh", tempDir);
             FileUtil.writeUtf8String(buildShell, tempFile);
             dockerClient.copyArchiveToContainerCmd(containerId)
@@ -94,6 +101,14 @@ public class DockerBuild implements AutoCloseable {
             //
             copy = this.replaceEnv(copy);
             this.copyArchiveToContainerCmd(dockerClient, containerId, copy, logRecorder);
+            if (workspaceSource != null) {
+                try {
+                    new DockerWorkspaceSync(dockerClient, containerId, workingDir, FileUtil.file(workspaceSource), logRecorder).sync();
+                } catch (IOException e) {
+                    logRecorder.error("同步构建目录失败:", e);
+                    return -102;
+                }
+            }
             // 启动容器
             try {
                 dockerClient.startContainerCmd(containerId).exec();
@@ -260,13 +275,19 @@ public class DockerBuild implements AutoCloseable {
     /**
      * 生成执行构建的命令
      *
-     * @param steps   执行步骤
-     * @param buildId 构建ID
+     * @param steps           执行步骤
+     * @param buildId         构建ID
+     * @param workspaceDir 使用数据卷的构建目录，没有使用数据卷为 null
      * @return sh
      */
-    private String generateBuildShell(List<Map<String, Object>> steps, String buildId) {
+    private String generateBuildShell(List<Map<String, Object>> steps, String buildId, String workspaceDir) {
         StringBuilder stepsScript = new StringBuilder("#!/bin/bash\n");
         stepsScript.append("echo \"\n<<<<<<< Build Start >>>>>>>\"\n");
+        if (workspaceDir != null) {
+            stepsScript.append("# workspace\n");
+            stepsScript.append(DockerWorkspaceSync.deleteScript());
+            stepsScript.append(DockerWorkspaceSync.stateScript(workspaceDir));
+        }
         //
         List<String> afterScriptList = new ArrayList<>();
         for (Map<String, Object> step : steps) {
@@ -11,6 +11,7 @@ package org.dromara.jpom;
 
 import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.util.ArrayUtil;
+import cn.hutool.core.util.IdUtil;
 import cn.hutool.core.util.StrUtil;
 import com.github.dockerjava.api.DockerClient;
 import com.github.dockerjava.api.async.ResultCallback;
@@ -80,7 +81,7 @@ public class DockerClientUtil {
     }
 
     /**
-     * 将容器文件下载到本地
+     * 将容器文件下载到本地（直接解压到保存目录）
      *
      * @param dockerClient  容器连接
      * @param containerId   容器ID
@@ -90,50 +91,39 @@ public class DockerClientUtil {
      */
     public static void copyArchiveFromContainerCmd(DockerClient dockerClient, String containerId, LogRecorder logRecorder, String resultFile, String resultFileOut) {
         logRecorder.system("download file from : {}", resultFile);
-        File tmpDir = FileUtil.getTmpDir();
-        File fileArchive = FileUtil.file(tmpDir, "jpom", "docker-temp-archive", containerId);
-        try {
-            try (InputStream stream = dockerClient.copyArchiveFromContainerCmd(containerId, resultFile).exec();
-                 TarArchiveInputStream tarStream = new TarArchiveInputStream(stream)) {
-                TarArchiveEntry tarArchiveEntry;
-                while ((tarArchiveEntry = tarStream.getNextEntry()) != null) {
-                    if (!tarStream.canReadEntryData(tarArchiveEntry)) {
-                        logRecorder.systemWarning("不能读取tarArchiveEntry {}", tarArchiveEntry.getName());
-                    }
-                    if (tarArchiveEntry.isDirectory()) {
-                        continue;
-                    }
-                    String archiveEntryName = tarArchiveEntry.getName();
-                    // 截取第一级目录
-                    archiveEntryName = StrUtil.subAfter(archiveEntryName, StrUtil.SLASH, false);
-                    // 可能中包含文件 使用原名称
-                    archiveEntryName = StrUtil.emptyToDefault(archiveEntryName, tarArchiveEntry.getName());
-                    File currentFile = FileUtil.file(fileArchive, archiveEntryName);
-                    FileUtil.mkParentDirs(currentFile);
-                    FileUtil.writeFromStream(tarStream, currentFile, false);
+        File resultFileOutFile = FileUtil.file(resultFileOut);
+        try (InputStream stream = dockerClient.copyArchiveFromContainerCmd(containerId, resultFile).exec();
+             TarArchiveInputStream tarStream = new TarArchiveInputStream(stream)) {
+            TarArchiveEntry tarArchiveEntry;
+            while ((tarArchiveEntry = tarStream.getNextEntry()) != null) {
+                if (!tarStream.canReadEntryData(tarArchiveEntry)) {
+                    logRecorder.systemWarning("不能读取tarArchiveEntry {}", tarArchiveEntry.getName());
                 }
-            } catch (NotFoundException notFoundException) {
-                logRecorder.systemWarning("容器中没有找到执行结果文件: {}", notFoundException.getMessage());
-            } catch (Exception e) {
-                logRecorder.error("无法获取容器执行结果文件", e);
-            }
-            // github pr 71
-            // https://github.com/dromara/Jpom/pull/71
-            File[] files = fileArchive.listFiles();
-            if (files == null) {
-                logRecorder.systemWarning("临时结果文件不存在: {}", fileArchive.getAbsolutePath());
-                return;
-            }
-            File resultFileOutFile = FileUtil.file(resultFileOut);
-            if (ArrayUtil.length(files) == 1) {
-                FileUtil.mkParentDirs(resultFileOutFile);
-                FileUtil.move(files[0], resultFileOutFile, true);
-            } else {
-                FileUtil.mkdir(resultFileOutFile);
-                FileUtil.moveContent(fileArchive, resultFileOutFile, true);
+                if (tarArchiveEntry.isDirectory()) {
+                    continue;
+                }
+                // 截取第一级目录，没有下级说明结果是单个文件
+                String archiveEntryName = StrUtil.subAfter(tarArchiveEntry.getName(), StrUtil.SLASH, false);
+                File currentFile = StrUtil.isEmpty(archiveEntryName) ? resultFileOutFile : FileUtil.file(resultFileOutFile, archiveEntryName);
+                FileUtil.mkParentDirs(currentFile);
+                FileUtil.writeFromStream(tarStream, currentFile, false);
             }
-        } finally {
-            FileUtil.del(fileArchive);
+        } catch (NotFoundException notFoundException) {
+            logRecorder.systemWarning("容器中没有找到执行结果文件: {}", notFoundException.getMessage());
+        } catch (Exception e) {
+            logRecorder.error("无法获取容器执行结果文件", e);
+        }
+        // github pr 71
+        // https://github.com/dromara/Jpom/pull/71
+        File[] files = resultFileOutFile.listFiles();
+        if (ArrayUtil.length(files) == 1) {
+            // 目录中只有一个文件时直接使用该文件
+            File temp = FileUtil.file(resultFileOutFile.getParentFile(), resultFileOutFile.getName() + "." + IdUtil.fastSimpleUUID());
+            FileUtil.move(files[0], temp, true);
+            FileUtil.del(resultFileOutFile);
+            FileUtil.move(temp, resultFileOutFile, true);
+        } else if (!resultFileOutFile.exists()) {
+            logRecorder.systemWarning("结果文件不存在: {}", resultFileOutFile.getAbsolutePath());
         }
     }
 
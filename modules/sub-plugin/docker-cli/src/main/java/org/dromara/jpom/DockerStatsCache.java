@@ -0,0 +1,349 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom;
+
+import cn.hutool.core.date.SystemClock;
+import cn.hutool.core.io.IoUtil;
+import cn.hutool.core.map.SafeConcurrentHashMap;
+import cn.hutool.core.thread.ExecutorBuilder;
+import cn.hutool.core.thread.ThreadUtil;
+import com.alibaba.fastjson2.JSONObject;
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.model.Statistics;
+import com.github.dockerjava.core.InvocationBuilder;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 容器监控信息缓存
+ * <p>
+ * 每个 docker 对请求过的容器保持一个长连接的 stats 订阅，内存中只保留最新的一次采样，获取监控信息时直接返回缓存。
+ * 订阅数超过上限或者还没有采样的容器在有界线程池中并行获取，一段时间没有再请求的容器自动取消订阅
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+@Slf4j
+public class DockerStatsCache {
+
+    /**
+     * 通过 ssh 连接的 docker 单个订阅占用一个 ssh 通道（sshd 默认 MaxSessions 为 10），订阅数和单次并行获取数限制为该值
+     */
+    private static final int SSH_LIMIT = 4;
+    /**
+     * docker -> 容器id -> 订阅
+     */
+    private static final Map<String, Map<String, Subscription>> HOST_MAP = new SafeConcurrentHashMap<>();
+    /**
+     * 多久没有请求自动取消订阅（毫秒），小于等于 0 不订阅
+     */
+    private static volatile long idleTimeout = TimeUnit.SECONDS.toMillis(60);
+    /**
+     * 单个 docker 的订阅上限
+     */
+    private static volatile int maxStream = 20;
+    private static volatile int poolSize = 8;
+    private static volatile ThreadPoolExecutor fetchExecutor;
+    private static ScheduledFuture<?> evictFuture;
+
+    /**
+     * 配置监控缓存
+     *
+     * @param idleSeconds 多久没有请求自动取消订阅（秒），小于等于 0 不订阅
+     * @param maxStream   单个 docker 的订阅上限
+     * @param poolSize    并行获取的线程数
+     */
+    public static synchronized void config(int idleSeconds, int maxStream, int poolSize) {
+        DockerStatsCache.idleTimeout = TimeUnit.SECONDS.toMillis(idleSeconds);
+        DockerStatsCache.maxStream = Math.max(maxStream, 0);
+        DockerStatsCache.poolSize = Math.max(poolSize, 1);
+        ThreadPoolExecutor executor = fetchExecutor;
+        if (executor != null) {
+            // 先调大上限或者先调小核心数，避免核心数大于上限
+            if (DockerStatsCache.poolSize > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(DockerStatsCache.poolSize);
+                executor.setCorePoolSize(DockerStatsCache.poolSize);
+            } else {
+                executor.setCorePoolSize(DockerStatsCache.poolSize);
+                executor.setMaximumPoolSize(DockerStatsCache.poolSize);
+            }
+        }
+        if (evictFuture != null) {
+            evictFuture.cancel(false);
+            evictFuture = null;
+        }
+        if (idleSeconds > 0) {
+            long period = Math.max(idleSeconds / 2, 5);
+            evictFuture = JpomApplication.getScheduledExecutorService()
+                .scheduleWithFixedDelay(DockerStatsCache::evict, period, period, TimeUnit.SECONDS);
+        } else {
+            HOST_MAP.values().forEach(map -> map.values().forEach(IoUtil::close));
+        }
+    }
+
+    /**
+     * 获取容器监控信息
+     *
+     * @param dockerClient docker 连接
+     * @param hostKey      docker 标识
+     * @param ssh          是否通过 ssh 连接
+     * @param ids          容器id
+     * @param timeout      等待采样的超时时间（毫秒）
+     * @return 容器id -> 监控信息，超时或者获取失败的容器不返回
+     */
+    public static Map<String, JSONObject> stats(DockerClient dockerClient, String hostKey, boolean ssh, List<String> ids, long timeout) {
+        Map<String, Subscription> subscriptions = HOST_MAP.getOrDefault(hostKey, Collections.emptyMap());
+        long now = SystemClock.now();
+        int streamLimit = ssh ? Math.min(maxStream, SSH_LIMIT) : maxStream;
+        Map<String, JSONObject> result = new LinkedHashMap<>(ids.size());
+        Map<String, Subscription> waitSubscriptions = new LinkedHashMap<>();
+        List<String> fetchIds = new ArrayList<>();
+        for (String id : ids) {
+            Subscription subscription = subscriptions.get(id);
+            if (subscription == null && idleTimeout > 0) {
+                subscription = subscribe(hostKey, id, streamLimit);
+                if (subscription != null) {
+                    subscription.start(dockerClient);
+                }
+            }
+            if (subscription == null) {
+                fetchIds.add(id);
+                continue;
+            }
+            subscription.lastRequest = now;
+            Statistics latest = subscription.latest;
+            if (latest != null) {
+                result.put(id, DockerUtil.toJSON(latest));
+            } else {
+                waitSubscriptions.put(id, subscription);
+            }
+        }
+        long deadline = now + timeout;
+        Map<String, Future<Statistics>> futures = fetchAll(dockerClient, fetchIds, ssh ? SSH_LIMIT : poolSize);
+        for (Map.Entry<String, Subscription> entry : waitSubscriptions.entrySet()) {
+            Statistics statistics = entry.getValue().await(deadline);
+            if (statistics != null) {
+                result.put(entry.getKey(), DockerUtil.toJSON(statistics));
+            }
+        }
+        for (Map.Entry<String, Future<Statistics>> entry : futures.entrySet()) {
+            try {
+                Statistics statistics = entry.getValue().get(Math.max(deadline - SystemClock.now(), 0), TimeUnit.MILLISECONDS);
+                result.put(entry.getKey(), DockerUtil.toJSON(statistics));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (TimeoutException e) {
+                entry.getValue().cancel(true);
+            } catch (ExecutionException e) {
+                log.warn("获取容器监控信息失败 {} {}", entry.getKey(), e.getCause().getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 创建订阅（和清理空的 docker 在同一个 compute 中执行，避免订阅加入已经被移除的 map）
+     *
+     * @param hostKey     docker 标识
+     * @param id          容器id
+     * @param streamLimit 订阅上限
+     * @return 超过上限返回 null
+     */
+    private static Subscription subscribe(String hostKey, String id, int streamLimit) {
+        Subscription[] result = new Subscription[1];
+        HOST_MAP.compute(hostKey, (key, subscriptions) -> {
+            Map<String, Subscription> map = subscriptions == null ? new SafeConcurrentHashMap<>() : subscriptions;
+            Subscription subscription = map.get(id);
+            if (subscription == null && map.size() < streamLimit) {
+                subscription = new Subscription(map, id);
+                map.put(id, subscription);
+            }
+            result[0] = subscription;
+            return map.isEmpty() ? null : map;
+        });
+        return result[0];
+    }
+
+    /**
+     * 并行获取一次监控信息
+     *
+     * @param dockerClient docker 连接
+     * @param ids          容器id
+     * @param concurrency  最多同时获取的数量
+     * @return future
+     */
+    private static Map<String, Future<Statistics>> fetchAll(DockerClient dockerClient, List<String> ids, int concurrency) {
+        Map<String, Future<Statistics>> futures = new LinkedHashMap<>(ids.size());
+        if (ids.isEmpty()) {
+            return futures;
+        }
+        Semaphore semaphore = new Semaphore(concurrency);
+        ThreadPoolExecutor executor = getFetchExecutor();
+        for (String id : ids) {
+            futures.put(id, executor.submit(() -> {
+                semaphore.acquire();
+                try {
+                    return fetch(dockerClient, id);
+                } finally {
+                    semaphore.release();
+                }
+            }));
+        }
+        return futures;
+    }
+
+    private static Statistics fetch(DockerClient dockerClient, String id) {
+        InvocationBuilder.AsyncResultCallback<Statistics> callback = dockerClient.statsCmd(id).exec(new InvocationBuilder.AsyncResultCallback<Statistics>() {
+            @SneakyThrows
+            @Override
+            public void onNext(Statistics object) {
+                super.onNext(object);
+                super.close();
+            }
+        });
+        try {
+            return callback.awaitResult();
+        } finally {
+            // 超时被中断时还没有收到数据，需要关闭连接
+            IoUtil.close(callback);
+        }
+    }
+
+    private static ThreadPoolExecutor getFetchExecutor() {
+        if (fetchExecutor == null) {
+            synchronized (DockerStatsCache.class) {
+                if (fetchExecutor == null) {
+                    ExecutorBuilder executorBuilder = ExecutorBuilder.create();
+                    executorBuilder.setCorePoolSize(poolSize).setMaxPoolSize(poolSize);
+                    executorBuilder.setWorkQueue(new LinkedBlockingQueue<>());
+                    executorBuilder.setThreadFactory(ThreadUtil.newNamedThreadFactory("docker-stats-", true));
+                    ThreadPoolExecutor threadPoolExecutor = executorBuilder.build();
+                    JpomApplication.register("docker-stats", threadPoolExecutor);
+                    fetchExecutor = threadPoolExecutor;
+                }
+            }
+        }
+        return fetchExecutor;
+    }
+
+    /**
+     * 取消长时间没有请求的订阅
+     */
+    private static void evict() {
+        try {
+            long now = SystemClock.now();
+            for (Map.Entry<String, Map<String, Subscription>> entry : HOST_MAP.entrySet()) {
+                for (Subscription subscription : entry.getValue().values()) {
+                    if (now - subscription.lastRequest > idleTimeout) {
+                        IoUtil.close(subscription);
+                    }
+                }
+                HOST_MAP.computeIfPresent(entry.getKey(), (key, subscriptions) -> subscriptions.isEmpty() ? null : subscriptions);
+            }
+        } catch (Throwable e) {
+            log.error("清理容器监控订阅异常", e);
+        }
+    }
+
+    /**
+     * 监控统计信息
+     *
+     * @return json
+     */
+    public static JSONObject stat() {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("hostCount", HOST_MAP.size());
+        jsonObject.put("streamCount", HOST_MAP.values().stream().mapToInt(Map::size).sum());
+        ThreadPoolExecutor executor = fetchExecutor;
+        jsonObject.put("fetchActive", executor == null ? 0 : executor.getActiveCount());
+        jsonObject.put("fetchQueue", executor == null ? 0 : executor.getQueue().size());
+        return jsonObject;
+    }
+
+    /**
+     * 单个容器的 stats 订阅
+     */
+    private static class Subscription extends ResultCallback.Adapter<Statistics> {
+
+        private final Map<String, Subscription> subscriptions;
+        private final String id;
+        private final CountDownLatch firstLatch = new CountDownLatch(1);
+        private volatile Statistics latest;
+        private volatile long lastRequest = SystemClock.now();
+        private boolean started;
+
+        private Subscription(Map<String, Subscription> subscriptions, String id) {
+            this.subscriptions = subscriptions;
+            this.id = id;
+        }
+
+        private synchronized void start(DockerClient dockerClient) {
+            if (started) {
+                return;
+            }
+            started = true;
+            try {
+                dockerClient.statsCmd(id).exec(this);
+            } catch (RuntimeException e) {
+                log.warn("订阅容器监控信息失败 {} {}", id, e.getMessage());
+                this.remove();
+            }
+        }
+
+        private Statistics await(long deadline) {
+            try {
+                firstLatch.await(Math.max(deadline - SystemClock.now(), 0), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return latest;
+        }
+
+        @Override
+        public void onNext(Statistics object) {
+            this.latest = object;
+            firstLatch.countDown();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            // 容器已经停止或者连接断开，下次请求重新订阅
+            log.debug("容器监控订阅结束 {} {}", id, throwable.getMessage());
+            this.remove();
+            IoUtil.close(this);
+        }
+
+        @Override
+        public void onComplete() {
+            this.remove();
+            super.onComplete();
+        }
+
+        @Override
+        public void close() {
+            this.remove();
+            try {
+                super.close();
+            } catch (Exception e) {
+                log.debug("关闭容器监控订阅失败 {}", id, e);
+            }
+        }
+
+        private void remove() {
+            subscriptions.remove(id, this);
+            firstLatch.countDown();
+        }
+    }
+}
@@ -68,9 +68,7 @@ public class DockerUtil {
      * @return DockerClient
      */
     public static DockerClient get(Map<String, Object> parameter) {
-        String host = (String) parameter.get("dockerHost");
-        String dockerCertPath = (String) parameter.get("dockerCertPath");
-        String key = StrUtil.format("{}-{}", host, StrUtil.emptyToDefault(dockerCertPath, StrUtil.EMPTY));
+        String key = getKey(parameter);
         if (parameter.containsKey("closeBefore")) {
             //  关闭之前的连接
             DockerClient dockerClient = DOCKER_CLIENT_MAP.remove(key);
@@ -79,6 +77,18 @@ public class DockerUtil {
         return DOCKER_CLIENT_MAP.computeIfAbsent(key, s -> create(parameter));
     }
 
+    /**
+     * 获取 docker 连接的标识
+     *
+     * @param parameter 参数
+     * @return key
+     */
+    public static String getKey(Map<String, Object> parameter) {
+        String host = (String) parameter.get("dockerHost");
+        String dockerCertPath = (String) parameter.get("dockerCertPath");
+        return StrUtil.format("{}-{}", host, StrUtil.emptyToDefault(dockerCertPath, StrUtil.EMPTY));
+    }
+
     /**
      * 构建 docker client 对象
      *
@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom;
+
+import cn.hutool.core.io.IORuntimeException;
+import cn.hutool.core.io.IoUtil;
+import cn.hutool.core.map.MapUtil;
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.core.util.StrUtil;
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.model.Mount;
+import com.github.dockerjava.api.model.MountType;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.dromara.jpom.util.LogRecorder;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * 容器构建目录增量同步
+ * <p>
+ * 构建目录使用持久化的数据卷（每个构建一个卷），卷中保存上一次同步的文件清单（大小、修改时间），
+ * 每次构建只上传有变化的文件，本地已经不存在的文件在执行构建命令前删除，不同步版本管理目录。
+ * 构建结束时在容器中检查清单中的文件，被构建命令修改或者删除的文件记录下来，下次同步时重新上传
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+public class DockerWorkspaceSync {
+
+    /**
+     * 已同步的文件清单
+     */
+    private static final String MANIFEST_NAME = ".jpom_workspace_manifest";
+    /**
+     * 需要删除的文件列表
+     */
+    private static final String DELETE_NAME = ".jpom_workspace_delete";
+    /**
+     * 构建开始的标记文件，修改时间比它新的文件是被构建命令修改过的
+     */
+    private static final String MARK_NAME = ".jpom_workspace_mark";
+    /**
+     * 构建结束时被修改或者删除的清单中的文件
+     */
+    private static final String DIRTY_NAME = ".jpom_workspace_dirty";
+    /**
+     * 不同步的目录（版本管理）
+     */
+    private static final Set<String> IGNORE_NAMES = new HashSet<>(Arrays.asList(".git", ".svn", ".hg"));
+
+    private final DockerClient dockerClient;
+    private final String containerId;
+    private final String workingDir;
+    private final File sourceDir;
+    private final LogRecorder logRecorder;
+
+    public DockerWorkspaceSync(DockerClient dockerClient, String containerId, String workingDir, File sourceDir, LogRecorder logRecorder) {
+        this.dockerClient = dockerClient;
+        this.containerId = containerId;
+        this.workingDir = workingDir;
+        this.sourceDir = sourceDir;
+        this.logRecorder = logRecorder;
+    }
+
+    /**
+     * 检查构建目录的数据卷，不存在则创建
+     *
+     * @param dockerClient docker 连接
+     * @param buildId      构建ID
+     * @param workingDir   构建目录
+     * @return mount
+     */
+    public static Mount checkVolume(DockerClient dockerClient, String buildId, String workingDir) {
+        String name = "jpom_workspace_" + buildId;
+        try {
+            dockerClient.inspectVolumeCmd(name).exec();
+        } catch (NotFoundException e) {
+            HashMap<String, String> labels = MapUtil.of("jpom_build_" + buildId, buildId);
+            labels.put("jpom_build_workspace", "true");
+            dockerClient.createVolumeCmd()
+                .withName(name)
+                .withLabels(labels)
+                .exec();
+        }
+        return new Mount().withType(MountType.VOLUME).withSource(name).withTarget(workingDir);
+    }
+
+    /**
+     * 删除本地已经不存在的文件，需要在执行构建命令前执行（工作目录为构建目录）
+     *
+     * @return sh
+     */
+    public static String deleteScript() {
+        return String.format("if [ -f %s ]; then tr '\\n' '\\0' < %s | xargs -0 rm -f -- ; rm -f %s; fi\n", DELETE_NAME, DELETE_NAME, DELETE_NAME)
+            + String.format("rm -f %s\n", DIRTY_NAME);
+    }
+
+    /**
+     * 构建结束（包括失败）时记录清单中被构建命令修改或者删除的文件，需要在执行构建命令前执行（工作目录为构建目录）
+     *
+     * @param workingDir 构建目录
+     * @return sh
+     */
+    public static String stateScript(String workingDir) {
+        return "jpom_workspace_state() {\n" +
+            String.format("  cd '%s' || return\n", workingDir) +
+            String.format("  if [ -f %s ] && [ -f %s ]; then\n", MANIFEST_NAME, MARK_NAME) +
+            String.format("    cut -f2- %s | while IFS= read -r f; do\n", MANIFEST_NAME) +
+            "      if [ ! -e \"$f\" ] && [ ! -L \"$f\" ]; then echo \"$f\";\n" +
+            String.format("      elif [ \"$f\" -nt %s ]; then echo \"$f\"; fi\n", MARK_NAME) +
+            String.format("    done > %s\n", DIRTY_NAME) +
+            "  fi\n" +
+            "}\n" +
+            "trap jpom_workspace_state EXIT\n" +
+            String.format("touch %s\n", MARK_NAME) +
+            // 避免同一秒内修改的文件无法判断
+            "sleep 1\n";
+    }
+
+    /**
+     * 同步本地目录到容器的构建目录
+     *
+     * @throws IOException 读取本地文件异常
+     */
+    public void sync() throws IOException {
+        Map<String, String> remote = this.readManifest();
+        this.applyDirty(remote);
+        Map<String, String> local = this.scan();
+        List<String> changed = new ArrayList<>();
+        for (Map.Entry<String, String> entry : local.entrySet()) {
+            if (!StrUtil.equals(entry.getValue(), remote.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        List<String> deleted = new ArrayList<>();
+        for (String name : remote.keySet()) {
+            if (!local.containsKey(name)) {
+                deleted.add(name);
+            }
+        }
+        logRecorder.system("sync workspace {} to {}, changed {} deleted {} total {}", sourceDir.getAbsolutePath(), workingDir, changed.size(), deleted.size(), local.size());
+        PipedInputStream inputStream = new PipedInputStream(IoUtil.DEFAULT_LARGE_BUFFER_SIZE);
+        PipedOutputStream outputStream = new PipedOutputStream(inputStream);
+        Future<?> future = ThreadUtil.execAsync(() -> {
+            try (TarArchiveOutputStream tarStream = new TarArchiveOutputStream(outputStream, StandardCharsets.UTF_8.name())) {
+                tarStream.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+                tarStream.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+                for (String name : changed) {
+                    this.putEntry(tarStream, name);
+                }
+                if (!deleted.isEmpty()) {
+                    this.putText(tarStream, DELETE_NAME, deleted);
+                }
+                List<String> manifest = new ArrayList<>(local.size());
+                local.forEach((name, value) -> manifest.add(value + "\t" + name));
+                this.putText(tarStream, MANIFEST_NAME, manifest);
+                tarStream.finish();
+            } catch (IOException e) {
+                throw new IORuntimeException(e);
+            }
+        });
+        try {
+            dockerClient.copyArchiveToContainerCmd(containerId)
+                .withTarInputStream(inputStream)
+                .withRemotePath(workingDir)
+                .exec();
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("同步构建目录被中断", e);
+        } catch (ExecutionException e) {
+            throw new IOException("同步构建目录失败", e.getCause());
+        } finally {
+            // 上传异常时结束写入线程
+            IoUtil.close(inputStream);
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * 读取容器中上一次同步的文件清单
+     *
+     * @return 相对路径 -> 文件信息
+     */
+    private Map<String, String> readManifest() {
+        Map<String, String> map = new HashMap<>(1024);
+        try {
+            List<String> lines = this.readLines(MANIFEST_NAME);
+            if (lines == null) {
+                logRecorder.system("workspace volume is empty, sync all files");
+                return map;
+            }
+            for (String line : lines) {
+                int index = line.indexOf('\t');
+                if (index > 0) {
+                    map.put(line.substring(index + 1), line.substring(0, index));
+                }
+            }
+        } catch (Exception e) {
+            logRecorder.systemWarning("读取构建目录文件清单失败，将同步全部文件：{}", e.getMessage());
+            map.clear();
+        }
+        return map;
+    }
+
+    /**
+     * 上一次构建修改或者删除过的文件需要重新上传（清单中的信息置空）
+     *
+     * @param remote 上一次同步的文件清单
+     */
+    private void applyDirty(Map<String, String> remote) {
+        if (remote.isEmpty()) {
+            return;
+        }
+        List<String> dirty;
+        try {
+            dirty = this.readLines(DIRTY_NAME);
+        } catch (Exception e) {
+            logRecorder.systemWarning("读取构建目录变动文件失败：{}", e.getMessage());
+            dirty = null;
+        }
+        if (dirty == null) {
+            // 上一次构建没有正常结束，无法确定容器中的文件是否被修改
+            logRecorder.system("workspace state unknown, resync all files");
+            remote.replaceAll((name, value) -> StrUtil.EMPTY);
+            return;
+        }
+        int count = 0;
+        for (String name : dirty) {
+            name = StrUtil.removePrefix(name, "./");
+            if (remote.containsKey(name)) {
+                remote.put(name, StrUtil.EMPTY);
+                count++;
+            }
+        }
+        if (count > 0) {
+            logRecorder.system("workspace files modified by last build: {}", count);
+        }
+    }
+
+    /**
+     * 读取构建目录中的文本文件
+     *
+     * @param name 文件名
+     * @return 文件不存在返回 null
+     */
+    private List<String> readLines(String name) throws IOException {
+        try (InputStream stream = dockerClient.copyArchiveFromContainerCmd(containerId, StrUtil.addSuffixIfNot(workingDir, StrUtil.SLASH) + name).exec();
+             TarArchiveInputStream tarStream = new TarArchiveInputStream(stream)) {
+            if (tarStream.getNextEntry() == null) {
+                return null;
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(tarStream, StandardCharsets.UTF_8));
+            List<String> lines = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (StrUtil.isNotEmpty(line)) {
+                    lines.add(line);
+                }
+            }
+            return lines;
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 扫描本地文件
+     *
+     * @return 相对路径 -> 文件信息（大小:修改时间，软链接为 l:链接目标）
+     * @throws IOException io
+     */
+    private Map<String, String> scan() throws IOException {
+        Path root = sourceDir.toPath();
+        Map<String, String> map = new LinkedHashMap<>(1024);
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (!dir.equals(root) && IGNORE_NAMES.contains(dir.getFileName().toString())) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                String name = DockerWorkspaceSync.this.relativeName(root, file);
+                if (attrs.isSymbolicLink()) {
+                    map.put(name, "l:" + Files.readSymbolicLink(file));
+                } else if (attrs.isRegularFile()) {
+                    if (IGNORE_NAMES.contains(file.getFileName().toString())) {
+                        // 子模块的 .git 文件
+                        return FileVisitResult.CONTINUE;
+                    }
+                    map.put(name, attrs.size() + ":" + attrs.lastModifiedTime().toMillis());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return map;
+    }
+
+    private String relativeName(Path root, Path file) {
+        return StrUtil.replace(root.relativize(file).toString(), File.separator, StrUtil.SLASH);
+    }
+
+    private void putEntry(TarArchiveOutputStream tarStream, String name) throws IOException {
+        Path path = sourceDir.toPath().resolve(name);
+        if (Files.isSymbolicLink(path)) {
+            TarArchiveEntry entry = new TarArchiveEntry(name, TarConstants.LF_SYMLINK);
+            entry.setLinkName(Files.readSymbolicLink(path).toString());
+            tarStream.putArchiveEntry(entry);
+            tarStream.closeArchiveEntry();
+            return;
+        }
+        File file = path.toFile();
+        TarArchiveEntry entry = new TarArchiveEntry(file, name);
+        // 保留可执行权限（mvnw、gradlew 等）
+        entry.setMode(file.canExecute() ? 0100755 : 0100644);
+        tarStream.putArchiveEntry(entry);
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            IoUtil.copy(inputStream, tarStream, IoUtil.DEFAULT_LARGE_BUFFER_SIZE);
+        }
+        tarStream.closeArchiveEntry();
+    }
+
+    private void putText(TarArchiveOutputStream tarStream, String name, List<String> lines) throws IOException {
+        byte[] bytes = StrUtil.join(StrUtil.LF, lines).getBytes(StandardCharsets.UTF_8);
+        TarArchiveEntry entry = new TarArchiveEntry(name);
+        entry.setSize(bytes.length);
+        entry.setModTime(System.currentTimeMillis());
+        tarStream.putArchiveEntry(entry);
+        tarStream.write(bytes);
+        tarStream.closeArchiveEntry();
+    }
+}
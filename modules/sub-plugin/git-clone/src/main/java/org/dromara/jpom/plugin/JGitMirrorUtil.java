@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.plugin;
+
+import cn.hutool.core.comparator.VersionComparator;
+import cn.hutool.core.date.SystemClock;
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IoUtil;
+import cn.hutool.core.lang.Tuple;
+import cn.hutool.core.map.SafeConcurrentHashMap;
+import cn.hutool.core.util.StrUtil;
+import org.eclipse.jgit.api.*;
+import org.eclipse.jgit.lib.*;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.RemoteConfig;
+import org.eclipse.jgit.transport.TagOpt;
+import org.eclipse.jgit.transport.URIish;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * git 仓库镜像
+ * <p>
+ * 每个仓库在本地保存一份裸镜像（bare mirror），拉取代码时只增量 fetch 镜像。
+ * 构建的工作目录通过 alternates 引用镜像中的对象，从镜像本地 fetch 对应的分支或者标签后检出，不需要重复下载完整仓库。
+ * 分支和标签列表直接读取镜像中的引用，每次 fetch 后刷新，有效期内的查询共用同一次 fetch。
+ * 检出代码前始终 fetch 镜像（只复用等待锁期间开始的 fetch），保证构建的是触发时最新的提交
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+public class JGitMirrorUtil {
+
+    /**
+     * 镜像目录 -> 最后一次 fetch 的时间和引用列表
+     */
+    private static final Map<String, RefCache> REF_CACHE = new SafeConcurrentHashMap<>();
+
+    private static class RefCache {
+        private final long fetchTime;
+        private final Tuple refs;
+
+        private RefCache(long fetchTime, Tuple refs) {
+            this.fetchTime = fetchTime;
+            this.refs = refs;
+        }
+    }
+
+    /**
+     * 镜像是否可用（参数中有镜像目录）
+     *
+     * @param parameter 参数
+     * @return true 使用镜像
+     */
+    public static boolean enabled(Map<String, Object> parameter) {
+        return parameter.get("mirrorPath") instanceof File;
+    }
+
+    /**
+     * 获取分支和标签列表（有效期内直接返回缓存，否则先 fetch 镜像）
+     *
+     * @param parameter 参数
+     * @return tuple
+     * @throws Exception 异常
+     */
+    public static Tuple getBranchAndTagList(Map<String, Object> parameter) throws Exception {
+        try {
+            return fetchMirror(parameter, null, true);
+        } catch (Exception t) {
+            JGitUtil.checkTransportException(t, null, null);
+            return null;
+        }
+    }
+
+    /**
+     * 拉取对应分支最新代码
+     *
+     * @param parameter   参数
+     * @param file        工作目录
+     * @param branchName  分支名
+     * @param printWriter 日志
+     * @return 最后一次提交信息
+     * @throws Exception 异常
+     */
+    public static String[] checkoutPull(Map<String, Object> parameter, File file, String branchName, PrintWriter printWriter) throws Exception {
+        return checkout(parameter, file, branchName, false, printWriter);
+    }
+
+    /**
+     * 拉取对应标签代码
+     *
+     * @param parameter   参数
+     * @param file        工作目录
+     * @param tagName     标签名
+     * @param printWriter 日志
+     * @return 最后一次提交信息
+     * @throws Exception 异常
+     */
+    public static String[] checkoutPullTag(Map<String, Object> parameter, File file, String tagName, PrintWriter printWriter) throws Exception {
+        return checkout(parameter, file, tagName, true, printWriter);
+    }
+
+    private static String[] checkout(Map<String, Object> parameter, File file, String refName, boolean tag, PrintWriter printWriter) throws Exception {
+        String path = FileUtil.getAbsolutePath(file);
+        synchronized (StrUtil.concat(false, (String) parameter.get("url"), path).intern()) {
+            try {
+                File mirror = (File) parameter.get("mirrorPath");
+                fetchMirror(parameter, printWriter, false);
+                try {
+                    checkoutFromMirror(parameter, mirror, file, refName, tag, printWriter);
+                } catch (Exception e) {
+                    // 工作目录损坏（如镜像中的对象已经被清理），重新创建后再试一次
+                    println(printWriter, "JGit: workspace from mirror failed, recreate workspace: {}", e.getMessage());
+                    cleanWorkspace(file);
+                    checkoutFromMirror(parameter, mirror, file, refName, tag, printWriter);
+                }
+                return JGitUtil.getLastCommitMsg(file, tag, refName);
+            } catch (Exception t) {
+                JGitUtil.checkTransportException(t, file, printWriter);
+            }
+        }
+        return new String[]{StrUtil.EMPTY, StrUtil.EMPTY};
+    }
+
+    /**
+     * fetch 镜像（镜像不存在或者仓库地址变更时重新创建镜像）
+     *
+     * @param useTtl 是否在有效期内直接使用上一次 fetch 的结果（只用于获取分支和标签列表），
+     *               否则只复用调用之后开始的 fetch
+     * @return 镜像中的分支和标签列表
+     */
+    private static Tuple fetchMirror(Map<String, Object> parameter, PrintWriter printWriter, boolean useTtl) throws Exception {
+        File mirror = (File) parameter.get("mirrorPath");
+        String mirrorPath = FileUtil.getAbsolutePath(mirror);
+        long requestTime = SystemClock.now();
+        long ttl = TimeUnit.SECONDS.toMillis(Optional.ofNullable((Integer) parameter.get("mirrorTtl")).orElse(10));
+        RefCache refCache = REF_CACHE.get(mirrorPath);
+        if (useTtl && refCache != null && requestTime - refCache.fetchTime < ttl) {
+            return refCache.refs;
+        }
+        synchronized (mirrorPath.intern()) {
+            // 等待锁的过程中其他线程可能已经 fetch
+            refCache = REF_CACHE.get(mirrorPath);
+            if (refCache != null && (refCache.fetchTime >= requestTime || (useTtl && SystemClock.now() - refCache.fetchTime < ttl))) {
+                println(printWriter, "JGit: mirror fetched by another task just now, skip fetch");
+                return refCache.refs;
+            }
+            String url = (String) parameter.get("url");
+            Integer progressRatio = (Integer) parameter.get("reduceProgressRatio");
+            ProgressMonitor progressMonitor = printWriter == null ? NullProgressMonitor.INSTANCE : new SmallTextProgressMonitor(printWriter, progressRatio);
+            long fetchTime = SystemClock.now();
+            if (checkMirror(mirror, url)) {
+                println(printWriter, "JGit: fetch mirror");
+                try (Git git = Git.open(mirror)) {
+                    FetchCommand fetchCommand = git.fetch()
+                        .setRemote(Constants.DEFAULT_REMOTE_NAME)
+                        .setRefSpecs(new RefSpec("+refs/heads/*:refs/heads/*"), new RefSpec("+refs/tags/*:refs/tags/*"))
+                        .setRemoveDeletedRefs(true)
+                        .setProgressMonitor(progressMonitor);
+                    JGitUtil.setCredentials(fetchCommand, parameter);
+                    fetchCommand.call();
+                }
+            } else {
+                println(printWriter, "JGit: create repository mirror");
+                REF_CACHE.remove(mirrorPath);
+                if (!FileUtil.clean(mirror)) {
+                    FileUtil.del(mirror.toPath());
+                }
+                CloneCommand cloneCommand = Git.cloneRepository()
+                    .setURI(url)
+                    .setDirectory(mirror)
+                    .setMirror(true)
+                    .setProgressMonitor(progressMonitor);
+                JGitUtil.setCredentials(cloneCommand, parameter);
+                IoUtil.close(cloneCommand.call());
+            }
+            Tuple refs = readRefs(mirror);
+            REF_CACHE.put(mirrorPath, new RefCache(fetchTime, refs));
+            return refs;
+        }
+    }
+
+    /**
+     * 检查镜像是否存在并且仓库地址一致
+     */
+    private static boolean checkMirror(File mirror, String url) {
+        if (!FileUtil.isFile(FileUtil.file(mirror, Constants.HEAD))) {
+            return false;
+        }
+        try (Git git = Git.open(mirror)) {
+            for (RemoteConfig remoteConfig : git.remoteList().call()) {
+                for (URIish urIish : remoteConfig.getURIs()) {
+                    if (StrUtil.equals(urIish.toString(), url)) {
+                        return true;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            return false;
+        }
+        return false;
+    }
+
+    private static Tuple readRefs(File mirror) throws IOException {
+        try (Repository repository = new FileRepositoryBuilder().setGitDir(mirror).setMustExist(true).build()) {
+            RefDatabase refDatabase = repository.getRefDatabase();
+            List<String> branchList = refDatabase.getRefsByPrefix(Constants.R_HEADS).stream()
+                .map(ref -> ref.getName().substring(Constants.R_HEADS.length()))
+                .sorted((o1, o2) -> VersionComparator.INSTANCE.compare(o2, o1))
+                .collect(Collectors.toList());
+            List<String> tagList = refDatabase.getRefsByPrefix(Constants.R_TAGS).stream()
+                .map(ref -> ref.getName().substring(Constants.R_TAGS.length()))
+                .sorted((o1, o2) -> VersionComparator.INSTANCE.compare(o2, o1))
+                .collect(Collectors.toList());
+            if (branchList.isEmpty()) {
+                return null;
+            }
+            return new Tuple(branchList, tagList);
+        }
+    }
+
+    /**
+     * 工作目录通过 alternates 引用镜像对象，从镜像 fetch 指定分支或者标签后强制检出
+     */
+    private static void checkoutFromMirror(Map<String, Object> parameter, File mirror, File file, String refName, boolean tag, PrintWriter printWriter) throws Exception {
+        File objects = FileUtil.file(mirror, Constants.OBJECTS);
+        File alternates = FileUtil.file(file, Constants.DOT_GIT, Constants.OBJECTS, Constants.INFO_ALTERNATES);
+        String alternatesPath = FileUtil.getAbsolutePath(objects);
+        if (!StrUtil.equals(StrUtil.trim(FileUtil.exist(alternates) ? FileUtil.readUtf8String(alternates) : null), alternatesPath)) {
+            // 不是镜像创建的工作目录，重新创建
+            println(printWriter, "JGit: create workspace from mirror");
+            cleanWorkspace(file);
+            IoUtil.close(Git.init().setDirectory(file).call());
+            FileUtil.writeString(alternatesPath + StrUtil.LF, alternates, StandardCharsets.UTF_8);
+        }
+        Integer progressRatio = (Integer) parameter.get("reduceProgressRatio");
+        ProgressMonitor progressMonitor = printWriter == null ? NullProgressMonitor.INSTANCE : new SmallTextProgressMonitor(printWriter, progressRatio);
+        try (Git git = Git.open(file)) {
+            String source = (tag ? Constants.R_TAGS : Constants.R_HEADS) + refName;
+            String target = tag ? source : Constants.R_REMOTES + Constants.DEFAULT_REMOTE_NAME + StrUtil.SLASH + refName;
+            // 对象已经通过 alternates 共享，本地 fetch 只更新引用
+            git.fetch()
+                .setRemote(FileUtil.getAbsolutePath(mirror))
+                .setRefSpecs(new RefSpec("+" + source + ":" + target))
+                .setTagOpt(TagOpt.NO_TAGS)
+                .setProgressMonitor(progressMonitor)
+                .call();
+            // 标签需要解析到提交
+            ObjectId objectId = git.getRepository().resolve(target + "^{commit}");
+            Objects.requireNonNull(objectId, "没有" + refName + "分支/标签");
+            // 先分离 HEAD，再强制更新本地分支
+            git.checkout().setName(objectId.getName()).setForced(true).setProgressMonitor(progressMonitor).call();
+            if (!tag) {
+                git.branchCreate().setName(refName).setStartPoint(objectId.getName()).setForce(true).call();
+                git.checkout().setName(refName).setForced(true).call();
+            }
+            git.reset().setMode(ResetCommand.ResetType.HARD).setRef(objectId.getName()).call();
+            println(printWriter, "JGit: checkout {} {}", refName, objectId.getName());
+            // 子模块直接从远程拉取
+            if (FileUtil.isFile(FileUtil.file(file, Constants.DOT_GIT_MODULES))) {
+                git.submoduleInit().call();
+                SubmoduleUpdateCommand subUpdate = git.submoduleUpdate();
+                JGitUtil.setCredentials(subUpdate, parameter);
+                Collection<String> rst = subUpdate.setProgressMonitor(progressMonitor).setFetch(true).call();
+                println(printWriter, String.join(StrUtil.LF, rst));
+            }
+        }
+    }
+
+    private static void cleanWorkspace(File file) {
+        if (!FileUtil.clean(file)) {
+            FileUtil.del(file.toPath());
+        }
+    }
+
+    private static void println(PrintWriter printWriter, CharSequence template, Object... params) {
+        if (printWriter == null) {
+            return;
+        }
+        printWriter.println(StrUtil.format(template, params));
+        IoUtil.flush(printWriter);
+    }
+}
@@ -29,18 +29,27 @@ public class JGitProcess extends AbstractGitProcess {
 
     @Override
     public Tuple branchAndTagList() throws Exception {
+        if (JGitMirrorUtil.enabled(parameter)) {
+            return JGitMirrorUtil.getBranchAndTagList(parameter);
+        }
         return JGitUtil.getBranchAndTagList(parameter);
     }
 
     @Override
     public String[] pull() throws Exception {
         PrintWriter printWriter = (PrintWriter) parameter.get("logWriter");
+        if (JGitMirrorUtil.enabled(parameter)) {
+            return JGitMirrorUtil.checkoutPull(parameter, getSaveFile(), getBranchName(), printWriter);
+        }
         return JGitUtil.checkoutPull(parameter, getSaveFile(), getBranchName(), printWriter);
     }
 
     @Override
     public String[] pullByTag() throws Exception {
         PrintWriter printWriter = (PrintWriter) parameter.get("logWriter");
+        if (JGitMirrorUtil.enabled(parameter)) {
+            return JGitMirrorUtil.checkoutPullTag(parameter, getSaveFile(), getTagName(), printWriter);
+        }
         return JGitUtil.checkoutPullTag(parameter, getSaveFile(), getTagName(), printWriter);
     }
 }
@@ -25,6 +25,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.dromara.jpom.system.ExtConfigBean;
 import org.dromara.jpom.util.StringUtil;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
@@ -210,7 +211,9 @@ public class JschUtils {
      * @param function 回调，是为了保证在执行完成后能自动删除名
      * @param command  命令
      * @throws IOException io
+     * @deprecated 执行命令改为通过标准输入传递脚本，请使用 execCallbackLine
      */
+    @Deprecated
     public static int uploadCommandCallback(Session session, Charset charset, int timeout, Function<String, Integer> function, String command) throws IOException {
         if (StrUtil.isEmpty(command)) {
             return -100;
@@ -295,30 +298,37 @@ public class JschUtils {
      * @throws IOException io
      */
     public static int execCallbackLine(Session session, Charset charset, int timeout, String command, String commandParamsLine, LineHandler normal, LineHandler error) throws IOException {
-        //
-        return JschUtils.uploadCommandCallback(session, charset, timeout, (s) -> {
-            ChannelExec channel = (ChannelExec) JschUtil.createChannel(session, ChannelType.EXEC);
-            channel.setCommand(StrUtil.bytes(s + StrUtil.SPACE + commandParamsLine, charset));
-            channel.setInputStream(null);
-            try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
-                channel.setErrStream(outputStream, true);
-                try (InputStream in = channel.getInputStream()) {
-                    // 不添加超时，添加超时后可能存在阻塞
-                    channel.connect();
-                    IoUtil.readLines(in, charset, normal);
-                }
-                // 输出错误信息
-                int size = outputStream.size();
-                if (size > 0) {
-                    error.handle(outputStream.toString(charset.name()));
-                }
-                return channel.getExitStatus();
-            } catch (Exception e) {
-                throw Lombok.sneakyThrow(e);
-            } finally {
-                JschUtil.close(channel);
+        if (StrUtil.isEmpty(command)) {
+            return -100;
+        }
+        String sshExecTemplate;
+        try (InputStream sshExecTemplateInputStream = ExtConfigBean.getConfigResourceInputStream("/ssh/template.sh")) {
+            sshExecTemplate = IoUtil.readUtf8(sshExecTemplateInputStream);
+        }
+        // 脚本通过标准输入传给 bash，不再上传临时文件。使用 {} 包裹，bash 读取完整个脚本后才开始执行，
+        // 避免脚本中的命令读取标准输入时读到后续的脚本内容
+        String script = "{" + StrUtil.LF + sshExecTemplate + command + StrUtil.LF + "}" + StrUtil.LF;
+        ChannelExec channel = null;
+        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+            channel = (ChannelExec) JschUtil.createChannel(session, ChannelType.EXEC);
+            channel.setCommand(StrUtil.bytes("bash -s " + StrUtil.emptyToDefault(commandParamsLine, StrUtil.EMPTY), charset));
+            channel.setInputStream(new ByteArrayInputStream(StrUtil.bytes(script, charset)));
+            channel.setErrStream(outputStream, true);
+            try (InputStream in = channel.getInputStream()) {
+                // 不添加超时，添加超时后可能存在阻塞
+                channel.connect();
+                IoUtil.readLines(in, charset, normal);
             }
-
-        }, command);
+            // 输出错误信息
+            int size = outputStream.size();
+            if (size > 0) {
+                error.handle(outputStream.toString(charset.name()));
+            }
+            return channel.getExitStatus();
+        } catch (JSchException e) {
+            throw Lombok.sneakyThrow(e);
+        } finally {
+            JschUtil.close(channel);
+        }
     }
 }
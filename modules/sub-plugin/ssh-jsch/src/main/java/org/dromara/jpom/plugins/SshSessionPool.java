@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2019 Of Him Code Technology Studio
+ * Jpom is licensed under Mulan PSL v2.
+ * You can use this software according to the terms and conditions of the Mulan PSL v2.
+ * You may obtain a copy of Mulan PSL v2 at:
+ * 			http://license.coscl.org.cn/MulanPSL2
+ * THIS SOFTWARE IS PROVIDED ON AN "AS IS" BASIS, WITHOUT WARRANTIES OF ANY KIND, EITHER EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO NON-INFRINGEMENT, MERCHANTABILITY OR FIT FOR A PARTICULAR PURPOSE.
+ * See the Mulan PSL v2 for more details.
+ */
+package org.dromara.jpom.plugins;
+
+import cn.hutool.core.date.SystemClock;
+import cn.hutool.core.map.SafeConcurrentHashMap;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.SecureUtil;
+import cn.hutool.extra.ssh.JschUtil;
+import com.jcraft.jsch.Session;
+import lombok.extern.slf4j.Slf4j;
+import org.dromara.jpom.JpomApplication;
+
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * ssh 会话池
+ * <p>
+ * 按 ssh 连接信息（id、地址、端口、账号、凭证）缓存已经登录的会话，多个任务复用同一个会话分别打开通道执行，
+ * 避免每次执行命令都重新握手。借出时检查会话是否可用，不可用自动重连；长时间未使用的会话自动断开；
+ * 同一个会话同时借出的数量有上限（sshd 默认 MaxSessions 为 10，每次借出一般会占用 1-2 个通道），
+ * 超过上限时临时创建不复用的会话执行，使用完成后直接断开
+ *
+ * @author bwcx_jzy
+ * @since 2024/4/26
+ */
+@Slf4j
+public class SshSessionPool {
+
+    private static final Map<String, Entry> POOL = new SafeConcurrentHashMap<>();
+    /**
+     * 借出时等待空闲名额的最长时间（毫秒），超时后使用临时会话
+     */
+    private static final long BORROW_WAIT = 500;
+    /**
+     * 会话空闲多久自动断开（毫秒），小于等于 0 不复用会话
+     */
+    private static volatile long idleTimeout = TimeUnit.MINUTES.toMillis(5);
+    /**
+     * 单个会话同时借出的上限
+     */
+    private static volatile int maxChannel = 4;
+    private static ScheduledFuture<?> evictFuture;
+
+    /**
+     * 配置会话池
+     *
+     * @param idleSeconds 空闲断开时间（秒），小于等于 0 不复用会话
+     * @param maxChannel  单个会话同时借出的上限
+     */
+    public static synchronized void config(int idleSeconds, int maxChannel) {
+        SshSessionPool.idleTimeout = TimeUnit.SECONDS.toMillis(idleSeconds);
+        SshSessionPool.maxChannel = Math.max(maxChannel, 1);
+        if (evictFuture != null) {
+            evictFuture.cancel(false);
+            evictFuture = null;
+        }
+        if (idleSeconds > 0) {
+            long period = Math.max(idleSeconds / 2, 10);
+            evictFuture = JpomApplication.getScheduledExecutorService()
+                .scheduleWithFixedDelay(SshSessionPool::evict, period, period, TimeUnit.SECONDS);
+        } else {
+            POOL.keySet().forEach(SshSessionPool::invalidateKey);
+        }
+    }
+
+    /**
+     * 借出会话，使用完成后需要调用 {@link Lease#close()} 归还（不能直接断开会话）
+     *
+     * @param sshInfo ssh 信息
+     * @param factory 创建新会话（已经连接）
+     * @return 借出的会话
+     */
+    public static Lease borrow(ISshInfo sshInfo, Supplier<Session> factory) {
+        if (idleTimeout <= 0) {
+            return new Lease(null, factory.get());
+        }
+        Entry entry = POOL.computeIfAbsent(createKey(sshInfo), s -> new Entry(maxChannel));
+        try {
+            if (!entry.permits.tryAcquire(BORROW_WAIT, TimeUnit.MILLISECONDS)) {
+                log.debug("ssh 会话借出数量达到上限：{} {}，使用临时会话", sshInfo.id(), entry.limit);
+                return new Lease(null, factory.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待 ssh 会话被中断", e);
+        }
+        try {
+            Session session;
+            synchronized (entry) {
+                if (!isHealthy(entry)) {
+                    JschUtil.close(entry.session);
+                    entry.session = null;
+                    entry.session = factory.get();
+                }
+                session = entry.session;
+                entry.inUse.incrementAndGet();
+            }
+            return new Lease(entry, session);
+        } catch (RuntimeException e) {
+            entry.permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 断开指定 ssh 的所有缓存会话（ssh 信息删除或者修改后调用）
+     *
+     * @param id ssh id
+     */
+    public static void invalidate(String id) {
+        String prefix = id + StrUtil.COLON;
+        POOL.keySet().stream()
+            .filter(key -> StrUtil.startWith(key, prefix))
+            .forEach(SshSessionPool::invalidateKey);
+    }
+
+    private static void invalidateKey(String key) {
+        Entry entry = POOL.remove(key);
+        if (entry != null) {
+            discard(entry);
+        }
+    }
+
+    /**
+     * 丢弃已经从池中移除的会话，正在使用中的归还后断开
+     *
+     * @param entry 会话
+     */
+    private static void discard(Entry entry) {
+        synchronized (entry) {
+            entry.discard = true;
+            if (entry.inUse.get() == 0) {
+                JschUtil.close(entry.session);
+                entry.session = null;
+            }
+        }
+    }
+
+    private static boolean isHealthy(Entry entry) {
+        Session session = entry.session;
+        if (session == null || !session.isConnected()) {
+            return false;
+        }
+        if (SystemClock.now() - entry.lastUsed > TimeUnit.SECONDS.toMillis(30)) {
+            // 一段时间未使用，发送心跳确认连接没有被对端断开
+            try {
+                session.sendKeepAliveMsg();
+            } catch (Exception e) {
+                log.debug("ssh 会话心跳失败：{}", e.getMessage());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void evict() {
+        long now = SystemClock.now();
+        for (Map.Entry<String, Entry> item : POOL.entrySet()) {
+            Entry entry = item.getValue();
+            synchronized (entry) {
+                if (entry.inUse.get() > 0) {
+                    continue;
+                }
+                if (entry.session != null && entry.session.isConnected() && now - entry.lastUsed <= idleTimeout) {
+                    continue;
+                }
+            }
+            // 空闲或者已经断开的会话从池中移除，避免修改凭证后旧的会话信息一直保留
+            if (POOL.remove(item.getKey(), entry)) {
+                discard(entry);
+            }
+        }
+    }
+
+    private static String createKey(ISshInfo sshInfo) {
+        String info = StrUtil.format("{}:{}:{}:{}:{}:{}", sshInfo.host(), sshInfo.port(), sshInfo.user(),
+            sshInfo.connectType(), sshInfo.password(), sshInfo.privateKey());
+        return StrUtil.format("{}:{}", sshInfo.id(), SecureUtil.sha1(info));
+    }
+
+    private static class Entry {
+        private final Semaphore permits;
+        private final int limit;
+        private final AtomicInteger inUse = new AtomicInteger();
+        private volatile Session session;
+        private volatile long lastUsed = SystemClock.now();
+        /**
+         * 已经从池中移除，归还后断开
+         */
+        private volatile boolean discard;
+
+        private Entry(int limit) {
+            this.limit = limit;
+            this.permits = new Semaphore(limit);
+        }
+    }
+
+    /**
+     * 借出的会话
+     */
+    public static class Lease implements AutoCloseable {
+
+        private final Entry entry;
+        private final Session session;
+        private boolean closed;
+        /**
+         * 额外占用的名额
+         */
+        private int extra;
+
+        private Lease(Entry entry, Session session) {
+            this.entry = entry;
+            this.session = session;
+        }
+
+        public Session getSession() {
+            return session;
+        }
+
+        /**
+         * 需要同时打开多个通道时按通道数额外占用名额（不等待），归还会话时一起释放
+         *
+         * @param count 需要额外占用的数量
+         * @return 实际占用的数量，临时会话不受会话池上限限制
+         */
+        public synchronized int acquireExtra(int count) {
+            if (entry == null || closed) {
+                return Math.max(count, 0);
+            }
+            int acquired = 0;
+            while (acquired < count && entry.permits.tryAcquire()) {
+                acquired++;
+            }
+            extra += acquired;
+            return acquired;
+        }
+
+        /**
+         * 归还会话，未开启复用时直接断开
+         */
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (entry == null) {
+                JschUtil.close(session);
+                return;
+            }
+            synchronized (entry) {
+                entry.lastUsed = SystemClock.now();
+                int inUse = entry.inUse.decrementAndGet();
+                if (entry.session == session && (!session.isConnected() || (entry.discard && inUse == 0))) {
+                    JschUtil.close(session);
+                    entry.session = null;
+                }
+            }
+            entry.permits.release(1 + extra);
+        }
+    }
+}
@@ -211,6 +211,16 @@ export function stopBuild(id) {
   })
 }
 
+/**
+ * 构建队列（执行中、等待中的构建和估算的开始时间）
+ */
+export function getBuildQueue() {
+  return axios({
+    url: '/build/manage/queue',
+    method: 'get'
+  })
+}
+
 /**
  * 构建历史
  * @param {
@@ -274,6 +274,12 @@ export const PROJECT_DSL_DEFATUL =
   'config:\r\n' +
   '# 是否开启日志备份功能\r\n' +
   '#  autoBackToFile: true\r\n' +
+  '# 控制台日志文件多大时自动备份\r\n' +
+  '#  autoBackSize: 50MB\r\n' +
+  '# 距离上次备份多久后自动备份\r\n' +
+  '#  autoBackInterval: 1d\r\n' +
+  '# 备份后的日志文件是否压缩\r\n' +
+  '#  autoBackCompress: true\r\n' +
   '\r\n'
 
 /**